@@ -69,6 +69,11 @@ import com.google.gwt.event.dom.client.ClickEvent;
 import com.google.gwt.event.dom.client.ClickHandler;
 import com.google.gwt.event.logical.shared.SelectionEvent;
 import com.google.gwt.event.logical.shared.SelectionHandler;
+import com.google.gwt.http.client.Request;
+import com.google.gwt.http.client.RequestBuilder;
+import com.google.gwt.http.client.RequestCallback;
+import com.google.gwt.http.client.RequestException;
+import com.google.gwt.http.client.Response;
 import com.google.gwt.user.client.Timer;
 import com.google.gwt.user.client.Window;
 import com.google.gwt.user.client.rpc.AsyncCallback;
@@ -134,7 +139,7 @@ public class DevelopmentPage extends CloudCoderPage {
 		public static final double VISUALIZE_BUTTON_WIDTH_PX = 100.0;
 
 		public static final int FLUSH_CHANGES_INTERVAL_MS = 2000;
-		private static final int POLL_SUBMISSION_RESULT_INTERVAL_MS = 1000;
+		private static final String SUBMISSION_RESULT_READY_URL = "submissionResultReady";
 
 		private ProblemNameAndBriefDescriptionView problemNameAndBriefDescriptionView;
 		private ProblemDescriptionView problemDescriptionView;
@@ -155,7 +160,7 @@ public class DevelopmentPage extends CloudCoderPage {
 		private AceEditor aceEditor;
 		private Timer flushPendingChangeEventsTimer;
 		private Mode mode;
-		private Timer checkPendingSubmissionTimer;
+		private boolean waitingForSubmissionResult;
 		private Runnable onCleanCallback;
 		private String[] testCaseNames;
 
@@ -576,8 +581,8 @@ public class DevelopmentPage extends CloudCoderPage {
 
 				@Override
 				public void onSuccess(Void result) {
-					// Start polling for the SubmissionResult
-					checkPendingSubmissionTimer.scheduleRepeating(POLL_SUBMISSION_RESULT_INTERVAL_MS);
+					// Wait for the SubmissionResult
+					startWaitingForSubmissionResult();
 				}
 			});
 		}
@@ -702,10 +707,6 @@ public class DevelopmentPage extends CloudCoderPage {
 	
 						// start a timer to periodically transmit pending changes to the server
 						startTransmitPendingChangeTimer(session);
-						
-						// create (but do not start) a timer to periodically poll to check
-						// if a submission has completed compilation/testing
-						createCheckPendingSubmissionTimer();
 					}
 				}
 			});
@@ -830,57 +831,82 @@ public class DevelopmentPage extends CloudCoderPage {
 			flushPendingChangeEventsTimer.scheduleRepeating(FLUSH_CHANGES_INTERVAL_MS);
 		}
 		
-		private void createCheckPendingSubmissionTimer() {
-			// Create, but do not start, the timer that we will be used to
-			// poll for a pending SubmissionResult.
-			checkPendingSubmissionTimer = new Timer() {
-				private boolean checking;
-				
-				@Override
-				public void run() {
-					if (!checking) {
-						checking = true;
+		private void startWaitingForSubmissionResult() {
+			// If we're already waiting (for the result of an earlier submission),
+			// we will get the new result, since the server only keeps track of
+			// the most recent submission.
+			if (!waitingForSubmissionResult) {
+				waitingForSubmissionResult = true;
+				waitForSubmissionResultReady();
+			}
+		}
+		
+		private void waitForSubmissionResultReady() {
+			// Long-poll until the server reports that the SubmissionResult
+			// is ready, then retrieve it.  The server holds the request
+			// until testing completes (or a timeout expires), so we
+			// don't need to poll repeatedly.
+			RequestBuilder builder = new RequestBuilder(RequestBuilder.GET, GWT.getModuleBaseURL() + SUBMISSION_RESULT_READY_URL);
+			try {
+				builder.sendRequest(null, new RequestCallback() {
+					@Override
+					public void onResponseReceived(Request request, Response response) {
+						if (response.getStatusCode() == Response.SC_OK && response.getText().equals("pending")) {
+							// Timed out: keep waiting
+							waitForSubmissionResultReady();
+						} else {
+							// The result is ready (or the long poll failed,
+							// in which case checkSubmission will wait briefly)
+							checkSubmissionRPC();
+						}
+					}
+					
+					@Override
+					public void onError(Request request, Throwable exception) {
 						checkSubmissionRPC();
 					}
-				}
+				});
+			} catch (RequestException e) {
+				checkSubmissionRPC();
+			}
+		}
 
-				protected void checkSubmissionRPC() {
-					RPC.submitService.checkSubmission(new AsyncCallback<SubmissionResult>() {
-						/* (non-Javadoc)
-						 * @see com.google.gwt.user.client.rpc.AsyncCallback#onFailure(java.lang.Throwable)
-						 */
-						@Override
-						public void onFailure(Throwable caught) {
-							if (caught instanceof CloudCoderAuthenticationException) {
-								recoverFromServerSessionTimeout(new Runnable() {
-									@Override
-									public void run() {
-										// Try again!
-										checkSubmissionRPC();
-									}
-								});
-							} else {
-								checking = false;
-								addSessionObject(StatusMessage.error("Error checking pending submission", caught));
-								checkPendingSubmissionTimer.cancel();
-							}
-						}
-						
-						/* (non-Javadoc)
-						 * @see com.google.gwt.user.client.rpc.AsyncCallback#onSuccess(java.lang.Object)
-						 */
-						@Override
-						public void onSuccess(SubmissionResult result) {
-							checking = false;
-							if (result != null) {
-								// Received the SubmissionResult, yay
-								onReceiveSubmissionResult(result);
-								checkPendingSubmissionTimer.cancel();
+		private void checkSubmissionRPC() {
+			RPC.submitService.checkSubmission(new AsyncCallback<SubmissionResult>() {
+				/* (non-Javadoc)
+				 * @see com.google.gwt.user.client.rpc.AsyncCallback#onFailure(java.lang.Throwable)
+				 */
+				@Override
+				public void onFailure(Throwable caught) {
+					if (caught instanceof CloudCoderAuthenticationException) {
+						recoverFromServerSessionTimeout(new Runnable() {
+							@Override
+							public void run() {
+								// Try again!
+								checkSubmissionRPC();
 							}
-						}
-					});
+						});
+					} else {
+						waitingForSubmissionResult = false;
+						addSessionObject(StatusMessage.error("Error checking pending submission", caught));
+					}
 				}
-			};
+				
+				/* (non-Javadoc)
+				 * @see com.google.gwt.user.client.rpc.AsyncCallback#onSuccess(java.lang.Object)
+				 */
+				@Override
+				public void onSuccess(SubmissionResult result) {
+					if (result != null) {
+						// Received the SubmissionResult, yay
+						waitingForSubmissionResult = false;
+						onReceiveSubmissionResult(result);
+					} else {
+						// Not ready yet (e.g., a newer submission was made)
+						waitForSubmissionResultReady();
+					}
+				}
+			});
 		}
 		
 		private void onReceiveSubmissionResult(SubmissionResult result) {
@@ -23,6 +23,7 @@ import org.cloudcoder.app.client.rpc.EditCodeService;
 import org.cloudcoder.app.server.persist.Database;
 import org.cloudcoder.app.shared.model.ApplyChangeToTextDocument;
 import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeCheckpoint;
 import org.cloudcoder.app.shared.model.ChangeType;
 import org.cloudcoder.app.shared.model.CloudCoderAuthenticationException;
 import org.cloudcoder.app.shared.model.Pair;
@@ -163,6 +164,16 @@ public class EditCodeServiceImpl extends RemoteServiceServlet implements EditCod
     			baseRev = -1;
     		}
     		
+    		// If there is a checkpoint newer than the full-text change,
+    		// use it as the base revision, so that only the deltas
+    		// stored since the checkpoint need to be applied.
+    		ChangeCheckpoint checkpoint = Database.getInstance().getChangeCheckpoint(user, problem.getProblemId());
+    		if (checkpoint != null && checkpoint.getText() != null && checkpoint.getEventId() > baseRev) {
+    			textDocument.setText(checkpoint.getText());
+    			baseRev = checkpoint.getEventId();
+    		}
+    		String baseText = textDocument.getText();
+    		
     		// Get all deltas that follow the base revision.
     		List<Change> deltaList = Database.getInstance().getAllChangesNewerThan(user, problem.getProblemId(), baseRev);
     		
@@ -176,7 +187,7 @@ public class EditCodeServiceImpl extends RemoteServiceServlet implements EditCod
     		} catch (RuntimeException e) {
     			// FIXME: should do something smarter than this 
     			logger.warn("Exception applying deltas to program text", e);
-    			return new ProblemText(fullText != null ? fullText.getText() : "", false);
+    			return new ProblemText(baseText, false);
     		}
     	}
 	}
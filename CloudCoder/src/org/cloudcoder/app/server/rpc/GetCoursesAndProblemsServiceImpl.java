@@ -41,6 +41,7 @@ import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.cloudcoder.app.client.rpc.GetCoursesAndProblemsService;
 import org.cloudcoder.app.server.persist.Database;
+import org.cloudcoder.app.server.submitsvc.SubmissionResultCache;
 import org.cloudcoder.app.shared.dto.ShareExercisesResult;
 import org.cloudcoder.app.shared.model.CloudCoderAuthenticationException;
 import org.cloudcoder.app.shared.model.ConfigurationSetting;
@@ -236,6 +237,9 @@ public class GetCoursesAndProblemsServiceImpl extends RemoteServiceServlet
 		
 		// Store in database
 		Database.getInstance().storeProblemAndTestCaseList(problemAndTestCaseList, course, user);
+		
+		// Cached results for the previous version of the problem are no longer useful
+		SubmissionResultCache.getInstance().invalidateProblem(problemAndTestCaseList.getProblem().getProblemId());
 
 		// Return updated object
 		return problemAndTestCaseList;
@@ -26,6 +26,7 @@ import org.cloudcoder.app.client.rpc.RunService;
 import org.cloudcoder.app.server.submitsvc.DefaultSubmitService;
 import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
 import org.cloudcoder.app.server.submitsvc.ISubmitService;
+import org.cloudcoder.app.server.submitsvc.SubmissionPriority;
 import org.cloudcoder.app.shared.model.CloudCoderAuthenticationException;
 import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.SubmissionException;
@@ -80,9 +81,16 @@ public class RunServiceImpl extends RemoteServiceServlet implements RunService
             listTestCases.add(tc);
         }
         
-        IFutureSubmissionResult future = submitService.submitAsync(problem, listTestCases, programText);
+        IFutureSubmissionResult future = submitService.submitAsync(problem, listTestCases, programText,
+                SubmissionPriority.INTERACTIVE, user.getId());
 
-        // put the future into the session
+        // put the future into the session, cancelling the previous
+        // one if its result wasn't retrieved
+        IFutureSubmissionResult previous =
+                (IFutureSubmissionResult) session.getAttribute(SessionAttributeKeys.FUTURE_SUBMISSION_RESULT_KEY);
+        if (previous != null && previous != future) {
+            previous.cancel();
+        }
         session.setAttribute(SessionAttributeKeys.FUTURE_SUBMISSION_RESULT_KEY, future);
         
         // Put the full-text Change and IFutureSubmissionResult in the user's session.
@@ -26,6 +26,7 @@ import org.cloudcoder.app.server.persist.Database;
 import org.cloudcoder.app.server.submitsvc.DefaultSubmitService;
 import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
 import org.cloudcoder.app.server.submitsvc.ISubmitService;
+import org.cloudcoder.app.server.submitsvc.SubmissionPriority;
 import org.cloudcoder.app.shared.model.Change;
 import org.cloudcoder.app.shared.model.ChangeType;
 import org.cloudcoder.app.shared.model.CloudCoderAuthenticationException;
@@ -99,7 +100,8 @@ public class SubmitServiceImpl extends RemoteServiceServlet implements SubmitSer
 		ISubmitService submitService = DefaultSubmitService.getInstance();
 
 		logger.info("Passing submission to submit service...");
-		IFutureSubmissionResult future = submitService.submitAsync(problem, testCaseList, programText);
+		SubmissionPriority priority = quiz != null ? SubmissionPriority.QUIZ : SubmissionPriority.INTERACTIVE;
+		IFutureSubmissionResult future = submitService.submitAsync(problem, testCaseList, programText, priority, user.getId());
 		
 		// Put the full-text Change and IFutureSubmissionResult in the user's session.
 		addSessionObjects(session, fullTextChange, future);
@@ -176,6 +178,13 @@ public class SubmitServiceImpl extends RemoteServiceServlet implements SubmitSer
 	}
 
 	private void addSessionObjects(HttpSession session, Change fullTextChange, IFutureSubmissionResult future) {
+		// If there is a previous submission whose result hasn't been
+		// retrieved, it's no longer needed
+		IFutureSubmissionResult previous =
+				(IFutureSubmissionResult) session.getAttribute(SessionAttributeKeys.FUTURE_SUBMISSION_RESULT_KEY);
+		if (previous != null && previous != future) {
+			previous.cancel();
+		}
 		session.setAttribute(SessionAttributeKeys.FUTURE_SUBMISSION_RESULT_KEY, future);
 		session.setAttribute(SessionAttributeKeys.FULL_TEXT_CHANGE_KEY, fullTextChange);
 	}
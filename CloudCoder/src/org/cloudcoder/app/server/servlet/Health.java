@@ -26,6 +26,8 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.cloudcoder.app.server.model.HealthDataSingleton;
+import org.cloudcoder.app.server.persist.ConnectionPoolStats;
+import org.cloudcoder.app.server.persist.Database;
 import org.cloudcoder.app.shared.model.HealthData;
 import org.cloudcoder.app.shared.model.json.JSONConversion;
 import org.json.simple.JSONValue;
@@ -42,6 +44,16 @@ public class Health extends HttpServlet {
 	protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
 		HealthData healthData = HealthDataSingleton.getInstance().getHealthData();
 		
+		// Add database connection pool statistics
+		ConnectionPoolStats poolStats = Database.getInstance().getConnectionPoolStats();
+		healthData.setDbConnectionsActive(poolStats.getNumActive());
+		healthData.setDbConnectionsIdle(poolStats.getNumIdle());
+		healthData.setDbConnectionsMax(poolStats.getMaxSize());
+		healthData.setDbConnectionWaiters(poolStats.getNumWaiting());
+		healthData.setDbConnectionWaitTimeouts(poolStats.getTotalWaitTimeouts());
+		healthData.setDbStatementCacheHits(poolStats.getStatementCacheHits());
+		healthData.setDbStatementCacheMisses(poolStats.getStatementCacheMisses());
+		
 		resp.setStatus(HttpServletResponse.SC_OK);
 		resp.setContentType("application/json");
 		Object jsonValue = JSONConversion.convertModelObjectToJSON(healthData, healthData.getSchema());
@@ -0,0 +1,104 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.servlet;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import org.cloudcoder.app.server.rpc.SessionAttributeKeys;
+import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
+import org.eclipse.jetty.continuation.Continuation;
+import org.eclipse.jetty.continuation.ContinuationSupport;
+
+/**
+ * Long-poll servlet allowing a client to wait for the result of its
+ * pending submission (the {@link IFutureSubmissionResult} stored in its
+ * session by the submit or run service) without repeatedly polling.
+ * The request is suspended (using a Jetty {@link Continuation}, so that
+ * it doesn't occupy a servlet thread) until testing completes or until
+ * {@link #LONG_POLL_TIMEOUT_MS} elapses.  The response is a single word:
+ * <ul>
+ * <li><b>ready</b>: the result is available, and can be retrieved
+ *     (without waiting) using the service's <code>checkSubmission</code> method</li>
+ * <li><b>pending</b>: the timeout expired, and the client should try again</li>
+ * <li><b>none</b>: there is no pending submission in the session</li>
+ * </ul>
+ * 
+ * @author David Hovemeyer
+ */
+public class SubmissionResultReady extends HttpServlet {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Maximum time a request is suspended waiting for a submission result.
+	 * Kept well below common proxy and load balancer idle timeouts.
+	 */
+	public static final long LONG_POLL_TIMEOUT_MS = 25000L;
+
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+		final Continuation continuation = ContinuationSupport.getContinuation(req);
+		
+		if (continuation.isExpired()) {
+			sendResponse(resp, "pending");
+			return;
+		}
+		if (continuation.isResumed()) {
+			sendResponse(resp, "ready");
+			return;
+		}
+		
+		HttpSession session = req.getSession(false);
+		IFutureSubmissionResult future = session != null
+				? (IFutureSubmissionResult) session.getAttribute(SessionAttributeKeys.FUTURE_SUBMISSION_RESULT_KEY)
+				: null;
+		if (future == null) {
+			sendResponse(resp, "none");
+			return;
+		}
+		
+		// Suspend the request until the result is available.
+		// Note that the listener may be invoked immediately (if the
+		// result is already available), in which case the request
+		// is redispatched as soon as this method returns.
+		continuation.setTimeout(LONG_POLL_TIMEOUT_MS);
+		continuation.suspend();
+		future.addCompletionListener(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					continuation.resume();
+				} catch (IllegalStateException e) {
+					// The request already timed out and was completed
+				}
+			}
+		});
+	}
+
+	private void sendResponse(HttpServletResponse resp, String status) throws IOException {
+		resp.setStatus(HttpServletResponse.SC_OK);
+		resp.setContentType("text/plain");
+		resp.setHeader("Cache-Control", "no-cache");
+		resp.getWriter().print(status);
+	}
+}
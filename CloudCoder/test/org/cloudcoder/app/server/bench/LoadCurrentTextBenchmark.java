@@ -0,0 +1,151 @@
+package org.cloudcoder.app.server.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.cloudcoder.app.server.persist.txn.StoreChanges;
+import org.cloudcoder.app.server.rpc.EditCodeServiceImpl;
+import org.cloudcoder.app.shared.model.ApplyChangeToTextDocument;
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeType;
+import org.cloudcoder.app.shared.model.TextDocument;
+
+/**
+ * Benchmark measuring how long it takes to reconstruct a user's
+ * current program text (as in {@link EditCodeServiceImpl#loadCurrentText()})
+ * as the number of deltas stored since the last full-text change grows,
+ * both by replaying every delta and by replaying only the deltas stored
+ * since the most recent checkpoint written by {@link StoreChanges}.
+ * The history is a random sequence of edits, sent in batches as the
+ * client does, and checkpoints are written using the same thresholds as
+ * StoreChanges.  Only the cost of applying the deltas is measured:
+ * the number of deltas that would be fetched from the database is
+ * reported, since it determines the cost of the query.
+ * Not run as part of the unit tests: run the main method directly,
+ * optionally passing history lengths (number of deltas) as arguments.
+ */
+public class LoadCurrentTextBenchmark {
+	// Each is just short of the point where a checkpoint would be written,
+	// so the number of deltas applied from the checkpoint is the worst case
+	private static final int[] DEFAULT_HISTORY_LENGTHS = { 999, 9999, 99999 };
+	
+	/** Number of changes sent by the client in each logChange call. */
+	private static final int BATCH_SIZE = 10;
+	
+	private static final int INITIAL_LINES = 20;
+	private static final int MAX_LINES = 150;
+	private static final int TRIALS = 20;
+	
+	private static final long SEED = 12345L;
+
+	public static void main(String[] args) {
+		int[] historyLengths = DEFAULT_HISTORY_LENGTHS;
+		if (args.length > 0) {
+			historyLengths = new int[args.length];
+			for (int i = 0; i < args.length; i++) {
+				historyLengths[i] = Integer.parseInt(args[i]);
+			}
+		}
+		
+		for (int round = 0; round < 2; round++) {
+			for (int numDeltas : historyLengths) {
+				run(numDeltas);
+			}
+		}
+	}
+
+	private static void run(int numDeltas) {
+		Random rng = new Random(SEED);
+		
+		// Generate the history, keeping track of the checkpoint
+		// which StoreChanges would have written
+		TextDocument doc = new TextDocument();
+		for (int i = 0; i < INITIAL_LINES; i++) {
+			doc.append("line " + i + "\n");
+		}
+		String initialText = doc.getText();
+		ApplyChangeToTextDocument applicator = new ApplyChangeToTextDocument();
+		List<Change> history = new ArrayList<Change>();
+		String checkpointText = initialText;
+		int checkpointIndex = 0;
+		int sinceCheckpoint = 0, bytesSinceCheckpoint = 0;
+		for (int i = 0; i < numDeltas; i++) {
+			Change change = generateChange(doc, rng);
+			applicator.apply(change, doc);
+			history.add(change);
+			sinceCheckpoint++;
+			bytesSinceCheckpoint += change.getText().length();
+			if ((i + 1) % BATCH_SIZE == 0
+					&& (sinceCheckpoint >= StoreChanges.CHECKPOINT_NUM_DELTAS
+							|| bytesSinceCheckpoint >= StoreChanges.CHECKPOINT_DELTA_BYTES)) {
+				checkpointText = doc.getText();
+				checkpointIndex = i + 1;
+				sinceCheckpoint = 0;
+				bytesSinceCheckpoint = 0;
+			}
+		}
+		String expected = doc.getText();
+		List<Change> suffix = history.subList(checkpointIndex, history.size());
+		
+		long[] fullNanos = new long[TRIALS];
+		long[] checkpointNanos = new long[TRIALS];
+		for (int t = 0; t < TRIALS; t++) {
+			long begin = System.nanoTime();
+			String text = reconstruct(initialText, history);
+			fullNanos[t] = System.nanoTime() - begin;
+			check(expected, text);
+			
+			begin = System.nanoTime();
+			text = reconstruct(checkpointText, suffix);
+			checkpointNanos[t] = System.nanoTime() - begin;
+			check(expected, text);
+		}
+		
+		System.out.printf("%7d deltas: full replay %7d deltas %9.3f ms, from checkpoint %4d deltas %7.3f ms%n",
+				numDeltas, history.size(), median(fullNanos) / 1000000.0, suffix.size(), median(checkpointNanos) / 1000000.0);
+	}
+
+	private static String reconstruct(String baseText, List<Change> deltaList) {
+		TextDocument textDocument = new TextDocument();
+		textDocument.setText(baseText);
+		ApplyChangeToTextDocument applicator = new ApplyChangeToTextDocument();
+		for (Change delta : deltaList) {
+			applicator.apply(delta, textDocument);
+		}
+		return textDocument.getText();
+	}
+
+	private static Change generateChange(TextDocument doc, Random rng) {
+		int numLines = doc.getNumLines();
+		int row = rng.nextInt(numLines);
+		String line = doc.getLine(row);
+		int len = line.length() - 1; // don't count the newline
+		int r = rng.nextInt(100);
+		if (r < 5 && numLines < MAX_LINES) {
+			return new Change(ChangeType.INSERT_LINES, row, 0, row + 1, 0, 0L, 1, 1, "    x = x + 1;");
+		} else if (r < 10 && numLines > INITIAL_LINES) {
+			return new Change(ChangeType.REMOVE_LINES, row, 0, row + 1, 0, 0L, 1, 1, line.substring(0, len));
+		} else if (r < 30 && len > 0) {
+			int col = rng.nextInt(len);
+			return new Change(ChangeType.REMOVE_TEXT, row, col, row, col + 1, 0L, 1, 1, line.substring(col, col + 1));
+		} else {
+			int col = rng.nextInt(len + 1);
+			String text = String.valueOf((char) ('a' + rng.nextInt(26)));
+			return new Change(ChangeType.INSERT_TEXT, row, col, row, col + 1, 0L, 1, 1, text);
+		}
+	}
+
+	private static void check(String expected, String actual) {
+		if (!expected.equals(actual)) {
+			throw new IllegalStateException("Reconstructed text doesn't match");
+		}
+	}
+
+	private static long median(long[] values) {
+		long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2];
+	}
+}
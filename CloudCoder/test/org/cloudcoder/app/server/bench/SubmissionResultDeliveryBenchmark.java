@@ -0,0 +1,271 @@
+package org.cloudcoder.app.server.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.cloudcoder.app.server.servlet.SubmissionResultReady;
+import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
+import org.cloudcoder.app.server.submitsvc.SubmissionPriority;
+import org.cloudcoder.app.server.submitsvc.oop.OOPBuildServiceSubmission;
+import org.cloudcoder.app.server.submitsvc.oop.SubmissionCoalescer;
+import org.cloudcoder.app.server.submitsvc.oop.SubmissionScheduler;
+import org.cloudcoder.app.shared.model.CompilationOutcome;
+import org.cloudcoder.app.shared.model.CompilationResult;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.ProblemType;
+import org.cloudcoder.app.shared.model.Submission;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.TestCase;
+
+/**
+ * Load test comparing the two ways a client can wait for a
+ * {@link SubmissionResult}: polling checkSubmission once per second
+ * (each call occupying a request thread for up to
+ * {@link IFutureSubmissionResult#STANDARD_POLL_WAIT_MS}), and
+ * long-polling {@link SubmissionResultReady} (which holds no thread while
+ * the request is suspended) followed by a single checkSubmission call.
+ * A burst of students submit at once, and the submissions are tested by
+ * a stub builder which just sleeps.  Request threads are modeled by a
+ * fixed-size thread pool, and the time from a result becoming available
+ * to the student receiving it is measured.
+ * Not run as part of the unit tests: run the main method directly,
+ * optionally passing the number of students, request threads,
+ * builder threads, and build time (ms) as arguments.
+ */
+public class SubmissionResultDeliveryBenchmark {
+	private static final int DEFAULT_STUDENTS = 500;
+	private static final int DEFAULT_REQUEST_THREADS = 50;
+	private static final int DEFAULT_BUILDER_THREADS = 16;
+	private static final int DEFAULT_BUILD_MS = 200;
+	
+	/** Client polling interval (as in DevelopmentPage before long-polling). */
+	private static final long POLL_INTERVAL_MS = 1000L;
+	
+	private static final long SEED = 12345L;
+
+	public static void main(String[] args) throws Exception {
+		int numStudents = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_STUDENTS;
+		int numRequestThreads = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_REQUEST_THREADS;
+		int numBuilderThreads = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_BUILDER_THREADS;
+		int buildMs = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_BUILD_MS;
+		
+		System.out.printf("%d students, %d request threads, %d builder threads, %d ms/build%n",
+				numStudents, numRequestThreads, numBuilderThreads, buildMs);
+		new SubmissionResultDeliveryBenchmark(numStudents, numRequestThreads, numBuilderThreads, buildMs, false).run();
+		new SubmissionResultDeliveryBenchmark(numStudents, numRequestThreads, numBuilderThreads, buildMs, true).run();
+	}
+	
+	private final int numStudents;
+	private final int numRequestThreads;
+	private final int numBuilderThreads;
+	private final int buildMs;
+	private final boolean longPoll;
+	
+	private ExecutorService requestPool;
+	private ScheduledExecutorService clientTimer;
+	private final AtomicLong numRequests;
+	private final AtomicLong requestThreadNanos;
+	private final long[] readyTime;
+	private final long[] deliveredTime;
+	private CountDownLatch allDelivered;
+
+	private SubmissionResultDeliveryBenchmark(int numStudents, int numRequestThreads,
+			int numBuilderThreads, int buildMs, boolean longPoll) {
+		this.numStudents = numStudents;
+		this.numRequestThreads = numRequestThreads;
+		this.numBuilderThreads = numBuilderThreads;
+		this.buildMs = buildMs;
+		this.longPoll = longPoll;
+		this.numRequests = new AtomicLong();
+		this.requestThreadNanos = new AtomicLong();
+		this.readyTime = new long[numStudents];
+		this.deliveredTime = new long[numStudents];
+	}
+	
+	private void run() throws InterruptedException {
+		SubmissionScheduler scheduler = new SubmissionScheduler(1000L);
+		SubmissionCoalescer coalescer = new SubmissionCoalescer(scheduler);
+		requestPool = Executors.newFixedThreadPool(numRequestThreads);
+		clientTimer = Executors.newSingleThreadScheduledExecutor();
+		allDelivered = new CountDownLatch(numStudents);
+		
+		Problem problem = new Problem();
+		problem.setProblemId(1);
+		problem.setCourseId(1);
+		problem.setProblemType(ProblemType.C_FUNCTION);
+		problem.setTestname("test");
+		
+		long begin = System.nanoTime();
+		IFutureSubmissionResult[] futures = new IFutureSubmissionResult[numStudents];
+		for (int i = 0; i < numStudents; i++) {
+			final int student = i;
+			// The program text is different for each run, so that results
+			// aren't found in the SubmissionResultCache
+			String programText = "int f() { return " + i + "; } // " + (longPoll ? "long poll" : "polling");
+			Submission submission = new Submission(problem, new ArrayList<TestCase>(), programText);
+			futures[i] = coalescer.submit(submission, SubmissionPriority.INTERACTIVE, i);
+			futures[i].addCompletionListener(new Runnable() {
+				@Override
+				public void run() {
+					readyTime[student] = System.nanoTime();
+				}
+			});
+		}
+		
+		// Clients' requests don't arrive in the same order as their submissions
+		List<Integer> order = new ArrayList<Integer>();
+		for (int i = 0; i < numStudents; i++) {
+			order.add(i);
+		}
+		Collections.shuffle(order, new Random(SEED));
+		for (int student : order) {
+			if (longPoll) {
+				sendLongPoll(student, futures[student]);
+			} else {
+				sendCheckSubmission(student, futures[student]);
+			}
+		}
+		
+		ArrayList<Thread> builderThreads = startStubBuilder(scheduler);
+		allDelivered.await();
+		long elapsed = System.nanoTime() - begin;
+		
+		for (Thread t : builderThreads) {
+			t.interrupt();
+		}
+		clientTimer.shutdownNow();
+		requestPool.shutdownNow();
+		
+		long[] latency = new long[numStudents];
+		long total = 0L;
+		for (int i = 0; i < numStudents; i++) {
+			latency[i] = deliveredTime[i] - readyTime[i];
+			total += latency[i];
+		}
+		Arrays.sort(latency);
+		System.out.printf("%s: %d requests, %.1f request-thread-seconds, delivery latency mean %.1f ms, p95 %.1f ms, max %.1f ms, all delivered in %.2f s%n",
+				longPoll ? "long poll" : "polling",
+				numRequests.get(),
+				requestThreadNanos.get() / 1000000000.0,
+				(total / (double) numStudents) / 1000000.0,
+				latency[(int) (numStudents * 0.95)] / 1000000.0,
+				latency[numStudents - 1] / 1000000.0,
+				elapsed / 1000000000.0);
+	}
+
+	private ArrayList<Thread> startStubBuilder(final SubmissionScheduler scheduler) {
+		ArrayList<Thread> builderThreads = new ArrayList<Thread>();
+		final Random rng = new Random(SEED);
+		for (int i = 0; i < numBuilderThreads; i++) {
+			Thread t = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for (;;) {
+							OOPBuildServiceSubmission submission = scheduler.take();
+							// Build times vary between 0.5 and 1.5 times the nominal build time
+							long sleepMs;
+							synchronized (rng) {
+								sleepMs = buildMs / 2 + rng.nextInt(buildMs + 1);
+							}
+							Thread.sleep(sleepMs);
+							submission.setSubmissionResult(new SubmissionResult(new CompilationResult(CompilationOutcome.SUCCESS)));
+							submission.setReady();
+						}
+					} catch (InterruptedException e) {
+						// Done
+					}
+				}
+			});
+			t.setDaemon(true);
+			t.start();
+			builderThreads.add(t);
+		}
+		return builderThreads;
+	}
+	
+	/**
+	 * Send a checkSubmission request, which waits up to
+	 * {@link IFutureSubmissionResult#STANDARD_POLL_WAIT_MS} for the result.
+	 * When polling, if the result isn't ready, the client sends another
+	 * request at its next polling interval.
+	 */
+	private void sendCheckSubmission(final int student, final IFutureSubmissionResult future) {
+		final long sent = System.nanoTime();
+		requestPool.execute(new Runnable() {
+			@Override
+			public void run() {
+				long start = System.nanoTime();
+				numRequests.incrementAndGet();
+				SubmissionResult result;
+				try {
+					result = future.waitFor(IFutureSubmissionResult.STANDARD_POLL_WAIT_MS);
+				} catch (Exception e) {
+					throw new IllegalStateException("Unexpected exception", e);
+				}
+				long end = System.nanoTime();
+				requestThreadNanos.addAndGet(end - start);
+				
+				if (result != null) {
+					deliveredTime[student] = end;
+					allDelivered.countDown();
+				} else if (longPoll) {
+					sendLongPoll(student, future);
+				} else {
+					long elapsedMs = TimeUnit.NANOSECONDS.toMillis(end - sent);
+					clientTimer.schedule(new Runnable() {
+						@Override
+						public void run() {
+							sendCheckSubmission(student, future);
+						}
+					}, POLL_INTERVAL_MS - (elapsedMs % POLL_INTERVAL_MS), TimeUnit.MILLISECONDS);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Send a long-poll request.  As in {@link SubmissionResultReady}, the request
+	 * only occupies a request thread when it is dispatched, and is redispatched
+	 * when the result is ready or when the long-poll timeout expires.
+	 */
+	private void sendLongPoll(final int student, final IFutureSubmissionResult future) {
+		requestPool.execute(new Runnable() {
+			@Override
+			public void run() {
+				long start = System.nanoTime();
+				numRequests.incrementAndGet();
+				final AtomicBoolean dispatched = new AtomicBoolean();
+				clientTimer.schedule(new Runnable() {
+					@Override
+					public void run() {
+						if (dispatched.compareAndSet(false, true)) {
+							// "pending": try again
+							sendLongPoll(student, future);
+						}
+					}
+				}, SubmissionResultReady.LONG_POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+				future.addCompletionListener(new Runnable() {
+					@Override
+					public void run() {
+						if (dispatched.compareAndSet(false, true)) {
+							// "ready": the client now retrieves the result
+							sendCheckSubmission(student, future);
+						}
+					}
+				});
+				requestThreadNanos.addAndGet(System.nanoTime() - start);
+			}
+		});
+		}
+}
@@ -0,0 +1,126 @@
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+
+import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
+import org.cloudcoder.app.server.submitsvc.SubmissionPriority;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.ProblemType;
+import org.cloudcoder.app.shared.model.Submission;
+import org.cloudcoder.app.shared.model.SubmissionException;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.app.shared.model.TestOutcome;
+import org.cloudcoder.app.shared.model.TestResult;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SubmissionCoalescerTest {
+	private static final int USER_ID = 42;
+
+	private SubmissionScheduler scheduler;
+	private SubmissionCoalescer coalescer;
+	private Problem problem;
+	private static int textCount;
+
+	@Before
+	public void setUp() {
+		scheduler = new SubmissionScheduler(1000L);
+		coalescer = new SubmissionCoalescer(scheduler);
+		problem = new Problem();
+		problem.setProblemId(1);
+		problem.setCourseId(1);
+		problem.setProblemType(ProblemType.C_FUNCTION);
+		problem.setTestname("test");
+	}
+
+	private IFutureSubmissionResult submit(SubmissionPriority priority) {
+		// The program text is different for each submission, so that
+		// results aren't shared or found in the SubmissionResultCache
+		String programText = "int f() { return " + (textCount++) + "; } // SubmissionCoalescerTest";
+		Submission submission = new Submission(problem, new ArrayList<TestCase>(), programText);
+		return coalescer.submit(submission, priority, USER_ID);
+	}
+
+	/**
+	 * Take the next submission from the queue and complete it
+	 * with a result containing the given number of test results.
+	 * (Clients receive copies of the result, so the number of test
+	 * results identifies which submission a client's result came from.)
+	 */
+	private void testNext(int numTestResults) throws InterruptedException {
+		TestResult[] testResults = new TestResult[numTestResults];
+		for (int i = 0; i < numTestResults; i++) {
+			testResults[i] = new TestResult(TestOutcome.PASSED, "passed");
+		}
+		SubmissionResult result = new SubmissionResult();
+		result.setTestResults(testResults);
+		OOPBuildServiceSubmission submission = scheduler.take();
+		submission.setSubmissionResult(result);
+		submission.setReady();
+	}
+
+	@Test
+	public void testInteractiveSupersedes() throws Exception {
+		IFutureSubmissionResult first = submit(SubmissionPriority.INTERACTIVE);
+		IFutureSubmissionResult second = submit(SubmissionPriority.INTERACTIVE);
+		assertEquals(1, scheduler.size());
+
+		try {
+			first.waitFor(0L);
+			fail("superseded submission should report an error");
+		} catch (SubmissionException e) {
+			// expected
+		}
+
+		testNext(1);
+		assertEquals(1, second.waitFor(0L).getNumTestsAttempted());
+	}
+
+	@Test
+	public void testBatchDoesNotSupersede() throws Exception {
+		int n = 5;
+		IFutureSubmissionResult[] futures = new IFutureSubmissionResult[n];
+		for (int i = 0; i < n; i++) {
+			futures[i] = submit(SubmissionPriority.BATCH);
+		}
+		assertEquals(n, scheduler.size(SubmissionPriority.BATCH));
+
+		for (int i = 0; i < n; i++) {
+			assertNull(futures[i].waitFor(0L));
+		}
+		for (int i = 0; i < n; i++) {
+			testNext(i + 1);
+		}
+		for (int i = 0; i < n; i++) {
+			assertEquals(i + 1, futures[i].waitFor(0L).getNumTestsAttempted());
+		}
+	}
+
+	@Test
+	public void testBatchAndInteractiveAreIndependent() throws Exception {
+		IFutureSubmissionResult batch = submit(SubmissionPriority.BATCH);
+		IFutureSubmissionResult interactive = submit(SubmissionPriority.INTERACTIVE);
+		IFutureSubmissionResult newerInteractive = submit(SubmissionPriority.INTERACTIVE);
+		assertEquals(2, scheduler.size());
+
+		try {
+			interactive.waitFor(0L);
+			fail("superseded submission should report an error");
+		} catch (SubmissionException e) {
+			// expected
+		}
+		assertNull(batch.waitFor(0L));
+
+		// The interactive submission is tested first
+		testNext(1);
+		testNext(2);
+		assertEquals(1, newerInteractive.waitFor(0L).getNumTestsAttempted());
+		assertEquals(2, batch.waitFor(0L).getNumTestsAttempted());
+		assertEquals(0, scheduler.size());
+	}
+}
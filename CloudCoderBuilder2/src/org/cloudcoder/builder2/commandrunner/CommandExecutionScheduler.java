@@ -0,0 +1,209 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.commandrunner;
+
+import java.util.LinkedList;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.cloudcoder.builder2.util.SingletonHolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Singleton to limit the number of commands (child processes) that are
+ * executing at the same time, across all of the builder threads.
+ * Each call to {@link #executeAll(Runnable[])} submits the commands for
+ * one submission as a group: commands are started as long as the limit
+ * hasn't been reached, and the remaining commands wait.  When a command
+ * completes, the next command to start is chosen from the groups in
+ * round-robin order, so each submission's commands get a fair share
+ * of the execution slots.  Otherwise, a submission with many test cases
+ * could delay the tests of all the other submissions, and starting
+ * more processes than there are cores would cause processes to
+ * exceed their wall-clock time limits.
+ *
+ * <p>Configuration properties:
+ * <ul>
+ * <li><b>cloudcoder.builder2.process.maxPerCore</b>: maximum number of
+ *     concurrently executing commands per core (default 2)</li>
+ * </ul>
+ *
+ * @author David Hovemeyer
+ */
+public class CommandExecutionScheduler {
+	private static final Logger logger = LoggerFactory.getLogger(CommandExecutionScheduler.class);
+
+	private static final SingletonHolder<CommandExecutionScheduler, Properties> holder = new SingletonHolder<CommandExecutionScheduler, Properties>() {
+		@Override
+		protected CommandExecutionScheduler onCreate(Properties arg) {
+			return new CommandExecutionScheduler(arg);
+		}
+	};
+
+	/**
+	 * Get the singleton instance.
+	 *
+	 * @param config configuration properties
+	 * @return the singleton instance
+	 */
+	public static CommandExecutionScheduler getInstance(Properties config) {
+		return holder.get(config);
+	}
+
+	/**
+	 * Get the singleton instance, creating it with the default configuration
+	 * if {@link #getInstance(Properties)} has not been called yet.
+	 *
+	 * @return the singleton instance
+	 */
+	public static CommandExecutionScheduler getInstance() {
+		return holder.get(new Properties());
+	}
+
+	/**
+	 * The commands of one submission.
+	 */
+	private class Group {
+		final LinkedList<Runnable> pending;
+		final long submitTime;
+		int numRemaining;
+		long queueDelayNanos;
+
+		Group(Runnable[] tasks) {
+			this.pending = new LinkedList<Runnable>();
+			for (Runnable task : tasks) {
+				pending.add(task);
+			}
+			this.submitTime = System.nanoTime();
+			this.numRemaining = tasks.length;
+		}
+	}
+
+	private final int maxRunning;
+	private final ExecutorService executor;
+	private final LinkedList<Group> waiting; // groups with pending commands, in round-robin order
+	private int numRunning;
+	private long numExecuted;
+	private long totalQueueDelayNanos;
+
+	private CommandExecutionScheduler(Properties config) {
+		int maxPerCore = Integer.parseInt(config.getProperty("cloudcoder.builder2.process.maxPerCore", "2"));
+		this.maxRunning = Math.max(1, maxPerCore * Runtime.getRuntime().availableProcessors());
+		this.executor = Executors.newFixedThreadPool(maxRunning, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "CommandExecutionScheduler");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		this.waiting = new LinkedList<Group>();
+		logger.info("Executing at most {} commands concurrently", maxRunning);
+	}
+
+	/**
+	 * Execute commands (typically {@link CommandExecutor}s), waiting
+	 * until all of them have completed.
+	 *
+	 * @param tasks the commands to execute
+	 * @return the total time, in nanoseconds, that the commands spent
+	 *         waiting to start because the limit on concurrently
+	 *         executing commands was reached
+	 */
+	public long executeAll(Runnable[] tasks) {
+		if (tasks.length == 0) {
+			return 0L;
+		}
+
+		Group group = new Group(tasks);
+		boolean interrupted = false;
+		synchronized (this) {
+			waiting.add(group);
+			dispatch();
+			while (group.numRemaining > 0) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					// The commands have their own time limits, so keep waiting
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		return group.queueDelayNanos;
+	}
+
+	/**
+	 * @return a one-line summary of the scheduler's status
+	 */
+	public synchronized String getStatusSummary() {
+		int numWaiting = 0;
+		for (Group group : waiting) {
+			numWaiting += group.pending.size();
+		}
+		return String.format("max=%d, running=%d, waiting=%d, executed=%d, avgQueueDelayMs=%.1f",
+				maxRunning, numRunning, numWaiting, numExecuted,
+				numExecuted > 0 ? (totalQueueDelayNanos / 1000000.0) / numExecuted : 0.0);
+	}
+
+	/**
+	 * Start pending commands, in round-robin order by group,
+	 * until the limit is reached.  The lock on this object
+	 * must be held.
+	 */
+	private void dispatch() {
+		while (numRunning < maxRunning && !waiting.isEmpty()) {
+			final Group group = waiting.removeFirst();
+			final Runnable task = group.pending.removeFirst();
+			if (!group.pending.isEmpty()) {
+				waiting.addLast(group);
+			}
+
+			long delay = System.nanoTime() - group.submitTime;
+			group.queueDelayNanos += delay;
+			totalQueueDelayNanos += delay;
+			numRunning++;
+			numExecuted++;
+
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						task.run();
+					} catch (RuntimeException e) {
+						logger.error("Command execution failed", e);
+					} finally {
+						onTaskComplete(group);
+					}
+				}
+			});
+		}
+	}
+
+	private synchronized void onTaskComplete(Group group) {
+		numRunning--;
+		group.numRemaining--;
+		dispatch();
+		notifyAll();
+	}
+}
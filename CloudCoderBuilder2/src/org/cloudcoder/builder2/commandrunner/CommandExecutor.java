@@ -51,12 +51,6 @@ public class CommandExecutor implements Runnable {
 	private Thread thread;
 	private CommandResult commandResult;
 
-	/**
-	 * Number of milliseconds between polls to see if a test case
-	 * process has completed.
-	 */
-	public static final int POLL_INTERVAL_IN_MILLIS = 500;
-
 	/**
 	 * Maximum number of seconds (wall time) to allow a command process to run
 	 * by default.
@@ -119,18 +113,15 @@ public class CommandExecutor implements Runnable {
 		String[] cmd = ArrayUtil.toArray(command.getArgs(), String.class);
 		processRunner.runAsynchronous(command.getDir(), cmd);
 
-		int elapsed = 0;
-		while (processRunner.isRunning() && elapsed < maxWaitTimeSec * 1000) {
-			try {
-				Thread.sleep(CommandExecutor.POLL_INTERVAL_IN_MILLIS);
-			} catch (InterruptedException e) {
-				// can't happen
-			}
-
-			elapsed += CommandExecutor.POLL_INTERVAL_IN_MILLIS;
+		boolean exited;
+		try {
+			exited = processRunner.waitForExit(maxWaitTimeSec * 1000L);
+		} catch (InterruptedException e) {
+			logger.error("CommandExecutor interrupted waiting for process");
+			exited = false;
 		}
 
-		if (processRunner.isRunning()) {
+		if (!exited) {
 			// timed out!
 			processRunner.killProcess();
 			commandResult = new CommandResult(ProcessStatus.TIMED_OUT, processRunner.getStatusMessage());
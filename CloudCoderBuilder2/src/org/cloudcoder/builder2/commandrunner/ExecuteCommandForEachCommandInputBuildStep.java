@@ -20,18 +20,26 @@ package org.cloudcoder.builder2.commandrunner;
 
 import java.util.Properties;
 
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.SubmissionResultAnnotation;
 import org.cloudcoder.builder2.model.BuilderSubmission;
 import org.cloudcoder.builder2.model.Command;
 import org.cloudcoder.builder2.model.CommandExecutionPreferences;
 import org.cloudcoder.builder2.model.CommandInput;
 import org.cloudcoder.builder2.model.CommandResult;
 import org.cloudcoder.builder2.model.IBuildStep;
+import org.cloudcoder.builder2.model.ISubmissionResultHook;
+import org.cloudcoder.builder2.model.ProcessStatus;
 
 /**
  * An {@link IBuildStep} to execute a {@link Command} for each {@link CommandInput}
  * and save the result of each execution as a {@link CommandResult}.
  * An array of {@link CommandResult}s is added to the submission
- * as an artifact. 
+ * as an artifact.  The commands are executed by the
+ * {@link CommandExecutionScheduler}, which limits the number of
+ * commands executing at once across all submissions; the time the
+ * submission's commands spent waiting to start is added to the
+ * {@link SubmissionResult} as the "CommandQueueDelayMillis" annotation.
  * 
  * @author David Hovemeyer
  */
@@ -45,27 +53,36 @@ public class ExecuteCommandForEachCommandInputBuildStep implements IBuildStep {
 		// See if there is a CommandExecutionPreferences
 		CommandExecutionPreferences prefs = submission.getArtifact(CommandExecutionPreferences.class);
 		
-		// Create and start a CommandExecutor for each CommandInput
+		// Create a CommandExecutor for each CommandInput
 		CommandExecutor[] commandExecutorList = new CommandExecutor[commandInputList.length];
 		for (int i = 0; i < commandInputList.length; i++) {
 			commandExecutorList[i] = new CommandExecutor(commandList[i], commandInputList[i], config);
 			if (prefs != null) {
 				commandExecutorList[i].setPrefs(prefs);
 			}
-			commandExecutorList[i].start();
 		}
 		
-		// Wait for the CommandExecutors to complete
-		for (CommandExecutor commandExecutor : commandExecutorList) {
-			commandExecutor.join();
-		}
+		// Execute the CommandExecutors and wait for them to complete
+		long queueDelayNanos = CommandExecutionScheduler.getInstance(config).executeAll(commandExecutorList);
 		
 		// Create array of CommandResults
 		CommandResult[] commandResultList = new CommandResult[commandInputList.length];
 		for (int i = 0; i < commandInputList.length; i++) {
 			commandResultList[i] = commandExecutorList[i].getCommandResult();
+			if (commandResultList[i] == null) {
+				commandResultList[i] = new CommandResult(ProcessStatus.COULD_NOT_START, "Command executor did not finish");
+			}
 		}
 		submission.addArtifact(commandResultList);
+		
+		// Report the queueing delay
+		final String queueDelayMillis = String.valueOf(queueDelayNanos / 1000000L);
+		submission.addSubmissionResultHook(new ISubmissionResultHook() {
+			@Override
+			public void invoke(SubmissionResult result) {
+				result.addAnnotation(new SubmissionResultAnnotation("CommandQueueDelayMillis", queueDelayMillis));
+			}
+		});
 	}
 
 }
@@ -60,22 +60,29 @@ public class ByteArrayAndExternalLibraryClassLoader extends ClassLoader {
 	}
 	
 	@Override
-	public Class<?> loadClass(String name) throws ClassNotFoundException {
-		try {
-			return super.loadClass(name);
-		} catch (ClassNotFoundException e) {
-			if (classes.containsKey(name)) {
-				byte[] bytes = classes.get(name);
-				return defineClass(name, bytes, 0, bytes.length);
-			} else {
-				byte[] bytes = readJarEntry(name);
-				if (bytes == null) {
-					throw new ClassNotFoundException("Cannot load " + name + " from external library");
+	protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+		// As in ByteArrayClassLoader, classes compiled in memory are
+		// defined without asking the parent class loader first
+		Class<?> cls = findLoadedClass(name);
+		if (cls == null) {
+			byte[] bytes = classes.get(name);
+			if (bytes == null) {
+				try {
+					return super.loadClass(name, resolve);
+				} catch (ClassNotFoundException e) {
+					bytes = readJarEntry(name);
+					if (bytes == null) {
+						throw new ClassNotFoundException("Cannot load " + name + " from external library");
+					}
+					classes.put(name, bytes);
 				}
-				classes.put(name, bytes);
-				return defineClass(name, bytes, 0, bytes.length);
 			}
+			cls = defineClass(name, bytes, 0, bytes.length);
+		}
+		if (resolve) {
+			resolveClass(cls);
 		}
+		return cls;
 	}
 
 	private byte[] readJarEntry(String name) {
@@ -27,6 +27,10 @@ import java.util.Map;
 
 /**
  * A class loader which loads classes from byte arrays.
+ * Classes in the byte array map are defined by this class loader
+ * without first asking the parent class loader, which avoids a
+ * failed (and expensive) parent lookup for each compiled class.
+ * All other classes are loaded by the parent class loader.
  *
  * <p><b>This is NOT part of any supported API.
  * If you write code that depends on this, you do so at your own
@@ -49,12 +53,18 @@ public class ByteArrayClassLoader extends ClassLoader {
     }
 
     @Override
-    public Class<?> loadClass(String name) throws ClassNotFoundException {
-        try {
-            return super.loadClass(name);
-        } catch (ClassNotFoundException e) {
+    protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        Class<?> cls = findLoadedClass(name);
+        if (cls == null) {
             byte[] classData = classes.get(name);
-            return defineClass(name, classData, 0, classData.length);
+            if (classData == null) {
+                return super.loadClass(name, resolve);
+            }
+            cls = defineClass(name, classData, 0, classData.length);
         }
+        if (resolve) {
+            resolveClass(cls);
+        }
+        return cls;
     }
 }
\ No newline at end of file
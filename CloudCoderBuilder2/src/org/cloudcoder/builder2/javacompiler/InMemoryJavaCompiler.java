@@ -18,18 +18,16 @@
 
 package org.cloudcoder.builder2.javacompiler;
 
-import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
 import javax.tools.Diagnostic;
 import javax.tools.DiagnosticCollector;
-import javax.tools.JavaCompiler;
 import javax.tools.JavaCompiler.CompilationTask;
 import javax.tools.JavaFileObject;
-import javax.tools.ToolProvider;
+import javax.tools.StandardJavaFileManager;
 
 import org.cloudcoder.app.shared.model.CompilationOutcome;
 import org.cloudcoder.app.shared.model.CompilationResult;
@@ -39,6 +37,9 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Compile Java source code into class files (bytecode) in memory.
+ * The compiler and the file manager used to find classes on the
+ * classpath are shared with other compilations (see {@link JavaCompilerService}):
+ * only the {@link MemoryFileManager} is specific to this compiler.
  * 
  * @author Jaime Spacco
  */
@@ -46,8 +47,8 @@ public class InMemoryJavaCompiler
 {
 	private static final Logger logger=LoggerFactory.getLogger(InMemoryJavaCompiler.class);
 
+	private JavaCompilerService service;
 	private MemoryFileManager fm;
-	private JavaCompiler compiler;
 	private CompilationResult compileResult;
 	private List<JavaFileObject> sources;
 	private String extraClasspath;
@@ -56,8 +57,16 @@ public class InMemoryJavaCompiler
 	 * Constructor.
 	 */
 	public InMemoryJavaCompiler() {
-		compiler = ToolProvider.getSystemJavaCompiler();
-		fm = new MemoryFileManager(compiler.getStandardFileManager(null, null, null));
+		this(JavaCompilerService.getInstance());
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param service the {@link JavaCompilerService} to use
+	 */
+	public InMemoryJavaCompiler(JavaCompilerService service) {
+		this.service = service;
 		sources = new ArrayList<JavaFileObject>();
 	}
 	
@@ -91,19 +100,27 @@ public class InMemoryJavaCompiler
 	public boolean compile() {
 		DiagnosticCollector<JavaFileObject> collector= new DiagnosticCollector<JavaFileObject>();
 		
-		// Prepare compiler options.
-		// We use this opportunity to set the classpath.
-		StringBuilder fullClasspath = new StringBuilder();
-		fullClasspath.append(System.getProperty("java.class.path"));
-		if (extraClasspath != null) {
-			fullClasspath.append(File.pathSeparatorChar);
-			fullClasspath.append(extraClasspath);
+		// Borrow a file manager (which already has the classpath set)
+		// from the JavaCompilerService
+		StandardJavaFileManager standardFileManager;
+		try {
+			standardFileManager = service.borrowFileManager(extraClasspath);
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not set classpath for Java compiler", e);
 		}
-		List<String> options = Arrays.asList("-classpath", fullClasspath.toString());
 		
-		CompilationTask task = compiler.getTask(null, fm, collector, options, null, sources);
+		boolean success;
+		long begin = System.nanoTime();
+		try {
+			fm = new MemoryFileManager(standardFileManager);
+			CompilationTask task = service.getCompiler().getTask(null, fm, collector, null, null, sources);
+			success = task.call();
+		} finally {
+			service.releaseFileManager(extraClasspath, standardFileManager);
+			service.recordCompileTime(System.nanoTime() - begin);
+		}
 		
-		if (!task.call()) {
+		if (!success) {
 			// Compiler error
 			compileResult=new CompilationResult(CompilationOutcome.FAILURE);
 			List<CompilerDiagnostic> diagnosticList=new LinkedList<CompilerDiagnostic>();
@@ -126,7 +143,7 @@ public class InMemoryJavaCompiler
 
 	/**
 	 * Get the {@link MemoryFileManager} that is keeping track of sources
-	 * and compiled classes.
+	 * and compiled classes.  Only available after {@link #compile()} is called.
 	 * 
 	 * @return the {@link MemoryFileManager}
 	 */
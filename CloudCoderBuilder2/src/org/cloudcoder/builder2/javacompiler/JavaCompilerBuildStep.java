@@ -67,7 +67,7 @@ public class JavaCompilerBuildStep implements IBuildStep {
 		submission.addArtifact(packageAndClassNamesList);
 
 		// Attempt to compile the program
-		InMemoryJavaCompiler compiler = getJavaCompiler(submission);
+		InMemoryJavaCompiler compiler = getJavaCompiler(submission, config);
 		for (int i = 0; i < programSourceList.length; i++) {
 			compiler.addSourceFile(packageAndClassNamesList[i].getFullyQualifiedClassName(), programSourceList[i].getProgramText());
 		}
@@ -93,8 +93,8 @@ public class JavaCompilerBuildStep implements IBuildStep {
 		submission.addArtifact(bytecodeArray);
 	}
 
-	public InMemoryJavaCompiler getJavaCompiler(BuilderSubmission submission) {
-		InMemoryJavaCompiler compiler = new InMemoryJavaCompiler();
+	public InMemoryJavaCompiler getJavaCompiler(BuilderSubmission submission, Properties config) {
+		InMemoryJavaCompiler compiler = new InMemoryJavaCompiler(JavaCompilerService.getInstance(config));
 		
 		// If an ExternalLibrary is required, then make sure it's on the classpath
 		ExternalLibrary extlib = submission.getArtifact(ExternalLibrary.class);
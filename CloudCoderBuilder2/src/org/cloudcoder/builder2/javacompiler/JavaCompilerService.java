@@ -0,0 +1,233 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2013, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2013, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.javacompiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+import org.cloudcoder.builder2.util.SingletonHolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shared Java compiler used by {@link InMemoryJavaCompiler}.
+ * Keeps warm {@link StandardJavaFileManager}s, with the classpath
+ * already set, so that javac's index of the jar files and directories
+ * on the builder's classpath (which is large) is reused from one
+ * compilation to the next rather than being rebuilt for every submission.
+ * Only the {@link MemoryFileManager} which holds the submission's
+ * source and class files is created fresh for each compilation.
+ *
+ * <p>A {@link StandardJavaFileManager} can't be used by more than one
+ * compilation at a time, so the file managers are pooled: each
+ * compilation borrows one, and returns it when the compilation is done.
+ * Separate file managers are kept for each distinct extra classpath
+ * (i.e., for each external library).
+ *
+ * <p>Configuration properties:
+ * <ul>
+ * <li><b>cloudcoder.builder2.javac.poolSize</b>: maximum number of idle
+ *     file managers to keep per classpath (default 4)</li>
+ * <li><b>cloudcoder.builder2.javac.maxClasspaths</b>: maximum number of
+ *     distinct classpaths for which file managers are kept (default 16)</li>
+ * </ul>
+ *
+ * @author David Hovemeyer
+ */
+public class JavaCompilerService {
+	private static final Logger logger = LoggerFactory.getLogger(JavaCompilerService.class);
+
+	private static final SingletonHolder<JavaCompilerService, Properties> holder = new SingletonHolder<JavaCompilerService, Properties>() {
+		@Override
+		protected JavaCompilerService onCreate(Properties arg) {
+			return new JavaCompilerService(arg);
+		}
+	};
+
+	/**
+	 * Get the singleton instance.
+	 *
+	 * @param config configuration properties
+	 * @return the singleton instance
+	 */
+	public static JavaCompilerService getInstance(Properties config) {
+		return holder.get(config);
+	}
+
+	/**
+	 * Get the singleton instance, creating it with the default configuration
+	 * if {@link #getInstance(Properties)} has not been called yet.
+	 *
+	 * @return the singleton instance
+	 */
+	public static JavaCompilerService getInstance() {
+		return holder.get(new Properties());
+	}
+
+	private final JavaCompiler compiler;
+	private final int poolSize;
+	private final int maxClasspaths;
+	private final LinkedHashMap<String, LinkedList<StandardJavaFileManager>> idleMap;
+	private long hits;
+	private long misses;
+	private long numCompiles;
+	private long totalCompileNanos;
+
+	private JavaCompilerService(Properties config) {
+		this.compiler = ToolProvider.getSystemJavaCompiler();
+		this.poolSize = Integer.parseInt(config.getProperty("cloudcoder.builder2.javac.poolSize", "4"));
+		this.maxClasspaths = Integer.parseInt(config.getProperty("cloudcoder.builder2.javac.maxClasspaths", "16"));
+		this.idleMap = new LinkedHashMap<String, LinkedList<StandardJavaFileManager>>(16, 0.75f, true); // access order, for LRU eviction
+	}
+
+	/**
+	 * @return the {@link JavaCompiler}
+	 */
+	public JavaCompiler getCompiler() {
+		return compiler;
+	}
+
+	/**
+	 * Compile a trivial class, so that javac's classes are loaded and
+	 * an initialized file manager is available for the first submission.
+	 */
+	public void warmUp() {
+		long begin = System.currentTimeMillis();
+		InMemoryJavaCompiler warmUpCompiler = new InMemoryJavaCompiler(this);
+		warmUpCompiler.addSourceFile("CloudCoderWarmUp", "public class CloudCoderWarmUp { public static int f(int x) { return x + 1; } }");
+		if (!warmUpCompiler.compile()) {
+			logger.warn("Java compiler warm-up failed: {}", warmUpCompiler.getCompileResult());
+		}
+		logger.info("Java compiler warmed up in {} ms", System.currentTimeMillis() - begin);
+	}
+
+	/**
+	 * Get a {@link StandardJavaFileManager} whose classpath is the builder's
+	 * classpath plus the given extra classpath entries.  The file manager
+	 * must be returned by calling {@link #releaseFileManager(String, StandardJavaFileManager)}
+	 * when the compilation is complete.
+	 *
+	 * @param extraClasspath extra classpath entries, or null if there are none
+	 * @return the {@link StandardJavaFileManager}
+	 * @throws IOException if the classpath can't be set
+	 */
+	public StandardJavaFileManager borrowFileManager(String extraClasspath) throws IOException {
+		String key = extraClasspath != null ? extraClasspath : "";
+		synchronized (this) {
+			LinkedList<StandardJavaFileManager> idleList = idleMap.get(key);
+			if (idleList != null && !idleList.isEmpty()) {
+				hits++;
+				return idleList.removeFirst();
+			}
+			misses++;
+		}
+
+		StandardJavaFileManager fm = compiler.getStandardFileManager(null, null, null);
+		List<File> classpath = new ArrayList<File>();
+		addClasspathEntries(classpath, System.getProperty("java.class.path"));
+		if (extraClasspath != null) {
+			addClasspathEntries(classpath, extraClasspath);
+		}
+		fm.setLocation(StandardLocation.CLASS_PATH, classpath);
+		return fm;
+	}
+
+	/**
+	 * Return a {@link StandardJavaFileManager} obtained from
+	 * {@link #borrowFileManager(String)}.
+	 *
+	 * @param extraClasspath the extra classpath entries passed to {@link #borrowFileManager(String)}
+	 * @param fm             the {@link StandardJavaFileManager}
+	 */
+	public void releaseFileManager(String extraClasspath, StandardJavaFileManager fm) {
+		String key = extraClasspath != null ? extraClasspath : "";
+		List<StandardJavaFileManager> toClose = new ArrayList<StandardJavaFileManager>();
+		synchronized (this) {
+			LinkedList<StandardJavaFileManager> idleList = idleMap.get(key);
+			if (idleList == null) {
+				idleList = new LinkedList<StandardJavaFileManager>();
+				idleMap.put(key, idleList);
+			}
+			if (idleList.size() < poolSize) {
+				idleList.addFirst(fm);
+			} else {
+				toClose.add(fm);
+			}
+
+			// Discard file managers for the least-recently-used classpaths
+			Iterator<LinkedList<StandardJavaFileManager>> i = idleMap.values().iterator();
+			while (idleMap.size() > maxClasspaths && i.hasNext()) {
+				toClose.addAll(i.next());
+				i.remove();
+			}
+		}
+
+		for (StandardJavaFileManager victim : toClose) {
+			try {
+				victim.close();
+			} catch (IOException e) {
+				logger.warn("Error closing Java file manager", e);
+			}
+		}
+	}
+
+	/**
+	 * Record the time taken by a compilation.
+	 *
+	 * @param nanos the compilation time in nanoseconds
+	 */
+	public synchronized void recordCompileTime(long nanos) {
+		numCompiles++;
+		totalCompileNanos += nanos;
+	}
+
+	/**
+	 * @return a one-line summary of the file manager pool and compilation statistics
+	 */
+	public synchronized String getStatusSummary() {
+		int numIdle = 0;
+		for (LinkedList<StandardJavaFileManager> idleList : idleMap.values()) {
+			numIdle += idleList.size();
+		}
+		long total = hits + misses;
+		double hitRate = total > 0 ? (100.0 * hits) / total : 0.0;
+		double avgCompileMillis = numCompiles > 0 ? (totalCompileNanos / (double) numCompiles) / 1000000.0 : 0.0;
+		return String.format("classpaths=%d, idle=%d, hits=%d, misses=%d, hitRate=%.1f%%, compiles=%d, avgCompileMs=%.2f",
+				idleMap.size(), numIdle, hits, misses, hitRate, numCompiles, avgCompileMillis);
+	}
+
+	private static void addClasspathEntries(List<File> classpath, String entries) {
+		for (String entry : entries.split(File.pathSeparator)) {
+			if (!entry.equals("")) {
+				classpath.add(new File(entry));
+			}
+		}
+	}
+}
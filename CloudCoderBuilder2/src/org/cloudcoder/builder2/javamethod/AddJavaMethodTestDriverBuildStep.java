@@ -33,6 +33,9 @@ import org.cloudcoder.builder2.util.ArrayUtil;
  * Add a test driver class to execute all {@link TestCase}s against
  * a scaffolded JAVA_METHOD submission.  This step should be
  * executed <em>after</em> {@link AddJavaMethodScaffoldingBuildStep}.
+ * The test driver class has a static method for each test case,
+ * and implements {@link TestCaseDispatcher} so that the test
+ * cases can be executed without reflection.
  * 
  * @author David Hovemeyer
  *
@@ -45,7 +48,7 @@ public class AddJavaMethodTestDriverBuildStep implements IBuildStep {
 		Problem problem = submission.requireArtifact(this.getClass(), Problem.class);
 
         StringBuilder tester = new StringBuilder();
-        tester.append("public class Tester {\n");
+        tester.append("public class Tester implements " + TestCaseDispatcher.class.getName() + " {\n");
         tester.append("\tpublic static boolean eq(Object o1, Object o2) { return o1.equals(o2); }\n");
         for (TestCase tc : testCaseList) {
             tester.append("\tpublic static Object[] ");
@@ -61,6 +64,16 @@ public class AddJavaMethodTestDriverBuildStep implements IBuildStep {
             tester.append("\t\treturn new Object[] {b, theresult.toString()};\n");
             tester.append("\t\t}\n");
         }
+        
+        // Dispatch method: executes a test case given its index
+        tester.append("\tpublic Object[] invokeTestCase(int index) {\n");
+        tester.append("\t\tswitch (index) {\n");
+        for (int i = 0; i < testCaseList.length; i++) {
+            tester.append("\t\tcase " + i + ": return " + testCaseList[i].getTestCaseName() + "();\n");
+        }
+        tester.append("\t\tdefault: throw new IllegalArgumentException(\"No test case \" + index);\n");
+        tester.append("\t\t}\n");
+        tester.append("\t}\n");
         tester.append("}");
         String testerCode = tester.toString();
 
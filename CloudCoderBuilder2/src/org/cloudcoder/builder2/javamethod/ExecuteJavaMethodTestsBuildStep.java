@@ -64,12 +64,20 @@ public class ExecuteJavaMethodTestsBuildStep implements IBuildStep {
 			// so this should not happen
 			throw new InternalBuilderException(this.getClass(), "Unexpectedly failed to load TesterClass", e);
 		}
-		final Class<?> testerCls = testerCls_;
+		
+		// Create an instance of the Tester class: it is the TestCaseDispatcher
+		// which will execute the test cases
+		TestCaseDispatcher dispatcher;
+		try {
+			dispatcher = (TestCaseDispatcher) testerCls_.newInstance();
+		} catch (Exception e) {
+			throw new InternalBuilderException(this.getClass(), "Unexpectedly failed to create Tester instance", e);
+		}
 		
         // create a list of tasks to be executed
         List<IsolatedTask<TestResult>> tasks = new ArrayList<IsolatedTask<TestResult>>();
-        for (final TestCase t : testCaseList) {
-            tasks.add(new IsolatedTaskRunner(testerCls, problem, t));
+        for (int i = 0; i < testCaseList.length; i++) {
+            tasks.add(new IsolatedTaskRunner(dispatcher, i, problem, testCaseList[i]));
         }
 
         AbstractKillableTaskManager<TestResult> pool = new JVMKillableTaskManager<TestResult>(
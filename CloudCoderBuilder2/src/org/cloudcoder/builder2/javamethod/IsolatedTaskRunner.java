@@ -18,7 +18,6 @@
 package org.cloudcoder.builder2.javamethod;
 
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 
 import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.ProblemType;
@@ -40,12 +39,22 @@ public class IsolatedTaskRunner implements IsolatedTask<TestResult>
 {
 	private static final Logger logger = LoggerFactory.getLogger(IsolatedTaskRunner.class);
 	
-    private Class<?> theClass;
+    private TestCaseDispatcher dispatcher;
+    private int index;
 	private Problem problem;
     private TestCase testCase;
     
-    public IsolatedTaskRunner(Class<?> theClass, Problem problem, TestCase testCase) {
-        this.theClass=theClass;
+    /**
+     * Constructor.
+     * 
+     * @param dispatcher the {@link TestCaseDispatcher} (instance of the generated Tester class)
+     * @param index      the index of the test case
+     * @param problem    the {@link Problem}
+     * @param testCase   the {@link TestCase}
+     */
+    public IsolatedTaskRunner(TestCaseDispatcher dispatcher, int index, Problem problem, TestCase testCase) {
+        this.dispatcher=dispatcher;
+        this.index=index;
         this.problem=problem;
         this.testCase=testCase;
     }
@@ -54,33 +63,30 @@ public class IsolatedTaskRunner implements IsolatedTask<TestResult>
     
     @Override
     public TestResult execute() {
+        Object[] results;
         try {
-            Method m = theClass.getMethod(testCase.getTestCaseName());
-            Object[] results=(Object[])m.invoke(null);
-            Boolean passedTest=(Boolean)results[0];
-            String output=(String)results[1];
-            logger.trace("Hooked onto the outcome! "+output);
-            
-            if (passedTest) {
-                return TestResultUtil.createResultForPassedTest(problem, testCase);
-            } else {
-            	    return TestResultUtil.createResultForFailedTest(problem, testCase, output);
-            }
-        } catch (InvocationTargetException e) {
-            if (e.getCause() instanceof SecurityException) {
-                logger.error("Security exception", e);
-                return new TestResult(TestOutcome.FAILED_BY_SECURITY_MANAGER, "Security exception while testing submission");
-            } 
-            logger.warn("InvocationTargetException", e);
-            logger.trace("cause: "+e.getCause());
-            logger.trace("target exception: "+e.getTargetException());
-            return TestResultUtil.createResultForFailedWithExceptionTest(problem, testCase, e);
-        } catch (NoSuchMethodException e) {
-            return new TestResult(TestOutcome.INTERNAL_ERROR, "Method not found while testing submission");
-        } catch (IllegalAccessException e) {
-            return new TestResult(TestOutcome.INTERNAL_ERROR, "Illegal access while testing submission");
+            results=dispatcher.invokeTestCase(index);
+        } catch (SecurityException e) {
+            logger.error("Security exception", e);
+            return new TestResult(TestOutcome.FAILED_BY_SECURITY_MANAGER, "Security exception while testing submission");
+        } catch (ThreadDeath e) {
+            // The test case is being killed
+            throw e;
+        } catch (Throwable e) {
+            logger.warn("Exception testing submission", e);
+            // Wrap the exception in the same way that Method.invoke would
+            return TestResultUtil.createResultForFailedWithExceptionTest(problem, testCase, new InvocationTargetException(e));
+        }
+        
+        Boolean passedTest=(Boolean)results[0];
+        String output=(String)results[1];
+        logger.trace("Hooked onto the outcome! "+output);
+        
+        if (passedTest) {
+            return TestResultUtil.createResultForPassedTest(problem, testCase);
+        } else {
+        	    return TestResultUtil.createResultForFailedTest(problem, testCase, output);
         }
-        //TODO: Catch Throwable and report INTERNAL_ERROR for anything else
     }
     
 }
@@ -0,0 +1,38 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2013, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2013, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.javamethod;
+
+/**
+ * Interface implemented by the <code>Tester</code> class generated by
+ * {@link AddJavaMethodTestDriverBuildStep}.  It allows a test case
+ * to be executed by an ordinary method call, rather than looking
+ * up the test method by name and invoking it via reflection.
+ *
+ * @author David Hovemeyer
+ */
+public interface TestCaseDispatcher {
+	/**
+	 * Execute a test case.
+	 *
+	 * @param index the index of the test case (in the submission's array of test cases)
+	 * @return array whose first element is a Boolean indicating whether or not
+	 *         the test passed, and whose second element is the String
+	 *         representation of the value returned by the tested method
+	 */
+	public Object[] invokeTestCase(int index);
+}
@@ -22,6 +22,7 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,6 +40,12 @@ import org.slf4j.LoggerFactory;
  * those tasks should be able to be stop()ed without any
  * negative repercussions.
  * 
+ * Tasks are executed by the builder-wide {@link SandboxExecutor},
+ * which bounds the number of tasks running at once and reuses its
+ * worker threads.  Each task's time limit is measured from when it
+ * starts executing, so time spent waiting for a worker thread
+ * does not count against it.
+ * 
  * @author jaimespacco
  *
  * @param <T>
@@ -52,7 +59,8 @@ public abstract class AbstractKillableTaskManager<T>
     /** List of Outcomes; essentially placeholders objects where tasks will put their results */
     private List<Outcome<T>> results;
     private long maxRunTime;
-    private int numPauses = 5;
+    /** Notified when a task starts or finishes executing */
+    private final Object lock = new Object();
 
     protected ThreadedPrintStreamMonitor stdOutMonitor;
     protected ThreadedPrintStreamMonitor stdErrMonitor;
@@ -63,7 +71,8 @@ public abstract class AbstractKillableTaskManager<T>
     private TimeoutHandler<T> timeoutHandler;
     /** All threads will be in a thread group of worker threads */
     public static final ThreadGroup WORKER_THREAD_GROUP = new ThreadGroup("WorkerThreads");
-    public int numThreads = 1;
+    /** Used to generate a unique key for each task's buffered output */
+    private static final AtomicInteger taskCount = new AtomicInteger();
     protected String threadNamePrefix;
 
     /**
@@ -97,11 +106,10 @@ public abstract class AbstractKillableTaskManager<T>
     }
 
     /**
-     * Set the name prefix that will be used for the names of worker threads.
-     * Useful for allowing {@link ThreadGroupSecurityManager} to implement
-     * specialized rules for specific worker threads.
+     * Set the name prefix that will be used for the keys identifying
+     * each task (and its buffered output).
      * 
-     * @param threadNamePrefix name prefix for names of worker threads
+     * @param threadNamePrefix name prefix for task keys
      */
     public void setThreadNamePrefix(String threadNamePrefix) {
         this.threadNamePrefix = threadNamePrefix;
@@ -125,53 +133,38 @@ public abstract class AbstractKillableTaskManager<T>
 
     public void run() {
         // re-direct stdout/stderr to print stream monitors
-        // that will buffer the outputs for each thread
+        // that will buffer the outputs for each task
         redirectStandardOutputStreams();
 
-        Thread[] pool=new Thread[tasks.size()];
+        SandboxExecutor executor=SandboxExecutor.getInstance();
+        List<TaskJob<T>> jobs=new ArrayList<TaskJob<T>>(tasks.size());
         for (int i=0; i<tasks.size(); i++) {
-            IsolatedTask<T> task=tasks.get(i);
-            pool[i]=new WorkerThread<T>(task, results.get(i));
-            pool[i].setDaemon(true);
-            pool[i].start();
-        }
-
-        // now pause a couple of times
-        for (int i=1; i<=numPauses; i++) {
-            if (!pauseAndPoll(maxRunTime/numPauses, pool)) {
-                // we can stop pausing
-                break;
-            }
+            TaskJob<T> job=new TaskJob<T>(
+                    threadNamePrefix+taskCount.incrementAndGet(), tasks.get(i), results.get(i));
+            stdOutMonitor.createCapture(job.getKey());
+            stdErrMonitor.createCapture(job.getKey());
+            jobs.add(job);
+            executor.submit(job);
         }
 
-        // Go through and kill any threads that haven't finished yet
-        // Also put the buffered output from stdout/stderr into the map
-        for (int i=0; i<pool.length; i++) {
-            Thread t=pool[i];
-            if (t.isAlive()) {
-                //XXX Yes, I know that stop() is deprecated.  
-                //But this is a necessary use of stop!
-                t.stop();
+        // Wait for all of the tasks to finish, killing any that
+        // exceed the time limit
+        awaitCompletion(executor, jobs);
 
-                //TODO Log that a thread is being stopped
-
-                // stop the monitors
-                stdOutMonitor.flush(t);
-                stdOutMonitor.close(t);
-
-                stdErrMonitor.flush(t);
-                stdErrMonitor.close(t);
-
-                // handle a timeout
-                results.get(i).result=timeoutHandler.handleTimeout();
-            }
-            stdOutMap.put(i, stdOutMonitor.getBufferedOutput(t));
-            stdErrMap.put(i, stdErrMonitor.getBufferedOutput(t));
+        // Put the buffered output from stdout/stderr into the map
+        for (int i=0; i<jobs.size(); i++) {
+            String key=jobs.get(i).getKey();
+            stdOutMap.put(i, stdOutMonitor.getBufferedOutput(key));
+            stdErrMap.put(i, stdErrMonitor.getBufferedOutput(key));
         }
         // return the original stdout/stderr
         // how to do this varies between Java, Python/Jython
         // and Ruby/JRuby
         unredirectStandardOutputStreams();
+        
+        if (logger.isDebugEnabled()) {
+            logger.debug("Sandbox executor status: {}", executor.getStatusSummary());
+        }
     }
     
     /**
@@ -192,28 +185,67 @@ public abstract class AbstractKillableTaskManager<T>
     public abstract void redirectStandardOutputStreams();
 
     /**
-     * Pause for a certain amount of time.  Return true if any
-     * of the threads in the given threadpool are still alive,
-     * and false if they are all finished.
-     * @param time
-     * @param pool
-     * @return
+     * Wait until all of the tasks have completed.  Any task which
+     * has been executing for longer than the maximum run time is killed.
      */
-    private boolean pauseAndPoll(long time, Thread[] pool) {
-        try {
-            Thread.sleep(time);
-            for (Thread t : pool) {
-                if (t.isAlive()) {
-                    return true;
+    private void awaitCompletion(SandboxExecutor executor, List<TaskJob<T>> jobs) {
+        while (true) {
+            List<TaskJob<T>> expired=null;
+            synchronized (lock) {
+                long now=System.currentTimeMillis();
+                long nextDeadline=Long.MAX_VALUE;
+                boolean allDone=true;
+                for (TaskJob<T> job : jobs) {
+                    if (job.isComplete()) {
+                        continue;
+                    }
+                    allDone=false;
+                    if (!job.isStarted()) {
+                        continue;
+                    }
+                    long deadline=job.getStartTime()+maxRunTime;
+                    if (deadline<=now) {
+                        if (expired==null) {
+                            expired=new ArrayList<TaskJob<T>>();
+                        }
+                        expired.add(job);
+                    } else {
+                        nextDeadline=Math.min(nextDeadline, deadline);
+                    }
+                }
+                if (allDone) {
+                    return;
+                }
+                if (expired==null) {
+                    // Wait for a task to start or finish, or for the
+                    // next deadline to pass
+                    try {
+                        lock.wait(nextDeadline==Long.MAX_VALUE ? 0L : nextDeadline-now);
+                    } catch (InterruptedException e) {
+                        // should never happen; just check the tasks again
+                    }
+                    continue;
+                }
+            }
+
+            for (TaskJob<T> job : expired) {
+                if (executor.kill(job)) {
+                    //TODO Log that a thread is being stopped
+
+                    // stop the monitors
+                    stdOutMonitor.flush(job.getKey());
+                    stdOutMonitor.close(job.getKey());
+
+                    stdErrMonitor.flush(job.getKey());
+                    stdErrMonitor.close(job.getKey());
+
+                    // handle a timeout
+                    synchronized (lock) {
+                        job.out.result=timeoutHandler.handleTimeout();
+                    }
                 }
             }
-        } catch (InterruptedException e) {
-            // should never happen; to be safe, assume a thread may
-            // still be running.
-            return true;
         }
-        // no threads are alive, so we can stop waiting
-        return false;
     }
 
     /**
@@ -257,62 +289,100 @@ public abstract class AbstractKillableTaskManager<T>
         T result;
     }
     /**
-     * Worker thread takes a given Task, calls its execute() method
+     * Job which takes a given Task, calls its execute() method
      * to produce a result of type E, and puts the result into the 
      * given outcome container.
      * 
-     * This thread is set up so that, assuming that the Task doesn't
+     * This job is set up so that, assuming that the Task doesn't
      * access any shared resources, it is safe to use the stop() method
-     * in thread to halt this thread.
+     * in thread to halt the worker thread executing it.
      * 
      * @author jspacco
      *
      * @param <E>
      */
-    class WorkerThread<E> extends Thread
+    private class TaskJob<E> extends SandboxExecutor.Job
     {
         private IsolatedTask<E> task;
         private Outcome<E> out;
+        private E result;
+        private boolean finished;
+        /** Set (with the lock held) once the result is in the container */
+        private boolean reported;
 
         /**
-         * Create a thread that executes the given task and puts
+         * Create a job that executes the given task and puts
          * the result of the task into the given container.
          * 
+         * @param key  key identifying the task
          * @param task The task to execute
          * @param out The container in which to put the result of the task
          */
-        public WorkerThread(IsolatedTask<E> task, Outcome<E> out)
+        public TaskJob(String key, IsolatedTask<E> task, Outcome<E> out)
         {
-            super(WORKER_THREAD_GROUP, threadNamePrefix+(numThreads++));
+            super(key);
             this.task=task;
             this.out=out;
         }
 
         /**
-         * Given a task and a container, execute the task and put
-         * its result in the container.  The entire run method catches
-         * Throwable, so that if another thread uses stop() to kill this
-         * thread, nothing bad should happen.
-         * 
-         * 
-         * @see java.lang.Thread#run()
+         * Execute the task.  The result is put in the container
+         * by {@link #onFinish()}, which is not called if the job is
+         * killed, so a killed task can't overwrite the timeout result.
+         * The entire method catches Throwable, so that if another
+         * thread uses stop() to kill the worker thread, nothing bad
+         * should happen.
          */
-        public void run() {
+        @Override
+        protected void execute() {
             E o;
+            stdOutMonitor.beginCapture(getKey());
+            stdErrMonitor.beginCapture(getKey());
             try {
                 o=task.execute();
-                out.result=o;
-                out.finished=true;
+                result=o;
+                finished=true;
             } catch (NoClassDefFoundError e) {
                 logger.error("Killing test case thread due to class loading error", e);
+            } catch (ThreadDeath e) {
+                // killed because of a timeout
+                throw e;
             } catch (Throwable e) {
                 // Make sure that the thread dies very quietly
                 // "Attaching an exception-catching silencer to my thread-killing gun"
                 logger.error("Killing test case thread for unknown reason", e);
             } finally {
-                //System.err.println(System.getSecurityManager());
-                //System.out.println(System.getSecurityManager());
+                stdOutMonitor.endCapture();
+                stdErrMonitor.endCapture();
+            }
+        }
+
+        /**
+         * Check whether the task's outcome is available: either
+         * {@link #onFinish()} has put the result into the container,
+         * or the job was killed.  Must be called with the lock held.
+         * 
+         * @return true if the task's outcome is available
+         */
+        public boolean isComplete() {
+            return reported || isKilled();
+        }
+
+        @Override
+        protected void onStart() {
+            synchronized (lock) {
+                lock.notifyAll();
+            }
+        }
+
+        @Override
+        protected void onFinish() {
+            synchronized (lock) {
+                out.result=result;
+                out.finished=finished;
+                reported=true;
+                lock.notifyAll();
             }
         }
     }
-}
\ No newline at end of file
+}
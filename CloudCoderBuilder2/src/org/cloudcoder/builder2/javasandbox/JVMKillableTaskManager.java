@@ -17,7 +17,6 @@
 
 package org.cloudcoder.builder2.javasandbox;
 
-import java.io.PrintStream;
 import java.util.List;
 
 
@@ -42,9 +41,6 @@ import java.util.List;
  */
 public class JVMKillableTaskManager<T> extends AbstractKillableTaskManager<T>
 {
-    private final PrintStream originalStdOut=System.out;
-    private final PrintStream originalStdErr=System.err;
-    
     public JVMKillableTaskManager(List<IsolatedTask<T>> tasks, 
         long maxRunTime, 
         TimeoutHandler<T> timeoutHandler)
@@ -53,15 +49,17 @@ public class JVMKillableTaskManager<T> extends AbstractKillableTaskManager<T>
     }
     
     public void redirectStandardOutputStreams() {
-        stdOutMonitor=new ThreadedPrintStreamMonitor(System.out);
-        stdErrMonitor=new ThreadedPrintStreamMonitor();
-        System.setOut(stdOutMonitor);
-        System.setErr(stdErrMonitor);
+        // System.out and System.err are replaced once, by monitors
+        // shared by all submissions: replacing them for each submission
+        // would lose the output of other submissions running at the same time
+        ThreadedPrintStreamMonitor.installSystemStreams();
+        stdOutMonitor=ThreadedPrintStreamMonitor.getStdout();
+        stdErrMonitor=ThreadedPrintStreamMonitor.getStderr();
     }
     
     @Override
     public void unredirectStandardOutputStreams() {
-        System.setOut(originalStdOut);
-        System.setErr(originalStdErr);
+        // Nothing to do: the shared monitors stay installed, and
+        // output from threads that aren't capturing output is passed through
     }
 }
@@ -0,0 +1,369 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2013, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2013, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.javasandbox;
+
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Properties;
+import java.util.Set;
+
+import org.cloudcoder.builder2.util.SingletonHolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded pool of worker threads used to execute test cases for
+ * in-process sandboxes (Java, Python/Jython, Ruby/JRuby).
+ * It is shared by all of the submissions being tested concurrently
+ * by the builder, so it caps the total number of test cases running
+ * at once.  Worker threads are created in
+ * {@link AbstractKillableTaskManager#WORKER_THREAD_GROUP}, so the
+ * {@link ThreadGroupSecurityManager} restrictions apply to them
+ * exactly as they did to per-test threads.
+ *
+ * Worker threads are reused from one test case to the next.  A worker
+ * is only discarded (and replaced) when the job it is running is
+ * killed by {@link #kill(Job)}, e.g., because a test case timed out.
+ *
+ * The number of worker threads is set by the
+ * <code>cloudcoder.builder2.sandbox.numThreads</code> configuration
+ * property, and defaults to the number of available processors.
+ *
+ * @author David Hovemeyer
+ */
+public class SandboxExecutor {
+	private static final Logger logger = LoggerFactory.getLogger(SandboxExecutor.class);
+
+	private static final SingletonHolder<SandboxExecutor, Properties> holder = new SingletonHolder<SandboxExecutor, Properties>() {
+		@Override
+		protected SandboxExecutor onCreate(Properties arg) {
+			return new SandboxExecutor(arg);
+		}
+	};
+
+	/**
+	 * Get the singleton instance.
+	 *
+	 * @param config configuration properties
+	 * @return the singleton instance
+	 */
+	public static SandboxExecutor getInstance(Properties config) {
+		return holder.get(config);
+	}
+
+	/**
+	 * Get the singleton instance, creating it with the default configuration
+	 * if {@link #getInstance(Properties)} has not been called yet.
+	 *
+	 * @return the singleton instance
+	 */
+	public static SandboxExecutor getInstance() {
+		return holder.get(new Properties());
+	}
+
+	/**
+	 * A unit of work to be executed by a worker thread.
+	 * The {@link #onStart()} and {@link #onFinish()} callbacks
+	 * are invoked by the worker thread (without holding any
+	 * of the executor's locks) when the job starts and when it
+	 * finishes normally.  Neither callback is invoked after the
+	 * job is killed.
+	 */
+	public static abstract class Job {
+		private final String key;
+		private Worker worker;
+		private volatile long startTime;
+		private volatile boolean finishing;
+		private volatile boolean done;
+		private volatile boolean killed;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param key key identifying the job
+		 */
+		public Job(String key) {
+			this.key = key;
+		}
+
+		/**
+		 * @return key identifying the job
+		 */
+		public String getKey() {
+			return key;
+		}
+
+		/**
+		 * @return true if the job has started executing
+		 */
+		public boolean isStarted() {
+			return startTime != 0L;
+		}
+
+		/**
+		 * @return time (from System.currentTimeMillis()) the job started executing,
+		 *         or 0 if it has not started yet
+		 */
+		public long getStartTime() {
+			return startTime;
+		}
+
+		/**
+		 * @return true if the job has finished executing (and its
+		 *         {@link #onFinish()} callback has returned) or has been killed
+		 */
+		public boolean isDone() {
+			return done;
+		}
+
+		/**
+		 * @return true if the job was killed
+		 */
+		public boolean isKilled() {
+			return killed;
+		}
+
+		/**
+		 * Execute the job.  This may be interrupted at any point
+		 * by {@link Thread#stop()} if the job is killed.
+		 */
+		protected abstract void execute();
+
+		/**
+		 * Called when the job starts executing.
+		 */
+		protected void onStart() {
+		}
+
+		/**
+		 * Called when the job finishes executing (if it wasn't killed).
+		 */
+		protected void onFinish() {
+		}
+	}
+
+	private final int numThreads;
+	private final Object lock;
+	private final LinkedList<Job> queue;
+	private final Set<Worker> workerSet;
+	private int numBusy;
+	private int numCreated;
+	private long totalCompleted;
+	private long totalKilled;
+
+	private SandboxExecutor(Properties config) {
+		int n = Integer.parseInt(config.getProperty("cloudcoder.builder2.sandbox.numThreads",
+				String.valueOf(Runtime.getRuntime().availableProcessors())));
+		this.numThreads = Math.max(1, n);
+		this.lock = new Object();
+		this.queue = new LinkedList<Job>();
+		this.workerSet = new HashSet<Worker>();
+		synchronized (lock) {
+			for (int i = 0; i < numThreads; i++) {
+				startWorker();
+			}
+		}
+		logger.info("Sandbox executor started with {} worker threads", numThreads);
+	}
+
+	/**
+	 * Add a job to the queue of jobs to be executed.
+	 *
+	 * @param job the job
+	 */
+	public void submit(Job job) {
+		synchronized (lock) {
+			queue.add(job);
+			lock.notify();
+		}
+	}
+
+	/**
+	 * Kill a job, if it is running, by stopping the worker thread
+	 * running it.  A new worker thread is started to replace the
+	 * stopped one.  A job which has not started is removed from the queue.
+	 *
+	 * @param job the job to kill
+	 * @return true if the job was killed, false if it had already finished
+	 */
+	@SuppressWarnings("deprecation")
+	public boolean kill(Job job) {
+		synchronized (lock) {
+			if (job.done || job.finishing) {
+				return false;
+			}
+			job.killed = true;
+			job.done = true;
+			totalKilled++;
+
+			Worker worker = job.worker;
+			if (worker == null) {
+				queue.remove(job);
+				return true;
+			}
+
+			// Replace the worker, then stop it.  The worker can't be executing
+			// code that manipulates the executor's state, since we hold the lock.
+			worker.killed = true;
+			workerSet.remove(worker);
+			numBusy--;
+			startWorker();
+
+			//XXX Yes, I know that stop() is deprecated.
+			//But this is a necessary use of stop!
+			worker.stop();
+		}
+		return true;
+	}
+
+	/**
+	 * @return number of worker threads
+	 */
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	/**
+	 * @return number of worker threads currently executing a job
+	 */
+	public int getNumBusy() {
+		synchronized (lock) {
+			return numBusy;
+		}
+	}
+
+	/**
+	 * @return number of jobs waiting for a worker thread
+	 */
+	public int getQueueDepth() {
+		synchronized (lock) {
+			return queue.size();
+		}
+	}
+
+	/**
+	 * @return total number of jobs which finished normally
+	 */
+	public long getTotalCompleted() {
+		synchronized (lock) {
+			return totalCompleted;
+		}
+	}
+
+	/**
+	 * @return total number of jobs which were killed
+	 */
+	public long getTotalKilled() {
+		synchronized (lock) {
+			return totalKilled;
+		}
+	}
+
+	/**
+	 * @return total number of worker threads created (including replacements
+	 *         for stopped worker threads)
+	 */
+	public int getNumCreated() {
+		synchronized (lock) {
+			return numCreated;
+		}
+	}
+
+	/**
+	 * @return a one-line summary of the executor's gauges and counters
+	 */
+	public String getStatusSummary() {
+		synchronized (lock) {
+			return "threads=" + numThreads + ", busy=" + numBusy + ", queued=" + queue.size() +
+					", completed=" + totalCompleted + ", killed=" + totalKilled +
+					", threadsCreated=" + numCreated;
+		}
+	}
+
+	/**
+	 * Create and start a worker thread.  Must be called with the lock held.
+	 */
+	private void startWorker() {
+		numCreated++;
+		Worker worker = new Worker("SandboxWorker" + numCreated);
+		worker.setDaemon(true);
+		workerSet.add(worker);
+		worker.start();
+	}
+
+	/**
+	 * Worker thread: executes jobs from the queue until it is stopped.
+	 */
+	private class Worker extends Thread {
+		private boolean killed;
+
+		public Worker(String name) {
+			super(AbstractKillableTaskManager.WORKER_THREAD_GROUP, name);
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				Job job;
+				synchronized (lock) {
+					while (queue.isEmpty()) {
+						try {
+							lock.wait();
+						} catch (InterruptedException e) {
+							// ignore: worker threads run until stopped
+						}
+					}
+					job = queue.removeFirst();
+					job.worker = this;
+					job.startTime = System.currentTimeMillis();
+					numBusy++;
+				}
+
+				// Clear any interrupt left over from the previous job
+				Thread.interrupted();
+				try {
+					job.onStart();
+					job.execute();
+				} catch (Throwable e) {
+					// Job was killed, or failed unexpectedly: either way,
+					// don't let the exception kill the worker
+				}
+
+				synchronized (lock) {
+					if (killed) {
+						// Our job was killed, and a replacement worker has
+						// been started: exit
+						return;
+					}
+					// The job can no longer be killed
+					job.finishing = true;
+					numBusy--;
+					totalCompleted++;
+				}
+				try {
+					job.onFinish();
+				} catch (Throwable e) {
+					logger.error("Error in sandbox job completion callback", e);
+				}
+				// Only report the job as done once onFinish() has
+				// published its results
+				job.done = true;
+			}
+		}
+	}
+}
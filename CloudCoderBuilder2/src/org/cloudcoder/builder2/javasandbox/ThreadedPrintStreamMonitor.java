@@ -17,29 +17,52 @@
 
 package org.cloudcoder.builder2.javasandbox;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
-import java.util.HashMap;
 import java.util.Locale;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.cloudcoder.builder2.process.LimitedOutputCollector;
 
 /**
  * PrintStream that captures and buffers all output for however many
  * different threads may be printing to the given stream.
  * 
- * Common case is to pass an instance of this stream to System.setOut
- * right before starting a bunch of threads that print to System.out.
+ * Common case is to use the process-wide instances returned by
+ * {@link #getStdout()} and {@link #getStderr()}, installed once as
+ * System.out and System.err by {@link #installSystemStreams()}.
+ * Because they are never swapped out, tasks from any number of
+ * concurrent submissions can capture their output using them.
+ * 
+ * A buffer for captured output is created by {@link #createCapture(String)}.
+ * A thread starts capturing output by calling {@link #beginCapture(String)},
+ * which binds the buffer (identified by the given key) to the calling
+ * thread, and stops by calling {@link #endCapture()}.  Output is routed
+ * using thread identity (a {@link ThreadLocal}), so printing from
+ * many threads at once doesn't require any shared locks or maps.
+ * Each buffer holds at most {@link LimitedOutputCollector#DEFAULT_MAX_BYTES_ALLOWED}
+ * bytes: further output is discarded.  Output from threads that aren't
+ * capturing output is sent to the underlying stream.
  * 
  * @author jspacco
  *
  */
 public class ThreadedPrintStreamMonitor extends PrintStream
 {
-    /** Maps stdout and stderr for each thread */
-    private Map<String, PrintStream> printStreamMap=new HashMap<String, PrintStream>();
-    private Map<String, ByteArrayOutputStream> baosMap=
-        new HashMap<String, ByteArrayOutputStream>();
+    /** Process-wide monitors for standard output and standard error */
+    private static ThreadedPrintStreamMonitor stdout;
+    private static ThreadedPrintStreamMonitor stderr;
+    private static boolean systemStreamsInstalled;
+    
+    /** Buffer for the current thread's output, if it is capturing output */
+    private final ThreadLocal<Capture> currentCapture=new ThreadLocal<Capture>();
+    /** Buffers for captured output, by key */
+    private final ConcurrentHashMap<String, Capture> captureMap=
+        new ConcurrentHashMap<String, Capture>();
+    /** Stream for output from threads that aren't capturing output */
+    private final PrintStream passthrough;
+    private final int maxBytes;
 
     public ThreadedPrintStreamMonitor(PrintStream stream) {
         // XXX Is this a reasonable constructor?
@@ -51,40 +74,104 @@ public class ThreadedPrintStreamMonitor extends PrintStream
         // get random method calls on whatever stream (probably stdout and stderr)
         // the constructor is called on.
         super(stream);
+        this.passthrough=stream;
+        this.maxBytes=LimitedOutputCollector.DEFAULT_MAX_BYTES_ALLOWED;
     }
     
     public ThreadedPrintStreamMonitor() {
-        super(new ByteArrayOutputStream());
+        this(new PrintStream(new DiscardOutputStream()));
     }
     
-    private PrintStream getPrintStream() {
-        return getPrintStream(Thread.currentThread());
+    /**
+     * Get the process-wide monitor for standard output.
+     * Output from threads that aren't capturing output is sent
+     * to the original System.out.
+     * 
+     * @return the process-wide monitor for standard output
+     */
+    public static synchronized ThreadedPrintStreamMonitor getStdout() {
+        if (stdout==null) {
+            stdout=new ThreadedPrintStreamMonitor(System.out);
+        }
+        return stdout;
     }
     
-    private PrintStream getPrintStream(Thread t) {
-        String name=t.getName();
-        if (!baosMap.containsKey(name)) {
-            baosMap.put(name, new ByteArrayOutputStream());
+    /**
+     * Get the process-wide monitor for standard error.
+     * Output from threads that aren't capturing output is sent
+     * to the original System.err.
+     * 
+     * @return the process-wide monitor for standard error
+     */
+    public static synchronized ThreadedPrintStreamMonitor getStderr() {
+        if (stderr==null) {
+            stderr=new ThreadedPrintStreamMonitor(System.err);
         }
-        if (!printStreamMap.containsKey(name)) {
-            printStreamMap.put(name, new PrintStream(baosMap.get(name)));
+        return stderr;
+    }
+    
+    /**
+     * Install the process-wide monitors as System.out and System.err,
+     * if they haven't been installed already.  They are never uninstalled.
+     */
+    public static synchronized void installSystemStreams() {
+        if (!systemStreamsInstalled) {
+            System.setOut(getStdout());
+            System.setErr(getStderr());
+            systemStreamsInstalled=true;
         }
-        return printStreamMap.get(name);
     }
     
     /**
-     * Given a thread, look up the backing ByteArrayOutputStream
-     * that was used to buffer that thread's output, and return
-     * it as a String.
+     * Create a buffer to capture output using the given key.
+     * This should be called by a thread that isn't subject to
+     * the {@link ThreadGroupSecurityManager} restrictions, since
+     * student threads aren't allowed to load the classes needed.
      * 
-     * @param t Thread
-     * @return String containing that thread's buffered printing output.
+     * @param key key identifying the captured output
      */
-    public String getBufferedOutput(Thread t) {
-        PrintStream ps=getPrintStream(t);
-        ps.flush();
-        ps.close();
-        return baosMap.get(t.getName()).toString();
+    public void createCapture(String key) {
+        captureMap.put(key, new Capture(maxBytes));
+    }
+    
+    /**
+     * Start capturing the output of the current thread using the
+     * buffer created by {@link #createCapture(String)} with the given key.
+     * 
+     * @param key key identifying the captured output
+     */
+    public void beginCapture(String key) {
+        currentCapture.set(captureMap.get(key));
+    }
+    
+    /**
+     * Stop capturing the output of the current thread.
+     */
+    public void endCapture() {
+        currentCapture.remove();
+    }
+    
+    private PrintStream getPrintStream() {
+        Capture capture=currentCapture.get();
+        return capture!=null ? capture.printStream : passthrough;
+    }
+    
+    /**
+     * Given a key, look up the buffer that was used to capture
+     * output using that key, and return its contents as a String.
+     * No further output is captured using the key.
+     * 
+     * @param key the key passed to {@link #createCapture(String)}
+     * @return String containing the buffered printing output
+     *         (empty if no output was captured using the key)
+     */
+    public String getBufferedOutput(String key) {
+        Capture capture=captureMap.remove(key);
+        if (capture==null) {
+            return "";
+        }
+        capture.printStream.flush();
+        return capture.buffer.seal();
     }
     
     /* (non-Javadoc)
@@ -284,17 +371,10 @@ public class ThreadedPrintStreamMonitor extends PrintStream
     public void flush() {
         getPrintStream().flush();
     }
-    public void flush(Thread t) {
-        getPrintStream(t).flush();
-    }
-    public void flushAll() {
-        for (PrintStream ps : printStreamMap.values()) {
-            ps.flush();
-        }
-    }
-    public void closeAll() {
-        for (PrintStream ps : printStreamMap.values()) {
-            ps.close();
+    public void flush(String key) {
+        Capture capture=captureMap.get(key);
+        if (capture!=null) {
+            capture.printStream.flush();
         }
     }
     /* (non-Javadoc)
@@ -302,10 +382,19 @@ public class ThreadedPrintStreamMonitor extends PrintStream
      */
     @Override
     public void close() {
-        getPrintStream().close();
+        // Only the current thread's captured output can be closed:
+        // never close the underlying stream
+        Capture capture=currentCapture.get();
+        if (capture!=null) {
+            capture.printStream.close();
+        }
     }
-    public void close(Thread t) {
-        getPrintStream(t).close();
+    public void close(String key) {
+        Capture capture=captureMap.get(key);
+        if (capture!=null) {
+            capture.printStream.flush();
+            capture.buffer.seal();
+        }
     }
     /* (non-Javadoc)
      * @see java.io.PrintStream#format(java.lang.String, java.lang.Object[])
@@ -328,4 +417,93 @@ public class ThreadedPrintStreamMonitor extends PrintStream
     public void write(byte[] b) throws IOException {
         getPrintStream().write(b);
     }
+
+    /**
+     * Buffer capturing output using a particular key.
+     */
+    private static class Capture {
+        final BoundedBuffer buffer;
+        final PrintStream printStream;
+        
+        Capture(int maxBytes) {
+            this.buffer=new BoundedBuffer(maxBytes);
+            this.printStream=new PrintStream(buffer);
+        }
+    }
+    
+    /**
+     * OutputStream which keeps only the first maxBytes bytes written to it.
+     * It is written by only one thread, but may be read by another:
+     * the array is never shrunk and the count is published (volatile)
+     * after the bytes are stored, so a reader always sees a consistent prefix
+     * even if a thread which was stopped keeps writing.
+     */
+    private static class BoundedBuffer extends OutputStream {
+        private final int maxBytes;
+        private byte[] buf;
+        private volatile int count;
+        private volatile boolean sealed;
+        
+        BoundedBuffer(int maxBytes) {
+            this.maxBytes=maxBytes;
+            this.buf=new byte[Math.min(256, maxBytes)];
+        }
+        
+        @Override
+        public void write(int b) {
+            if (sealed || count>=maxBytes) {
+                return;
+            }
+            ensureCapacity(count+1);
+            buf[count]=(byte) b;
+            count++;
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (sealed) {
+                return;
+            }
+            int n=Math.min(len, maxBytes-count);
+            if (n<=0) {
+                return;
+            }
+            ensureCapacity(count+n);
+            System.arraycopy(b, off, buf, count, n);
+            count+=n;
+        }
+        
+        private void ensureCapacity(int size) {
+            if (size>buf.length) {
+                byte[] newBuf=new byte[Math.min(maxBytes, Math.max(size, buf.length*2))];
+                System.arraycopy(buf, 0, newBuf, 0, count);
+                buf=newBuf;
+            }
+        }
+        
+        /**
+         * Stop accepting output, and return the output written so far.
+         * 
+         * @return the output written so far
+         */
+        String seal() {
+            sealed=true;
+            int n=count;
+            byte[] b=buf;
+            return new String(b, 0, Math.min(n, b.length));
+        }
+    }
+    
+    /**
+     * OutputStream which discards everything written to it.
+     */
+    private static class DiscardOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
 }
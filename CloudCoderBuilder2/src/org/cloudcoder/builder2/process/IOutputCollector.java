@@ -31,6 +31,14 @@ public interface IOutputCollector {
 	 */
 	public abstract void start();
 
+	/**
+	 * Collect output synchronously (in the calling thread)
+	 * until the end of the input is reached.  This is an alternative
+	 * to calling {@link #start()} and {@link #join()} when the output
+	 * has already been captured (e.g., in a byte array).
+	 */
+	public abstract void collect();
+
 	/**
 	 * Interrupt the thread that is collecting output.
 	 */
@@ -0,0 +1,128 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.process;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A process started by the {@link ProcessLauncher}.
+ * The output of the process is accumulated as it is received from
+ * the launcher, and is available once the process has terminated.
+ *
+ * @author David Hovemeyer
+ */
+class LaunchedProcess {
+	private final int id;
+	private final ByteArrayOutputStream stdout;
+	private final ByteArrayOutputStream stderr;
+	private final CountDownLatch done;
+	private volatile String how;
+	private volatile int exitCode;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param id the id used to identify the process in launcher requests and events
+	 */
+	LaunchedProcess(int id) {
+		this.id = id;
+		this.stdout = new ByteArrayOutputStream();
+		this.stderr = new ByteArrayOutputStream();
+		this.done = new CountDownLatch(1);
+	}
+
+	/**
+	 * @return the id used to identify the process in launcher requests and events
+	 */
+	int getId() {
+		return id;
+	}
+
+	/**
+	 * Called by the launcher's reader thread when output is received.
+	 *
+	 * @param isStdout true if the output was written to stdout, false if stderr
+	 * @param data     the output data
+	 */
+	void addOutput(boolean isStdout, byte[] data) {
+		(isStdout ? stdout : stderr).write(data, 0, data.length);
+	}
+
+	/**
+	 * Called by the launcher's reader thread when the process has terminated.
+	 *
+	 * @param how      how the process terminated ("exited", "terminated_by_signal",
+	 *                 or "failed_to_execute"; any other value means that the status
+	 *                 of the process is not known)
+	 * @param exitCode the exit code, or the signal that terminated the process
+	 */
+	void setTerminated(String how, int exitCode) {
+		this.how = how;
+		this.exitCode = exitCode;
+		done.countDown();
+	}
+
+	/**
+	 * @return true if the process has terminated
+	 */
+	boolean isDone() {
+		return done.getCount() == 0;
+	}
+
+	/**
+	 * Wait for the process to terminate.
+	 *
+	 * @param timeoutMillis maximum number of milliseconds to wait
+	 * @return true if the process terminated, false if the timeout expired
+	 * @throws InterruptedException
+	 */
+	boolean waitFor(long timeoutMillis) throws InterruptedException {
+		return done.await(timeoutMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return how the process terminated: only valid once the process has terminated
+	 */
+	String getHow() {
+		return how;
+	}
+
+	/**
+	 * @return the exit code, or the signal that terminated the process:
+	 *         only valid once the process has terminated
+	 */
+	int getExitCode() {
+		return exitCode;
+	}
+
+	/**
+	 * @return the data written by the process to stdout: only valid once the process has terminated
+	 */
+	byte[] getStdout() {
+		return stdout.toByteArray();
+	}
+
+	/**
+	 * @return the data written by the process to stderr: only valid once the process has terminated
+	 */
+	byte[] getStderr() {
+		return stderr.toByteArray();
+	}
+}
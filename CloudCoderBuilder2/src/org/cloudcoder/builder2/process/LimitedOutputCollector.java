@@ -103,48 +103,56 @@ public class LimitedOutputCollector implements IOutputCollector {
 			 */
 			@Override
 			public void run() {
-				reader = new InputStreamReader(new LimitedInputStream(in, maxBytesAllowed));
-				
-				try {
-					int c;
-					StringBuilder line = new StringBuilder();
-					while (true) {
-						c = reader.read();
-						if (c < 0) {
-							// End of input.
-							// See if we have a partial line.
-							if (line.length() > 0 && collectedLines.size() < maxLinesAllowed) {
-								collectedLines.add(line.toString());
-							}
-							break;
-						}
+				collect();
+			}
+		};
+		thread = new Thread(runnable);
+		thread.start();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.cloudcoder.builder2.process.IOutputCollector#collect()
+	 */
+	@Override
+	public void collect() {
+		reader = new InputStreamReader(new LimitedInputStream(in, maxBytesAllowed));
+		
+		try {
+			int c;
+			StringBuilder line = new StringBuilder();
+			while (true) {
+				c = reader.read();
+				if (c < 0) {
+					// End of input.
+					// See if we have a partial line.
+					if (line.length() > 0 && collectedLines.size() < maxLinesAllowed) {
+						collectedLines.add(line.toString());
+					}
+					break;
+				}
 
-						// If we've exceeded max number of lines, ignore this character.
-						if (collectedLines.size() > maxLinesAllowed) {
-							continue;
-						}
+				// If we've exceeded max number of lines, ignore this character.
+				if (collectedLines.size() > maxLinesAllowed) {
+					continue;
+				}
 
-						// Reached end of line?
-						if (c == '\n') {
-							collectedLines.add(line.toString());
-							line = new StringBuilder();
-						} else {
-							// Only append the character if we haven't exceeded the max
-							// number of characters per line.
-							if (line.length() <= maxCharactersPerLine) {
-								line.append((char) c);
-							}
-						}
+				// Reached end of line?
+				if (c == '\n') {
+					collectedLines.add(line.toString());
+					line = new StringBuilder();
+				} else {
+					// Only append the character if we haven't exceeded the max
+					// number of characters per line.
+					if (line.length() <= maxCharactersPerLine) {
+						line.append((char) c);
 					}
-				} catch (IOException e) {
-					// Ignore
-				} finally {
-					IOUtils.closeQuietly(reader);
 				}
 			}
-		};
-		thread = new Thread(runnable);
-		thread.start();
+		} catch (IOException e) {
+			// Ignore
+		} finally {
+			IOUtils.closeQuietly(reader);
+		}
 	}
 
 	/* (non-Javadoc)
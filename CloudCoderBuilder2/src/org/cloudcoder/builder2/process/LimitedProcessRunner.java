@@ -161,4 +161,12 @@ public class LimitedProcessRunner extends ProcessRunner {
 		
 		return collector;
 	}
+	
+	@Override
+	protected int getMaxOutputBytes() {
+		// The EasySandbox prefix (if any) is stripped before the
+		// output limit is applied
+		int maxBytes = limitMap.get(CommandLimit.OUTPUT_MAX_BYTES);
+		return easySandboxEnabled ? maxBytes + EASYSANDBOX_OUTPUT_PREFIX.length : maxBytes;
+	}
 }
@@ -58,26 +58,34 @@ public class OutputCollector implements IOutputCollector {
 		readerThread = new Thread(new Runnable() {
 			@Override
 			public void run() {
-				BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-				try {
-					for (;;) {
-						String line = reader.readLine();
-						if (line == null) {
-							break;
-						}
-						collectedOutput.add(line);
-					}
-				} catch (IOException e) {
-					// ignore
-				} finally {
-					IOUtils.closeQuietly(reader);
-				}
+				collect();
 			}
 		});
 
 		readerThread.start();
 	}
 
+	/* (non-Javadoc)
+	 * @see org.cloudcoder.builder2.process.IOutputCollector#collect()
+	 */
+	@Override
+	public void collect() {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
+		try {
+			for (;;) {
+				String line = reader.readLine();
+				if (line == null) {
+					break;
+				}
+				collectedOutput.add(line);
+			}
+		} catch (IOException e) {
+			// ignore
+		} finally {
+			IOUtils.closeQuietly(reader);
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see org.cloudcoder.submitsvc.oop.builder.IOutputCollector#getCollectedOutput()
 	 */
@@ -0,0 +1,385 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.process;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.commons.io.IOUtils;
+import org.cloudcoder.builder2.util.SingletonHolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Singleton to manage a long-lived launcher process (the native exe
+ * process wrapper, cRunProcess.exe, run with the <code>--launcher</code>
+ * option) which starts processes on behalf of {@link ProcessRunner}
+ * when the {@link org.cloudcoder.builder2.model.WrapperMode#NATIVE_EXE}
+ * wrapper mode is used.  Each process is started by sending a request
+ * to the launcher over a pipe: the launcher sets the process's resource
+ * limits, feeds it its stdin, and sends back its output and exit status.
+ * So, starting a test process doesn't require starting a wrapper process,
+ * creating an exit status file, or starting threads to send input and
+ * collect output.  A single thread reads the launcher's events for all
+ * processes.
+ *
+ * <p>If the launcher exits unexpectedly, the processes it was running
+ * are reported as having an unknown status, and a new launcher is
+ * started for the next process.
+ *
+ * <p>Configuration properties:
+ * <ul>
+ * <li><b>cloudcoder.builder2.process.useLauncher</b>: whether to use the
+ *     launcher (default true); if false, or if the native exe process wrapper
+ *     can't be built, a wrapper process is started for each process</li>
+ * </ul>
+ *
+ * @author David Hovemeyer
+ */
+public class ProcessLauncher {
+	private static final Logger logger = LoggerFactory.getLogger(ProcessLauncher.class);
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final SingletonHolder<ProcessLauncher, Properties> holder = new SingletonHolder<ProcessLauncher, Properties>() {
+		@Override
+		protected ProcessLauncher onCreate(Properties arg) {
+			return new ProcessLauncher(arg);
+		}
+	};
+
+	/**
+	 * Get the singleton instance.
+	 *
+	 * @param config configuration properties
+	 * @return the singleton instance
+	 */
+	public static ProcessLauncher getInstance(Properties config) {
+		return holder.get(config);
+	}
+
+	/**
+	 * Get the singleton instance, creating it with the default configuration
+	 * if {@link #getInstance(Properties)} has not been called yet.
+	 *
+	 * @return the singleton instance
+	 */
+	public static ProcessLauncher getInstance() {
+		return holder.get(new Properties());
+	}
+
+	/**
+	 * Check whether the singleton instance has been created.
+	 *
+	 * @return true if the singleton instance was created, false if not
+	 */
+	public static boolean isCreated() {
+		return holder.isCreated();
+	}
+
+	private final String exePath;
+	private Process launcher;
+	private OutputStream requestStream;
+	private final Object writeLock;
+	private final Map<Integer, LaunchedProcess> running;
+	private int nextId;
+	private long numLaunched;
+	private long numStarts;
+	private boolean shutdown;
+
+	private ProcessLauncher(Properties config) {
+		if (Boolean.valueOf(config.getProperty("cloudcoder.builder2.process.useLauncher", "true"))) {
+			this.exePath = RunProcessNativeExe.getInstance(config).getNativeExePath();
+		} else {
+			this.exePath = null;
+		}
+		this.running = new HashMap<Integer, LaunchedProcess>();
+		this.writeLock = new Object();
+	}
+
+	/**
+	 * @return true if processes can be started using the launcher
+	 */
+	public boolean isAvailable() {
+		return exePath != null;
+	}
+
+	/**
+	 * Start a process.
+	 *
+	 * @param workingDir     the process's working directory
+	 * @param command        the program to run and its arguments
+	 * @param envp           the process's environment variables (in the form VAR=value),
+	 *                       including the CC_ variables understood by the process wrapper
+	 * @param stdin          text to send to the process as its standard input, or null if none
+	 * @param maxOutputBytes maximum number of bytes of stdout (and of stderr) to collect,
+	 *                       or 0 if unlimited
+	 * @return the {@link LaunchedProcess}
+	 * @throws IOException if the request could not be sent to the launcher
+	 */
+	LaunchedProcess launch(File workingDir, String[] command, String[] envp, String stdin, int maxOutputBytes) throws IOException {
+		byte[] stdinBytes = stdin != null ? stdin.getBytes(UTF8) : new byte[0];
+
+		Process p;
+		OutputStream out;
+		LaunchedProcess proc;
+		synchronized (this) {
+			if (!isAvailable() || shutdown) {
+				throw new IOException("Process launcher is not available");
+			}
+			if (launcher == null) {
+				startLauncher();
+			}
+			p = launcher;
+			out = requestStream;
+			proc = new LaunchedProcess(nextId++);
+			running.put(proc.getId(), proc);
+			numLaunched++;
+		}
+
+		ByteArrayOutputStream req = new ByteArrayOutputStream();
+		req.write(String.format("S %d %d %d %d %d\n",
+				proc.getId(), command.length, envp.length, stdinBytes.length, maxOutputBytes).getBytes(UTF8));
+		writeString(req, workingDir.getPath());
+		for (String arg : command) {
+			writeString(req, arg);
+		}
+		for (String var : envp) {
+			writeString(req, var);
+		}
+		req.write(stdinBytes);
+
+		// Note that the lock on this object must not be held while
+		// writing to the launcher: the reader thread needs it in order
+		// to consume the launcher's events, and the launcher won't read
+		// more requests while it is blocked sending events.
+		try {
+			synchronized (writeLock) {
+				req.writeTo(out);
+				out.flush();
+			}
+		} catch (IOException e) {
+			launcherFailed(p, e);
+			throw e;
+		}
+		return proc;
+	}
+
+	/**
+	 * Forcibly kill a process.  The process will be reported as
+	 * terminated once the launcher has killed it.
+	 *
+	 * @param proc the {@link LaunchedProcess} to kill
+	 */
+	void kill(LaunchedProcess proc) {
+		Process p;
+		OutputStream out;
+		synchronized (this) {
+			if (launcher == null || !running.containsKey(proc.getId())) {
+				return;
+			}
+			p = launcher;
+			out = requestStream;
+		}
+		try {
+			synchronized (writeLock) {
+				out.write(("K " + proc.getId() + "\n").getBytes(UTF8));
+				out.flush();
+			}
+		} catch (IOException e) {
+			launcherFailed(p, e);
+		}
+	}
+
+	/**
+	 * Destroy the launcher running a process: used when the launcher
+	 * doesn't report that a killed process has terminated.  All of the
+	 * processes started by the launcher are reported as terminated with
+	 * an unknown status, and a new launcher is started for the next process.
+	 *
+	 * @param proc the {@link LaunchedProcess} which couldn't be killed
+	 */
+	void destroy(LaunchedProcess proc) {
+		Process p;
+		synchronized (this) {
+			if (launcher == null || !running.containsKey(proc.getId())) {
+				return;
+			}
+			p = launcher;
+		}
+		launcherFailed(p, new IOException("Process launcher did not kill process " + proc.getId()));
+	}
+
+	/**
+	 * Shut down the launcher.  Any processes that are still
+	 * running are killed.
+	 */
+	public void shutdown() {
+		Process p;
+		synchronized (this) {
+			shutdown = true;
+			p = launcher;
+			if (p != null) {
+				// The launcher kills its processes and exits when its stdin is closed
+				IOUtils.closeQuietly(requestStream);
+			}
+		}
+		if (p != null) {
+			try {
+				p.waitFor();
+			} catch (InterruptedException e) {
+				logger.warn("Interrupted waiting for process launcher to exit");
+			}
+		}
+	}
+
+	/**
+	 * @return a one-line summary of the launcher's status
+	 */
+	public synchronized String getStatusSummary() {
+		return String.format("available=%s, running=%d, launched=%d, launcherStarts=%d",
+				isAvailable(), running.size(), numLaunched, numStarts);
+	}
+
+	private void startLauncher() throws IOException {
+		final Process p = Runtime.getRuntime().exec(new String[]{ exePath, "--launcher" });
+		IOUtils.closeQuietly(p.getErrorStream());
+		launcher = p;
+		requestStream = new BufferedOutputStream(p.getOutputStream());
+		numStarts++;
+		logger.info("Started process launcher {}", exePath);
+
+		Thread readerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				readEvents(p);
+			}
+		}, "ProcessLauncher reader");
+		readerThread.setDaemon(true);
+		readerThread.start();
+	}
+
+	/**
+	 * Read events sent by the launcher until it exits.
+	 *
+	 * @param p the launcher process
+	 */
+	private void readEvents(Process p) {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(p.getInputStream()));
+		try {
+			for (;;) {
+				String line = readLine(in);
+				if (line == null) {
+					throw new EOFException("Process launcher exited");
+				}
+				String[] fields = line.split(" ");
+				int id = Integer.parseInt(fields[1]);
+				if (fields[0].equals("O") || fields[0].equals("E")) {
+					byte[] data = new byte[Integer.parseInt(fields[2])];
+					in.readFully(data);
+					LaunchedProcess proc = getRunning(id);
+					if (proc != null) {
+						proc.addOutput(fields[0].equals("O"), data);
+					}
+				} else if (fields[0].equals("X")) {
+					LaunchedProcess proc;
+					synchronized (this) {
+						proc = running.remove(id);
+					}
+					if (proc != null) {
+						proc.setTerminated(fields[2], Integer.parseInt(fields[3]));
+					}
+				} else {
+					throw new IOException("Unknown event from process launcher: " + line);
+				}
+			}
+		} catch (IOException e) {
+			launcherFailed(p, e);
+		} catch (RuntimeException e) {
+			launcherFailed(p, e);
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	private synchronized LaunchedProcess getRunning(int id) {
+		return running.get(id);
+	}
+
+	/**
+	 * Called when a launcher process exits or can't be communicated with.
+	 * Processes started by the launcher are reported as terminated
+	 * with an unknown status.
+	 *
+	 * @param p the launcher process
+	 * @param e the exception describing the failure
+	 */
+	private void launcherFailed(Process p, Exception e) {
+		List<LaunchedProcess> failed = new ArrayList<LaunchedProcess>();
+		synchronized (this) {
+			if (launcher != p) {
+				// Already handled
+				return;
+			}
+			if (!shutdown) {
+				logger.error("Process launcher failed", e);
+			}
+			launcher = null;
+			IOUtils.closeQuietly(requestStream);
+			requestStream = null;
+			p.destroy();
+			failed.addAll(running.values());
+			running.clear();
+		}
+		for (LaunchedProcess proc : failed) {
+			proc.setTerminated("launcher_failed", -1);
+		}
+	}
+
+	private static void writeString(ByteArrayOutputStream out, String s) throws IOException {
+		out.write(s.getBytes(UTF8));
+		out.write(0);
+	}
+
+	private static String readLine(InputStream in) throws IOException {
+		StringBuilder buf = new StringBuilder();
+		for (;;) {
+			int c = in.read();
+			if (c < 0) {
+				return buf.length() > 0 ? buf.toString() : null;
+			}
+			if (c == '\n') {
+				return buf.toString();
+			}
+			buf.append((char) c);
+		}
+	}
+}
@@ -19,6 +19,7 @@
 package org.cloudcoder.builder2.process;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
@@ -42,12 +43,21 @@ import org.slf4j.LoggerFactory;
 /**
  * Run a subprocess, capturing its stdout and stderr as text.
  * Optionally, send text to the stdin of the process.
+ * When the {@link WrapperMode#NATIVE_EXE} wrapper mode is used,
+ * the process is started by the {@link ProcessLauncher} (if it is
+ * available) rather than by starting a process wrapper.
  * 
  * @author David Hovemeyer
  * @author Jaime Spacco
  */
 public class ProcessRunner {
 	private static final Logger logger=LoggerFactory.getLogger(ProcessRunner.class);
+	
+	/**
+	 * Maximum time to wait for the process launcher to report that
+	 * a killed process has terminated.
+	 */
+	private static final long KILL_TIMEOUT_MILLIS = 10000L;
     
 	private Properties config;
 	private WrapperMode wrapperMode;
@@ -59,6 +69,7 @@ public class ProcessRunner {
 	private ProcessStatus status;
 	
 	private volatile Process process;
+	private volatile LaunchedProcess launchedProcess;
 	private Thread exitValueMonitor;
 	private String stdin;
 	private IOutputCollector stdoutCollector;
@@ -140,6 +151,18 @@ public class ProcessRunner {
 	}
 	
 	public boolean runSynchronous(File workingDir, String... command) {
+		// If possible, have the process launcher start the process
+		if (startLaunchedProcess(workingDir, command)) {
+			try {
+				waitForExit(Long.MAX_VALUE);
+				return true;
+			} catch (InterruptedException e) {
+				killProcess();
+				statusMessage = "Process was interrupted (infinite loop killed?)";
+				return false;
+			}
+		}
+		
 		// wrap command (by default, using the runProcess.sh script)
 		command = wrapCommand(command);
 		
@@ -186,12 +209,58 @@ public class ProcessRunner {
 			return true;
 		} catch (IOException e) {
 			statusMessage = "Could not execute process: " + e.getMessage();
+			status = ProcessStatus.COULD_NOT_START;
 		} catch (InterruptedException e) {
 			statusMessage = "Process was interrupted (infinite loop killed?)";
 		}
 		return false;
 	}
 
+	/**
+	 * Start the process using the {@link ProcessLauncher}, if the
+	 * {@link WrapperMode#NATIVE_EXE} wrapper mode is being used and
+	 * the launcher is available.
+	 * 
+	 * @param workingDir the process's working directory
+	 * @param command    the program to run and its arguments
+	 * @return true if the process was started by the launcher, false
+	 *         if it should be started using a process wrapper
+	 */
+	private boolean startLaunchedProcess(File workingDir, String[] command) {
+		if (wrapperMode != WrapperMode.NATIVE_EXE) {
+			return false;
+		}
+		ProcessLauncher launcher = ProcessLauncher.getInstance(config);
+		if (!launcher.isAvailable()) {
+			return false;
+		}
+		
+		logger.info("Launching in {} the command: {}", workingDir.toString(), StringUtil.mergeOneLine(command));
+		try {
+			launchedProcess = launcher.launch(workingDir, command, getEnvp(), stdin, getMaxOutputBytes());
+			return true;
+		} catch (IOException e) {
+			logger.warn("Could not start process using the process launcher, using process wrapper instead", e);
+			return false;
+		}
+	}
+	
+	/**
+	 * Collect the output and exit status of a process started by
+	 * the {@link ProcessLauncher}, once it has terminated.
+	 */
+	private synchronized void finishLaunchedProcess() {
+		if (stdoutCollector != null) {
+			// Already done
+			return;
+		}
+		stdoutCollector = createOutputCollector(new ByteArrayInputStream(launchedProcess.getStdout()));
+		stderrCollector = createOutputCollector(new ByteArrayInputStream(launchedProcess.getStderr()));
+		stdoutCollector.collect();
+		stderrCollector.collect();
+		setProcessExitStatus(launchedProcess.getHow(), launchedProcess.getExitCode());
+	}
+
 	private String[] wrapCommand(String[] command) {
 		List<String> cmd = new ArrayList<String>();
 		
@@ -233,6 +302,21 @@ public class ProcessRunner {
 		return new OutputCollector(inputStream);
 	}
 	
+	/**
+	 * Get the maximum number of bytes of output (on each of stdout and stderr)
+	 * that should be collected.  This is used to limit the amount of output
+	 * buffered by the {@link ProcessLauncher}.  Subclasses that limit
+	 * the amount of output collected should override.
+	 * 
+	 * Default implementation returns 0, meaning that the amount of output
+	 * is not limited.
+	 * 
+	 * @return the maximum number of bytes of output to collect, or 0 if unlimited
+	 */
+	protected int getMaxOutputBytes() {
+		return 0;
+	}
+	
 	/**
 	 * Read the file written by the runProcess.sh script
 	 * which contains information about the process's exit status.
@@ -249,32 +333,7 @@ public class ProcessRunner {
 				logger.debug("Read process exit status file: status={}, exitCode={}", status, exitCode);
 				
 				// Second line of file should be the exit code
-				this.exitCode = Integer.parseInt(exitCode);
-				
-				if (status.equals("failed_to_execute")) {
-					// The process could not be started
-					this.processStarted = false;
-					this.statusMessage = "Process could not be started";
-					this.status = ProcessStatus.COULD_NOT_START;
-					
-					logger.debug("process stderr is {}", StringUtil.mergeOneLine(stderrCollector.getCollectedOutput()));
-				} else if (status.equals("exited")) {
-					// The process exited normally.
-					this.processStarted = true;
-					this.statusMessage = "Process exited";
-					this.status = ProcessStatus.EXITED;
-				} else if (status.equals("terminated_by_signal")) {
-					// The process was killed by a signal.
-					// The exit code is the signal that terminated the process.
-					this.processStarted = true;
-					this.statusMessage = "Process crashed (terminated by signal " + this.exitCode + ")";
-					this.status = ProcessStatus.KILLED_BY_SIGNAL;
-				} else {
-					// Should not happen.
-					logger.warn("Unknown process exit status " + status);
-					this.statusMessage = "Process status could not be determined";
-					this.status = ProcessStatus.COULD_NOT_START;
-				}
+				setProcessExitStatus(status, Integer.parseInt(exitCode));
 			}
 		} catch (IOException e) {
 			logger.warn("IOException trying to read process status file");
@@ -290,7 +349,50 @@ public class ProcessRunner {
 		}
 	}
 
+	/**
+	 * Set the process's status from its exit status information
+	 * (from the exit status file written by the process wrapper,
+	 * or from the {@link ProcessLauncher}).
+	 * 
+	 * @param how      how the process terminated
+	 * @param exitCode the process's exit code, or the signal that terminated the process
+	 */
+	private void setProcessExitStatus(String how, int exitCode) {
+		this.exitCode = exitCode;
+		
+		if (how.equals("failed_to_execute")) {
+			// The process could not be started
+			this.processStarted = false;
+			this.statusMessage = "Process could not be started";
+			this.status = ProcessStatus.COULD_NOT_START;
+			
+			logger.debug("process stderr is {}", StringUtil.mergeOneLine(stderrCollector.getCollectedOutput()));
+		} else if (how.equals("exited")) {
+			// The process exited normally.
+			this.processStarted = true;
+			this.statusMessage = "Process exited";
+			this.status = ProcessStatus.EXITED;
+		} else if (how.equals("terminated_by_signal")) {
+			// The process was killed by a signal.
+			// The exit code is the signal that terminated the process.
+			this.processStarted = true;
+			this.statusMessage = "Process crashed (terminated by signal " + exitCode + ")";
+			this.status = ProcessStatus.KILLED_BY_SIGNAL;
+		} else {
+			// Should not happen.
+			logger.warn("Unknown process exit status " + how);
+			this.statusMessage = "Process status could not be determined";
+			this.status = ProcessStatus.COULD_NOT_START;
+		}
+	}
+
 	public void runAsynchronous(final File workingDir, final String... command) {
+		// If possible, have the process launcher start the process:
+		// no thread is needed to wait for it
+		if (startLaunchedProcess(workingDir, command)) {
+			return;
+		}
+		
 	    exitValueMonitor=new Thread() {
 	        public void run() {
 	            runSynchronous(workingDir, command);
@@ -371,6 +473,10 @@ public class ProcessRunner {
 	 * @return the standard output written by the process as a List of strings
 	 */
 	public List<String> getStdoutAsList() {
+		if (stdoutCollector == null) {
+			// Process could not be started
+			return Collections.emptyList();
+		}
 		return stdoutCollector.getCollectedOutput();
 	}
 
@@ -388,7 +494,7 @@ public class ProcessRunner {
 		// Special case: if the process was killed because it exceeded
 		// a resource limit, its stderr is probably not useful.
 		ProcessStatus status = getStatus();
-		if (status == ProcessStatus.TIMED_OUT || status == ProcessStatus.FILE_SIZE_LIMIT_EXCEEDED) {
+		if (status == ProcessStatus.TIMED_OUT || status == ProcessStatus.FILE_SIZE_LIMIT_EXCEEDED || stderrCollector == null) {
 			return Collections.emptyList();
 		} else {
 			return stderrCollector.getCollectedOutput();
@@ -401,6 +507,11 @@ public class ProcessRunner {
 	 * @return true if the process is still running, false if it has completed
 	 */
     public boolean isRunning() {
+    	LaunchedProcess lp = launchedProcess;
+    	if (lp != null) {
+    		return !lp.isDone();
+    	}
+    	
     	Process p = process;
     	
     	if (p == null) {
@@ -417,11 +528,55 @@ public class ProcessRunner {
         }
     }
 
+	/**
+	 * Wait for the process to terminate, and for its output and
+	 * exit status to be collected.
+	 * 
+	 * @param timeoutMillis maximum number of milliseconds to wait
+	 * @return true if the process terminated, false if the timeout expired
+	 * @throws InterruptedException
+	 */
+	public boolean waitForExit(long timeoutMillis) throws InterruptedException {
+		LaunchedProcess lp = launchedProcess;
+		if (lp != null) {
+			if (!lp.waitFor(timeoutMillis)) {
+				return false;
+			}
+			finishLaunchedProcess();
+			return true;
+		}
+		
+		exitValueMonitor.join(timeoutMillis);
+		return !exitValueMonitor.isAlive();
+	}
+
 	/**
 	 * Forcibly kill the process.
 	 */
 	public void killProcess() {
 		logger.info("Killing process");
+		
+		LaunchedProcess lp = launchedProcess;
+		if (lp != null) {
+			ProcessLauncher launcher = ProcessLauncher.getInstance(config);
+			launcher.kill(lp);
+			
+			// Wait for the launcher to report that the process was killed.
+			// If it doesn't, destroy the launcher: that reports all of its
+			// processes (including this one) as terminated.
+			if (!awaitKilled(lp)) {
+				logger.error("Process launcher did not kill process within {} ms, destroying launcher",
+						KILL_TIMEOUT_MILLIS);
+				launcher.destroy(lp);
+				if (!awaitKilled(lp)) {
+					logger.error("Killed process was not reported as terminated");
+					lp.setTerminated("launcher_failed", -1);
+				}
+			}
+			finishLaunchedProcess();
+			return;
+		}
+		
 		process.destroy();
 		
 		// Important: wait for the process, otherwise we will probably create
@@ -445,4 +600,32 @@ public class ProcessRunner {
 			stdinSender.interrupt();
 		}
 	}
+
+	/**
+	 * Wait (for at most {@link #KILL_TIMEOUT_MILLIS} milliseconds)
+	 * for a process started by the launcher to be reported as terminated
+	 * after it was killed.
+	 * 
+	 * @param lp the {@link LaunchedProcess}
+	 * @return true if the process terminated, false if the timeout expired
+	 */
+	private static boolean awaitKilled(LaunchedProcess lp) {
+		long deadline = System.currentTimeMillis() + KILL_TIMEOUT_MILLIS;
+		boolean interrupted = false;
+		try {
+			while (true) {
+				long remaining = deadline - System.currentTimeMillis();
+				try {
+					return lp.waitFor(Math.max(remaining, 0L));
+				} catch (InterruptedException e) {
+					logger.warn("Interrupted waiting for killed process to exit");
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
 }
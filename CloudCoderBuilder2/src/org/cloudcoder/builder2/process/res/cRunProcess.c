@@ -12,6 +12,8 @@
 #include <errno.h>
 #include <signal.h>
 #include <unistd.h>
+#include <fcntl.h>
+#include <poll.h>
 
 // Exit code if an unexpected fatal error occurs.
 // In general this should never happen.
@@ -20,6 +22,8 @@
 // pid of child process
 static int s_childpid = -1;
 
+extern char **environ;
+
 // Handler for SIGTERM: if child process is running, send the
 // signal to the child proces.
 static void sigterm_handler(int signo)
@@ -165,8 +169,585 @@ static void write_one_byte(int fd)
 	}
 }
 
+// ----------------------------------------------------------------------
+// Launcher mode
+// ----------------------------------------------------------------------
+//
+// When run as "cRunProcess.exe --launcher", the process wrapper becomes
+// a long-lived launcher which starts processes on behalf of the builder,
+// so that a separate wrapper process (and exit status file) isn't
+// needed for each test process.  Requests are read from stdin:
+//
+//   S id nargs nenv stdinlen maxout\n
+//       Start a process.  The header line is followed by the working
+//       directory, nargs arguments, and nenv environment entries
+//       (each terminated by a nul byte), followed by stdinlen bytes
+//       of data to send to the process's stdin.
+//   K id\n
+//       Kill a process.
+//
+// Events are written to stdout:
+//
+//   O id len\n    followed by len bytes the process wrote to stdout
+//   E id len\n    followed by len bytes the process wrote to stderr
+//   X id how exitcode\n
+//       The process has terminated: how and exitcode are the same
+//       as in the exit status file.
+//
+// If maxout is nonzero, at most maxout bytes of the process's stdout
+// (and of its stderr) are sent: after that the pipe is closed, just
+// as when the builder's output collector stops reading.
+// When the launcher reaches EOF on stdin, it kills any processes
+// which are still running and exits.
+//
+// Each process is started in its own process group, and is killed by
+// killing its process group, so that background processes it started
+// (which might be holding its stdout or stderr open) are killed too.
+// If the launcher receives SIGTERM, it kills the process groups of all
+// of its processes before exiting, so that they aren't left running.
+
+// Information about a process started by the launcher
+struct launched {
+	long id;
+	pid_t pid;
+	int out_fd, err_fd, in_fd;
+	char *in_buf;
+	size_t in_len, in_off;
+	long maxout, out_count, err_count;
+	int exited, status;
+	struct launched *next;
+};
+
+// Processes started by the launcher which haven't been reported as terminated
+static struct launched *s_launched;
+
+// Pipe used by the SIGCHLD handler to wake up the launcher's poll loop
+static int s_sigchld_pipe[2];
+
+// Buffer of request data read from stdin
+static char *s_reqbuf;
+static size_t s_reqlen, s_reqcap;
+
+// Signal mask containing SIGTERM: SIGTERM is blocked while the
+// list of launched processes is being modified
+static sigset_t s_sigterm_mask;
+
+static void sigchld_handler(int signo)
+{
+	int save_errno = errno;
+	char c = 'c';
+	(void) write(s_sigchld_pipe[1], &c, 1);
+	errno = save_errno;
+}
+
+// Handler for SIGTERM in launcher mode: kill all launched processes
+// (and any processes they started) and exit.
+static void launcher_sigterm_handler(int signo)
+{
+	for (struct launched *p = s_launched; p != NULL; p = p->next) {
+		kill(-p->pid, SIGKILL);
+	}
+	_exit(EXIT_FATAL_ERROR);
+}
+
+static void block_sigterm(void)
+{
+	sigprocmask(SIG_BLOCK, &s_sigterm_mask, NULL);
+}
+
+static void unblock_sigterm(void)
+{
+	sigprocmask(SIG_UNBLOCK, &s_sigterm_mask, NULL);
+}
+
+static void set_fd_flags(int fd, int cloexec, int nonblock)
+{
+	if (cloexec) {
+		fcntl(fd, F_SETFD, fcntl(fd, F_GETFD) | FD_CLOEXEC);
+	}
+	if (nonblock) {
+		fcntl(fd, F_SETFL, fcntl(fd, F_GETFL) | O_NONBLOCK);
+	}
+}
+
+static int make_pipe(int fds[2])
+{
+	if (pipe(fds) != 0) {
+		return -1;
+	}
+	set_fd_flags(fds[0], 1, 0);
+	set_fd_flags(fds[1], 1, 0);
+	return 0;
+}
+
+static void close_fd(int *fd)
+{
+	if (*fd >= 0) {
+		close(*fd);
+		*fd = -1;
+	}
+}
+
+static void write_fully(const char *buf, size_t len)
+{
+	while (len > 0) {
+		ssize_t rc = write(1, buf, len);
+		if (rc < 0) {
+			if (errno == EINTR) {
+				continue;
+			}
+			// The builder has gone away
+			exit(EXIT_FATAL_ERROR);
+		}
+		buf += rc;
+		len -= (size_t) rc;
+	}
+}
+
+static void send_output_event(char type, long id, const char *data, size_t len)
+{
+	char hdr[64];
+	int n = snprintf(hdr, sizeof(hdr), "%c %ld %lu\n", type, id, (unsigned long) len);
+	write_fully(hdr, (size_t) n);
+	write_fully(data, len);
+}
+
+static void send_exit_event(long id, const char *how, int exitcode)
+{
+	char hdr[128];
+	int n = snprintf(hdr, sizeof(hdr), "X %ld %s %d\n", id, how, exitcode);
+	write_fully(hdr, (size_t) n);
+}
+
+static void launch(long id, char *dir, char **args, char **env, const char *in_data, size_t in_len, long maxout)
+{
+	int in_pipe[2], out_pipe[2], err_pipe[2];
+	if (make_pipe(in_pipe) != 0) {
+		send_exit_event(id, "failed_to_execute", -1);
+		return;
+	}
+	if (make_pipe(out_pipe) != 0) {
+		close(in_pipe[0]);
+		close(in_pipe[1]);
+		send_exit_event(id, "failed_to_execute", -1);
+		return;
+	}
+	if (make_pipe(err_pipe) != 0) {
+		close(in_pipe[0]);
+		close(in_pipe[1]);
+		close(out_pipe[0]);
+		close(out_pipe[1]);
+		send_exit_event(id, "failed_to_execute", -1);
+		return;
+	}
+
+	// Don't handle SIGTERM until the process is in the list of
+	// launched processes
+	block_sigterm();
+
+	pid_t pid = fork();
+	if (pid == 0) {
+		// in the child
+
+		// Start a new process group
+		setpgid(0, 0);
+
+		// Connect stdin/stdout/stderr to the pipes: all other
+		// file descriptors are close-on-exec
+		dup2(in_pipe[0], 0);
+		dup2(out_pipe[1], 1);
+		dup2(err_pipe[1], 2);
+
+		// Restore default signal handling
+		signal(SIGPIPE, SIG_DFL);
+		signal(SIGCHLD, SIG_DFL);
+		signal(SIGTERM, SIG_DFL);
+		unblock_sigterm();
+
+		if (chdir(dir) != 0) {
+			_exit(127);
+		}
+
+		// Set resource limits as specified by CC_PROCESS_RESOURCE_LIMITS
+		// in the requested environment
+		environ = env;
+		set_resource_limits();
+
+		// Exec the child process!
+		execve(args[0], args, create_env(env));
+
+		// An error occurred executing the child process.
+		_exit(127);
+	}
+
+	close(in_pipe[0]);
+	close(out_pipe[1]);
+	close(err_pipe[1]);
+
+	if (pid == -1) {
+		unblock_sigterm();
+		close(in_pipe[1]);
+		close(out_pipe[0]);
+		close(err_pipe[0]);
+		send_exit_event(id, "failed_to_execute", -1);
+		return;
+	}
+
+	// Also set the process group in the parent, so that it is
+	// set before the process can be killed
+	setpgid(pid, pid);
+
+	struct launched *p = calloc(1, sizeof(struct launched));
+	p->id = id;
+	p->pid = pid;
+	p->in_fd = in_pipe[1];
+	p->out_fd = out_pipe[0];
+	p->err_fd = err_pipe[0];
+	p->maxout = maxout;
+	set_fd_flags(p->in_fd, 0, 1);
+	set_fd_flags(p->out_fd, 0, 1);
+	set_fd_flags(p->err_fd, 0, 1);
+	if (in_len > 0) {
+		p->in_buf = malloc(in_len);
+		memcpy(p->in_buf, in_data, in_len);
+		p->in_len = in_len;
+	} else {
+		close_fd(&p->in_fd);
+	}
+	p->next = s_launched;
+	s_launched = p;
+	unblock_sigterm();
+}
+
+static void kill_launched(long id)
+{
+	for (struct launched *p = s_launched; p != NULL; p = p->next) {
+		if (p->id == id) {
+			// Kill the process group, even if the process has exited:
+			// processes it started may still be running
+			kill(-p->pid, SIGKILL);
+			// Any further output or input is discarded
+			close_fd(&p->in_fd);
+			close_fd(&p->out_fd);
+			close_fd(&p->err_fd);
+			return;
+		}
+	}
+}
+
+// Handle one complete request at the beginning of the request buffer.
+// Returns the number of bytes consumed, or 0 if the buffer doesn't yet
+// contain a complete request.
+static size_t handle_request(void)
+{
+	char *nl = memchr(s_reqbuf, '\n', s_reqlen);
+	if (nl == NULL) {
+		return 0;
+	}
+	*nl = '\0';
+	size_t pos = (size_t) (nl - s_reqbuf) + 1;
+
+	long id, maxout;
+	int nargs, nenv;
+	unsigned long stdinlen;
+	if (s_reqbuf[0] == 'K' && sscanf(s_reqbuf, "K %ld", &id) == 1) {
+		kill_launched(id);
+		return pos;
+	}
+	if (s_reqbuf[0] != 'S' || sscanf(s_reqbuf, "S %ld %d %d %lu %ld", &id, &nargs, &nenv, &stdinlen, &maxout) != 5
+			|| nargs < 1 || nenv < 0) {
+		// Garbled request: should not happen
+		exit(EXIT_FATAL_ERROR);
+	}
+
+	// Find the nul-terminated directory, arguments, and environment entries
+	int nstrings = 1 + nargs + nenv;
+	char **strings = malloc((nstrings + 2) * sizeof(char*));
+	for (int i = 0; i < nstrings; i++) {
+		char *nul = memchr(s_reqbuf + pos, '\0', s_reqlen - pos);
+		if (nul == NULL) {
+			// Request is not complete yet
+			free(strings);
+			*nl = '\n';
+			return 0;
+		}
+		strings[i] = s_reqbuf + pos;
+		pos = (size_t) (nul - s_reqbuf) + 1;
+	}
+	if (s_reqlen - pos < stdinlen) {
+		free(strings);
+		*nl = '\n';
+		return 0;
+	}
+
+	// Build nul-terminated argument and environment arrays
+	char **args = malloc((nargs + 1) * sizeof(char*));
+	char **env = malloc((nenv + 1) * sizeof(char*));
+	memcpy(args, strings + 1, nargs * sizeof(char*));
+	args[nargs] = NULL;
+	memcpy(env, strings + 1 + nargs, nenv * sizeof(char*));
+	env[nenv] = NULL;
+
+	launch(id, strings[0], args, env, s_reqbuf + pos, stdinlen, maxout);
+
+	free(args);
+	free(env);
+	free(strings);
+	return pos + stdinlen;
+}
+
+static int read_requests(void)
+{
+	if (s_reqcap - s_reqlen < 65536) {
+		s_reqcap = s_reqcap * 2 + 65536;
+		s_reqbuf = realloc(s_reqbuf, s_reqcap);
+	}
+	ssize_t rc = read(0, s_reqbuf + s_reqlen, s_reqcap - s_reqlen);
+	if (rc < 0) {
+		return (errno == EINTR || errno == EAGAIN) ? 1 : 0;
+	}
+	if (rc == 0) {
+		return 0;
+	}
+	s_reqlen += (size_t) rc;
+
+	size_t n;
+	while (s_reqlen > 0 && (n = handle_request()) > 0) {
+		memmove(s_reqbuf, s_reqbuf + n, s_reqlen - n);
+		s_reqlen -= n;
+	}
+	return 1;
+}
+
+static void forward_output(char type, long id, int *fd, long *count, long maxout)
+{
+	static char buf[65536];
+	ssize_t rc = read(*fd, buf, sizeof(buf));
+	if (rc < 0) {
+		if (errno != EINTR && errno != EAGAIN) {
+			close_fd(fd);
+		}
+		return;
+	}
+	if (rc == 0) {
+		close_fd(fd);
+		return;
+	}
+	size_t n = (size_t) rc;
+	int limit_reached = 0;
+	if (maxout > 0 && *count + (long) n > maxout) {
+		n = (size_t) (maxout - *count);
+		limit_reached = 1;
+	}
+	if (n > 0) {
+		send_output_event(type, id, buf, n);
+		*count += (long) n;
+	}
+	if (limit_reached) {
+		close_fd(fd);
+	}
+}
+
+static void send_input(struct launched *p)
+{
+	ssize_t rc = write(p->in_fd, p->in_buf + p->in_off, p->in_len - p->in_off);
+	if (rc < 0) {
+		if (errno != EINTR && errno != EAGAIN) {
+			close_fd(&p->in_fd);
+		}
+		return;
+	}
+	p->in_off += (size_t) rc;
+	if (p->in_off == p->in_len) {
+		close_fd(&p->in_fd);
+	}
+}
+
+static void reap_children(void)
+{
+	int status;
+	pid_t pid;
+	while ((pid = waitpid(-1, &status, WNOHANG)) > 0) {
+		for (struct launched *p = s_launched; p != NULL; p = p->next) {
+			if (p->pid == pid) {
+				p->exited = 1;
+				p->status = status;
+				break;
+			}
+		}
+	}
+}
+
+// Report processes which have exited and whose output has been
+// completely forwarded.
+static void report_terminated(void)
+{
+	struct launched **pp = &s_launched;
+	while (*pp != NULL) {
+		struct launched *p = *pp;
+		if (p->exited && p->out_fd < 0 && p->err_fd < 0) {
+			char *how;
+			int exitcode;
+			if (WIFEXITED(p->status)) {
+				exitcode = WEXITSTATUS(p->status);
+				how = (exitcode == 127) ? "failed_to_execute" : "exited";
+			} else if (WIFSIGNALED(p->status)) {
+				exitcode = WTERMSIG(p->status);
+				how = "terminated_by_signal";
+			} else {
+				exitcode = -1;
+				how = "failed_to_execute";
+			}
+			send_exit_event(p->id, how, exitcode);
+
+			close_fd(&p->in_fd);
+			block_sigterm();
+			*pp = p->next;
+			unblock_sigterm();
+			free(p->in_buf);
+			free(p);
+		} else {
+			pp = &p->next;
+		}
+	}
+}
+
+static int run_launcher(void)
+{
+	// Writes to the stdin of a process that has exited should fail
+	// with EPIPE rather than killing the launcher
+	signal(SIGPIPE, SIG_IGN);
+
+	if (make_pipe(s_sigchld_pipe) != 0) {
+		exit(EXIT_FATAL_ERROR);
+	}
+	set_fd_flags(s_sigchld_pipe[0], 0, 1);
+	set_fd_flags(s_sigchld_pipe[1], 0, 1);
+	sigset_t mask;
+	sigemptyset(&mask);
+	struct sigaction sa = {
+		.sa_handler = &sigchld_handler,
+		.sa_mask = mask,
+		.sa_flags = SA_RESTART | SA_NOCLDSTOP,
+	};
+	if (sigaction(SIGCHLD, &sa, NULL) != 0) {
+		exit(EXIT_FATAL_ERROR);
+	}
+
+	// Kill launched processes if the launcher is terminated
+	sigemptyset(&s_sigterm_mask);
+	sigaddset(&s_sigterm_mask, SIGTERM);
+	struct sigaction term_sa = {
+		.sa_handler = &launcher_sigterm_handler,
+		.sa_mask = mask,
+		.sa_flags = 0,
+	};
+	if (sigaction(SIGTERM, &term_sa, NULL) != 0) {
+		exit(EXIT_FATAL_ERROR);
+	}
+
+	struct pollfd *fds = NULL;
+	struct launched **owners = NULL;
+	size_t cap = 0;
+
+	for (;;) {
+		// Build the array of file descriptors to wait on
+		size_t n = 0;
+		for (struct launched *p = s_launched; p != NULL; p = p->next) {
+			n++;
+		}
+		if (cap < 2 + 3*n) {
+			cap = 2*(2 + 3*n);
+			fds = realloc(fds, cap * sizeof(struct pollfd));
+			owners = realloc(owners, cap * sizeof(struct launched *));
+		}
+		size_t nfds = 0;
+		fds[nfds].fd = 0;
+		fds[nfds].events = POLLIN;
+		owners[nfds++] = NULL;
+		fds[nfds].fd = s_sigchld_pipe[0];
+		fds[nfds].events = POLLIN;
+		owners[nfds++] = NULL;
+		for (struct launched *p = s_launched; p != NULL; p = p->next) {
+			if (p->out_fd >= 0) {
+				fds[nfds].fd = p->out_fd;
+				fds[nfds].events = POLLIN;
+				owners[nfds++] = p;
+			}
+			if (p->err_fd >= 0) {
+				fds[nfds].fd = p->err_fd;
+				fds[nfds].events = POLLIN;
+				owners[nfds++] = p;
+			}
+			if (p->in_fd >= 0) {
+				fds[nfds].fd = p->in_fd;
+				fds[nfds].events = POLLOUT;
+				owners[nfds++] = p;
+			}
+		}
+
+		if (poll(fds, nfds, -1) < 0) {
+			if (errno == EINTR) {
+				continue;
+			}
+			exit(EXIT_FATAL_ERROR);
+		}
+
+		// Forward output and send input
+		for (size_t i = 2; i < nfds; i++) {
+			struct launched *p = owners[i];
+			if (fds[i].revents == 0) {
+				continue;
+			}
+			if (fds[i].fd == p->out_fd) {
+				forward_output('O', p->id, &p->out_fd, &p->out_count, p->maxout);
+			} else if (fds[i].fd == p->err_fd) {
+				forward_output('E', p->id, &p->err_fd, &p->err_count, p->maxout);
+			} else if (fds[i].fd == p->in_fd) {
+				if (fds[i].revents & POLLOUT) {
+					send_input(p);
+				} else {
+					close_fd(&p->in_fd);
+				}
+			}
+		}
+
+		// Reap exited processes
+		if (fds[1].revents != 0) {
+			char buf[256];
+			while (read(s_sigchld_pipe[0], buf, sizeof(buf)) > 0)
+				;
+		}
+		reap_children();
+		report_terminated();
+
+		// Handle requests.  A killed process which has already exited
+		// is reported right away: once its pipes are closed, no event
+		// will wake up the poll loop for it.
+		if (fds[0].revents != 0) {
+			if (!read_requests()) {
+				break;
+			}
+			report_terminated();
+		}
+	}
+
+	// The builder closed the request pipe: kill any remaining processes
+	for (struct launched *p = s_launched; p != NULL; p = p->next) {
+		kill(-p->pid, SIGKILL);
+		if (!p->exited) {
+			waitpid(p->pid, NULL, 0);
+		}
+	}
+	return 0;
+}
+
 int main(int argc, char **argv, char **env)
 {
+	if (argc == 2 && strcmp(argv[1], "--launcher") == 0) {
+		return run_launcher();
+	}
+
 	install_sigterm_handler();
 
 	// Create a pipe so that the parent process can let the child know
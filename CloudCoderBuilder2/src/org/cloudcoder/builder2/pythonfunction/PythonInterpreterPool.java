@@ -0,0 +1,281 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2013, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2013, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.pythonfunction;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.cloudcoder.builder2.util.SingletonHolder;
+import org.python.core.PyList;
+import org.python.core.PyObject;
+import org.python.core.PyStringMap;
+import org.python.core.PySystemState;
+import org.python.util.PythonInterpreter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of pre-warmed {@link PythonInterpreter}s used to test
+ * {@link org.cloudcoder.app.shared.model.ProblemType#PYTHON_FUNCTION} submissions.
+ * Each interpreter has its own {@link PySystemState}, so that
+ * submissions being tested concurrently don't share stdout/stderr
+ * or loaded modules.
+ *
+ * <p>When an interpreter is returned to the pool it is reset:
+ * its global namespace is cleared, any modules imported since it was
+ * created are unloaded, sys.path is restored, and stdout/stderr are
+ * restored.  Interpreters are discarded rather than reused if the
+ * submission's tests did not all complete (e.g., because of a timeout,
+ * in which case a stopped thread might have left the interpreter
+ * in an inconsistent state), or if the interpreter has been used
+ * the maximum number of times.
+ *
+ * <p>Configuration properties:
+ * <ul>
+ * <li><b>cloudcoder.builder2.python.poolSize</b>: number of idle interpreters
+ *     to keep (default 4)</li>
+ * <li><b>cloudcoder.builder2.python.maxUses</b>: maximum number of submissions
+ *     an interpreter will be used to test (default 50)</li>
+ * </ul>
+ *
+ * @author David Hovemeyer
+ */
+public class PythonInterpreterPool {
+	private static final Logger logger = LoggerFactory.getLogger(PythonInterpreterPool.class);
+
+	private static final SingletonHolder<PythonInterpreterPool, Properties> holder = new SingletonHolder<PythonInterpreterPool, Properties>() {
+		@Override
+		protected PythonInterpreterPool onCreate(Properties arg) {
+			return new PythonInterpreterPool(arg);
+		}
+	};
+
+	/**
+	 * Get the singleton instance.
+	 *
+	 * @param config configuration properties
+	 * @return the singleton instance
+	 */
+	public static PythonInterpreterPool getInstance(Properties config) {
+		return holder.get(config);
+	}
+
+	/**
+	 * Get the singleton instance, creating it with the default configuration
+	 * if {@link #getInstance(Properties)} has not been called yet.
+	 *
+	 * @return the singleton instance
+	 */
+	public static PythonInterpreterPool getInstance() {
+		return holder.get(new Properties());
+	}
+
+	/**
+	 * A pooled {@link PythonInterpreter}, along with the information
+	 * needed to reset it.
+	 */
+	public static class PooledInterpreter {
+		private final PythonInterpreter interpreter;
+		private final PySystemState systemState;
+		private final PyObject initialLocals;
+		private final Set<String> initialModules;
+		private final PyObject initialPath;
+		private final PyObject initialStdout;
+		private final PyObject initialStderr;
+		private int numUses;
+
+		private PooledInterpreter() {
+			this.systemState = new PySystemState();
+			this.interpreter = new PythonInterpreter(null, systemState);
+
+			// Warm up the interpreter
+			interpreter.eval("True");
+
+			this.initialLocals = ((PyStringMap) interpreter.getLocals()).copy();
+			this.initialModules = new HashSet<String>();
+			for (PyObject key : systemState.modules.asIterable()) {
+				initialModules.add(key.toString());
+			}
+			this.initialPath = new PyList((PyObject) systemState.path);
+			this.initialStdout = systemState.stdout;
+			this.initialStderr = systemState.stderr;
+		}
+
+		/**
+		 * @return the {@link PythonInterpreter}
+		 */
+		public PythonInterpreter getInterpreter() {
+			return interpreter;
+		}
+
+		/**
+		 * @return the interpreter's {@link PySystemState}: threads calling
+		 *         Python functions defined in the interpreter should use it
+		 *         (see {@link org.python.core.Py#setSystemState(PySystemState)})
+		 */
+		public PySystemState getSystemState() {
+			return systemState;
+		}
+
+		/**
+		 * Restore the interpreter to its initial state.
+		 */
+		private void reset() {
+			PyStringMap locals = (PyStringMap) interpreter.getLocals();
+			locals.clear();
+			locals.update(initialLocals);
+
+			List<PyObject> addedModules = new ArrayList<PyObject>();
+			for (PyObject key : systemState.modules.asIterable()) {
+				if (!initialModules.contains(key.toString())) {
+					addedModules.add(key);
+				}
+			}
+			for (PyObject key : addedModules) {
+				systemState.modules.__delitem__(key);
+			}
+
+			systemState.path = new PyList(initialPath);
+			systemState.stdout = initialStdout;
+			systemState.stderr = initialStderr;
+		}
+	}
+
+	private final int poolSize;
+	private final int maxUses;
+	private final LinkedList<PooledInterpreter> idleList;
+	private long hits;
+	private long misses;
+	private long totalCreateNanos;
+	private int numCreated;
+	private int numTimed;
+
+	private PythonInterpreterPool(Properties config) {
+		this.poolSize = Integer.parseInt(config.getProperty("cloudcoder.builder2.python.poolSize", "4"));
+		this.maxUses = Integer.parseInt(config.getProperty("cloudcoder.builder2.python.maxUses", "50"));
+		this.idleList = new LinkedList<PooledInterpreter>();
+
+		// Pre-warm the pool.  Note that creating the first interpreter
+		// also initializes the Jython runtime.
+		long begin = System.currentTimeMillis();
+		for (int i = 0; i < poolSize; i++) {
+			idleList.add(create());
+		}
+		logger.info("Created {} Python interpreters in {} ms", poolSize, System.currentTimeMillis() - begin);
+	}
+
+	/**
+	 * Get an interpreter from the pool, creating one if the pool is empty.
+	 *
+	 * @return the {@link PooledInterpreter}
+	 */
+	public PooledInterpreter borrow() {
+		synchronized (this) {
+			if (!idleList.isEmpty()) {
+				hits++;
+				return idleList.removeFirst();
+			}
+			misses++;
+		}
+		return create();
+	}
+
+	/**
+	 * Return an interpreter to the pool.
+	 *
+	 * @param pooled   the {@link PooledInterpreter} returned by {@link #borrow()}
+	 * @param reusable true if the interpreter may be reused, false if
+	 *                 it should be discarded
+	 */
+	public void release(PooledInterpreter pooled, boolean reusable) {
+		pooled.numUses++;
+		if (reusable && pooled.numUses < maxUses) {
+			try {
+				pooled.reset();
+			} catch (RuntimeException e) {
+				logger.warn("Could not reset Python interpreter", e);
+				reusable = false;
+			}
+		} else {
+			reusable = false;
+		}
+
+		if (reusable) {
+			synchronized (this) {
+				if (idleList.size() < poolSize) {
+					idleList.addFirst(pooled);
+					return;
+				}
+			}
+		}
+		pooled.interpreter.cleanup();
+	}
+
+	/**
+	 * @return number of requests for an interpreter satisfied from the pool
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return number of requests for an interpreter which required creating one
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return average time (in milliseconds) to create and warm up an interpreter
+	 */
+	public synchronized double getAverageCreateMillis() {
+		return numTimed > 0 ? (totalCreateNanos / (double) numTimed) / 1000000.0 : 0.0;
+	}
+
+	/**
+	 * @return a one-line summary of the pool statistics, including the
+	 *         hit rate and the estimated interpreter warm-up time saved
+	 */
+	public synchronized String getStatusSummary() {
+		long total = hits + misses;
+		double hitRate = total > 0 ? (100.0 * hits) / total : 0.0;
+		double avgCreateMillis = getAverageCreateMillis();
+		return String.format("idle=%d, hits=%d, misses=%d, hitRate=%.1f%%, avgCreateMs=%.2f, estimatedSavedMs=%.0f",
+				idleList.size(), hits, misses, hitRate, avgCreateMillis, hits * avgCreateMillis);
+	}
+
+	private PooledInterpreter create() {
+		long begin = System.nanoTime();
+		PooledInterpreter pooled = new PooledInterpreter();
+		long elapsed = System.nanoTime() - begin;
+		synchronized (this) {
+			// Don't count the first interpreter, since creating it includes
+			// the one-time Jython initialization
+			if (numCreated > 0) {
+				totalCreateNanos += elapsed;
+				numTimed++;
+			}
+			numCreated++;
+		}
+		return pooled;
+	}
+}
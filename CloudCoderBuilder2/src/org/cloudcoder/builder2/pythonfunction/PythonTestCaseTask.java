@@ -26,9 +26,11 @@ import org.cloudcoder.app.shared.model.TestResult;
 import org.cloudcoder.builder2.javasandbox.IsolatedTask;
 import org.cloudcoder.builder2.javasandbox.IsolatedTaskWithCompilerDiagnostic;
 import org.cloudcoder.builder2.util.TestResultUtil;
+import org.python.core.Py;
 import org.python.core.PyException;
 import org.python.core.PyFunction;
 import org.python.core.PyObject;
+import org.python.core.PySystemState;
 
 /**
  * An {@link IsolatedTask} for executing a python test case.
@@ -41,6 +43,7 @@ public class PythonTestCaseTask implements IsolatedTaskWithCompilerDiagnostic<Te
 	private final PyFunction func;
 	private final PyObject true1;
 	private final Problem problem;
+	private final PySystemState systemState;
 	private CompilerDiagnostic compilerDiagnostic;
 
 	/**
@@ -50,17 +53,27 @@ public class PythonTestCaseTask implements IsolatedTaskWithCompilerDiagnostic<Te
 	 * @param func     the {@link PyFunction}
 	 * @param true1    Python True object
 	 * @param problem  the {@link Problem}
+	 * @param systemState the {@link PySystemState} of the interpreter in which
+	 *                    the function was defined
 	 */
-	public PythonTestCaseTask(TestCase tc, PyFunction func, PyObject true1, Problem problem) {
+	public PythonTestCaseTask(TestCase tc, PyFunction func, PyObject true1, Problem problem, PySystemState systemState) {
 		this.tc = tc;
 		this.func = func;
 		this.true1 = true1;
 		this.problem = problem;
+		this.systemState = systemState;
 	}
 
 	@Override
 	public TestResult execute() {
-		return executeTestCase(problem, tc, true1, func);
+		// Python code executed by this thread (e.g., print statements)
+		// must use the interpreter's system state (e.g., sys.stdout)
+		PySystemState prevSystemState = Py.setSystemState(systemState);
+		try {
+			return executeTestCase(problem, tc, true1, func);
+		} finally {
+			Py.setSystemState(prevSystemState);
+		}
 	}
 	
 	@Override
@@ -65,7 +65,7 @@ public class TestPythonFunctionBuildStep implements IBuildStep {
 
 	@Override
 	public void execute(BuilderSubmission submission, Properties config) {
-		SubmissionResult result = testSubmission(submission);
+		SubmissionResult result = testSubmission(submission, PythonInterpreterPool.getInstance(config));
 		submission.addArtifact(result);
 	}
 
@@ -73,9 +73,10 @@ public class TestPythonFunctionBuildStep implements IBuildStep {
 	 * Test a {@link ProblemType#PYTHON_FUNCTION} submission.
 	 * 
 	 * @param submission the submission
+	 * @param interpreterPool the {@link PythonInterpreterPool}
 	 * @return the {@link SubmissionResult}
 	 */
-	private SubmissionResult testSubmission(BuilderSubmission submission) {
+	private SubmissionResult testSubmission(BuilderSubmission submission, PythonInterpreterPool interpreterPool) {
 		final Problem problem = submission.requireArtifact(this.getClass(), Problem.class);
 		
 		ProgramSource[] programSourceList = submission.requireArtifact(TestPythonFunctionBuildStep.class, ProgramSource[].class);
@@ -91,85 +92,101 @@ public class TestPythonFunctionBuildStep implements IBuildStep {
 		TestCase[] testCaseList_ = submission.requireArtifact(TestPythonFunctionBuildStep.class, TestCase[].class);
 		List<TestCase> testCaseList= Arrays.asList(testCaseList_);
 
-		final byte[] sBytes = programText.getBytes();
-
-		// Check if the Python code is syntactically correct.
-		// Because Python is a dynamic language, this will only find invalid syntax,
-		// unknown imports, and similar issues.
-		CompilationResult compres = compilePythonScript(problem, programSource);
-		if (compres.getOutcome() != CompilationOutcome.SUCCESS) {
-			compres.adjustDiagnosticLineNumbers(programSource.getPrologueLength(), programSource.getEpilogueLength());
-			return new SubmissionResult(compres);
-		}
+		// Get a Python interpreter from the pool
+		PythonInterpreterPool.PooledInterpreter pooled = interpreterPool.borrow();
+		boolean reusable = false;
+		try {
+			// Execute our script in the interpreter, which checks whether the
+			// Python code is syntactically correct.
+			// Because Python is a dynamic language, this will only find invalid syntax,
+			// unknown imports, and similar issues.
+			// Note that our script will have all statements outside of a function
+			// stripped out (except for import statements) so no global variables
+			final PythonInterpreter terp=pooled.getInterpreter();
+			CompilationResult compres = compilePythonScript(problem, programSource, terp);
+			if (compres.getOutcome() != CompilationOutcome.SUCCESS) {
+				compres.adjustDiagnosticLineNumbers(programSource.getPrologueLength(), programSource.getEpilogueLength());
+				reusable = true;
+				return new SubmissionResult(compres);
+			}
 		
-		// Create a Python interpreter, load True from the interpreter
-		// then execute our script.
-		// Note that our script will have all statements outside of a function
-		// stripped out (except for import statements) so no global variables
-		final PythonInterpreter terp=new PythonInterpreter();
-		final PyObject True=terp.eval("True");
-		// won't throw an exception because we checked it at the top of
-		// the method to make sure the code will compile
-		terp.execfile(new ByteArrayInputStream(sBytes));
+			// Load True from the interpreter
+			final PyObject True=terp.eval("True");
 
-		// Create PythonTestCaseTasks, one to execute each test case function
-		List<PythonTestCaseTask> tasks=new ArrayList<PythonTestCaseTask>();
-		for (final TestCase t : testCaseList) {
-		    // pull out the function associated with this particular test case
-            final PyFunction func=(PyFunction)terp.get(t.getTestCaseName(), PyFunction.class);
-			tasks.add(new PythonTestCaseTask(t, func, True, problem));
-		}
+			// Create PythonTestCaseTasks, one to execute each test case function
+			List<PythonTestCaseTask> tasks=new ArrayList<PythonTestCaseTask>();
+			for (final TestCase t : testCaseList) {
+			    // pull out the function associated with this particular test case
+	            final PyFunction func=(PyFunction)terp.get(t.getTestCaseName(), PyFunction.class);
+				tasks.add(new PythonTestCaseTask(t, func, True, problem, pooled.getSystemState()));
+			}
 
-		// Create a PythonKillableTaskManager to execute the test case tasks
-		PythonKillableTaskManager<TestResult> pool=new PythonKillableTaskManager<TestResult>(
-				tasks, 
-				TIMEOUT_LIMIT,
-				new TimeoutHandler<TestResult>() {
-					@Override
-					public TestResult handleTimeout() {
-						return TestResultUtil.createResultForTimeout();
-					}
-				},
-				terp);
+			// Create a PythonKillableTaskManager to execute the test case tasks
+			PythonKillableTaskManager<TestResult> pool=new PythonKillableTaskManager<TestResult>(
+					tasks, 
+					TIMEOUT_LIMIT,
+					new TimeoutHandler<TestResult>() {
+						@Override
+						public TestResult handleTimeout() {
+							return TestResultUtil.createResultForTimeout();
+						}
+					},
+					terp);
 
-		// run each task in a separate thread
-		pool.run();
+			// run each task in a separate thread
+			pool.run();
+		
+			// If any task didn't complete (e.g., it timed out), the interpreter
+			// may be in an inconsistent state, so it shouldn't be reused
+			reusable = true;
+			for (int i = 0; i < tasks.size(); i++) {
+				if (!pool.isFinished(i)) {
+					reusable = false;
+				}
+			}
 		
-		// Collect any CompilerDiagnostics that may have been reported.
-		// Because Python is a dynamic language, some errors that would be
-		// found before the program runs in static languages,
-		// such as references to undefined variables, are only found
-		// at runtime.  We use a HashSet to de-duplicate the CompilerDiagnostics,
-		// since the same error may be found by multiple tests.
-		List<CompilerDiagnostic> dynamicCompilerDiagnosticList = SandboxUtil.collectDynamicCompilerDiagnostics(tasks);
+			// Collect any CompilerDiagnostics that may have been reported.
+			// Because Python is a dynamic language, some errors that would be
+			// found before the program runs in static languages,
+			// such as references to undefined variables, are only found
+			// at runtime.  We use a HashSet to de-duplicate the CompilerDiagnostics,
+			// since the same error may be found by multiple tests.
+			List<CompilerDiagnostic> dynamicCompilerDiagnosticList = SandboxUtil.collectDynamicCompilerDiagnostics(tasks);
 
-		// Merge outcomes with their buffered inputs for stdout/stderr
-		List<TestResult> testResults=SandboxUtil.getStdoutStderr(pool);
+			// Merge outcomes with their buffered inputs for stdout/stderr
+			List<TestResult> testResults=SandboxUtil.getStdoutStderr(pool);
 		
-		// Construct a CompilationResult
-		CompilationResult compilationResult = SandboxUtil.createDynamicCompilationResult(
-				programSource, dynamicCompilerDiagnosticList);
+			// Construct a CompilationResult
+			CompilationResult compilationResult = SandboxUtil.createDynamicCompilationResult(
+					programSource, dynamicCompilerDiagnosticList);
 		
-		// Construct a SubmissionResult
-		SubmissionResult result=new SubmissionResult(compilationResult);
-		result.setTestResults(testResults.toArray(new TestResult[testResults.size()]));
-		return result;
+			// Construct a SubmissionResult
+			SubmissionResult result=new SubmissionResult(compilationResult);
+			result.setTestResults(testResults.toArray(new TestResult[testResults.size()]));
+			return result;
+		} finally {
+			interpreterPool.release(pooled, reusable);
+			if (logger.isDebugEnabled()) {
+				logger.debug("Python interpreter pool: {}", interpreterPool.getStatusSummary());
+			}
+		}
 	}
 
 	/**
 	 * "Compile" scaffolded python code to detect syntax errors, missing imports, and
-	 * other "static" errors.
+	 * other "static" errors.  The code is executed in the given interpreter,
+	 * so if compilation is successful, the interpreter is ready to run the tests.
 	 * 
 	 * @param problem       the {@link Problem}
 	 * @param programSource the scaffolded code
+	 * @param terp          the {@link PythonInterpreter} in which to execute the code
 	 * @return the {@link CompilationResult}
 	 */
-	private CompilationResult compilePythonScript(Problem problem, ProgramSource programSource) {
+	private CompilationResult compilePythonScript(Problem problem, ProgramSource programSource, PythonInterpreter terp) {
 		String programText = programSource.getProgramText();
 		
 		try {
 		    logger.info("\n"+programText);
-			PythonInterpreter terp=new PythonInterpreter();
 			terp.execfile(new ByteArrayInputStream(programText.getBytes()));
 			
 			// Check to see if the test code actually defines the required
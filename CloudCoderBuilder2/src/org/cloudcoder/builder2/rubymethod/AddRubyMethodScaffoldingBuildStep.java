@@ -33,6 +33,8 @@ import org.cloudcoder.builder2.util.StringUtil;
  * Replaces the {@link ProgramSource} submission artifact with one that appends
  * the submitted Ruby method and also appends a <code>_test</code> method which takes
  * a test case name as a parameter and returns true or false (passed/failed).
+ * Also adds a {@link RubyTestHarness} artifact, which separates the
+ * submitted code from the generated <code>_test</code> method.
  * 
  * @author David Hovemeyer
  */
@@ -54,11 +56,10 @@ public class AddRubyMethodScaffoldingBuildStep implements IBuildStep {
 		
 		TestCase[] testCaseList = submission.requireArtifact(this.getClass(), TestCase[].class);
 		
-		StringBuilder buf = new StringBuilder();
+		// Method defined in user submission
+		String submissionText = programText + "\n";
 		
-		// Add method defined in user submission
-		buf.append(programText);
-		buf.append("\n");
+		StringBuilder buf = new StringBuilder();
 
 		// Add _test method to execute test with given testname
 		// and return a boolean result (passed/failed)
@@ -96,7 +97,8 @@ end
 		
 		buf.append("end\n"); // end _test method
 		
-		String scaffoldedProgramText = buf.toString();
+		String harnessText = buf.toString();
+		String scaffoldedProgramText = submissionText + harnessText;
 		//System.out.println(scaffoldedProgramText);
 		
 		int scaffoldedNumLines = StringUtil.countLines(scaffoldedProgramText);
@@ -105,6 +107,7 @@ end
 		
 		ProgramSource scaffoldedProgramSource = new ProgramSource(scaffoldedProgramText, 0, epilogueLength);
 		submission.addArtifact(new ProgramSource[]{scaffoldedProgramSource});
+		submission.addArtifact(new RubyTestHarness(submissionText, harnessText, StringUtil.countLines(submissionText)));
 	}
 
 }
@@ -1,6 +1,5 @@
 package org.cloudcoder.builder2.rubymethod;
 
-import java.io.PrintStream;
 import java.util.List;
 
 import org.cloudcoder.builder2.javasandbox.AbstractKillableTaskManager;
@@ -12,8 +11,6 @@ import org.jruby.embed.ScriptingContainer;
 public class RubyKillableTaskManager<T> extends AbstractKillableTaskManager<T>
 {
     private ScriptingContainer container;
-    private final PrintStream stdout;
-    private final PrintStream stderr;
     
     public RubyKillableTaskManager(List<? extends IsolatedTask<T>> tasks, 
         long maxRunTime, 
@@ -22,20 +19,26 @@ public class RubyKillableTaskManager<T> extends AbstractKillableTaskManager<T>
     {
         super(tasks, maxRunTime, timeoutHandler);
         this.container=container;
-        stdout=container.getOutput();
-        stderr=container.getError();
     }
     
     @Override
     public void redirectStandardOutputStreams() {
-        stdOutMonitor=new ThreadedPrintStreamMonitor(stdout);
-        stdErrMonitor=new ThreadedPrintStreamMonitor(stderr);
-        container.setOutput(stdOutMonitor);
-        container.setError(stdErrMonitor);
+        // The container may be shared by submissions running at the same
+        // time, so it uses the shared monitors, and they are never removed
+        stdOutMonitor=ThreadedPrintStreamMonitor.getStdout();
+        stdErrMonitor=ThreadedPrintStreamMonitor.getStderr();
+        synchronized (container) {
+            if (container.getOutput()!=stdOutMonitor) {
+                container.setOutput(stdOutMonitor);
+            }
+            if (container.getError()!=stdErrMonitor) {
+                container.setError(stdErrMonitor);
+            }
+        }
     }
     @Override
     public void unredirectStandardOutputStreams() {
-        container.setOutput(stdout);
-        container.setError(stderr);
+        // Nothing to do: the shared monitors stay in place, and
+        // output from threads that aren't capturing output is passed through
     }
 }
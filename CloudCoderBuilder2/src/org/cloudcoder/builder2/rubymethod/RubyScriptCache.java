@@ -0,0 +1,215 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2013, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2013, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.rubymethod;
+
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.cloudcoder.app.shared.model.ConvertBytesToHex;
+import org.cloudcoder.builder2.util.SingletonHolder;
+import org.jruby.embed.EmbedEvalUnit;
+import org.jruby.embed.ScriptingContainer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of parsed Ruby scripts ({@link EmbedEvalUnit}s), keyed by
+ * the SHA-1 hash of the script text.  It is used to avoid re-parsing
+ * the test harness generated by {@link AddRubyMethodScaffoldingBuildStep},
+ * which is the same for every submission to a given problem.
+ * Least-recently-used entries are evicted when either the number of
+ * cached scripts or their total size (in characters) exceeds the
+ * configured limit.
+ *
+ * <p>Cached scripts are parsed using {@link #CACHED_SCRIPT_FILENAME} as the
+ * file name and starting at line 1, so that they don't depend on
+ * where the script appears in the scaffolded program.  Code reporting
+ * line numbers (see {@link RubyTester}) should translate line numbers
+ * in {@link #CACHED_SCRIPT_FILENAME} as appropriate.
+ *
+ * <p>Configuration properties:
+ * <ul>
+ * <li><b>cloudcoder.builder2.ruby.scriptCache.maxEntries</b>: maximum number
+ *     of cached scripts (default 256)</li>
+ * <li><b>cloudcoder.builder2.ruby.scriptCache.maxChars</b>: maximum total
+ *     size of the cached scripts, in characters (default 4194304)</li>
+ * </ul>
+ *
+ * @author David Hovemeyer
+ */
+public class RubyScriptCache {
+	private static final Logger logger = LoggerFactory.getLogger(RubyScriptCache.class);
+
+	/**
+	 * File name used when parsing cached scripts.
+	 */
+	public static final String CACHED_SCRIPT_FILENAME = "_test_harness.rb";
+
+	private static final SingletonHolder<RubyScriptCache, Properties> holder = new SingletonHolder<RubyScriptCache, Properties>() {
+		@Override
+		protected RubyScriptCache onCreate(Properties arg) {
+			return new RubyScriptCache(arg);
+		}
+	};
+
+	/**
+	 * Get the singleton instance.
+	 *
+	 * @param config configuration properties
+	 * @return the singleton instance
+	 */
+	public static RubyScriptCache getInstance(Properties config) {
+		return holder.get(config);
+	}
+
+	/**
+	 * Get the singleton instance, creating it with the default configuration
+	 * if {@link #getInstance(Properties)} has not been called yet.
+	 *
+	 * @return the singleton instance
+	 */
+	public static RubyScriptCache getInstance() {
+		return holder.get(new Properties());
+	}
+
+	private static class Entry {
+		final EmbedEvalUnit unit;
+		final int size;
+
+		Entry(EmbedEvalUnit unit, int size) {
+			this.unit = unit;
+			this.size = size;
+		}
+	}
+
+	private final int maxEntries;
+	private final long maxChars;
+	private final LinkedHashMap<String, Entry> map;
+	private long totalChars;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	private RubyScriptCache(Properties config) {
+		this.maxEntries = Integer.parseInt(config.getProperty("cloudcoder.builder2.ruby.scriptCache.maxEntries", "256"));
+		this.maxChars = Long.parseLong(config.getProperty("cloudcoder.builder2.ruby.scriptCache.maxChars", "4194304"));
+		this.map = new LinkedHashMap<String, Entry>(16, 0.75f, true); // access order, for LRU eviction
+	}
+
+	/**
+	 * Get the parsed form of given script, parsing it (and adding it
+	 * to the cache) if it is not already cached.
+	 * Note that a parse error results in a runtime exception
+	 * (e.g., {@link org.jruby.embed.ParseFailedException}): scripts which
+	 * can't be parsed are not cached.
+	 *
+	 * @param container  the {@link ScriptingContainer} in which the script will be run
+	 * @param scriptText the script text
+	 * @return the {@link EmbedEvalUnit}
+	 */
+	public EmbedEvalUnit get(ScriptingContainer container, String scriptText) {
+		String key = computeKey(scriptText);
+		synchronized (this) {
+			Entry entry = map.get(key);
+			if (entry != null) {
+				hits++;
+				return entry.unit;
+			}
+			misses++;
+		}
+
+		// Parse without holding the lock.  If another thread is parsing the
+		// same script concurrently, the last one to finish wins, which is fine.
+		EmbedEvalUnit unit = container.parse(new StringReader(scriptText), CACHED_SCRIPT_FILENAME, 0);
+
+		synchronized (this) {
+			if (scriptText.length() <= maxChars && maxEntries > 0) {
+				Entry old = map.put(key, new Entry(unit, scriptText.length()));
+				if (old != null) {
+					totalChars -= old.size;
+				}
+				totalChars += scriptText.length();
+				evict();
+			}
+		}
+		return unit;
+	}
+
+	/**
+	 * @return number of scripts in the cache
+	 */
+	public synchronized int size() {
+		return map.size();
+	}
+
+	/**
+	 * @return number of requests satisfied from the cache
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return number of requests which required parsing the script
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return a one-line summary of the cache statistics
+	 */
+	public synchronized String getStatusSummary() {
+		long total = hits + misses;
+		double hitRate = total > 0 ? (100.0 * hits) / total : 0.0;
+		return String.format("entries=%d, chars=%d, hits=%d, misses=%d, hitRate=%.1f%%, evictions=%d",
+				map.size(), totalChars, hits, misses, hitRate, evictions);
+	}
+
+	/**
+	 * Evict least-recently-used entries until the cache is within its limits.
+	 * Must be called with the lock held.
+	 */
+	private void evict() {
+		Iterator<Map.Entry<String, Entry>> i = map.entrySet().iterator();
+		while ((map.size() > maxEntries || totalChars > maxChars) && i.hasNext()) {
+			Entry victim = i.next().getValue();
+			i.remove();
+			totalChars -= victim.size;
+			evictions++;
+			logger.debug("Evicted cached Ruby script ({} chars)", victim.size);
+		}
+	}
+
+	private static String computeKey(String scriptText) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			return new ConvertBytesToHex(md.digest(scriptText.getBytes("UTF-8"))).convert();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 not supported", e);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 not supported", e);
+		}
+	}
+}
@@ -0,0 +1,71 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2013, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2013, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.rubymethod;
+
+/**
+ * Artifact produced by {@link AddRubyMethodScaffoldingBuildStep}
+ * which separates the scaffolded program text into the submitted
+ * method(s) and the generated <code>_test</code> method.
+ * The test harness depends only on the problem and its test cases,
+ * so (unlike the submitted code) its parsed form can be reused
+ * from one submission to the next: see {@link RubyScriptCache}.
+ *
+ * @author David Hovemeyer
+ */
+public class RubyTestHarness {
+	private final String submissionText;
+	private final String harnessText;
+	private final int harnessStartLine;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param submissionText   the submitted code
+	 * @param harnessText      the generated test harness code
+	 * @param harnessStartLine number of lines of the scaffolded program preceding
+	 *                         the test harness
+	 */
+	public RubyTestHarness(String submissionText, String harnessText, int harnessStartLine) {
+		this.submissionText = submissionText;
+		this.harnessText = harnessText;
+		this.harnessStartLine = harnessStartLine;
+	}
+
+	/**
+	 * @return the submitted code
+	 */
+	public String getSubmissionText() {
+		return submissionText;
+	}
+
+	/**
+	 * @return the generated test harness code
+	 */
+	public String getHarnessText() {
+		return harnessText;
+	}
+
+	/**
+	 * @return number of lines of the scaffolded program preceding the test harness:
+	 *         add this to a line number in the test harness to get the
+	 *         corresponding line number in the scaffolded program
+	 */
+	public int getHarnessStartLine() {
+		return harnessStartLine;
+	}
+}
@@ -47,6 +47,7 @@ public class RubyTester implements IsolatedTaskWithCompilerDiagnostic<TestResult
 	private Object receiver;
 	private Problem problem;
 	private TestCase testCase;
+	private int harnessStartLine;
 	private CompilerDiagnostic compilerDiagnostic;
 	
 	/**
@@ -56,12 +57,15 @@ public class RubyTester implements IsolatedTaskWithCompilerDiagnostic<TestResult
 	 * @param receiver   the test scriptlet receiver object
 	 * @param problem    the {@link Problem}
 	 * @param testCase   the {@link TestCase} to execute
+	 * @param harnessStartLine line offset to add to line numbers in the
+	 *                   test harness if it was run from the {@link RubyScriptCache}
 	 */
-	public RubyTester(ScriptingContainer container, Object receiver, Problem problem, TestCase testCase) {
+	public RubyTester(ScriptingContainer container, Object receiver, Problem problem, TestCase testCase, int harnessStartLine) {
 		this.container = container;
 		this.receiver = receiver;
 		this.problem = problem;
 		this.testCase = testCase;
+		this.harnessStartLine = harnessStartLine;
 	}
 
 	@Override
@@ -82,6 +86,10 @@ public class RubyTester implements IsolatedTaskWithCompilerDiagnostic<TestResult
 				RaiseException cause = (RaiseException) cause_;
 				StackTraceElement[] stackTrace = cause.getStackTrace();
 				int line = stackTrace[0].getLineNumber();
+				if (RubyScriptCache.CACHED_SCRIPT_FILENAME.equals(stackTrace[0].getFileName())) {
+					// Convert to a line number in the scaffolded program
+					line += harnessStartLine;
+				}
 				compilerDiagnostic = new CompilerDiagnostic(line, line, 1, 1, cause.getMessage());
 				message = cause.getMessage();
 			} else {
@@ -36,6 +36,7 @@ import org.cloudcoder.builder2.model.InternalBuilderException;
 import org.cloudcoder.builder2.model.ProgramSource;
 import org.cloudcoder.builder2.util.ArrayUtil;
 import org.cloudcoder.builder2.util.TestResultUtil;
+import org.jruby.embed.EmbedEvalUnit;
 import org.jruby.embed.EvalFailedException;
 import org.jruby.embed.LocalContextScope;
 import org.jruby.embed.ParseFailedException;
@@ -64,10 +65,11 @@ public class TestRubyMethodBuildStep implements IBuildStep {
 	// IsolatedTask, and create the ScriptingContainer.
 	static {
 		TestResultUtil.createResultForTimeout();
+		new CompilerDiagnostic(1, 1, 1, 1, "");
 		//TODO cannot execute any code with ruby before redirecting
 		container = new ScriptingContainer(LocalContextScope.CONCURRENT);
 		container.runScriptlet("true");
-		new RubyTester(container, new Object(), new Problem(), new TestCase());
+		new RubyTester(container, new Object(), new Problem(), new TestCase(), 0);
 	}
 
 	@Override
@@ -85,13 +87,23 @@ public class TestRubyMethodBuildStep implements IBuildStep {
 		// Get TestCase list
 		TestCase[] testCaseList = submission.requireArtifact(this.getClass(), TestCase[].class);
 		
+		// Get the test harness, if the scaffolding step separated it
+		// from the submitted code
+		RubyTestHarness harness = submission.getArtifact(RubyTestHarness.class);
+		int harnessStartLine = 0;
+		
 		// Compile the test scriptlet
 		// TODO: do this in a sandbox?
 		final Object receiver;
 		try {
 			logger.info("Test source:");
 			logger.info(testSource);
-			receiver = container.runScriptlet(testSource);
+			if (harness != null) {
+				receiver = runSubmissionAndHarness(harness, testSource, RubyScriptCache.getInstance(config));
+				harnessStartLine = harness.getHarnessStartLine();
+			} else {
+				receiver = container.runScriptlet(testSource);
+			}
 			System.out.println("Object returned by compilation: " + receiver);
 		} catch (ParseFailedException e) {
 			CompilerDiagnostic diag = createRubyCompilerDiagnostic(e);
@@ -112,7 +124,7 @@ public class TestRubyMethodBuildStep implements IBuildStep {
 		// Create a RubyTester in an IsolatedTask for each TestCase
 		List<RubyTester> tasks = new ArrayList<RubyTester>();
 		for (final TestCase testCase : testCaseList) {
-			RubyTester task = new RubyTester(container, receiver, problem, testCase);
+			RubyTester task = new RubyTester(container, receiver, problem, testCase, harnessStartLine);
 			tasks.add(task);
 		}
 		
@@ -145,6 +157,37 @@ public class TestRubyMethodBuildStep implements IBuildStep {
 		submission.addArtifact(ArrayUtil.toArray(testResults, TestResult.class));
 	}
 
+	/**
+	 * Run the submitted code, then the test harness.  The submitted code
+	 * is parsed fresh, but the parsed test harness is reused from the
+	 * {@link RubyScriptCache}, since it is the same for every submission
+	 * to the same problem.
+	 * 
+	 * @param harness     the {@link RubyTestHarness}
+	 * @param testSource  the complete scaffolded program text
+	 * @param scriptCache the {@link RubyScriptCache}
+	 * @return the object returned by running the test harness
+	 */
+	private Object runSubmissionAndHarness(RubyTestHarness harness, String testSource, RubyScriptCache scriptCache) {
+		EmbedEvalUnit harnessUnit;
+		try {
+			harnessUnit = scriptCache.get(container, harness.getHarnessText());
+		} catch (ParseFailedException e) {
+			// Probably a problem with the test case inputs or outputs.
+			// Run the complete program so that the reported line number
+			// refers to the scaffolded program.
+			return container.runScriptlet(testSource);
+		}
+		
+		container.runScriptlet(harness.getSubmissionText());
+		Object receiver = harnessUnit.run();
+		
+		if (logger.isDebugEnabled()) {
+			logger.debug("Ruby script cache: {}", scriptCache.getStatusSummary());
+		}
+		return receiver;
+	}
+
 	private void failedCompilation(BuilderSubmission submission,
 			CompilerDiagnostic diag) {
 		CompilationResult compres = new CompilationResult(CompilationOutcome.FAILURE);
@@ -24,6 +24,12 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
 
+import org.cloudcoder.builder2.commandrunner.CommandExecutionScheduler;
+import org.cloudcoder.builder2.javacompiler.JavaCompilerService;
+import org.cloudcoder.builder2.javasandbox.SandboxExecutor;
+import org.cloudcoder.builder2.process.ProcessLauncher;
+import org.cloudcoder.builder2.pythonfunction.PythonInterpreterPool;
+import org.cloudcoder.builder2.rubymethod.RubyScriptCache;
 import org.cloudcoder.builder2.util.DeleteDirectoryRecursively;
 import org.cloudcoder.daemon.IDaemon;
 import org.cloudcoder.daemon.Util;
@@ -76,6 +82,10 @@ public class Builder2Daemon implements IDaemon {
 			return Integer.parseInt(config.getProperty("cloudcoder.submitsvc.oop.numThreads", "2"));
 		}
 		
+		public int getNumConnections() {
+			return Integer.parseInt(config.getProperty("cloudcoder.submitsvc.oop.numConnections", "1"));
+		}
+		
 		public boolean useSSL() {
 			return Boolean.parseBoolean(config.getProperty("cloudcoder.submitsvc.oop.ssl.useSSL", "true"));
 		}
@@ -153,11 +163,16 @@ public class Builder2Daemon implements IDaemon {
 		logger.info("appHost={}", options.getAppHost());
 		logger.info("appPort={}", options.getAppPort());
 		logger.info("numThreads={}", options.getNumThreads());
+		logger.info("numConnections={}", options.getNumConnections());
 		
-		// Start Builder threads
+		// Start Builder server loops: each has a connection to the webapp,
+		// and the threads used to test submissions are divided among them.
+		int numThreads = Math.max(1, options.getNumThreads());
+		int numConnections = Math.max(1, Math.min(options.getNumConnections(), numThreads));
 		this.builderAndThreadList = new ArrayList<BuilderAndThread>();
-		for (int i = 0; i < options.getNumThreads(); i++) {
-			Builder2Server builder_ = new Builder2Server(webappSocketFactory, config);
+		for (int i = 0; i < numConnections; i++) {
+			int numSlots = numThreads / numConnections + (i < numThreads % numConnections ? 1 : 0);
+			Builder2Server builder_ = new Builder2Server(webappSocketFactory, config, numSlots);
 			Thread thread_ = new Thread(builder_);
 		
 			BuilderAndThread builderAndThread = new BuilderAndThread(builder_, thread_);
@@ -172,7 +187,19 @@ public class Builder2Daemon implements IDaemon {
 	 */
 	@Override
 	public void handleCommand(String command) {
-		// Right now the Builder has no runtime configuration commands
+		if (command.trim().equals("stats")) {
+			// Report sandbox executor gauges
+			logger.info("Sandbox executor: {}", SandboxExecutor.getInstance().getStatusSummary());
+			logger.info("Python interpreter pool: {}", PythonInterpreterPool.getInstance().getStatusSummary());
+			logger.info("Java compiler: {}", JavaCompilerService.getInstance().getStatusSummary());
+			logger.info("Ruby script cache: {}", RubyScriptCache.getInstance().getStatusSummary());
+			logger.info("Problem cache: {}", ProblemAndTestCaseCache.getInstance().getStatusSummary());
+			logger.info("Command execution: {}", CommandExecutionScheduler.getInstance().getStatusSummary());
+			if (ProcessLauncher.isCreated()) {
+				logger.info("Process launcher: {}", ProcessLauncher.getInstance().getStatusSummary());
+			}
+			return;
+		}
 		logger.warn("Builder received unknown command " + command);
 	}
 
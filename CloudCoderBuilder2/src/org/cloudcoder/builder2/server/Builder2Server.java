@@ -23,8 +23,17 @@ import java.io.InputStreamReader;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.SubmissionResult;
@@ -39,13 +48,23 @@ import org.slf4j.LoggerFactory;
  * For each submission received, it compiles it, tests it,
  * and reports back a SubmissionResult.
  * 
+ * <p>Each Builder2Server has a single connection to the webapp, and
+ * a fixed number of slot threads which test submissions.  The number
+ * of slots is advertised to the webapp when the connection is made,
+ * and the webapp sends up to that many submissions at a time,
+ * each identified by a tag.  The server loop reads submissions and
+ * hands them to the slot threads, which send back the results
+ * (with the same tags) as testing completes.  See the
+ * <code>WorkerTask</code> class in the webapp's out of process
+ * submit service for a description of the protocol.
+ * 
  * @author David Hovemeyer
  * @author Jaime Spacco
  */
 public class Builder2Server implements Runnable {
 	/**
 	 * The maximum amount of time that the watchdog thread will
-	 * allow a wait for a problem id or keepalive signal from 
+	 * allow a wait for a message or keepalive signal from 
 	 * the webapp.  If the wait becomes longer then we will
 	 * assume that the connection between the builder and
 	 * the webapp has been broken and the watchdog will force
@@ -54,34 +73,87 @@ public class Builder2Server implements Runnable {
 	private static final long MAX_WAIT_MS = 60000L; // after 1 minute of waiting, assume connection is bad
 
 	/**
-	 * Runnable for watchdog thread.
+	 * Timer used to run the watchdogs of all of the server loops.
+	 * (The holder class means that the timer thread is only
+	 * created when it is first needed.)
+	 */
+	private static class WatchdogTimerHolder {
+		static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Builder2Server watchdog");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Watchdog task.  Rather than waking up periodically, it schedules
+	 * itself to run when the server loop's current wait for a message
+	 * would exceed {@link #MAX_WAIT_MS}.
 	 */
 	private class Watchdog implements Runnable {
+		@Override
+		public void run() {
+			long delay = MAX_WAIT_MS;
+			
+			// Check the current state.
+			// If the server loop is not waiting for a keepalive signal,
+			// then DON'T MESS WITH IT.
+			StateData stateData = stateManager.getStateData();
+			if (stateData.getState() == State.WAITING_FOR_KEEPALIVE) {
+				// See how long the server loop has been waiting.
+				long waitTime = System.currentTimeMillis() - stateData.getTs();
+				if (waitTime > MAX_WAIT_MS) {
+					// The server loop has waited too long to receive a
+					// message / keepalive signal.  Force a reconnect.
+					logger.warn("Watchdog: {} ms without keepalive, forcing reconnect", waitTime);
+					connectionManager.forceClose();
+				} else {
+					// Check again when the wait will have become too long
+					delay = MAX_WAIT_MS - waitTime + 1;
+				}
+			}
+			
+			scheduleWatchdog(delay);
+		}
+	}
+
+	/**
+	 * Runnable for slot threads: tests submissions received by the
+	 * server loop, and sends the results back to the webapp.
+	 */
+	private class Slot implements Runnable {
+		private Builder2 builder2;
+
+		public Slot(Properties config) {
+			this.builder2 = new Builder2(config);
+		}
+
 		@Override
 		public void run() {
 			try {
-				while (!shutdownRequested) {
-					Thread.sleep(10000L);
-					
-					// Check the current state.
-					// If the server loop is not waiting for a keepalive signal,
-					// then DON'T MESS WITH IT.
-					StateData stateData = stateManager.getStateData();
-					if (stateData.getState() != State.WAITING_FOR_KEEPALIVE) {
-						continue;
-					}
-					
-					// See how long the server loop has been waiting.
-					long waitTime = System.currentTimeMillis() - stateData.getTs();
-					if (waitTime > MAX_WAIT_MS) {
-						// The server loop has waited too long to receive the
-						// problem id / keepalive signal.  Force a reconnect.
-						logger.warn("Watchdog: {} ms without keepalive, forcing reconnect", waitTime);
-						connectionManager.forceClose();
+				while (true) {
+					PendingSubmission pending = workQueue.take();
+					try {
+						// Test the submission!
+						SubmissionResult result = builder2.testSubmission(
+								pending.problem, pending.testCaseList, pending.programText);
+
+						// Send the SubmissionResult back to the webapp
+						pending.conn.send(pending.tag, result);
+					} catch (IOException e) {
+						// The server loop will notice that the connection is broken
+						// and reconnect: the webapp will resend the submission.
+						logger.error("Error sending submission result to server", e);
+						connectionManager.forceClose(pending.conn);
+					} finally {
+						onSubmissionFinished();
 					}
 				}
 			} catch (InterruptedException e) {
-				logger.info("Watchdog interrupted, shutting down...");
+				logger.info("Slot thread interrupted, shutting down...");
 			}
 		}
 	}
@@ -100,17 +172,8 @@ public class Builder2Server implements Runnable {
 		ATTEMPTING_TO_CONNECT,
 		/** Connected to the webapp. */
 		CONNECTED,
-		/** Server loop is waiting for a keepalive signal from the webapp. */
-		WAITING_FOR_KEEPALIVE,
-		/** Actively working on building/testing a submission. */
-		WORKING;
-
-		/**
-		 * @return true if it is safe to shutdown, false if not
-		 */
-		public boolean allowShutdown() {
-			return this != WORKING;
-		}
+		/** Server loop is waiting for a message or keepalive signal from the webapp. */
+		WAITING_FOR_KEEPALIVE
 	}
 	
 	/**
@@ -167,11 +230,13 @@ public class Builder2Server implements Runnable {
 		private ISocket socket;
 		private ObjectInputStream in;
 		private ObjectOutputStream out;
+		private Map<Integer, PendingSubmission> awaitingProblem;
 		
 		public Connection(ISocket socket, ObjectInputStream in, ObjectOutputStream out) {
 			this.socket = socket;
 			this.in = in;
 			this.out = out;
+			this.awaitingProblem = new HashMap<Integer, PendingSubmission>();
 		}
 
 		public ISocket getSocket() {
@@ -185,6 +250,56 @@ public class Builder2Server implements Runnable {
 		public ObjectOutputStream getOut() {
 			return out;
 		}
+		
+		/**
+		 * Get the map of submissions (by tag) for which the Problem
+		 * and TestCases have been requested from the webapp.
+		 * Only accessed by the server loop.
+		 * 
+		 * @return map of submissions waiting for their Problem and TestCases
+		 */
+		public Map<Integer, PendingSubmission> getAwaitingProblem() {
+			return awaitingProblem;
+		}
+		
+		/**
+		 * Send a message to the webapp.  The output stream is reset after
+		 * each message, so that objects written to the connection
+		 * (which is long-lived) can be garbage collected.
+		 * 
+		 * @param msg the objects making up the message
+		 * @throws IOException
+		 */
+		public void send(Object... msg) throws IOException {
+			synchronized (out) {
+				for (Object obj : msg) {
+					out.writeObject(obj);
+				}
+				out.reset();
+				out.flush();
+			}
+		}
+	}
+	
+	/**
+	 * A submission received from the webapp.
+	 */
+	private static class PendingSubmission {
+		final Connection conn;
+		final Integer tag;
+		final int problemId;
+		final String versionHash;
+		final String programText;
+		Problem problem;
+		List<TestCase> testCaseList;
+		
+		public PendingSubmission(Connection conn, Integer tag, int problemId, String versionHash, String programText) {
+			this.conn = conn;
+			this.tag = tag;
+			this.problemId = problemId;
+			this.versionHash = versionHash;
+			this.programText = programText;
+		}
 	}
 	
 	/**
@@ -229,7 +344,19 @@ public class Builder2Server implements Runnable {
 		public void forceClose() {
 			synchronized (lock) {
 				if (conn != null) {
-					Connection c = conn;
+					forceClose(conn);
+				}
+			}
+		}
+
+		/**
+		 * Forcibly close given connection if it is the current connection.
+		 * 
+		 * @param c the {@link Connection} to close
+		 */
+		public void forceClose(Connection c) {
+			synchronized (lock) {
+				if (conn == c) {
 					conn = null;
 					IOUtil.closeQuietly(c.getSocket());
 					IOUtil.closeQuietly(c.getIn());
@@ -243,10 +370,16 @@ public class Builder2Server implements Runnable {
 	private StateManager stateManager;
 	private NoConnectTimer noConnectTimer;
 	private WebappSocketFactory webappSocketFactory;
-	private Builder2 builder2;
 	private ConnectionManager connectionManager;
+	private ProblemAndTestCaseCache problemCache;
+	private int numSlots;
+	private LinkedBlockingQueue<PendingSubmission> workQueue;
+	private Object inProgressLock;
+	private int numInProgress;
 	
-	private Thread watchdogThread;
+	private Object watchdogLock;
+	private ScheduledFuture<?> watchdogFuture;
+	private List<Thread> slotThreadList;
 
 	/**
 	 * Constructor.
@@ -254,14 +387,23 @@ public class Builder2Server implements Runnable {
 	 * @param webappSocketFactory the {@link WebappSocketFactory} that will create socket
 	 *                            connections to the webapp
 	 * @param config              configuration properties: i.e., properties from cloudcoder.properties file
+	 * @param numSlots            number of submissions to test concurrently
 	 */
-	public Builder2Server(WebappSocketFactory webappSocketFactory, Properties config) {
+	public Builder2Server(WebappSocketFactory webappSocketFactory, Properties config, int numSlots) {
 		this.shutdownRequested = false;
 		this.stateManager = new StateManager();
 		this.noConnectTimer = new NoConnectTimer();
 		this.webappSocketFactory = webappSocketFactory;
-		this.builder2 = new Builder2(config);
 		this.connectionManager = new ConnectionManager();
+		this.problemCache = ProblemAndTestCaseCache.getInstance(config);
+		this.numSlots = numSlots;
+		this.workQueue = new LinkedBlockingQueue<PendingSubmission>();
+		this.inProgressLock = new Object();
+		this.watchdogLock = new Object();
+		this.slotThreadList = new ArrayList<Thread>();
+		for (int i = 0; i < numSlots; i++) {
+			slotThreadList.add(new Thread(new Slot(config)));
+		}
 	}
 
 	/**
@@ -270,8 +412,10 @@ public class Builder2Server implements Runnable {
 	public void run() {
 		try {
 			stateManager.setState(State.NOT_CONNECTED);
-			watchdogThread = new Thread(new Watchdog());
-			watchdogThread.start();
+			scheduleWatchdog(MAX_WAIT_MS);
+			for (Thread slotThread : slotThreadList) {
+				slotThread.start();
+			}
 			while (!shutdownRequested) {
 				runOnce();
 			}
@@ -281,78 +425,123 @@ public class Builder2Server implements Runnable {
 	}
 
 	/**
-	 * Attempt to read one submission, compile and test it, and send the
-	 * result back to the webapp.
+	 * Attempt to read one message from the webapp.  Submissions are
+	 * handed to the slot threads to be compiled and tested.
 	 */
 	protected void runOnce() {
+		Connection conn = null;
 		try {
 			if (!connectionManager.isConnected()) {
 				attemptToConnectToServer();
 				return;
 			}
-			Connection conn = connectionManager.getConnection();
+			conn = connectionManager.getConnection();
 
 			// This is a critical point: the server loop will block waiting
-			// for a problem id / keepalive signal.  If there are connection
+			// for a message / keepalive signal.  If there are connection
 			// issues, this might block indefinitely.  Entering the
 			// WAITING_FOR_KEEPALIVE state lets the watchdog thread know
 			// that the connection should be forcibly closed if the server
 			// loop gets hung up here.
 			stateManager.setState(State.WAITING_FOR_KEEPALIVE);
-			Integer problemId = safeReadObject(conn.getIn());
-			stateManager.setState(State.WORKING);
+			Integer tag = safeReadObject(conn.getIn());
+			stateManager.setState(State.CONNECTED);
 
-			// The CloudCoder app will send us a negative problem id as
-			// a keepalive signal when there are no submissions that need building/testing.
+			// The CloudCoder app will send us a negative tag as
+			// a keepalive signal when it has nothing else to send.
 			// We can just ignore these.
-			if (problemId < 0) {
-				stateManager.setState(State.CONNECTED);
+			if (tag < 0) {
+				return;
+			}
+			
+			// If we asked for the Problem and TestCases of the submission
+			// with this tag, receive them, and the submission is ready to test
+			PendingSubmission pending = conn.getAwaitingProblem().remove(tag);
+			if (pending != null) {
+				pending.problem = safeReadObject(conn.getIn());
+				pending.testCaseList = safeReadObject(conn.getIn());
+				problemCache.put(pending.problemId, pending.versionHash, pending.problem, pending.testCaseList);
+				workQueue.add(pending);
 				return;
 			}
 
-			// The protocol allows the builder to cache Problems and TestCases by their problem id,
-			// but this is a very bad idea, since the Problem and TestCases could change on the
-			// webapp side (for example, if an instructor is editing an exercise).
-			// For this reason, we ALWAYS claim not to have the Problem/TestCases, forcing
-			// the webapp to send the most up to date versions.  It's a small amount
-			// of data, and it's important for correct behavior.
-
-			// Tell the webapp we don't have this Problem/TestCases
-			conn.getOut().writeObject(Boolean.FALSE);
-			conn.getOut().flush();
-
-			// Receive the Problem and TestCases
-			Problem problem = safeReadObject(conn.getIn());
-			List<TestCase> testCaseList = safeReadObject(conn.getIn());
-
-			// read program text
+			// Receive a new submission
+			Integer problemId = safeReadObject(conn.getIn());
+			String versionHash = safeReadObject(conn.getIn());
 			String programText = safeReadObject(conn.getIn());
-
-			// Test the submission!
-			SubmissionResult result = builder2.testSubmission(problem, testCaseList, programText);
-
-			// Send the SubmissionResult back to the webapp
-			conn.getOut().writeObject(result);
-			conn.getOut().flush();
-			
-			// Everything went well: return to the CONNECTED state
-			stateManager.setState(State.CONNECTED);
+			pending = new PendingSubmission(conn, tag, problemId, versionHash, programText);
+			onSubmissionStarted();
+
+			// The webapp sends a version hash of the Problem and TestCases
+			// along with the problem id.  Problems and TestCases can change
+			// on the webapp side (for example, if an instructor is editing an
+			// exercise), so we only use our cached copy if it has exactly
+			// the same version hash.
+			ProblemAndTestCaseCache.Entry cached = problemCache.find(problemId, versionHash);
+			if (cached != null) {
+				pending.problem = cached.getProblem();
+				pending.testCaseList = cached.getTestCaseList();
+				workQueue.add(pending);
+			} else {
+				// Tell the webapp we don't have this Problem/TestCases
+				conn.getAwaitingProblem().put(tag, pending);
+				conn.send(tag, Boolean.FALSE);
+			}
 		} catch (IOException e) {
 			// Quite possibly, this is a routine shutdown of the CloudCoder server.
 			// We'll try connecting again soon.
 			logger.error("Error communicating with server", e);
-			connectionManager.forceClose();
+			onConnectionLost(conn);
 			stateManager.setState(State.NOT_CONNECTED);
 		} catch (ClassNotFoundException e) {
 			// This should not happen!
 			logger.error("Unexpected ClassNotFoundException, shutting down builder thread", e);
-			connectionManager.forceClose();
+			onConnectionLost(conn);
 			stateManager.setState(State.NOT_CONNECTED);
 			shutdown();
 			throw new IllegalStateException("Class not found reading message", e);
 		}
 	}
 
+	/**
+	 * Called when the connection to the webapp is lost.
+	 * Submissions waiting for their Problem and TestCases will never
+	 * receive them, so they are abandoned (the webapp will resend them).
+	 * 
+	 * @param conn the {@link Connection} which was lost (null if there
+	 *             was no connection)
+	 */
+	private void onConnectionLost(Connection conn) {
+		if (conn != null) {
+			for (int i = 0; i < conn.getAwaitingProblem().size(); i++) {
+				onSubmissionFinished();
+			}
+			conn.getAwaitingProblem().clear();
+			connectionManager.forceClose(conn);
+		}
+	}
+
+	private void scheduleWatchdog(long delay) {
+		synchronized (watchdogLock) {
+			if (!shutdownRequested) {
+				watchdogFuture = WatchdogTimerHolder.timer.schedule(new Watchdog(), delay, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	private void onSubmissionStarted() {
+		synchronized (inProgressLock) {
+			numInProgress++;
+		}
+	}
+
+	private void onSubmissionFinished() {
+		synchronized (inProgressLock) {
+			numInProgress--;
+			inProgressLock.notifyAll();
+		}
+	}
+
 	private ISocket createSecureSocket() throws IOException, GeneralSecurityException {
 		return webappSocketFactory.connectToWebapp();
 	}
@@ -373,6 +562,11 @@ public class Builder2Server implements Runnable {
 			}
 			in = new ObjectInputStream(socket.getInputStream());
 			out = new ObjectOutputStream(socket.getOutputStream());
+			
+			// Tell the webapp how many submissions we can test at once
+			out.writeObject(Integer.valueOf(numSlots));
+			out.flush();
+			
 			logger.info("Connected!");
 			stateManager.setState(State.CONNECTED);
 			noConnectTimer.connected();
@@ -403,24 +597,24 @@ public class Builder2Server implements Runnable {
 	}
 
 	public void shutdown() {
-		shutdownRequested = true;
-
-		// Shut down the watchdog thread
-		watchdogThread.interrupt();
-		try {
-			watchdogThread.join();
-		} catch (InterruptedException e) {
-			logger.error("Interrupted waiting for watchdog thread to finish", e);
+		// Stop the watchdog
+		synchronized (watchdogLock) {
+			shutdownRequested = true;
+			if (watchdogFuture != null) {
+				watchdogFuture.cancel(false);
+			}
 		}
 
 		// Shut down the server loop.
 		// If building/testing is in progress, wait for it to finish.
-		while (!stateManager.getStateData().getState().allowShutdown()) {
-			logger.info("shutdown(): waiting for building/testing of current submission to complete");
-			try {
-				Thread.sleep(2000L);
-			} catch (InterruptedException e) {
-				logger.error("Interrupted waiting for server loop to finish current submission");
+		synchronized (inProgressLock) {
+			while (numInProgress > 0) {
+				logger.info("shutdown(): waiting for building/testing of {} submission(s) to complete", numInProgress);
+				try {
+					inProgressLock.wait(2000L);
+				} catch (InterruptedException e) {
+					logger.error("Interrupted waiting for server loop to finish current submissions");
+				}
 			}
 		}
 		
@@ -428,6 +622,16 @@ public class Builder2Server implements Runnable {
 		// to communicate with the webapp.
 		// Rude, but effective.
 		connectionManager.forceClose();
+		
+		// Shut down the slot threads
+		for (Thread slotThread : slotThreadList) {
+			slotThread.interrupt();
+			try {
+				slotThread.join();
+			} catch (InterruptedException e) {
+				logger.error("Interrupted waiting for slot thread to finish", e);
+			}
+		}
 	}
 
 	/**
@@ -447,6 +651,9 @@ public class Builder2Server implements Runnable {
 			if (command == null || command.trim().equals("shutdown")) {
 				break;
 			}
+			if (!command.trim().equals("")) {
+				daemon.handleCommand(command);
+			}
 		}
 
 		daemon.shutdown();
@@ -22,8 +22,12 @@ import java.util.Properties;
 
 import org.cloudcoder.builder2.csandbox.EasySandboxSharedLibrary;
 import org.cloudcoder.builder2.extlib.ExternalLibraryCache;
+import org.cloudcoder.builder2.javacompiler.JavaCompilerService;
 import org.cloudcoder.builder2.javasandbox.JVMKillableTaskManager;
+import org.cloudcoder.builder2.javasandbox.SandboxExecutor;
+import org.cloudcoder.builder2.process.ProcessLauncher;
 import org.cloudcoder.builder2.process.RunProcessNativeExe;
+import org.cloudcoder.builder2.pythonfunction.PythonInterpreterPool;
 import org.cloudcoder.builder2.pythonfunction.PythonKillableTaskManager;
 
 /**
@@ -43,6 +47,15 @@ public class Global {
 		// Install KillableTaskManager's security manager
 		JVMKillableTaskManager.installSecurityManager();
 		PythonKillableTaskManager.installSecurityManager();
+		
+		// Create the worker threads used to execute Java/Python/Ruby tests
+		SandboxExecutor.getInstance(config);
+		
+		// Pre-warm the Python interpreters used to test Python submissions
+		PythonInterpreterPool.getInstance(config);
+		
+		// Warm up the Java compiler
+		JavaCompilerService.getInstance(config).warmUp();
 	}
 	
 	/**
@@ -60,6 +73,11 @@ public class Global {
 		// Delete directories/files used by the ExternalLibraryCache
 		ExternalLibraryCache.getInstance(config).cleanup();
 		
+		// Shut down the process launcher (which runs RunProcessNativeExe)
+		if (ProcessLauncher.isCreated()) {
+			ProcessLauncher.getInstance(config).shutdown();
+		}
+		
 		// Delete directories/files used by the RunProcessNativeExe
 		RunProcessNativeExe.getInstance(config).cleanup();
 	}
@@ -0,0 +1,171 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.server;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.builder2.util.SingletonHolder;
+
+/**
+ * Cache of {@link Problem}s and their {@link TestCase}s received from the
+ * webapp, keyed by problem id, and shared by all of the builder threads.
+ * Each entry records the version hash sent by the webapp along with the
+ * problem id, and a cached entry is only used if its version hash matches
+ * the one sent by the webapp for the submission being tested.
+ * So, the webapp only needs to send the Problem and TestCases
+ * the first time a builder sees a particular version of a problem.
+ * Least-recently-used entries are evicted when the number of cached
+ * problems exceeds the configured limit.
+ *
+ * <p>Configuration properties:
+ * <ul>
+ * <li><b>cloudcoder.builder2.problemCache.maxEntries</b>: maximum number
+ *     of cached problems (default 256)</li>
+ * </ul>
+ *
+ * @author David Hovemeyer
+ */
+public class ProblemAndTestCaseCache {
+	private static final SingletonHolder<ProblemAndTestCaseCache, Properties> holder = new SingletonHolder<ProblemAndTestCaseCache, Properties>() {
+		@Override
+		protected ProblemAndTestCaseCache onCreate(Properties arg) {
+			return new ProblemAndTestCaseCache(arg);
+		}
+	};
+
+	/**
+	 * Get the singleton instance.
+	 *
+	 * @param config configuration properties
+	 * @return the singleton instance
+	 */
+	public static ProblemAndTestCaseCache getInstance(Properties config) {
+		return holder.get(config);
+	}
+
+	/**
+	 * Get the singleton instance, creating it with the default configuration
+	 * if {@link #getInstance(Properties)} has not been called yet.
+	 *
+	 * @return the singleton instance
+	 */
+	public static ProblemAndTestCaseCache getInstance() {
+		return holder.get(new Properties());
+	}
+
+	/**
+	 * A cached {@link Problem} and its {@link TestCase}s.
+	 */
+	public static class Entry {
+		private final String versionHash;
+		private final Problem problem;
+		private final List<TestCase> testCaseList;
+
+		Entry(String versionHash, Problem problem, List<TestCase> testCaseList) {
+			this.versionHash = versionHash;
+			this.problem = problem;
+			this.testCaseList = testCaseList;
+		}
+
+		/**
+		 * @return the version hash
+		 */
+		public String getVersionHash() {
+			return versionHash;
+		}
+
+		/**
+		 * @return the {@link Problem}
+		 */
+		public Problem getProblem() {
+			return problem;
+		}
+
+		/**
+		 * @return the list of {@link TestCase}s
+		 */
+		public List<TestCase> getTestCaseList() {
+			return testCaseList;
+		}
+	}
+
+	private final int maxEntries;
+	private final LinkedHashMap<Integer, Entry> map;
+	private long hits;
+	private long misses;
+
+	private ProblemAndTestCaseCache(Properties config) {
+		this.maxEntries = Integer.parseInt(config.getProperty("cloudcoder.builder2.problemCache.maxEntries", "256"));
+		this.map = new LinkedHashMap<Integer, Entry>(16, 0.75f, true) { // access order, for LRU eviction
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+				return size() > ProblemAndTestCaseCache.this.maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Find the cached version of a problem.
+	 *
+	 * @param problemId   the problem id
+	 * @param versionHash the version hash sent by the webapp
+	 * @return the cached {@link Entry}, or null if the problem is not cached,
+	 *         or if the cached version doesn't match the version hash
+	 */
+	public synchronized Entry find(int problemId, String versionHash) {
+		Entry entry = map.get(problemId);
+		if (entry != null && entry.getVersionHash().equals(versionHash)) {
+			hits++;
+			return entry;
+		}
+		misses++;
+		return null;
+	}
+
+	/**
+	 * Add a problem received from the webapp to the cache, replacing
+	 * any previously cached version.
+	 *
+	 * @param problemId    the problem id
+	 * @param versionHash  the version hash sent by the webapp
+	 * @param problem      the {@link Problem}
+	 * @param testCaseList the list of {@link TestCase}s
+	 */
+	public synchronized void put(int problemId, String versionHash, Problem problem, List<TestCase> testCaseList) {
+		if (maxEntries > 0) {
+			map.put(problemId, new Entry(versionHash, problem, testCaseList));
+		}
+	}
+
+	/**
+	 * @return a one-line summary of the cache statistics
+	 */
+	public synchronized String getStatusSummary() {
+		long total = hits + misses;
+		double hitRate = total > 0 ? (100.0 * hits) / total : 0.0;
+		return String.format("entries=%d, hits=%d, misses=%d, hitRate=%.1f%%",
+				map.size(), hits, misses, hitRate);
+	}
+}
@@ -0,0 +1,102 @@
+package org.cloudcoder.builder2.tests.bench;
+
+import java.io.File;
+import java.util.Properties;
+
+import org.cloudcoder.app.shared.model.ProblemAndTestCaseList;
+import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.builder2.ccompiler.Compiler;
+import org.cloudcoder.builder2.commandrunner.CreateLimitedCommandExecutionPreferencesBuildStep;
+import org.cloudcoder.builder2.commandrunner.ExecuteCommandForEachCommandInputBuildStep;
+import org.cloudcoder.builder2.model.BuilderSubmission;
+import org.cloudcoder.builder2.model.Command;
+import org.cloudcoder.builder2.model.CommandExecutionPreferences;
+import org.cloudcoder.builder2.model.CommandInput;
+import org.cloudcoder.builder2.model.CommandResult;
+import org.cloudcoder.builder2.model.NativeExecutable;
+import org.cloudcoder.builder2.model.ProcessStatus;
+import org.cloudcoder.builder2.process.ProcessLauncher;
+import org.cloudcoder.builder2.tests.BuilderTestContext;
+import org.cloudcoder.builder2.util.DeleteDirectoryRecursively;
+import org.cloudcoder.builder2.util.FileUtil;
+
+/**
+ * Benchmark measuring the throughput (tests per second per core) of
+ * executing the test cases of a C program exercise, using the same
+ * process limits and build steps as the C_PROGRAM builder pipeline.
+ * The submission is compiled once, so only test execution is measured.
+ * EasySandbox is disabled, since it isn't needed to measure the cost
+ * of starting and collecting test processes.
+ * Not run as part of the unit tests: run the main method directly,
+ * optionally passing the number of timed batches and "launcher" or
+ * "nolauncher" (to choose whether the {@link ProcessLauncher} is used)
+ * as arguments.
+ */
+public class CTestExecutionBenchmark {
+	private static final int WARMUP_BATCHES = 3;
+	private static final int DEFAULT_BATCHES = 20;
+	private static final int TESTS_PER_BATCH = 20;
+
+	public static void main(String[] args) {
+		int numBatches = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_BATCHES;
+		boolean useLauncher = args.length > 1 ? !args[1].equals("nolauncher") : true;
+
+		Properties config = new Properties();
+		config.setProperty("cloudcoder.submitsvc.oop.easysandbox.enable", "false");
+		config.setProperty("cloudcoder.builder2.tmpdir", System.getProperty("java.io.tmpdir"));
+		config.setProperty("cloudcoder.builder2.process.useLauncher", String.valueOf(useLauncher));
+		BuilderTestContext context = new BuilderTestContext(config);
+		ProblemAndTestCaseList exercise = context.getExercise("skip3");
+		TestCase[] testCaseList = exercise.getTestCaseList();
+
+		File workDir = FileUtil.makeTempDir(config);
+		try {
+			Compiler compiler = new Compiler(context.getSourceText("skip3_pass.c"), workDir, "cctestprog", config);
+			if (!compiler.compile()) {
+				throw new IllegalStateException("Compilation failed: " + compiler.getCompilerOutput());
+			}
+			NativeExecutable exe = new NativeExecutable(workDir, "cctestprog");
+
+			BuilderSubmission prefsSubmission = new BuilderSubmission();
+			new CreateLimitedCommandExecutionPreferencesBuildStep().execute(prefsSubmission, config);
+
+			Command[] commandList = new Command[TESTS_PER_BATCH];
+			CommandInput[] commandInputList = new CommandInput[TESTS_PER_BATCH];
+			for (int i = 0; i < TESTS_PER_BATCH; i++) {
+				commandList[i] = exe.toCommand();
+				commandInputList[i] = new CommandInput(testCaseList[i % testCaseList.length].getInput());
+			}
+
+			for (int round = 0; round < 2; round++) {
+				runBatches(config, prefsSubmission, commandList, commandInputList, WARMUP_BATCHES);
+				long nanos = runBatches(config, prefsSubmission, commandList, commandInputList, numBatches);
+				int numTests = numBatches * TESTS_PER_BATCH;
+				double testsPerSec = numTests / (nanos / 1000000000.0);
+				int numCores = Runtime.getRuntime().availableProcessors();
+				System.out.printf("%s: %d tests in %.2f s, %.1f tests/s, %.1f tests/s/core (%d cores)%n",
+						useLauncher ? "launcher" : "no launcher",
+						numTests, nanos / 1000000000.0, testsPerSec, testsPerSec / numCores, numCores);
+			}
+		} finally {
+			new DeleteDirectoryRecursively(workDir).delete();
+		}
+	}
+
+	private static long runBatches(Properties config, BuilderSubmission prefsSubmission,
+			Command[] commandList, CommandInput[] commandInputList, int numBatches) {
+		long begin = System.nanoTime();
+		for (int i = 0; i < numBatches; i++) {
+			BuilderSubmission submission = new BuilderSubmission();
+			submission.addArtifact(prefsSubmission.getArtifact(CommandExecutionPreferences.class));
+			submission.addArtifact(commandList);
+			submission.addArtifact(commandInputList);
+			new ExecuteCommandForEachCommandInputBuildStep().execute(submission, config);
+			for (CommandResult result : submission.getArtifact(CommandResult[].class)) {
+				if (result.getStatus() != ProcessStatus.EXITED || result.getExitCode() != 0) {
+					throw new IllegalStateException("Test process failed: " + result.getStatus() + ", " + result.getStatusMessage());
+				}
+			}
+		}
+		return System.nanoTime() - begin;
+	}
+}
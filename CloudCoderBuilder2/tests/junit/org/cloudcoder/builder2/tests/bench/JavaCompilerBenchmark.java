@@ -0,0 +1,139 @@
+package org.cloudcoder.builder2.tests.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.cloudcoder.app.shared.model.ProblemAndTestCaseList;
+import org.cloudcoder.builder2.javacompiler.FindJavaPackageAndClassNames;
+import org.cloudcoder.builder2.javacompiler.InMemoryJavaCompiler;
+import org.cloudcoder.builder2.javacompiler.JavaCompilerService;
+import org.cloudcoder.builder2.javacompiler.MemoryFileManager;
+import org.cloudcoder.builder2.javamethod.AddJavaMethodScaffoldingBuildStep;
+import org.cloudcoder.builder2.javamethod.AddJavaMethodTestDriverBuildStep;
+import org.cloudcoder.builder2.model.BuilderSubmission;
+import org.cloudcoder.builder2.model.ProgramSource;
+import org.cloudcoder.builder2.tests.BuilderTestContext;
+
+/**
+ * Microbenchmark comparing the latency of compiling the scaffolded
+ * source code of the Java method test exercises using a fresh
+ * javac file manager for each compilation (the original approach)
+ * with compiling using the shared file managers of the
+ * {@link JavaCompilerService}.
+ * Not run as part of the unit tests: run the main method directly,
+ * optionally passing the number of timed iterations as an argument.
+ */
+public class JavaCompilerBenchmark {
+	private static final int WARMUP_ITERATIONS = 10;
+	private static final int DEFAULT_ITERATIONS = 50;
+
+	private interface CompileFunction {
+		void compile(List<String> classNames, List<String> sources);
+	}
+
+	public static void main(String[] args) {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+
+		Properties config = new Properties();
+		BuilderTestContext context = new BuilderTestContext(config);
+		final JavaCompilerService service = JavaCompilerService.getInstance(config);
+
+		String[][] exercises = {
+				{ "sq", "sq_pass.java" },
+				{ "sq", "sq_chatty.java" },
+		};
+
+		for (String[] exercise : exercises) {
+			List<String> classNames = new ArrayList<String>();
+			List<String> sources = new ArrayList<String>();
+			scaffold(context, config, exercise[0], exercise[1], classNames, sources);
+
+			CompileFunction fresh = new CompileFunction() {
+				@Override
+				public void compile(List<String> classNames, List<String> sources) {
+					compileWithFreshFileManager(classNames, sources);
+				}
+			};
+			CompileFunction shared = new CompileFunction() {
+				@Override
+				public void compile(List<String> classNames, List<String> sources) {
+					InMemoryJavaCompiler compiler = new InMemoryJavaCompiler(service);
+					for (int i = 0; i < classNames.size(); i++) {
+						compiler.addSourceFile(classNames.get(i), sources.get(i));
+					}
+					if (!compiler.compile()) {
+						throw new IllegalStateException("Compilation failed");
+					}
+				}
+			};
+
+			report(exercise[1] + " (fresh file manager)", run(fresh, classNames, sources, iterations));
+			report(exercise[1] + " (shared file manager)", run(shared, classNames, sources, iterations));
+		}
+		System.out.println("Java compiler: " + service.getStatusSummary());
+	}
+
+	private static void scaffold(BuilderTestContext context, Properties config, String exerciseName, String sourceName,
+			List<String> classNames, List<String> sources) {
+		ProblemAndTestCaseList exercise = context.getExercise(exerciseName);
+		BuilderSubmission submission = new BuilderSubmission();
+		submission.addArtifact(exercise.getProblem());
+		submission.addArtifact(exercise.getTestCaseList());
+		submission.addArtifact(new ProgramSource[]{ new ProgramSource(context.getSourceText(sourceName)) });
+		new AddJavaMethodScaffoldingBuildStep().execute(submission, config);
+		new AddJavaMethodTestDriverBuildStep().execute(submission, config);
+		for (ProgramSource programSource : submission.getArtifact(ProgramSource[].class)) {
+			FindJavaPackageAndClassNames names = new FindJavaPackageAndClassNames();
+			names.determinePackageAndClassNames(programSource.getProgramText());
+			classNames.add(names.getFullyQualifiedClassName());
+			sources.add(programSource.getProgramText());
+		}
+	}
+
+	private static void compileWithFreshFileManager(List<String> classNames, List<String> sources) {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		MemoryFileManager fm = new MemoryFileManager(compiler.getStandardFileManager(null, null, null));
+		List<JavaFileObject> sourceFiles = new ArrayList<JavaFileObject>();
+		for (int i = 0; i < classNames.size(); i++) {
+			sourceFiles.add(MemoryFileManager.makeSource(classNames.get(i), sources.get(i)));
+		}
+		List<String> options = Arrays.asList("-classpath", System.getProperty("java.class.path"));
+		DiagnosticCollector<JavaFileObject> collector = new DiagnosticCollector<JavaFileObject>();
+		if (!compiler.getTask(null, fm, collector, options, null, sourceFiles).call()) {
+			throw new IllegalStateException("Compilation failed");
+		}
+	}
+
+	private static long[] run(CompileFunction f, List<String> classNames, List<String> sources, int iterations) {
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			f.compile(classNames, sources);
+		}
+		long[] times = new long[iterations];
+		for (int i = 0; i < iterations; i++) {
+			long begin = System.nanoTime();
+			f.compile(classNames, sources);
+			times[i] = System.nanoTime() - begin;
+		}
+		return times;
+	}
+
+	private static void report(String label, long[] times) {
+		Arrays.sort(times);
+		long total = 0L;
+		for (long t : times) {
+			total += t;
+		}
+		System.out.printf("%s: %d compilations, mean %.2f ms, median %.2f ms, max %.2f ms%n",
+				label, times.length,
+				(total / (double) times.length) / 1000000.0,
+				times[times.length / 2] / 1000000.0,
+				times[times.length - 1] / 1000000.0);
+	}
+}
@@ -0,0 +1,154 @@
+package org.cloudcoder.builder2.tests.bench;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Properties;
+
+import org.cloudcoder.app.shared.model.ProblemAndTestCaseList;
+import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.builder2.javacompiler.ByteArrayClassLoader;
+import org.cloudcoder.builder2.javacompiler.FindJavaPackageAndClassNames;
+import org.cloudcoder.builder2.javacompiler.InMemoryJavaCompiler;
+import org.cloudcoder.builder2.javamethod.AddJavaMethodScaffoldingBuildStep;
+import org.cloudcoder.builder2.javamethod.AddJavaMethodTestDriverBuildStep;
+import org.cloudcoder.builder2.javamethod.TestCaseDispatcher;
+import org.cloudcoder.builder2.model.BuilderSubmission;
+import org.cloudcoder.builder2.model.ProgramSource;
+import org.cloudcoder.builder2.tests.BuilderTestContext;
+
+/**
+ * Microbenchmark comparing the per-test cost of executing Java method
+ * test cases by looking up the test method by name and invoking it
+ * reflectively (the original approach) with calling the
+ * {@link TestCaseDispatcher} implemented by the generated Tester class.
+ * Also compares loading the compiled classes using a parent-first
+ * class loader (the original approach) with {@link ByteArrayClassLoader},
+ * which checks its own classes first.
+ * Not run as part of the unit tests: run the main method directly,
+ * optionally passing the number of timed iterations as an argument.
+ */
+public class JavaTestDispatchBenchmark {
+	private static final int DEFAULT_ITERATIONS = 200000;
+	private static final int NUM_LOADS = 2000;
+
+	/**
+	 * The original {@link ByteArrayClassLoader}: asks the parent
+	 * class loader first, and defines the class only if the parent
+	 * throws ClassNotFoundException.
+	 */
+	private static class ParentFirstByteArrayClassLoader extends ClassLoader {
+		private Map<String, byte[]> classes;
+
+		public ParentFirstByteArrayClassLoader(Map<String, byte[]> classes) {
+			this.classes = classes;
+		}
+
+		@Override
+		public Class<?> loadClass(String name) throws ClassNotFoundException {
+			try {
+				return super.loadClass(name);
+			} catch (ClassNotFoundException e) {
+				byte[] classData = classes.get(name);
+				return defineClass(name, classData, 0, classData.length);
+			}
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+
+		Properties config = new Properties();
+		BuilderTestContext context = new BuilderTestContext(config);
+		ProblemAndTestCaseList exercise = context.getExercise("sq");
+		TestCase[] testCaseList = exercise.getTestCaseList();
+
+		// Scaffold and compile sq_pass.java
+		BuilderSubmission submission = new BuilderSubmission();
+		submission.addArtifact(exercise.getProblem());
+		submission.addArtifact(testCaseList);
+		submission.addArtifact(new ProgramSource[]{ new ProgramSource(context.getSourceText("sq_pass.java")) });
+		new AddJavaMethodScaffoldingBuildStep().execute(submission, config);
+		new AddJavaMethodTestDriverBuildStep().execute(submission, config);
+		InMemoryJavaCompiler compiler = new InMemoryJavaCompiler();
+		for (ProgramSource programSource : submission.getArtifact(ProgramSource[].class)) {
+			FindJavaPackageAndClassNames names = new FindJavaPackageAndClassNames();
+			names.determinePackageAndClassNames(programSource.getProgramText());
+			compiler.addSourceFile(names.getFullyQualifiedClassName(), programSource.getProgramText());
+		}
+		if (!compiler.compile()) {
+			throw new IllegalStateException("Compilation failed");
+		}
+		Map<String, byte[]> classes = compiler.getFileManager().getClasses();
+
+		// Class loading
+		for (int round = 0; round < 2; round++) {
+			long parentFirstNanos = loadClasses(classes, true);
+			long ownFirstNanos = loadClasses(classes, false);
+			System.out.printf("class loading: parent-first %.1f us/submission, own-classes-first %.1f us/submission%n",
+					(parentFirstNanos / (double) NUM_LOADS) / 1000.0,
+					(ownFirstNanos / (double) NUM_LOADS) / 1000.0);
+		}
+
+		// Test dispatch
+		Class<?> testerCls = new ByteArrayClassLoader(classes).loadClass("Tester");
+		TestCaseDispatcher dispatcher = (TestCaseDispatcher) testerCls.newInstance();
+		for (int round = 0; round < 2; round++) {
+			long reflectiveNanos = dispatchReflective(testerCls, testCaseList, iterations);
+			long directNanos = dispatchDirect(dispatcher, testCaseList, iterations);
+			long numTests = (long) iterations * testCaseList.length;
+			System.out.printf("test dispatch: reflective %.1f ns/test, dispatcher %.1f ns/test%n",
+					reflectiveNanos / (double) numTests,
+					directNanos / (double) numTests);
+		}
+	}
+
+	private static long loadClasses(Map<String, byte[]> classes, boolean parentFirst) throws ClassNotFoundException {
+		long begin = System.nanoTime();
+		for (int i = 0; i < NUM_LOADS; i++) {
+			ClassLoader loader = parentFirst
+					? new ParentFirstByteArrayClassLoader(classes)
+					: new ByteArrayClassLoader(classes);
+			for (String className : classes.keySet()) {
+				loader.loadClass(className);
+			}
+		}
+		return System.nanoTime() - begin;
+	}
+
+	private static long dispatchReflective(Class<?> testerCls, TestCase[] testCaseList, int iterations) throws Exception {
+		long begin = System.nanoTime();
+		int numPassed = 0;
+		for (int i = 0; i < iterations; i++) {
+			for (TestCase testCase : testCaseList) {
+				Method m = testerCls.getMethod(testCase.getTestCaseName());
+				Object[] results = (Object[]) m.invoke(null);
+				if ((Boolean) results[0]) {
+					numPassed++;
+				}
+			}
+		}
+		checkAllPassed(numPassed, testCaseList, iterations);
+		return System.nanoTime() - begin;
+	}
+
+	private static long dispatchDirect(TestCaseDispatcher dispatcher, TestCase[] testCaseList, int iterations) {
+		long begin = System.nanoTime();
+		int numPassed = 0;
+		for (int i = 0; i < iterations; i++) {
+			for (int j = 0; j < testCaseList.length; j++) {
+				Object[] results = dispatcher.invokeTestCase(j);
+				if ((Boolean) results[0]) {
+					numPassed++;
+				}
+			}
+		}
+		checkAllPassed(numPassed, testCaseList, iterations);
+		return System.nanoTime() - begin;
+	}
+
+	private static void checkAllPassed(int numPassed, TestCase[] testCaseList, int iterations) {
+		if (numPassed != iterations * testCaseList.length) {
+			throw new IllegalStateException("Not all tests passed");
+		}
+	}
+}
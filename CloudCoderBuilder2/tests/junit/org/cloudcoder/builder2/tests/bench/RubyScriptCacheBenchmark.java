@@ -0,0 +1,95 @@
+package org.cloudcoder.builder2.tests.bench;
+
+import java.util.Properties;
+
+import org.cloudcoder.app.shared.model.ProblemAndTestCaseList;
+import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.builder2.model.BuilderSubmission;
+import org.cloudcoder.builder2.model.ProgramSource;
+import org.cloudcoder.builder2.rubymethod.AddRubyMethodScaffoldingBuildStep;
+import org.cloudcoder.builder2.rubymethod.RubyScriptCache;
+import org.cloudcoder.builder2.rubymethod.RubyTestHarness;
+import org.cloudcoder.builder2.tests.BuilderTestContext;
+import org.jruby.embed.LocalContextScope;
+import org.jruby.embed.ScriptingContainer;
+
+/**
+ * Microbenchmark comparing the throughput of loading a scaffolded
+ * Ruby method submission by parsing the complete scaffolded program
+ * (the original approach) with running the submitted code plus a
+ * test harness from the {@link RubyScriptCache}.
+ * Not run as part of the unit tests: run the main method directly,
+ * optionally passing the number of timed iterations and the number
+ * of test cases as arguments.
+ */
+public class RubyScriptCacheBenchmark {
+	private static final int WARMUP_ITERATIONS = 500;
+	private static final int DEFAULT_ITERATIONS = 2000;
+	private static final int DEFAULT_NUM_TEST_CASES = 20;
+
+	public static void main(String[] args) {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+		int numTestCases = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_NUM_TEST_CASES;
+
+		Properties config = new Properties();
+		BuilderTestContext context = new BuilderTestContext(config);
+		ProblemAndTestCaseList exercise = context.getExercise("plus");
+		String source = context.getSourceText("plus_pass.rb");
+
+		// Popular exercises typically have more test cases than
+		// the test exercise, so make some more
+		TestCase[] origTestCaseList = exercise.getTestCaseList();
+		TestCase[] testCaseList = new TestCase[numTestCases];
+		for (int i = 0; i < numTestCases; i++) {
+			TestCase orig = origTestCaseList[i % origTestCaseList.length];
+			testCaseList[i] = new TestCase();
+			testCaseList[i].setTestCaseName(orig.getTestCaseName() + i);
+			testCaseList[i].setInput(orig.getInput());
+			testCaseList[i].setOutput(orig.getOutput());
+		}
+
+		BuilderSubmission submission = new BuilderSubmission();
+		submission.addArtifact(exercise.getProblem());
+		submission.addArtifact(testCaseList);
+		submission.addArtifact(new ProgramSource[]{ new ProgramSource(source) });
+		new AddRubyMethodScaffoldingBuildStep().execute(submission, config);
+		String testSource = submission.getArtifact(ProgramSource[].class)[0].getProgramText();
+		RubyTestHarness harness = submission.getArtifact(RubyTestHarness.class);
+
+		ScriptingContainer container = new ScriptingContainer(LocalContextScope.CONCURRENT);
+		container.runScriptlet("true");
+		RubyScriptCache cache = RubyScriptCache.getInstance(config);
+
+		for (int round = 0; round < 2; round++) {
+			runUncached(container, testSource, WARMUP_ITERATIONS);
+			runCached(container, harness, cache, WARMUP_ITERATIONS);
+
+			long uncachedNanos = runUncached(container, testSource, iterations);
+			long cachedNanos = runCached(container, harness, cache, iterations);
+
+			System.out.printf("%d test cases: uncached %.0f submissions/s, cached %.0f submissions/s (speedup %.2fx)%n",
+					numTestCases,
+					iterations / (uncachedNanos / 1000000000.0),
+					iterations / (cachedNanos / 1000000000.0),
+					uncachedNanos / (double) cachedNanos);
+		}
+		System.out.println("Ruby script cache: " + cache.getStatusSummary());
+	}
+
+	private static long runUncached(ScriptingContainer container, String testSource, int iterations) {
+		long begin = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			container.runScriptlet(testSource);
+		}
+		return System.nanoTime() - begin;
+	}
+
+	private static long runCached(ScriptingContainer container, RubyTestHarness harness, RubyScriptCache cache, int iterations) {
+		long begin = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			container.runScriptlet(harness.getSubmissionText());
+			cache.get(container, harness.getHarnessText()).run();
+		}
+		return System.nanoTime() - begin;
+	}
+}
@@ -0,0 +1,65 @@
+package org.cloudcoder.builder2.tests.bench;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.cloudcoder.app.shared.model.ProblemAndTestCaseList;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.builder2.tests.BuilderTestContext;
+
+/**
+ * Microbenchmark measuring the end-to-end latency of testing a
+ * submission in-process (Java method and Python function exercises).
+ * Not run as part of the unit tests: run the main method directly,
+ * optionally passing the number of timed iterations as an argument.
+ */
+public class SubmissionLatencyBenchmark {
+	private static final int WARMUP_ITERATIONS = 10;
+	private static final int DEFAULT_ITERATIONS = 50;
+	
+	public static void main(String[] args) {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+		
+		Properties config = new Properties();
+		config.setProperty("cloudcoder.builder2.tmpdir", System.getProperty("java.io.tmpdir"));
+		
+		BuilderTestContext context = new BuilderTestContext(config);
+		context.setup();
+		try {
+			run(context, "sq", "sq_pass.java", iterations);
+			run(context, "compute_sum", "compute_sum_pass.py", iterations);
+		} finally {
+			context.cleanup();
+		}
+	}
+
+	private static void run(BuilderTestContext context, String exerciseName, String sourceName, int iterations) {
+		ProblemAndTestCaseList exercise = context.getExercise(exerciseName);
+		String source = context.getSourceText(sourceName);
+		
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			context.testSubmission(source, exercise);
+		}
+		
+		long[] times = new long[iterations];
+		for (int i = 0; i < iterations; i++) {
+			long begin = System.nanoTime();
+			SubmissionResult result = context.testSubmission(source, exercise);
+			times[i] = System.nanoTime() - begin;
+			if (result.getNumTestsPassed() != exercise.getTestCaseList().length) {
+				throw new IllegalStateException(sourceName + " did not pass all tests");
+			}
+		}
+		
+		Arrays.sort(times);
+		long total = 0L;
+		for (long t : times) {
+			total += t;
+		}
+		System.out.printf("%s: %d submissions, mean %.2f ms, median %.2f ms, max %.2f ms%n",
+				sourceName, iterations,
+				(total / (double) iterations) / 1000000.0,
+				times[iterations / 2] / 1000000.0,
+				times[iterations - 1] / 1000000.0);
+	}
+}
@@ -0,0 +1,54 @@
+package org.cloudcoder.builder2.tests.java;
+
+import static org.junit.Assert.assertTrue;
+
+import org.cloudcoder.app.shared.model.ProblemAndTestCaseList;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.TestResult;
+import org.cloudcoder.builder2.process.LimitedOutputCollector;
+import org.cloudcoder.builder2.tests.BuilderTest;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JavaMethodTest extends BuilderTest {
+	private ProblemAndTestCaseList sq;
+	
+	@Before
+	public void start() {
+		if (createContext()) {
+			sq = getContext().getExercise("sq");
+		}
+	}
+	
+	@Test
+	public void testSqGoodSubmission() {
+		String source = getContext().getSourceText("sq_pass.java");
+		SubmissionResult result = getContext().testSubmission(source, sq);
+		super.assertAllTestsPassed(result, sq);
+	}
+	
+	@Test
+	public void testSqChattySubmissionOutputIsLimited() {
+		String source = getContext().getSourceText("sq_chatty.java");
+		SubmissionResult result = getContext().testSubmission(source, sq);
+		super.assertAllTestsPassed(result, sq);
+		for (TestResult testResult : result.getTestResults()) {
+			assertTrue(testResult.getStdout().startsWith("chatty "));
+			assertTrue(testResult.getStdout().length() <= LimitedOutputCollector.DEFAULT_MAX_BYTES_ALLOWED);
+			assertTrue(testResult.getStderr().startsWith("err "));
+		}
+	}
+	
+	@Test
+	public void testSqTimeoutInfiniteLoop() {
+		String source = getContext().getSourceText("sq_timeout_infinite_loop.java");
+		SubmissionResult result = getContext().testSubmission(source, sq);
+		super.assertAllTestsTimedOut(result, sq);
+	}
+	
+	@AfterClass
+	public static void whenDone() {
+		BuilderTest.getInstance().destroyContext();
+	}
+}
@@ -0,0 +1,90 @@
+package org.cloudcoder.builder2.tests.javasandbox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cloudcoder.builder2.javasandbox.IsolatedTask;
+import org.cloudcoder.builder2.javasandbox.JVMKillableTaskManager;
+import org.cloudcoder.builder2.javasandbox.TimeoutHandler;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests for {@link JVMKillableTaskManager}: once {@link JVMKillableTaskManager#run()}
+ * returns, every task's outcome must be available, even when the tasks
+ * finish almost immediately.
+ */
+public class KillableTaskManagerTest {
+	private static final int NUM_ROUNDS = 1000;
+	private static final int NUM_TASKS = 16;
+
+	@BeforeClass
+	public static void installSecurityManager() {
+		JVMKillableTaskManager.installSecurityManager();
+	}
+
+	private static List<IsolatedTask<Integer>> createTasks(int numTasks) {
+		List<IsolatedTask<Integer>> tasks = new ArrayList<IsolatedTask<Integer>>();
+		for (int i = 0; i < numTasks; i++) {
+			final int value = i;
+			tasks.add(new IsolatedTask<Integer>() {
+				@Override
+				public Integer execute() throws Throwable {
+					return value;
+				}
+			});
+		}
+		return tasks;
+	}
+
+	private static TimeoutHandler<Integer> timeoutHandler() {
+		return new TimeoutHandler<Integer>() {
+			@Override
+			public Integer handleTimeout() {
+				return -1;
+			}
+		};
+	}
+
+	@Test
+	public void testManyShortTasks() throws Exception {
+		for (int round = 0; round < NUM_ROUNDS; round++) {
+			JVMKillableTaskManager<Integer> pool = new JVMKillableTaskManager<Integer>(
+					createTasks(NUM_TASKS), 10000L, timeoutHandler());
+			pool.run();
+
+			List<Integer> outcomes = pool.getOutcomes();
+			assertEquals(NUM_TASKS, outcomes.size());
+			for (int i = 0; i < NUM_TASKS; i++) {
+				assertNotNull("round " + round + ", task " + i, outcomes.get(i));
+				assertEquals(Integer.valueOf(i), outcomes.get(i));
+				assertTrue(pool.isFinished(i));
+			}
+		}
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		List<IsolatedTask<Integer>> tasks = createTasks(2);
+		tasks.add(new IsolatedTask<Integer>() {
+			@Override
+			public Integer execute() throws Throwable {
+				while (true) {
+					Thread.sleep(10L);
+				}
+			}
+		});
+		JVMKillableTaskManager<Integer> pool = new JVMKillableTaskManager<Integer>(
+				tasks, 200L, timeoutHandler());
+		pool.run();
+
+		List<Integer> outcomes = pool.getOutcomes();
+		assertEquals(Integer.valueOf(0), outcomes.get(0));
+		assertEquals(Integer.valueOf(1), outcomes.get(1));
+		assertEquals(Integer.valueOf(-1), outcomes.get(2));
+	}
+}
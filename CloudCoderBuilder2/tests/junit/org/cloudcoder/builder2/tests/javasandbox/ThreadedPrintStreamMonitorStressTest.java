@@ -0,0 +1,226 @@
+package org.cloudcoder.builder2.tests.javasandbox;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.cloudcoder.builder2.javasandbox.IsolatedTask;
+import org.cloudcoder.builder2.javasandbox.JVMKillableTaskManager;
+import org.cloudcoder.builder2.javasandbox.ThreadedPrintStreamMonitor;
+import org.cloudcoder.builder2.javasandbox.TimeoutHandler;
+import org.cloudcoder.builder2.process.LimitedOutputCollector;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Stress tests for {@link ThreadedPrintStreamMonitor}: many chatty
+ * threads printing at once must each see only their own output,
+ * and each thread's captured output must be bounded, even when
+ * several task managers are running at once.
+ */
+public class ThreadedPrintStreamMonitorStressTest {
+	private static final int NUM_THREADS = 32;
+	
+	private ByteArrayOutputStream underlying;
+	private ThreadedPrintStreamMonitor monitor;
+	
+	@Before
+	public void setUp() {
+		underlying = new ByteArrayOutputStream();
+		monitor = new ThreadedPrintStreamMonitor(new PrintStream(underlying));
+	}
+	
+	private static String key(int i) {
+		return "Test" + i;
+	}
+	
+	private void runConcurrently(final int numLines) throws InterruptedException {
+		final CountDownLatch startLatch = new CountDownLatch(1);
+		Thread[] threads = new Thread[NUM_THREADS];
+		for (int i = 0; i < NUM_THREADS; i++) {
+			final String key = key(i);
+			monitor.createCapture(key);
+			threads[i] = new Thread() {
+				public void run() {
+					monitor.beginCapture(key);
+					try {
+						startLatch.await();
+						for (int j = 0; j < numLines; j++) {
+							// mix the various print methods
+							switch (j % 3) {
+							case 0:
+								monitor.println(key + ":" + j);
+								break;
+							case 1:
+								monitor.print(key);
+								monitor.print(':');
+								monitor.println(j);
+								break;
+							default:
+								monitor.printf("%s:%d%n", key, j);
+								break;
+							}
+						}
+					} catch (InterruptedException e) {
+						// shouldn't happen
+					} finally {
+						monitor.endCapture();
+					}
+				}
+			};
+			threads[i].start();
+		}
+		startLatch.countDown();
+		for (Thread t : threads) {
+			t.join();
+		}
+	}
+	
+	@Test
+	public void testAllOutputCapturedByCorrectThread() throws Exception {
+		// Few enough lines that no thread's output is truncated
+		int numLines = 100;
+		runConcurrently(numLines);
+		
+		String nl = System.getProperty("line.separator");
+		for (int i = 0; i < NUM_THREADS; i++) {
+			StringBuilder expected = new StringBuilder();
+			for (int j = 0; j < numLines; j++) {
+				expected.append(key(i)).append(':').append(j).append(nl);
+			}
+			assertEquals(expected.toString(), monitor.getBufferedOutput(key(i)));
+		}
+		assertEquals(0, underlying.size());
+	}
+	
+	@Test
+	public void testChattyOutputIsBounded() throws Exception {
+		runConcurrently(20000);
+		
+		for (int i = 0; i < NUM_THREADS; i++) {
+			String output = monitor.getBufferedOutput(key(i));
+			assertEquals(LimitedOutputCollector.DEFAULT_MAX_BYTES_ALLOWED, output.length());
+			
+			// every complete line must have come from the right thread
+			String[] lines = output.split("\r?\n");
+			for (int j = 0; j < lines.length - 1; j++) {
+				assertEquals(key(i) + ":" + j, lines[j]);
+			}
+		}
+	}
+	
+	@Test
+	public void testReusedThreadCapturesSeparately() throws Exception {
+		monitor.createCapture("first");
+		monitor.beginCapture("first");
+		monitor.print("one");
+		monitor.endCapture();
+		monitor.createCapture("second");
+		monitor.beginCapture("second");
+		monitor.print("two");
+		monitor.endCapture();
+		
+		assertEquals("one", monitor.getBufferedOutput("first"));
+		assertEquals("two", monitor.getBufferedOutput("second"));
+	}
+	
+	@Test
+	public void testUncapturedOutputPassedThrough() throws Exception {
+		monitor.print("hello");
+		monitor.flush();
+		assertEquals("hello", underlying.toString());
+		assertEquals("", monitor.getBufferedOutput("nonexistent"));
+	}
+	
+	@Test
+	public void testNoOutputAfterClose() throws Exception {
+		monitor.createCapture("closed");
+		monitor.beginCapture("closed");
+		monitor.print("before");
+		monitor.close("closed");
+		monitor.print("after");
+		monitor.endCapture();
+		assertEquals("before", monitor.getBufferedOutput("closed"));
+	}
+	
+	/**
+	 * Create tasks which print numLines lines to System.out and to
+	 * System.err, sleeping sleepMillis milliseconds after each line.
+	 */
+	private static List<IsolatedTask<Integer>> createPrintingTasks(final String name, int numTasks,
+			final int numLines, final long sleepMillis, final CountDownLatch started) {
+		List<IsolatedTask<Integer>> tasks = new ArrayList<IsolatedTask<Integer>>();
+		for (int i = 0; i < numTasks; i++) {
+			final String prefix = name + i;
+			tasks.add(new IsolatedTask<Integer>() {
+				@Override
+				public Integer execute() throws Throwable {
+					if (started != null) {
+						started.countDown();
+					}
+					for (int j = 0; j < numLines; j++) {
+						System.out.println(prefix + ":" + j);
+						System.err.println(prefix + ":err" + j);
+						if (sleepMillis > 0) {
+							Thread.sleep(sleepMillis);
+						}
+					}
+					return numLines;
+				}
+			});
+		}
+		return tasks;
+	}
+	
+	private static void checkOutput(JVMKillableTaskManager<Integer> manager, String name, int numTasks, int numLines) {
+		String nl = System.getProperty("line.separator");
+		for (int i = 0; i < numTasks; i++) {
+			StringBuilder out = new StringBuilder();
+			StringBuilder err = new StringBuilder();
+			for (int j = 0; j < numLines; j++) {
+				out.append(name).append(i).append(':').append(j).append(nl);
+				err.append(name).append(i).append(":err").append(j).append(nl);
+			}
+			assertEquals(Integer.valueOf(numLines), manager.getOutcomes().get(i));
+			assertEquals(out.toString(), manager.getBufferedStdout().get(i));
+			assertEquals(err.toString(), manager.getBufferedStderr().get(i));
+		}
+	}
+	
+	@Test
+	public void testConcurrentTaskManagers() throws Exception {
+		JVMKillableTaskManager.installSecurityManager();
+		TimeoutHandler<Integer> timeoutHandler = new TimeoutHandler<Integer>() {
+			@Override
+			public Integer handleTimeout() {
+				return -1;
+			}
+		};
+		
+		// The slow manager's tasks are still printing when the fast
+		// manager starts, and after it finishes
+		final int slowTasks = 2, slowLines = 60, fastTasks = 4, fastLines = 10;
+		CountDownLatch slowStarted = new CountDownLatch(1);
+		final JVMKillableTaskManager<Integer> slow = new JVMKillableTaskManager<Integer>(
+				createPrintingTasks("slow", slowTasks, slowLines, 5L, slowStarted), 30000L, timeoutHandler);
+		JVMKillableTaskManager<Integer> fast = new JVMKillableTaskManager<Integer>(
+				createPrintingTasks("fast", fastTasks, fastLines, 0L, null), 30000L, timeoutHandler);
+		
+		Thread slowThread = new Thread() {
+			public void run() {
+				slow.run();
+			}
+		};
+		slowThread.start();
+		slowStarted.await();
+		fast.run();
+		slowThread.join();
+		
+		checkOutput(fast, "fast", fastTasks, fastLines);
+		checkOutput(slow, "slow", slowTasks, slowLines);
+	}
+}
@@ -0,0 +1,147 @@
+package org.cloudcoder.builder2.tests.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import org.apache.commons.io.IOUtils;
+import org.cloudcoder.builder2.model.ProcessStatus;
+import org.cloudcoder.builder2.model.WrapperMode;
+import org.cloudcoder.builder2.process.ProcessLauncher;
+import org.cloudcoder.builder2.process.ProcessRunner;
+import org.cloudcoder.builder2.util.DeleteDirectoryRecursively;
+import org.cloudcoder.builder2.util.FileUtil;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for killing processes started by the {@link ProcessLauncher},
+ * including processes which have started background processes.
+ * Uses /proc to find and check processes, so is skipped if /proc
+ * is not available.
+ */
+public class ProcessLauncherTest {
+	private Properties config;
+	private File workDir;
+
+	@Before
+	public void setUp() {
+		config = new Properties();
+		config.setProperty("cloudcoder.builder2.tmpdir", System.getProperty("java.io.tmpdir"));
+		Assume.assumeTrue(new File("/proc/self/stat").exists());
+		Assume.assumeTrue(ProcessLauncher.getInstance(config).isAvailable());
+		workDir = FileUtil.makeTempDir(config);
+	}
+
+	@After
+	public void tearDown() {
+		if (workDir != null) {
+			new DeleteDirectoryRecursively(workDir).delete();
+		}
+	}
+
+	private ProcessRunner start(String script) {
+		ProcessRunner runner = new ProcessRunner(config);
+		runner.setWrapperMode(WrapperMode.NATIVE_EXE);
+		runner.runAsynchronous(workDir, "/bin/sh", "-c", script);
+		return runner;
+	}
+
+	private static String readFile(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			return IOUtils.toString(in, "UTF-8").trim();
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Wait for a script to write its pid to a file.
+	 */
+	private int waitForPid(File pidFile) throws Exception {
+		long deadline = System.currentTimeMillis() + 10000L;
+		while (System.currentTimeMillis() < deadline) {
+			if (pidFile.exists()) {
+				String pid = readFile(pidFile);
+				if (pid.length() > 0) {
+					return Integer.parseInt(pid);
+				}
+			}
+			Thread.sleep(10L);
+		}
+		throw new IllegalStateException("Process did not write its pid");
+	}
+
+	/**
+	 * @return the fields of /proc/pid/stat following the command name
+	 *         (state, ppid, ...), or null if there is no such process
+	 */
+	private static String[] getStat(int pid) throws IOException {
+		File statFile = new File("/proc/" + pid + "/stat");
+		if (!statFile.exists()) {
+			return null;
+		}
+		String stat = readFile(statFile);
+		return stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+	}
+
+	private static boolean isDead(int pid) throws IOException {
+		String[] stat = getStat(pid);
+		return stat == null || stat[0].equals("Z") || stat[0].equals("X");
+	}
+
+	@Test
+	public void testKillWithPipesHeldOpen() throws Exception {
+		// The shell exits right away, but the background process
+		// still has its stdout open
+		File pidFile = new File(workDir, "bg.pid");
+		ProcessRunner runner = start("sleep 1000 & echo $! > bg.pid; echo bg");
+		int bgPid = waitForPid(pidFile);
+		Thread.sleep(200L);
+
+		long begin = System.currentTimeMillis();
+		runner.killProcess();
+		long elapsed = System.currentTimeMillis() - begin;
+
+		// The launcher reports the shell's exit status right away,
+		// rather than being destroyed after the kill timeout
+		assertTrue("kill took " + elapsed + " ms", elapsed < 5000L);
+		assertEquals(ProcessStatus.EXITED, runner.getStatus());
+		assertEquals("bg", runner.getStdout().trim());
+
+		// The background process was killed too
+		long deadline = System.currentTimeMillis() + 5000L;
+		while (!isDead(bgPid) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10L);
+		}
+		assertTrue(isDead(bgPid));
+	}
+
+	@Test
+	public void testLauncherTerminatedKillsProcesses() throws Exception {
+		File pidFile = new File(workDir, "loop.pid");
+		ProcessRunner runner = start("echo $$ > loop.pid; while :; do :; done");
+		int pid = waitForPid(pidFile);
+
+		// Terminate the launcher (as ProcessLauncher does when it
+		// destroys a launcher which has failed)
+		int launcherPid = Integer.parseInt(getStat(pid)[1]);
+		Process kill = Runtime.getRuntime().exec(new String[]{ "kill", "-TERM", String.valueOf(launcherPid) });
+		assertEquals(0, kill.waitFor());
+
+		assertTrue(runner.waitForExit(10000L));
+		long deadline = System.currentTimeMillis() + 5000L;
+		while (!isDead(pid) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10L);
+		}
+		assertTrue("process " + pid + " is still running", isDead(pid));
+	}
+}
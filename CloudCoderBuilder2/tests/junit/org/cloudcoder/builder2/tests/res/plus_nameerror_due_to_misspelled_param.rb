@@ -0,0 +1,3 @@
+def plus(a, bb)
+  return a + b
+end
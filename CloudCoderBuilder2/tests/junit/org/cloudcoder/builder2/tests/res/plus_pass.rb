@@ -0,0 +1,3 @@
+def plus(a, b)
+  return a + b
+end
@@ -0,0 +1,7 @@
+public static int sq(int x) {
+	for (int i = 0; i < 100000; i++) {
+		System.out.println("chatty " + x + " " + i);
+	}
+	System.err.println("err " + x);
+	return x * x;
+}
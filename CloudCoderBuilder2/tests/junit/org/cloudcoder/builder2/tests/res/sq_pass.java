@@ -0,0 +1,3 @@
+public static int sq(int x) {
+	return x * x;
+}
@@ -0,0 +1,51 @@
+package org.cloudcoder.builder2.tests.ruby;
+
+import static org.junit.Assert.assertTrue;
+
+import org.cloudcoder.app.shared.model.ProblemAndTestCaseList;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.builder2.rubymethod.RubyScriptCache;
+import org.cloudcoder.builder2.tests.BuilderTest;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RubyMethodTest extends BuilderTest {
+	private ProblemAndTestCaseList plus;
+
+	@Before
+	public void start() {
+		if (createContext()) {
+			plus = getContext().getExercise("plus");
+		}
+	}
+	
+	@Test
+	public void testPlus() {
+		String source = getContext().getSourceText("plus_pass.rb");
+		SubmissionResult result = getContext().testSubmission(source, plus);
+		super.assertAllTestsPassed(result, plus);
+	}
+	
+	@Test
+	public void testPlusRepeatedSubmissionUsesCachedHarness() {
+		String source = getContext().getSourceText("plus_pass.rb");
+		getContext().testSubmission(source, plus);
+		long hits = RubyScriptCache.getInstance().getHits();
+		SubmissionResult result = getContext().testSubmission(source, plus);
+		super.assertAllTestsPassed(result, plus);
+		assertTrue(RubyScriptCache.getInstance().getHits() > hits);
+	}
+	
+	@Test
+	public void testPlusNameErrorDueToMisspelledParam() {
+		String source = getContext().getSourceText("plus_nameerror_due_to_misspelled_param.rb");
+		SubmissionResult result = getContext().testSubmission(source, plus);
+		super.assertCompilerDiagnosticAtLine(result, 2);
+	}
+	
+	@AfterClass
+	public static void whenDone() {
+		BuilderTest.getInstance().destroyContext();
+	}
+}
@@ -114,6 +114,8 @@ public class ActiveSubmissionMap {
 			if (entry.getValue().getTimestamp() + MAX_SUBMISSION_AGE_MS < now) {
 				//System.out.println("reaper removing entry " + entry.getKey());
 				i.remove();
+				// The client has abandoned the submission
+				entry.getValue().getResult().cancel();
 			}
 		}
 	}
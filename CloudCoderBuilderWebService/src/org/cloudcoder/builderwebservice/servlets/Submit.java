@@ -33,6 +33,7 @@ import javax.servlet.http.HttpServletResponse;
 import org.cloudcoder.app.server.submitsvc.DefaultSubmitService;
 import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
 import org.cloudcoder.app.server.submitsvc.ISubmitService;
+import org.cloudcoder.app.server.submitsvc.SubmissionPriority;
 import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.SubmissionException;
 import org.cloudcoder.app.shared.model.SubmissionResult;
@@ -161,7 +162,7 @@ public class Submit extends HttpServlet {
 			
 			// Build a BuilderSubmission
 			ISubmitService submitSvc = DefaultSubmitService.getInstance();
-			IFutureSubmissionResult promise = submitSvc.submitAsync(problem, testCaseList, programText);
+			IFutureSubmissionResult promise = submitSvc.submitAsync(problem, testCaseList, programText, SubmissionPriority.API, -1);
 			
 			// Add the submission result to the ActiveSubmissionMap
 			String key = ActiveSubmissionMap.getInstance().add(promise);
@@ -20,11 +20,11 @@ package org.cloudcoder.dataanalysis;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.List;
 import java.util.Properties;
 import java.util.Scanner;
 
 import org.cloudcoder.app.server.persist.Database;
+import org.cloudcoder.app.server.persist.WorkSessionCallback;
 import org.cloudcoder.app.shared.model.SnapshotSelectionCriteria;
 import org.cloudcoder.app.shared.model.WorkSession;
 
@@ -38,6 +38,8 @@ import au.com.bytecode.opencsv.CSVWriter;
  * separation, we group all events that are within that separation
  * of each other into a separate session.  The output includes
  * student, problem, start time, and finish time.
+ * The work sessions are materialized in the database, and only
+ * the events added since the last run need to be processed.
  * 
  * @author David Hovemeyer
  */
@@ -52,11 +54,14 @@ public class FindWorkSessions {
 		Util.connectToDatabase(config);
 		
 		//int courseId = Integer.parseInt(Util.ask(keyboard, "Course id: "));
-		SnapshotSelectionCriteria criteria = Util.getSnapshotSelectionCriteria(keyboard);
-		int separationSeconds = Integer.parseInt(Util.ask(keyboard, "Separation in seconds: "));
+		final SnapshotSelectionCriteria criteria = Util.getSnapshotSelectionCriteria(keyboard);
+		final int separationSeconds = Integer.parseInt(Util.ask(keyboard, "Separation in seconds: "));
 		String resultFileName = Util.ask(keyboard, "Result filename: ");
 		
-		final List<WorkSession> workSessions = Database.getInstance().findWorkSessions(criteria, separationSeconds);
+		System.out.print("Updating work sessions...");
+		System.out.flush();
+		int numEvents = Database.getInstance().updateWorkSessions(separationSeconds);
+		System.out.println("processed " + numEvents + " new events");
 		
 		PrintWriter pw = new PrintWriter(new FileWriter(resultFileName));
 		CSV csv = CSV
@@ -65,19 +70,25 @@ public class FindWorkSessions {
 				.create();       // new instance is immutable
 		csv.write(pw, new CSVWriteProc() {
 			@Override
-			public void process(CSVWriter w) {
+			public void process(final CSVWriter w) {
 				w.writeNext("courseId", "problemId", "userId", "startEventId", "endEventId", "startTime", "endTime");
-				for (WorkSession ws : workSessions) {
-					w.writeNext(
-							String.valueOf(ws.getCourseId()),
-							String.valueOf(ws.getProblemId()),
-							String.valueOf(ws.getUserId()),
-							String.valueOf(ws.getStartEventId()),
-							String.valueOf(ws.getEndEventId()),
-							String.valueOf(ws.getStartTime()),
-							String.valueOf(ws.getEndTime())
-					);
-				}
+				
+				// Write the work sessions as they are retrieved, so they don't
+				// need to be kept in memory
+				Database.getInstance().getWorkSessions(criteria, separationSeconds, new WorkSessionCallback() {
+					@Override
+					public void onWorkSessionFound(WorkSession ws) {
+						w.writeNext(
+								String.valueOf(ws.getCourseId()),
+								String.valueOf(ws.getProblemId()),
+								String.valueOf(ws.getUserId()),
+								String.valueOf(ws.getStartEventId()),
+								String.valueOf(ws.getEndEventId()),
+								String.valueOf(ws.getStartTime()),
+								String.valueOf(ws.getEndTime())
+						);
+					}
+				});
 			}
 		});
 		pw.close();
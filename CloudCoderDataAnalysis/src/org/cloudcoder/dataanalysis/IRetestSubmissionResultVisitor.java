@@ -30,8 +30,11 @@ public interface IRetestSubmissionResultVisitor {
 	 * Called to initialize the {@link IRetestSubmissionResultVisitor}.
 	 * 
 	 * @param outputDirectory the directory where output should be written
+	 * @param resume          true if an interrupted retest is being resumed,
+	 *                        in which case output written by the previous run
+	 *                        should be appended to rather than replaced
 	 */
-	public void init(File outputDirectory);
+	public void init(File outputDirectory, boolean resume);
 	
 	/**
 	 * Called when a {@link SubmissionResult} is produced.
@@ -41,6 +44,14 @@ public interface IRetestSubmissionResultVisitor {
 	 */
 	public void onSubmissionResult(SubmissionResult result, RetestSnapshot snapshot);
 	
+	/**
+	 * Called before {@link Retest} records a checkpoint: output for all
+	 * of the {@link SubmissionResult}s delivered so far must be written
+	 * to the output directory.  Results delivered after the last checkpoint
+	 * will be delivered again if an interrupted retest is resumed.
+	 */
+	public void flush();
+	
 	/**
 	 * Called after all {@link SubmissionResult}s have been delivered.
 	 */
@@ -3,17 +3,16 @@ package org.cloudcoder.dataanalysis;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.List;
 import java.util.Properties;
 import java.util.Scanner;
 
 import org.apache.commons.io.IOUtils;
 import org.cloudcoder.app.server.persist.Database;
+import org.cloudcoder.app.server.persist.WorkSessionEventCallback;
 import org.cloudcoder.app.shared.model.Change;
 import org.cloudcoder.app.shared.model.ChangeType;
 import org.cloudcoder.app.shared.model.Event;
 import org.cloudcoder.app.shared.model.EventType;
-import org.cloudcoder.app.shared.model.Pair;
 import org.cloudcoder.app.shared.model.SnapshotSelectionCriteria;
 import org.cloudcoder.app.shared.model.WorkSession;
 
@@ -48,24 +47,38 @@ public class PauseTimes implements IAnalyzeSnapshots {
 			
 			w.write("userId,pauseTime\n");
 			
-			List<WorkSession> sessions = Database.getInstance().findWorkSessions(criteria, separation);
-			System.out.println("Found " + sessions.size() + " work sessions");
+			System.out.print("Updating work sessions...");
+			System.out.flush();
+			int numEvents = Database.getInstance().updateWorkSessions(separation);
+			System.out.println("processed " + numEvents + " new events");
 			
-			int count = 0;
-			
-			for (WorkSession ws : sessions) {
-				List<Pair<Event, Change>> events =
-						Database.getInstance().getEventsWithChanges(ws.getUserId(), ws.getProblemId(), ws.getStartEventId(), ws.getEndEventId());
+			// Retrieve the events in all of the work sessions using a single query
+			final BufferedWriter out = w;
+			final IOException[] error = new IOException[1];
+			Database.getInstance().getEventsInWorkSessions(criteria, separation, new WorkSessionEventCallback() {
+				private WorkSession ws = null;
+				private long last = -1;
+				private int count = 0;
 				
-				long last = -1;
-				for (Pair<Event, Change> pair : events) {
+				@Override
+				public void onEvent(WorkSession workSession, Event event, Change change) {
+					if (workSession != ws) {
+						// Start of next work session
+						ws = workSession;
+						last = -1;
+					}
+					
 					// ignore full-text change events: they are generated automatically
 					// with each submission
-					if (pair.getLeft().getType() == EventType.CHANGE && pair.getRight().getType() == ChangeType.FULL_TEXT) {
-						continue;
+					if (event.getType() == EventType.CHANGE && change != null && change.getType() == ChangeType.FULL_TEXT) {
+						return;
 					}
-					if (last > 0L) {
-						w.write(ws.getUserId() + "," + (pair.getLeft().getTimestamp() - last) + "\n");
+					if (last > 0L && error[0] == null) {
+						try {
+							out.write(ws.getUserId() + "," + (event.getTimestamp() - last) + "\n");
+						} catch (IOException e) {
+							error[0] = e;
+						}
 						
 						count++;
 						if (count % 200 == 0) {
@@ -73,8 +86,11 @@ public class PauseTimes implements IAnalyzeSnapshots {
 							System.out.flush();
 						}
 					}
-					last = pair.getLeft().getTimestamp();
+					last = event.getTimestamp();
 				}
+			});
+			if (error[0] != null) {
+				throw error[0];
 			}
 			w.flush();
 			System.out.println("done");
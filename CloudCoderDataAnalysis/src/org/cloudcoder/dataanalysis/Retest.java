@@ -18,21 +18,25 @@
 package org.cloudcoder.dataanalysis;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Scanner;
+import java.util.TreeSet;
 
+import org.apache.commons.io.IOUtils;
 import org.cloudcoder.app.server.model.HealthDataSingleton;
 import org.cloudcoder.app.server.persist.Database;
 import org.cloudcoder.app.server.persist.SnapshotCallback;
 import org.cloudcoder.app.server.submitsvc.DefaultSubmitService;
 import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
+import org.cloudcoder.app.server.submitsvc.SubmissionPriority;
 import org.cloudcoder.app.server.submitsvc.oop.OutOfProcessSubmitService;
 import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.ProblemAndTestCaseList;
@@ -54,17 +58,52 @@ import org.slf4j.LoggerFactory;
 public class Retest {
 	private static final Logger logger = LoggerFactory.getLogger(Retest.class);
 	
+	/** Name of the checkpoint file written to the output directory. */
+	public static final String CHECKPOINT_FILE_NAME = "retest-checkpoint.properties";
+	
+	/** Default maximum number of snapshots being tested at the same time. */
+	public static final int DEFAULT_WINDOW_SIZE = 100;
+	
+	private static final long CHECKPOINT_INTERVAL_MS = 10000L;
+	private static final long PROGRESS_INTERVAL_MS = 10000L;
+	private static final long POLL_WAIT_MS = 100L;
+	
+	/**
+	 * A snapshot that has been submitted for testing.
+	 */
+	private static class InFlight {
+		final IFutureSubmissionResult future;
+		final RetestSnapshot snapshot;
+		
+		InFlight(IFutureSubmissionResult future, RetestSnapshot snapshot) {
+			this.future = future;
+			this.snapshot = snapshot;
+		}
+	}
+	
 	private SnapshotSelectionCriteria criteria;
 	private Properties config;
 	private Map<Integer, ProblemAndTestCaseList> exerciseMap;
-	private IdentityHashMap<IFutureSubmissionResult, RetestSnapshot> snapshotMap;
 	private File outputDirectory;
 	private List<IRetestSubmissionResultVisitor> visitorList;
+	private int windowSize;
+	
+	private LinkedList<RetestSnapshot> pending;
+	private LinkedList<InFlight> inFlight;
+	private int lastFetchedSubmitEventId;
+	private boolean allFetched;
+	private long numTested;
+	private long numErrors;
+	private long numTestedBefore;
+	private TreeSet<Integer> testedAfterOldest;
 	
 	public Retest() {
 		exerciseMap = new HashMap<Integer, ProblemAndTestCaseList>();
-		snapshotMap = new IdentityHashMap<IFutureSubmissionResult, RetestSnapshot>();
 		visitorList = new LinkedList<IRetestSubmissionResultVisitor>();
+		windowSize = DEFAULT_WINDOW_SIZE;
+		pending = new LinkedList<RetestSnapshot>();
+		inFlight = new LinkedList<InFlight>();
+		testedAfterOldest = new TreeSet<Integer>();
 	}
 	
 	public void setCriteria(SnapshotSelectionCriteria criteria) {
@@ -83,6 +122,32 @@ public class Retest {
 		visitorList.add(visitor);
 	}
 	
+	/**
+	 * Set the maximum number of snapshots that will be submitted
+	 * for testing at the same time.  Snapshots are retrieved from the
+	 * database in pages of this size, so it also limits the number
+	 * of snapshots waiting to be submitted.
+	 * 
+	 * @param windowSize the window size
+	 */
+	public void setWindowSize(int windowSize) {
+		this.windowSize = windowSize;
+	}
+	
+	/**
+	 * Retest the snapshots.  Snapshots are retrieved from the database in
+	 * order of submit event id, and at most {@link #setWindowSize(int) window size}
+	 * snapshots are being tested at any time.  Submission results are delivered
+	 * to the visitors in the order in which they complete.
+	 * 
+	 * <p>A checkpoint, recording the submit event id up to which all snapshots
+	 * have been tested, is periodically written to the output directory.
+	 * If the output directory contains a checkpoint for the same
+	 * {@link SnapshotSelectionCriteria}, the retest resumes from the checkpoint.
+	 * The checkpoint is deleted once all snapshots have been tested.
+	 * 
+	 * @throws IOException
+	 */
 	public void execute() throws IOException {
 		// Initialize OutOfProcessSubmitService
 		OutOfProcessSubmitService svc = new OutOfProcessSubmitService();
@@ -108,66 +173,72 @@ public class Retest {
 			}
 		}
 		
-		// Retrieve snapshots from database
-		final List<RetestSnapshot> snapshotList = new ArrayList<RetestSnapshot>();
-		Database.getInstance().retrieveSnapshots(criteria, new SnapshotCallback() {
-			@Override
-			public void onSnapshotFound(int submitEventId,
-					int fullTextChangeId, int courseId, int problemId,
-					int userId, String programText, SubmissionReceipt receipt) {
-				snapshotList.add(new RetestSnapshot(courseId, problemId, userId, submitEventId, fullTextChangeId, programText));
-			}
-		});
-		System.out.println(snapshotList.size() + " snapshots");
-		
-		// Add snapshots to submission queue, resolving problem/test cases as necessary.
-		// Add IFutureSubmissionResults to a list.
-		List<IFutureSubmissionResult> futureList = new ArrayList<IFutureSubmissionResult>();
-		for (RetestSnapshot snapshot : snapshotList) {
-			ProblemAndTestCaseList exercise = findExercise(snapshot.problemId);
-			IFutureSubmissionResult future;
-			try {
-				future = DefaultSubmitService.getInstance().submitAsync(exercise.getProblem(), exercise.getTestCaseData(), snapshot.programText);
-				futureList.add(future);
-				
-				// Map the future to its snapshot
-				// FIXME: this could consume a lot of main memory
-				snapshotMap.put(future, snapshot);
-			} catch (SubmissionException e) {
-				logger.error("Error submitting snapshot for retest", e);
-			}
+		// Resume from checkpoint, if there is one
+		outputDirectory.mkdirs();
+		File checkpointFile = new File(outputDirectory, CHECKPOINT_FILE_NAME);
+		boolean resume = readCheckpoint(checkpointFile);
+		if (resume) {
+			System.out.println("Resuming after submit event id " + lastFetchedSubmitEventId +
+					" (" + numTestedBefore + " snapshots already tested)");
+		} else {
+			lastFetchedSubmitEventId = -1;
 		}
 		
-		// The snapshot list can be cleared now to release memory
-		snapshotList.clear();
-		
 		// Initialize visitors
-		outputDirectory.mkdirs();
 		for (IRetestSubmissionResultVisitor visitor : visitorList) {
-			visitor.init(outputDirectory);
+			visitor.init(outputDirectory, resume);
 		}
 		
-		// Wait for all submission results.
-		for (IFutureSubmissionResult future : futureList) {
+		long startTime = System.currentTimeMillis();
+		long lastCheckpointTime = startTime;
+		long lastProgressTime = startTime;
+		long numTestedAtLastProgress = 0;
+		
+		for (;;) {
+			// Submit snapshots until the window is full
+			fillWindow();
+			if (inFlight.isEmpty()) {
+				// All snapshots have been tested
+				break;
+			}
+			
+			// Deliver completed submission results
 			try {
-				SubmissionResult result = waitForSubmissionResult(future);
-				RetestSnapshot snapshot = snapshotMap.get(future);
-				onSubmissionResult(result, snapshot);
-			} catch (SubmissionException e) {
-				logger.error("Error testing snapshot (should not happen)", e);
+				collectResults();
 			} catch (InterruptedException e) {
-				logger.error("Interrupted waiting for submission result (should not happen)", e);
+				logger.error("Interrupted waiting for submission results (should not happen)", e);
+			}
+			
+			long now = System.currentTimeMillis();
+			if (now - lastCheckpointTime >= CHECKPOINT_INTERVAL_MS) {
+				writeCheckpoint(checkpointFile);
+				lastCheckpointTime = now;
+			}
+			if (now - lastProgressTime >= PROGRESS_INTERVAL_MS) {
+				System.out.printf("%d snapshots tested (%d in flight, %d errors), %.1f snapshots/s (%.1f overall)%n",
+						numTestedBefore + numTested, inFlight.size(), numErrors,
+						rate(numTested - numTestedAtLastProgress, now - lastProgressTime),
+						rate(numTested, now - startTime));
+				lastProgressTime = now;
+				numTestedAtLastProgress = numTested;
 			}
 		}
 		
-		System.out.print("All snapshots tested...");
-		System.out.flush();
+		long elapsed = System.currentTimeMillis() - startTime;
+		System.out.printf("All snapshots tested: %d snapshots in %.1f s, %.1f snapshots/s%n",
+				numTested, elapsed / 1000.0, rate(numTested, elapsed));
+		if (numErrors > 0) {
+			System.out.printf("%d snapshots could not be tested (see log)%n", numErrors);
+		}
 		
 		// Allow retest submission result visitors to shut down.
 		for (IRetestSubmissionResultVisitor visitor : visitorList) {
 			visitor.cleanup();
 		}
 		
+		// The retest is complete, so there is nothing to resume
+		checkpointFile.delete();
+		
 		// Shut down the submission queue.
 		try {
 			OutOfProcessSubmitService.getInstance().shutdown();
@@ -177,18 +248,194 @@ public class Retest {
 		System.out.println("exiting");
 	}
 
-	private SubmissionResult waitForSubmissionResult(IFutureSubmissionResult future) throws SubmissionException, InterruptedException {
-		System.out.print("Waiting for submission result...");
-		SubmissionResult submissionResult = null;
-		while (submissionResult == null) {
-			submissionResult = future.waitFor(IFutureSubmissionResult.STANDARD_POLL_WAIT_MS);
-			if (submissionResult == null) {
-				System.out.print(".");
-				System.out.flush();
+	/**
+	 * Submit snapshots until the window is full or there are no more
+	 * snapshots, retrieving the next page of snapshots from the database
+	 * when the snapshots retrieved so far have all been submitted.
+	 */
+	private void fillWindow() {
+		while (inFlight.size() < windowSize) {
+			while (pending.isEmpty() && !allFetched) {
+				fetchSnapshots();
+			}
+			if (pending.isEmpty()) {
+				return;
+			}
+			
+			// Submit the snapshot, resolving problem/test cases as necessary
+			RetestSnapshot snapshot = pending.removeFirst();
+			ProblemAndTestCaseList exercise = findExercise(snapshot.problemId);
+			try {
+				IFutureSubmissionResult future = DefaultSubmitService.getInstance().submitAsync(
+						exercise.getProblem(), exercise.getTestCaseData(), snapshot.programText,
+						SubmissionPriority.BATCH, snapshot.userId);
+				inFlight.add(new InFlight(future, snapshot));
+			} catch (SubmissionException e) {
+				logger.error("Error submitting snapshot for retest", e);
+				numErrors++;
 			}
 		}
-		System.out.println("done");
-		return submissionResult;
+	}
+
+	/**
+	 * Retrieve the next page of snapshots from the database.
+	 * Note that the database must not be accessed while the
+	 * snapshots are being retrieved, so the problems and test cases
+	 * are loaded when the snapshots are submitted.  A page may contain
+	 * rows without a valid snapshot, so the end of the snapshots is
+	 * detected by retrieving an empty page, not a page with fewer
+	 * snapshots than requested.
+	 */
+	private void fetchSnapshots() {
+		int lastSubmitEventId = Database.getInstance().retrieveSnapshots(criteria, lastFetchedSubmitEventId, windowSize, new SnapshotCallback() {
+			@Override
+			public void onSnapshotFound(int submitEventId,
+					int fullTextChangeId, int courseId, int problemId,
+					int userId, String programText, SubmissionReceipt receipt) {
+				pending.add(new RetestSnapshot(courseId, problemId, userId, submitEventId, fullTextChangeId, programText));
+			}
+		});
+		if (lastSubmitEventId < 0) {
+			allFetched = true;
+		} else {
+			lastFetchedSubmitEventId = lastSubmitEventId;
+		}
+	}
+
+	/**
+	 * Deliver the submission results of in-flight snapshots that have
+	 * completed.  If none have completed, waits briefly for the
+	 * oldest in-flight snapshot to complete.
+	 * 
+	 * @throws InterruptedException
+	 */
+	private void collectResults() throws InterruptedException {
+		int numCompleted = 0;
+		for (Iterator<InFlight> i = inFlight.iterator(); i.hasNext(); ) {
+			InFlight f = i.next();
+			if (checkCompleted(f, 0L)) {
+				i.remove();
+				numCompleted++;
+			}
+		}
+		if (numCompleted == 0 && !inFlight.isEmpty() && checkCompleted(inFlight.getFirst(), POLL_WAIT_MS)) {
+			inFlight.removeFirst();
+		}
+	}
+
+	/**
+	 * Check whether an in-flight snapshot has been tested, and if so,
+	 * deliver its submission result to the visitors.
+	 * 
+	 * @param f         the in-flight snapshot
+	 * @param timeoutMs how long to wait for the submission result
+	 * @return true if the snapshot has been tested (or testing failed)
+	 * @throws InterruptedException
+	 */
+	private boolean checkCompleted(InFlight f, long timeoutMs) throws InterruptedException {
+		SubmissionResult result;
+		try {
+			result = f.future.waitFor(timeoutMs);
+		} catch (SubmissionException e) {
+			// Testing failed, or the submission was superseded or cancelled:
+			// either way, the snapshot has no result
+			logger.error("Error testing snapshot " + f.snapshot.submitEventId, e);
+			numErrors++;
+			return true;
+		}
+		if (result == null) {
+			return false;
+		}
+		onSubmissionResult(result, f.snapshot);
+		numTested++;
+		testedAfterOldest.add(f.snapshot.submitEventId);
+		return true;
+	}
+
+	/**
+	 * Read the checkpoint file, if it exists and was written
+	 * for the same {@link SnapshotSelectionCriteria}.
+	 * 
+	 * @param checkpointFile the checkpoint file
+	 * @return true if the retest should resume from the checkpoint
+	 * @throws IOException
+	 */
+	private boolean readCheckpoint(File checkpointFile) throws IOException {
+		if (!checkpointFile.exists()) {
+			return false;
+		}
+		Properties checkpoint = new Properties();
+		FileInputStream in = new FileInputStream(checkpointFile);
+		try {
+			checkpoint.load(in);
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+		if (!checkpoint.getProperty("criteria", "").equals(criteriaToString())) {
+			System.out.println("Ignoring checkpoint for different snapshot selection criteria");
+			return false;
+		}
+		lastFetchedSubmitEventId = Integer.parseInt(checkpoint.getProperty("afterSubmitEventId"));
+		numTestedBefore = Long.parseLong(checkpoint.getProperty("numTested"));
+		return true;
+	}
+
+	/**
+	 * Write a checkpoint recording the submit event id up to which
+	 * all snapshots have been tested.  The visitors are flushed first,
+	 * so their output includes all of the snapshots covered by the
+	 * checkpoint.
+	 * 
+	 * @param checkpointFile the checkpoint file
+	 */
+	private void writeCheckpoint(File checkpointFile) {
+		for (IRetestSubmissionResultVisitor visitor : visitorList) {
+			visitor.flush();
+		}
+		
+		// Snapshots are submitted in order of submit event id, so every
+		// snapshot before the oldest untested snapshot has been tested
+		int afterSubmitEventId = lastFetchedSubmitEventId;
+		if (!inFlight.isEmpty()) {
+			afterSubmitEventId = inFlight.getFirst().snapshot.submitEventId - 1;
+		} else if (!pending.isEmpty()) {
+			afterSubmitEventId = pending.getFirst().submitEventId - 1;
+		}
+		
+		// Snapshots tested after the oldest untested snapshot will be
+		// tested again if the retest is resumed, so they aren't counted
+		testedAfterOldest.headSet(afterSubmitEventId + 1).clear();
+		
+		Properties checkpoint = new Properties();
+		checkpoint.setProperty("criteria", criteriaToString());
+		checkpoint.setProperty("afterSubmitEventId", String.valueOf(afterSubmitEventId));
+		checkpoint.setProperty("numTested", String.valueOf(numTestedBefore + numTested - testedAfterOldest.size()));
+		
+		// Write to a temporary file and rename it, so that a crash
+		// can't leave a partially-written checkpoint
+		File tmpFile = new File(checkpointFile.getPath() + ".tmp");
+		try {
+			FileOutputStream out = new FileOutputStream(tmpFile);
+			try {
+				checkpoint.store(out, "Retest checkpoint");
+			} finally {
+				IOUtils.closeQuietly(out);
+			}
+			checkpointFile.delete();
+			if (!tmpFile.renameTo(checkpointFile)) {
+				throw new IOException("Could not rename " + tmpFile + " to " + checkpointFile);
+			}
+		} catch (IOException e) {
+			logger.error("Could not write retest checkpoint", e);
+		}
+	}
+
+	private String criteriaToString() {
+		return criteria.getCourseId() + "," + criteria.getProblemId() + "," + criteria.getUserId();
+	}
+
+	private static double rate(long count, long millis) {
+		return millis > 0 ? count / (millis / 1000.0) : 0.0;
 	}
 
 	private ProblemAndTestCaseList findExercise(int problemId) {
@@ -215,11 +462,15 @@ public class Retest {
 
 	public static void main(String[] args) throws IOException {
 		boolean interactiveConfig = false;
+		int windowSize = DEFAULT_WINDOW_SIZE;
 		
 		for (String arg : args) {
 			if (arg.equals("--interactiveConfig")) {
 				// Configure interactively rather than using embedded cloudcoder.properties
 				interactiveConfig = true;
+			} else if (arg.startsWith("--window=")) {
+				// Maximum number of snapshots being tested at the same time
+				windowSize = Integer.parseInt(arg.substring("--window=".length()));
 			} else {
 				throw new IllegalArgumentException("Unknown option: " + arg);
 			}
@@ -245,6 +496,7 @@ public class Retest {
 		SnapshotSelectionCriteria criteria = Util.getSnapshotSelectionCriteria(keyboard);
 		retest.setCriteria(criteria);
 		retest.setConfig(config);
+		retest.setWindowSize(windowSize);
 		
 		File outputDirectory = new File(Util.ask(keyboard, "Data output directory: "));
 		retest.setOutputDirectory(outputDirectory);
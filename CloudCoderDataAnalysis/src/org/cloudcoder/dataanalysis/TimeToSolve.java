@@ -34,6 +34,7 @@ import java.util.Set;
 
 import org.apache.commons.io.IOUtils;
 import org.cloudcoder.app.server.persist.Database;
+import org.cloudcoder.app.server.persist.WorkSessionCallback;
 import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.SnapshotSelectionCriteria;
 import org.cloudcoder.app.shared.model.SubmissionReceipt;
@@ -90,9 +91,20 @@ public class TimeToSolve implements IAnalyzeSnapshots {
 	}
 
 	private void execute() throws IOException {
+		System.out.print("Updating work sessions...");
+		System.out.flush();
+		int numEvents = Database.getInstance().updateWorkSessions(separation);
+		System.out.println("processed " + numEvents + " new events");
+		
 		System.out.print("Getting work sessions...");
 		System.out.flush();
-		List<WorkSession> sessions = Database.getInstance().findWorkSessions(criteria, separation);
+		final List<WorkSession> sessions = new ArrayList<WorkSession>();
+		Database.getInstance().getWorkSessions(criteria, separation, new WorkSessionCallback() {
+			@Override
+			public void onWorkSessionFound(WorkSession workSession) {
+				sessions.add(workSession);
+			}
+		});
 		System.out.println("done");
 		
 		System.out.print("Analyzing work sessions...");
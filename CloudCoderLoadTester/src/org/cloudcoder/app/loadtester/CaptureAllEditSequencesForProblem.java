@@ -24,6 +24,7 @@ import java.util.List;
 import java.util.Properties;
 import java.util.Scanner;
 
+import org.cloudcoder.app.server.persist.ChangeCallback;
 import org.cloudcoder.app.server.persist.Database;
 import org.cloudcoder.app.server.persist.JDBCDatabaseConfig;
 import org.cloudcoder.app.server.persist.util.DBUtil;
@@ -63,22 +64,27 @@ public class CaptureAllEditSequencesForProblem {
 		problem.setProblemId(problemId);
 		Database.getInstance().reloadModelObject(problem);
 		
-		List<Change> allChanges = Database.getInstance().loadChangesForAllUsersOnProblem(problemId);
+		final String exerciseName = problem.getTestname();
 		
-		EditSequence seq = null;
-		int userId = -1;
-		
-		for (Change change : allChanges) {
-			if (change.getEvent().getUserId() != userId) {
-				// Make a new EditSequence
-				seq = new EditSequence();
-				seq.setExerciseName(problem.getTestname());
-				seq.setChangeList(new ArrayList<Change>());
-				userId = change.getEvent().getUserId();
-				editSequenceList.add(seq);
+		// Changes are ordered by user id, so each user's changes can be
+		// added to an EditSequence as they are retrieved
+		Database.getInstance().loadChangesForAllUsersOnProblem(problemId, new ChangeCallback() {
+			EditSequence seq = null;
+			int userId = -1;
+			
+			@Override
+			public void onChangeFound(Change change) {
+				if (change.getEvent().getUserId() != userId) {
+					// Make a new EditSequence
+					seq = new EditSequence();
+					seq.setExerciseName(exerciseName);
+					seq.setChangeList(new ArrayList<Change>());
+					userId = change.getEvent().getUserId();
+					editSequenceList.add(seq);
+				}
+				seq.getChangeList().add(change);
 			}
-			seq.getChangeList().add(change);
-		}
+		});
 	}
 
 	public void write() throws IOException {
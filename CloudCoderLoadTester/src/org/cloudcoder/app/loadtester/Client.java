@@ -19,12 +19,16 @@
 package org.cloudcoder.app.loadtester;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.CookieManager;
+import java.net.HttpURLConnection;
 import java.net.URI;
+import java.net.URL;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.io.IOUtils;
 import org.cloudcoder.app.client.rpc.EditCodeService;
 import org.cloudcoder.app.client.rpc.GetCoursesAndProblemsService;
 import org.cloudcoder.app.client.rpc.LoginService;
@@ -80,6 +84,12 @@ public class Client {
 		}
 	}
 
+	/**
+	 * Read timeout for long-poll requests waiting for a {@link SubmissionResult}:
+	 * longer than the time the webapp holds a long-poll request.
+	 */
+	private static final int LONG_POLL_READ_TIMEOUT_MS = 60000;
+
 	private HostConfig hostConfig;
 	private HashMap<Class<?>, Object> serviceMap;
 	private User user;
@@ -197,14 +207,15 @@ public class Client {
 	/**
 	 * Submit code.  The {@link #setProblem(Problem)} method must be called
 	 * first to establish which problem (exercise) the client is working on.
-	 * Note that the code submission API is inherently asynchronous, in that
-	 * the client is expected to explicitly poll to get the {@link SubmissionResult}.
-	 * This method does that polling.
+	 * Note that the code submission API is inherently asynchronous.
+	 * Like the web client, this method waits for the {@link SubmissionResult}
+	 * using a long-poll request, and then retrieves it.  If the long-poll
+	 * request fails, it falls back to polling.
 	 * 
 	 * @param problemId      the problem id
 	 * @param code           the code to submit
 	 * @param pollIntervalMs interval at which to poll to get the {@link SubmissionResult},
-	 *                       in milliseconds
+	 *                       in milliseconds, if the long-poll request fails
 	 * @return the {@link SubmissionResult}
 	 * @throws QuizEndedException 
 	 * @throws SubmissionException 
@@ -216,12 +227,45 @@ public class Client {
 		SubmitService submitSvc = getService(SubmitService.class);
 		submitSvc.submit(problemId, code);
 		while (true) {
-			SubmissionResult result = null;
-			result = submitSvc.checkSubmission();
+			String status = waitForSubmissionResultReady();
+			if ("pending".equals(status)) {
+				continue;
+			}
+			if (status == null) {
+				Thread.sleep(pollIntervalMs);
+			}
+			SubmissionResult result = submitSvc.checkSubmission();
 			if (result != null) {
 				return result;
 			}
-			Thread.sleep(pollIntervalMs);
+		}
+	}
+	
+	/**
+	 * Send a long-poll request to wait until the result of the
+	 * pending submission is ready.  Cookies are handled by the
+	 * default cookie handler (which is expected to be
+	 * {@link LoadTesterCookieHandler}.)
+	 * 
+	 * @return the status returned by the webapp ("ready", "pending", or "none"),
+	 *         or null if the request failed
+	 */
+	private String waitForSubmissionResultReady() {
+		try {
+			URL url = new URL(createModuleBaseUrl() + "submissionResultReady");
+			HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+			conn.setReadTimeout(LONG_POLL_READ_TIMEOUT_MS);
+			if (conn.getResponseCode() != HttpURLConnection.HTTP_OK) {
+				return null;
+			}
+			InputStream in = conn.getInputStream();
+			try {
+				return IOUtils.toString(in, "UTF-8").trim();
+			} finally {
+				IOUtils.closeQuietly(in);
+			}
+		} catch (IOException e) {
+			return null;
 		}
 	}
 	
@@ -0,0 +1,131 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.loadtester;
+
+import java.util.List;
+
+import org.cloudcoder.app.shared.model.ApplyChangeToTextDocument;
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeType;
+import org.cloudcoder.app.shared.model.ITextDocument;
+import org.cloudcoder.app.shared.model.RopeTextDocument;
+import org.cloudcoder.app.shared.model.TextDocument;
+
+/**
+ * Benchmark comparing {@link TextDocument} and {@link RopeTextDocument}
+ * by replaying the recorded {@link EditSequence}s in the "default" and
+ * "skip3" {@link Mix}es, checking that both produce the same text.
+ * Only the time spent applying changes other than full-text changes
+ * is measured.  To see how replay time depends on document size, the
+ * document can be padded with extra lines following the text being edited:
+ * the padding is added to the text of each full-text change.
+ * Run the main method, optionally passing the numbers of padding lines
+ * as arguments.
+ * 
+ * @author David Hovemeyer
+ */
+public class ReplayEditSequenceBenchmark {
+	private static final int[] DEFAULT_PADDING = { 0, 1000, 10000 };
+	private static final int TRIALS = 3;
+
+	public static void main(String[] args) {
+		int[] paddingList = DEFAULT_PADDING;
+		if (args.length > 0) {
+			paddingList = new int[args.length];
+			for (int i = 0; i < args.length; i++) {
+				paddingList[i] = Integer.parseInt(args[i]);
+			}
+		}
+		
+		Mix[] mixes = { MixDatabase.forName("default"), MixDatabase.forName("skip3") };
+		int numSequences = 0, numChanges = 0;
+		for (Mix mix : mixes) {
+			for (EditSequence seq : mix.getEditSequenceList()) {
+				numSequences++;
+				numChanges += seq.getChangeList().size();
+			}
+		}
+		System.out.printf("%d edit sequences, %d changes%n", numSequences, numChanges);
+		
+		for (int round = 0; round < 2; round++) {
+			for (int padding : paddingList) {
+				String paddingText = createPadding(padding);
+				long[] textDocNanos = new long[TRIALS];
+				long[] ropeNanos = new long[TRIALS];
+				for (int t = 0; t < TRIALS; t++) {
+					for (Mix mix : mixes) {
+						for (EditSequence seq : mix.getEditSequenceList()) {
+							List<Change> changeList = seq.getChangeList();
+							
+							ITextDocument expected = new TextDocument();
+							textDocNanos[t] += replay(changeList, expected, paddingText);
+							
+							ITextDocument actual = new RopeTextDocument();
+							ropeNanos[t] += replay(changeList, actual, paddingText);
+							
+							if (!expected.getText().equals(actual.getText())) {
+								throw new IllegalStateException("Replayed text doesn't match for exercise " + seq.getExerciseName());
+							}
+						}
+					}
+				}
+				System.out.printf("%6d padding lines: TextDocument %9.1f ms, RopeTextDocument %7.1f ms%n",
+						padding, min(textDocNanos) / 1000000.0, min(ropeNanos) / 1000000.0);
+			}
+		}
+	}
+
+	private static long replay(List<Change> changeList, ITextDocument doc, String paddingText) {
+		long nanos = 0L;
+		doc.setText(paddingText);
+		ApplyChangeToTextDocument applicator = new ApplyChangeToTextDocument();
+		for (Change change : changeList) {
+			if (change.getType() == ChangeType.FULL_TEXT) {
+				doc.setText(change.getText() + paddingText);
+			} else {
+				long begin = System.nanoTime();
+				try {
+					applicator.apply(change, doc);
+				} catch (RuntimeException e) {
+					// Some recorded changes can't be applied: ignore them,
+					// so that the rest of the sequence is still replayed
+				}
+				nanos += System.nanoTime() - begin;
+			}
+		}
+		return nanos;
+	}
+
+	private static String createPadding(int numLines) {
+		StringBuilder buf = new StringBuilder();
+		for (int i = 0; i < numLines; i++) {
+			buf.append("// padding line ");
+			buf.append(i);
+			buf.append("\n");
+		}
+		return buf.toString();
+	}
+
+	private static long min(long[] values) {
+		long result = values[0];
+		for (long v : values) {
+			result = Math.min(result, v);
+		}
+		return result;
+	}
+}
@@ -19,7 +19,7 @@ package org.cloudcoder.app.shared.model;
 
 
 /**
- * Apply a Change object to a TextDocument.
+ * Apply a Change object to an {@link ITextDocument}.
  */
 public class ApplyChangeToTextDocument {
 	private static final boolean DEBUG = true;
@@ -28,9 +28,9 @@ public class ApplyChangeToTextDocument {
 	 * Apply a Change object to a TextDocument.
 	 * 
 	 * @param change a Change object
-	 * @param doc    a TextDocument to which the Change should be applied
+	 * @param doc    an ITextDocument to which the Change should be applied
 	 */
-	public void apply(Change change, TextDocument doc) {
+	public void apply(Change change, ITextDocument doc) {
 		String s, up;
 		
 		switch (change.getType()) {
@@ -147,9 +147,17 @@ public class ApplyChangeToTextDocument {
 			throw new IllegalStateException("Not handled? " + change.getType());
 		}
 		
-		// check integrity of TextDocument
+		// check integrity of TextDocument: only the lines starting
+		// at the change's start row, up to one past the number of
+		// lines of text in the change, can have been modified
 		if (DEBUG) {
-			for (int i = 0; i < doc.getNumLines(); i++) {
+			int end;
+			if (change.getType() == ChangeType.FULL_TEXT) {
+				end = doc.getNumLines();
+			} else {
+				end = Math.min(doc.getNumLines(), Math.max(change.getStartRow(), 0) + countNewlines(change.getText()) + 2);
+			}
+			for (int i = Math.max(change.getStartRow(), 0); i < end; i++) {
 				String line = doc.getLine(i);
 				int nl = line.indexOf('\n');
 				if (nl >= 0 && nl != line.length() - 1) {
@@ -159,15 +167,27 @@ public class ApplyChangeToTextDocument {
 		}
 	}
 	
+	private static int countNewlines(String text) {
+		int count = 0;
+		if (text != null) {
+			for (int i = 0; i < text.length(); i++) {
+				if (text.charAt(i) == '\n') {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+	
 	/**
 	 * Change text at given line, inserting multiple lines as necessary
 	 * if text has embedded newlines.
 	 * 
-	 * @param doc   the TextDocument
+	 * @param doc   the ITextDocument
 	 * @param index index of line to change
 	 * @param text  text to put at given index
 	 */
-	private void changeLine(TextDocument doc, int index, String text) {
+	private void changeLine(ITextDocument doc, int index, String text) {
 		int nl = text.indexOf('\n');
 
 		if (nl < 0 || nl == text.length() - 1) {
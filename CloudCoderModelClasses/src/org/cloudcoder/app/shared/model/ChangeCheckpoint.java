@@ -0,0 +1,188 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.shared.model;
+
+import java.io.Serializable;
+
+/**
+ * Model class representing a full-text checkpoint of a user's
+ * work on a problem: the program text as of a particular {@link Change}.
+ * Checkpoints are written automatically as {@link Change}s are stored,
+ * so that reconstructing the current text only requires applying the
+ * deltas stored since the most recent checkpoint (or full-text change).
+ * There is at most one checkpoint per user and problem, which also
+ * keeps track of the amount of change since the checkpoint was written.
+ * 
+ * @author David Hovemeyer
+ */
+public class ChangeCheckpoint implements Serializable, IModelObject<ChangeCheckpoint> {
+	private static final long serialVersionUID = 1L;
+	
+	public static final ModelObjectField<ChangeCheckpoint, Integer> ID = new ModelObjectField<ChangeCheckpoint, Integer>("id", Integer.class, 0, ModelObjectIndexType.IDENTITY) {
+		public void set(ChangeCheckpoint obj, Integer value) { obj.setId(value); }
+		public Integer get(ChangeCheckpoint obj) { return obj.getId(); }
+	};
+	
+	public static final ModelObjectField<ChangeCheckpoint, Integer> USER_ID = new ModelObjectField<ChangeCheckpoint, Integer>("user_id", Integer.class, 0) {
+		public void set(ChangeCheckpoint obj, Integer value) { obj.setUserId(value); }
+		public Integer get(ChangeCheckpoint obj) { return obj.getUserId(); }
+	};
+	
+	public static final ModelObjectField<ChangeCheckpoint, Integer> PROBLEM_ID = new ModelObjectField<ChangeCheckpoint, Integer>("problem_id", Integer.class, 0) {
+		public void set(ChangeCheckpoint obj, Integer value) { obj.setProblemId(value); }
+		public Integer get(ChangeCheckpoint obj) { return obj.getProblemId(); }
+	};
+	
+	public static final ModelObjectField<ChangeCheckpoint, Integer> EVENT_ID = new ModelObjectField<ChangeCheckpoint, Integer>("event_id", Integer.class, 0) {
+		public void set(ChangeCheckpoint obj, Integer value) { obj.setEventId(value); }
+		public Integer get(ChangeCheckpoint obj) { return obj.getEventId(); }
+	};
+	
+	public static final ModelObjectField<ChangeCheckpoint, Integer> NUM_DELTAS = new ModelObjectField<ChangeCheckpoint, Integer>("num_deltas", Integer.class, 0) {
+		public void set(ChangeCheckpoint obj, Integer value) { obj.setNumDeltas(value); }
+		public Integer get(ChangeCheckpoint obj) { return obj.getNumDeltas(); }
+	};
+	
+	public static final ModelObjectField<ChangeCheckpoint, Integer> DELTA_BYTES = new ModelObjectField<ChangeCheckpoint, Integer>("delta_bytes", Integer.class, 0) {
+		public void set(ChangeCheckpoint obj, Integer value) { obj.setDeltaBytes(value); }
+		public Integer get(ChangeCheckpoint obj) { return obj.getDeltaBytes(); }
+	};
+	
+	public static final ModelObjectField<ChangeCheckpoint, String> TEXT = new ModelObjectField<ChangeCheckpoint, String>("text", String.class, 32768, ModelObjectIndexType.NONE, ModelObjectField.ALLOW_NULL) {
+		public void set(ChangeCheckpoint obj, String value) { obj.setText(value); }
+		public String get(ChangeCheckpoint obj) { return obj.getText(); }
+	};
+	
+	public static final ModelObjectSchema<ChangeCheckpoint> SCHEMA_V0 = new ModelObjectSchema<ChangeCheckpoint>("change_checkpoint", ChangeCheckpoint.class)
+			.add(ID)
+			.add(USER_ID)
+			.add(PROBLEM_ID)
+			.add(EVENT_ID)
+			.add(NUM_DELTAS)
+			.add(DELTA_BYTES)
+			.add(TEXT)
+			// Add a unique index on (user id, problem id): checkpoints are
+			// looked up by user id and problem id, and there must be only
+			// one checkpoint per user and problem.
+			.addIndex(new ModelObjectIndex<ChangeCheckpoint>(ModelObjectIndexType.UNIQUE)
+					.addField(USER_ID)
+					.addField(PROBLEM_ID));
+	
+	public static final ModelObjectSchema<ChangeCheckpoint> SCHEMA = SCHEMA_V0;
+	
+	private int id;
+	private int userId;
+	private int problemId;
+	private int eventId;
+	private int numDeltas;
+	private int deltaBytes;
+	private String text;
+	
+	public ChangeCheckpoint() {
+		
+	}
+	
+	@Override
+	public ModelObjectSchema<? super ChangeCheckpoint> getSchema() {
+		return SCHEMA;
+	}
+	
+	public void setId(int id) {
+		this.id = id;
+	}
+	
+	public int getId() {
+		return id;
+	}
+	
+	public void setUserId(int userId) {
+		this.userId = userId;
+	}
+	
+	public int getUserId() {
+		return userId;
+	}
+	
+	public void setProblemId(int problemId) {
+		this.problemId = problemId;
+	}
+	
+	public int getProblemId() {
+		return problemId;
+	}
+	
+	/**
+	 * @param eventId the event id of the {@link Change} which the checkpoint text reflects
+	 */
+	public void setEventId(int eventId) {
+		this.eventId = eventId;
+	}
+	
+	/**
+	 * @return the event id of the {@link Change} which the checkpoint text reflects
+	 */
+	public int getEventId() {
+		return eventId;
+	}
+	
+	/**
+	 * @param numDeltas number of deltas stored since the checkpoint
+	 *                  (or the most recent full-text change, if newer)
+	 */
+	public void setNumDeltas(int numDeltas) {
+		this.numDeltas = numDeltas;
+	}
+	
+	/**
+	 * @return number of deltas stored since the checkpoint
+	 *         (or the most recent full-text change, if newer)
+	 */
+	public int getNumDeltas() {
+		return numDeltas;
+	}
+	
+	/**
+	 * @param deltaBytes total length of the text of the deltas stored since
+	 *                   the checkpoint (or the most recent full-text change, if newer)
+	 */
+	public void setDeltaBytes(int deltaBytes) {
+		this.deltaBytes = deltaBytes;
+	}
+	
+	/**
+	 * @return total length of the text of the deltas stored since
+	 *         the checkpoint (or the most recent full-text change, if newer)
+	 */
+	public int getDeltaBytes() {
+		return deltaBytes;
+	}
+	
+	/**
+	 * @param text the checkpoint text, or null if no checkpoint has been written yet
+	 */
+	public void setText(String text) {
+		this.text = text;
+	}
+	
+	/**
+	 * @return the checkpoint text, or null if no checkpoint has been written yet
+	 */
+	public String getText() {
+		return text;
+	}
+}
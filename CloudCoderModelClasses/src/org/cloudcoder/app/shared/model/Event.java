@@ -50,9 +50,9 @@ public class Event implements Serializable, IModelObject<Event> {
 	};
 	
 	/**
-	 * Description of fields.
+	 * Description of fields (schema version 0).
 	 */
-	public static final ModelObjectSchema<Event> SCHEMA = new ModelObjectSchema<Event>("event", Event.class)
+	public static final ModelObjectSchema<Event> SCHEMA_V0 = new ModelObjectSchema<Event>("event", Event.class)
 		.add(ID)
 		.add(USER_ID)
 		.add(PROBLEM_ID)
@@ -64,6 +64,21 @@ public class Event implements Serializable, IModelObject<Event> {
 			public void set(Event obj, Long value) { obj.setTimestamp(value); }
 			public Long get(Event obj) { return obj.getTimestamp(); }
 		});
+	
+	/**
+	 * Description of fields (schema version 1).
+	 */
+	public static final ModelObjectSchema<Event> SCHEMA_V1 = ModelObjectSchema.basedOn(SCHEMA_V0, Event.class)
+		// Add a composite index on (user id, problem id, event id): most queries
+		// on events (e.g., loading a user's changes for a problem) select on
+		// user id and problem id and order by event id.
+		.addIndexDelta(new ModelObjectIndex<Event>(ModelObjectIndexType.NON_UNIQUE).addField(USER_ID).addField(PROBLEM_ID).addField(ID))
+		.finishDelta();
+	
+	/**
+	 * Description of fields (current schema version).
+	 */
+	public static final ModelObjectSchema<Event> SCHEMA = SCHEMA_V1;
 
 	public Event() {
 
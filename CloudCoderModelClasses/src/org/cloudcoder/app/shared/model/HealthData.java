@@ -28,6 +28,34 @@ public class HealthData implements IModelObject<HealthData> {
 	private int submissionQueueSizeCurrent;
 	private int submissionQueueSizeMaxLastFiveMinutes;
 	private int numConnectedBuilderThreads;
+	private int dbConnectionsActive;
+	private int dbConnectionsIdle;
+	private int dbConnectionsMax;
+	private int dbConnectionWaiters;
+	private int dbConnectionWaitTimeouts;
+	private long dbStatementCacheHits;
+	private long dbStatementCacheMisses;
+	private long submissionsDispatched;
+	private long submissionDispatchLatencyTotalMicros;
+	private int submissionQueueDepthQuiz;
+	private long submissionsScheduledQuiz;
+	private long submissionWaitTotalMicrosQuiz;
+	private int submissionQueueDepthInteractive;
+	private long submissionsScheduledInteractive;
+	private long submissionWaitTotalMicrosInteractive;
+	private int submissionQueueDepthApi;
+	private long submissionsScheduledApi;
+	private long submissionWaitTotalMicrosApi;
+	private int submissionQueueDepthBatch;
+	private long submissionsScheduledBatch;
+	private long submissionWaitTotalMicrosBatch;
+	private long submissionsShared;
+	private long submissionsSuperseded;
+	private long submissionsDropped;
+	private long submissionResultCacheHits;
+	private long submissionResultCacheMisses;
+	private int submissionResultCacheEntries;
+	private long submissionResultCacheBytes;
 	
 	public static final ModelObjectField<HealthData, Integer> SUBMISSION_QUEUE_SIZE_CURRENT = new ModelObjectField<HealthData, Integer>("submissionQueueSizeCurrent", Integer.class, 0) {
 		public void set(HealthData obj, Integer value) { obj.setSubmissionQueueSizeCurrent(value); }
@@ -44,6 +72,146 @@ public class HealthData implements IModelObject<HealthData> {
 		public Integer get(HealthData obj) { return obj.getNumConnectedBuilderThreads(); }
 	};
 	
+	public static final ModelObjectField<HealthData, Integer> DB_CONNECTIONS_ACTIVE = new ModelObjectField<HealthData, Integer>("dbConnectionsActive", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setDbConnectionsActive(value); }
+		public Integer get(HealthData obj) { return obj.getDbConnectionsActive(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> DB_CONNECTIONS_IDLE = new ModelObjectField<HealthData, Integer>("dbConnectionsIdle", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setDbConnectionsIdle(value); }
+		public Integer get(HealthData obj) { return obj.getDbConnectionsIdle(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> DB_CONNECTIONS_MAX = new ModelObjectField<HealthData, Integer>("dbConnectionsMax", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setDbConnectionsMax(value); }
+		public Integer get(HealthData obj) { return obj.getDbConnectionsMax(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> DB_CONNECTION_WAITERS = new ModelObjectField<HealthData, Integer>("dbConnectionWaiters", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setDbConnectionWaiters(value); }
+		public Integer get(HealthData obj) { return obj.getDbConnectionWaiters(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> DB_CONNECTION_WAIT_TIMEOUTS = new ModelObjectField<HealthData, Integer>("dbConnectionWaitTimeouts", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setDbConnectionWaitTimeouts(value); }
+		public Integer get(HealthData obj) { return obj.getDbConnectionWaitTimeouts(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Long> DB_STATEMENT_CACHE_HITS = new ModelObjectField<HealthData, Long>("dbStatementCacheHits", Long.class, 0) {
+		public void set(HealthData obj, Long value) { obj.setDbStatementCacheHits(value); }
+		public Long get(HealthData obj) { return obj.getDbStatementCacheHits(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Long> DB_STATEMENT_CACHE_MISSES = new ModelObjectField<HealthData, Long>("dbStatementCacheMisses", Long.class, 0) {
+		public void set(HealthData obj, Long value) { obj.setDbStatementCacheMisses(value); }
+		public Long get(HealthData obj) { return obj.getDbStatementCacheMisses(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Long> SUBMISSIONS_DISPATCHED = new ModelObjectField<HealthData, Long>("submissionsDispatched", Long.class, 0) {
+		public void set(HealthData obj, Long value) { obj.setSubmissionsDispatched(value); }
+		public Long get(HealthData obj) { return obj.getSubmissionsDispatched(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Long> SUBMISSION_DISPATCH_LATENCY_TOTAL_MICROS = new ModelObjectField<HealthData, Long>("submissionDispatchLatencyTotalMicros", Long.class, 0) {
+		public void set(HealthData obj, Long value) { obj.setSubmissionDispatchLatencyTotalMicros(value); }
+		public Long get(HealthData obj) { return obj.getSubmissionDispatchLatencyTotalMicros(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> SUBMISSION_QUEUE_DEPTH_QUIZ = new ModelObjectField<HealthData, Integer>("submissionQueueDepthQuiz", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setSubmissionQueueDepthQuiz(value); }
+		public Integer get(HealthData obj) { return obj.getSubmissionQueueDepthQuiz(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Long> SUBMISSIONS_SCHEDULED_QUIZ = new ModelObjectField<HealthData, Long>("submissionsScheduledQuiz", Long.class, 0) {
+		public void set(HealthData obj, Long value) { obj.setSubmissionsScheduledQuiz(value); }
+		public Long get(HealthData obj) { return obj.getSubmissionsScheduledQuiz(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Long> SUBMISSION_WAIT_TOTAL_MICROS_QUIZ = new ModelObjectField<HealthData, Long>("submissionWaitTotalMicrosQuiz", Long.class, 0) {
+		public void set(HealthData obj, Long value) { obj.setSubmissionWaitTotalMicrosQuiz(value); }
+		public Long get(HealthData obj) { return obj.getSubmissionWaitTotalMicrosQuiz(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> SUBMISSION_QUEUE_DEPTH_INTERACTIVE = new ModelObjectField<HealthData, Integer>("submissionQueueDepthInteractive", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setSubmissionQueueDepthInteractive(value); }
+		public Integer get(HealthData obj) { return obj.getSubmissionQueueDepthInteractive(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Long> SUBMISSIONS_SCHEDULED_INTERACTIVE = new ModelObjectField<HealthData, Long>("submissionsScheduledInteractive", Long.class, 0) {
+		public void set(HealthData obj, Long value) { obj.setSubmissionsScheduledInteractive(value); }
+		public Long get(HealthData obj) { return obj.getSubmissionsScheduledInteractive(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Long> SUBMISSION_WAIT_TOTAL_MICROS_INTERACTIVE = new ModelObjectField<HealthData, Long>("submissionWaitTotalMicrosInteractive", Long.class, 0) {
+		public void set(HealthData obj, Long value) { obj.setSubmissionWaitTotalMicrosInteractive(value); }
+		public Long get(HealthData obj) { return obj.getSubmissionWaitTotalMicrosInteractive(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> SUBMISSION_QUEUE_DEPTH_API = new ModelObjectField<HealthData, Integer>("submissionQueueDepthApi", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setSubmissionQueueDepthApi(value); }
+		public Integer get(HealthData obj) { return obj.getSubmissionQueueDepthApi(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Long> SUBMISSIONS_SCHEDULED_API = new ModelObjectField<HealthData, Long>("submissionsScheduledApi", Long.class, 0) {
+		public void set(HealthData obj, Long value) { obj.setSubmissionsScheduledApi(value); }
+		public Long get(HealthData obj) { return obj.getSubmissionsScheduledApi(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Long> SUBMISSION_WAIT_TOTAL_MICROS_API = new ModelObjectField<HealthData, Long>("submissionWaitTotalMicrosApi", Long.class, 0) {
+		public void set(HealthData obj, Long value) { obj.setSubmissionWaitTotalMicrosApi(value); }
+		public Long get(HealthData obj) { return obj.getSubmissionWaitTotalMicrosApi(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> SUBMISSION_QUEUE_DEPTH_BATCH = new ModelObjectField<HealthData, Integer>("submissionQueueDepthBatch", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setSubmissionQueueDepthBatch(value); }
+		public Integer get(HealthData obj) { return obj.getSubmissionQueueDepthBatch(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Long> SUBMISSIONS_SCHEDULED_BATCH = new ModelObjectField<HealthData, Long>("submissionsScheduledBatch", Long.class, 0) {
+		public void set(HealthData obj, Long value) { obj.setSubmissionsScheduledBatch(value); }
+		public Long get(HealthData obj) { return obj.getSubmissionsScheduledBatch(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Long> SUBMISSION_WAIT_TOTAL_MICROS_BATCH = new ModelObjectField<HealthData, Long>("submissionWaitTotalMicrosBatch", Long.class, 0) {
+		public void set(HealthData obj, Long value) { obj.setSubmissionWaitTotalMicrosBatch(value); }
+		public Long get(HealthData obj) { return obj.getSubmissionWaitTotalMicrosBatch(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Long> SUBMISSIONS_SHARED = new ModelObjectField<HealthData, Long>("submissionsShared", Long.class, 0) {
+		public void set(HealthData obj, Long value) { obj.setSubmissionsShared(value); }
+		public Long get(HealthData obj) { return obj.getSubmissionsShared(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Long> SUBMISSIONS_SUPERSEDED = new ModelObjectField<HealthData, Long>("submissionsSuperseded", Long.class, 0) {
+		public void set(HealthData obj, Long value) { obj.setSubmissionsSuperseded(value); }
+		public Long get(HealthData obj) { return obj.getSubmissionsSuperseded(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Long> SUBMISSIONS_DROPPED = new ModelObjectField<HealthData, Long>("submissionsDropped", Long.class, 0) {
+		public void set(HealthData obj, Long value) { obj.setSubmissionsDropped(value); }
+		public Long get(HealthData obj) { return obj.getSubmissionsDropped(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Long> SUBMISSION_RESULT_CACHE_HITS = new ModelObjectField<HealthData, Long>("submissionResultCacheHits", Long.class, 0) {
+		public void set(HealthData obj, Long value) { obj.setSubmissionResultCacheHits(value); }
+		public Long get(HealthData obj) { return obj.getSubmissionResultCacheHits(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Long> SUBMISSION_RESULT_CACHE_MISSES = new ModelObjectField<HealthData, Long>("submissionResultCacheMisses", Long.class, 0) {
+		public void set(HealthData obj, Long value) { obj.setSubmissionResultCacheMisses(value); }
+		public Long get(HealthData obj) { return obj.getSubmissionResultCacheMisses(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> SUBMISSION_RESULT_CACHE_ENTRIES = new ModelObjectField<HealthData, Integer>("submissionResultCacheEntries", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setSubmissionResultCacheEntries(value); }
+		public Integer get(HealthData obj) { return obj.getSubmissionResultCacheEntries(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Long> SUBMISSION_RESULT_CACHE_BYTES = new ModelObjectField<HealthData, Long>("submissionResultCacheBytes", Long.class, 0) {
+		public void set(HealthData obj, Long value) { obj.setSubmissionResultCacheBytes(value); }
+		public Long get(HealthData obj) { return obj.getSubmissionResultCacheBytes(); }
+	};
+	
 	/**
 	 * Model object fields (schema version 0).
 	 */
@@ -52,10 +220,74 @@ public class HealthData implements IModelObject<HealthData> {
 			.add(SUBMISSION_QUEUE_SIZE_MAX_LAST_FIVE_MINUTES)
 			.add(NUM_CONNECTED_BUILDER_THREADS);
 	
+	/**
+	 * Model object fields (schema version 1).
+	 */
+	public static final ModelObjectSchema<HealthData> SCHEMA_V1 = ModelObjectSchema.basedOn(SCHEMA_V0, HealthData.class)
+			.addAfter(NUM_CONNECTED_BUILDER_THREADS, DB_CONNECTIONS_ACTIVE)
+			.addAfter(DB_CONNECTIONS_ACTIVE, DB_CONNECTIONS_IDLE)
+			.addAfter(DB_CONNECTIONS_IDLE, DB_CONNECTIONS_MAX)
+			.addAfter(DB_CONNECTIONS_MAX, DB_CONNECTION_WAITERS)
+			.addAfter(DB_CONNECTION_WAITERS, DB_CONNECTION_WAIT_TIMEOUTS)
+			.finishDelta();
+	
+	/**
+	 * Model object fields (schema version 2).
+	 */
+	public static final ModelObjectSchema<HealthData> SCHEMA_V2 = ModelObjectSchema.basedOn(SCHEMA_V1, HealthData.class)
+			.addAfter(DB_CONNECTION_WAIT_TIMEOUTS, DB_STATEMENT_CACHE_HITS)
+			.addAfter(DB_STATEMENT_CACHE_HITS, DB_STATEMENT_CACHE_MISSES)
+			.finishDelta();
+	
+	/**
+	 * Model object fields (schema version 3).
+	 */
+	public static final ModelObjectSchema<HealthData> SCHEMA_V3 = ModelObjectSchema.basedOn(SCHEMA_V2, HealthData.class)
+			.addAfter(DB_STATEMENT_CACHE_MISSES, SUBMISSIONS_DISPATCHED)
+			.addAfter(SUBMISSIONS_DISPATCHED, SUBMISSION_DISPATCH_LATENCY_TOTAL_MICROS)
+			.finishDelta();
+	
+	/**
+	 * Model object fields (schema version 4).
+	 */
+	public static final ModelObjectSchema<HealthData> SCHEMA_V4 = ModelObjectSchema.basedOn(SCHEMA_V3, HealthData.class)
+			.addAfter(SUBMISSION_DISPATCH_LATENCY_TOTAL_MICROS, SUBMISSION_QUEUE_DEPTH_QUIZ)
+			.addAfter(SUBMISSION_QUEUE_DEPTH_QUIZ, SUBMISSIONS_SCHEDULED_QUIZ)
+			.addAfter(SUBMISSIONS_SCHEDULED_QUIZ, SUBMISSION_WAIT_TOTAL_MICROS_QUIZ)
+			.addAfter(SUBMISSION_WAIT_TOTAL_MICROS_QUIZ, SUBMISSION_QUEUE_DEPTH_INTERACTIVE)
+			.addAfter(SUBMISSION_QUEUE_DEPTH_INTERACTIVE, SUBMISSIONS_SCHEDULED_INTERACTIVE)
+			.addAfter(SUBMISSIONS_SCHEDULED_INTERACTIVE, SUBMISSION_WAIT_TOTAL_MICROS_INTERACTIVE)
+			.addAfter(SUBMISSION_WAIT_TOTAL_MICROS_INTERACTIVE, SUBMISSION_QUEUE_DEPTH_API)
+			.addAfter(SUBMISSION_QUEUE_DEPTH_API, SUBMISSIONS_SCHEDULED_API)
+			.addAfter(SUBMISSIONS_SCHEDULED_API, SUBMISSION_WAIT_TOTAL_MICROS_API)
+			.addAfter(SUBMISSION_WAIT_TOTAL_MICROS_API, SUBMISSION_QUEUE_DEPTH_BATCH)
+			.addAfter(SUBMISSION_QUEUE_DEPTH_BATCH, SUBMISSIONS_SCHEDULED_BATCH)
+			.addAfter(SUBMISSIONS_SCHEDULED_BATCH, SUBMISSION_WAIT_TOTAL_MICROS_BATCH)
+			.finishDelta();
+	
+	/**
+	 * Model object fields (schema version 5).
+	 */
+	public static final ModelObjectSchema<HealthData> SCHEMA_V5 = ModelObjectSchema.basedOn(SCHEMA_V4, HealthData.class)
+			.addAfter(SUBMISSION_WAIT_TOTAL_MICROS_BATCH, SUBMISSIONS_SHARED)
+			.addAfter(SUBMISSIONS_SHARED, SUBMISSIONS_SUPERSEDED)
+			.addAfter(SUBMISSIONS_SUPERSEDED, SUBMISSIONS_DROPPED)
+			.finishDelta();
+	
+	/**
+	 * Model object fields (schema version 6).
+	 */
+	public static final ModelObjectSchema<HealthData> SCHEMA_V6 = ModelObjectSchema.basedOn(SCHEMA_V5, HealthData.class)
+			.addAfter(SUBMISSIONS_DROPPED, SUBMISSION_RESULT_CACHE_HITS)
+			.addAfter(SUBMISSION_RESULT_CACHE_HITS, SUBMISSION_RESULT_CACHE_MISSES)
+			.addAfter(SUBMISSION_RESULT_CACHE_MISSES, SUBMISSION_RESULT_CACHE_ENTRIES)
+			.addAfter(SUBMISSION_RESULT_CACHE_ENTRIES, SUBMISSION_RESULT_CACHE_BYTES)
+			.finishDelta();
+	
 	/**
 	 * Model object fields (current schema version).
 	 */
-	public static final ModelObjectSchema<HealthData> SCHEMA = SCHEMA_V0;
+	public static final ModelObjectSchema<HealthData> SCHEMA = SCHEMA_V6;
 	
 	/**
 	 * Constructor.
@@ -122,4 +354,523 @@ public class HealthData implements IModelObject<HealthData> {
 	public void setNumConnectedBuilderThreads(int numConnectedBuilderThreads) {
 		this.numConnectedBuilderThreads = numConnectedBuilderThreads;
 	}
+
+	/**
+	 * Set the number of database connections currently in use.
+	 * 
+	 * @param dbConnectionsActive the number of database connections currently in use
+	 */
+	public void setDbConnectionsActive(int dbConnectionsActive) {
+		this.dbConnectionsActive = dbConnectionsActive;
+	}
+	
+	/**
+	 * Get the number of database connections currently in use.
+	 * 
+	 * @return the number of database connections currently in use
+	 */
+	public int getDbConnectionsActive() {
+		return dbConnectionsActive;
+	}
+	
+	/**
+	 * Set the number of open database connections not currently in use.
+	 * 
+	 * @param dbConnectionsIdle the number of idle database connections
+	 */
+	public void setDbConnectionsIdle(int dbConnectionsIdle) {
+		this.dbConnectionsIdle = dbConnectionsIdle;
+	}
+	
+	/**
+	 * Get the number of open database connections not currently in use.
+	 * 
+	 * @return the number of idle database connections
+	 */
+	public int getDbConnectionsIdle() {
+		return dbConnectionsIdle;
+	}
+	
+	/**
+	 * Set the maximum number of database connections (0 if unbounded).
+	 * 
+	 * @param dbConnectionsMax the maximum number of database connections
+	 */
+	public void setDbConnectionsMax(int dbConnectionsMax) {
+		this.dbConnectionsMax = dbConnectionsMax;
+	}
+	
+	/**
+	 * Get the maximum number of database connections (0 if unbounded).
+	 * 
+	 * @return the maximum number of database connections
+	 */
+	public int getDbConnectionsMax() {
+		return dbConnectionsMax;
+	}
+	
+	/**
+	 * Set the number of threads waiting for a database connection.
+	 * 
+	 * @param dbConnectionWaiters the number of threads waiting for a database connection
+	 */
+	public void setDbConnectionWaiters(int dbConnectionWaiters) {
+		this.dbConnectionWaiters = dbConnectionWaiters;
+	}
+	
+	/**
+	 * Get the number of threads waiting for a database connection.
+	 * 
+	 * @return the number of threads waiting for a database connection
+	 */
+	public int getDbConnectionWaiters() {
+		return dbConnectionWaiters;
+	}
+	
+	/**
+	 * Set the total number of times a thread gave up waiting for a database connection.
+	 * 
+	 * @param dbConnectionWaitTimeouts the total number of database connection wait timeouts
+	 */
+	public void setDbConnectionWaitTimeouts(int dbConnectionWaitTimeouts) {
+		this.dbConnectionWaitTimeouts = dbConnectionWaitTimeouts;
+	}
+	
+	/**
+	 * Get the total number of times a thread gave up waiting for a database connection.
+	 * 
+	 * @return the total number of database connection wait timeouts
+	 */
+	public int getDbConnectionWaitTimeouts() {
+		return dbConnectionWaitTimeouts;
+	}
+
+	/**
+	 * Set the total number of prepared statements reused from the statement cache.
+	 * 
+	 * @param dbStatementCacheHits the number of statement cache hits
+	 */
+	public void setDbStatementCacheHits(long dbStatementCacheHits) {
+		this.dbStatementCacheHits = dbStatementCacheHits;
+	}
+	
+	/**
+	 * Get the total number of prepared statements reused from the statement cache.
+	 * 
+	 * @return the number of statement cache hits
+	 */
+	public long getDbStatementCacheHits() {
+		return dbStatementCacheHits;
+	}
+	
+	/**
+	 * Set the total number of prepared statements not found in the statement cache.
+	 * 
+	 * @param dbStatementCacheMisses the number of statement cache misses
+	 */
+	public void setDbStatementCacheMisses(long dbStatementCacheMisses) {
+		this.dbStatementCacheMisses = dbStatementCacheMisses;
+	}
+	
+	/**
+	 * Get the total number of prepared statements not found in the statement cache.
+	 * 
+	 * @return the number of statement cache misses
+	 */
+	public long getDbStatementCacheMisses() {
+		return dbStatementCacheMisses;
+	}
+
+	/**
+	 * Set the total number of submissions sent to Builders.
+	 * 
+	 * @param submissionsDispatched the number of submissions sent to Builders
+	 */
+	public void setSubmissionsDispatched(long submissionsDispatched) {
+		this.submissionsDispatched = submissionsDispatched;
+	}
+	
+	/**
+	 * Get the total number of submissions sent to Builders.
+	 * 
+	 * @return the number of submissions sent to Builders
+	 */
+	public long getSubmissionsDispatched() {
+		return submissionsDispatched;
+	}
+	
+	/**
+	 * Set the total time, in microseconds, between submissions being queued
+	 * and being sent to a Builder.
+	 * 
+	 * @param submissionDispatchLatencyTotalMicros the total dispatch latency in microseconds
+	 */
+	public void setSubmissionDispatchLatencyTotalMicros(long submissionDispatchLatencyTotalMicros) {
+		this.submissionDispatchLatencyTotalMicros = submissionDispatchLatencyTotalMicros;
+	}
+	
+	/**
+	 * Get the total time, in microseconds, between submissions being queued
+	 * and being sent to a Builder.  Dividing by the number of submissions
+	 * dispatched gives the average hand-off latency.
+	 * 
+	 * @return the total dispatch latency in microseconds
+	 */
+	public long getSubmissionDispatchLatencyTotalMicros() {
+		return submissionDispatchLatencyTotalMicros;
+	}
+	
+	/**
+	 * Set the current number of quiz submissions waiting to be tested.
+	 * 
+	 * @param submissionQueueDepthQuiz the number of waiting quiz submissions
+	 */
+	public void setSubmissionQueueDepthQuiz(int submissionQueueDepthQuiz) {
+		this.submissionQueueDepthQuiz = submissionQueueDepthQuiz;
+	}
+	
+	/**
+	 * Get the current number of quiz submissions waiting to be tested.
+	 * 
+	 * @return the number of waiting quiz submissions
+	 */
+	public int getSubmissionQueueDepthQuiz() {
+		return submissionQueueDepthQuiz;
+	}
+	
+	/**
+	 * Set the total number of quiz submissions taken from the submission queue.
+	 * 
+	 * @param submissionsScheduledQuiz the number of quiz submissions taken from the queue
+	 */
+	public void setSubmissionsScheduledQuiz(long submissionsScheduledQuiz) {
+		this.submissionsScheduledQuiz = submissionsScheduledQuiz;
+	}
+	
+	/**
+	 * Get the total number of quiz submissions taken from the submission queue.
+	 * 
+	 * @return the number of quiz submissions taken from the queue
+	 */
+	public long getSubmissionsScheduledQuiz() {
+		return submissionsScheduledQuiz;
+	}
+	
+	/**
+	 * Set the total time, in microseconds, that quiz submissions
+	 * waited in the submission queue.
+	 * 
+	 * @param submissionWaitTotalMicrosQuiz the total quiz queue wait time in microseconds
+	 */
+	public void setSubmissionWaitTotalMicrosQuiz(long submissionWaitTotalMicrosQuiz) {
+		this.submissionWaitTotalMicrosQuiz = submissionWaitTotalMicrosQuiz;
+	}
+	
+	/**
+	 * Get the total time, in microseconds, that quiz submissions
+	 * waited in the submission queue.
+	 * 
+	 * @return the total quiz queue wait time in microseconds
+	 */
+	public long getSubmissionWaitTotalMicrosQuiz() {
+		return submissionWaitTotalMicrosQuiz;
+	}
+	
+	/**
+	 * Set the current number of interactive submissions waiting to be tested.
+	 * 
+	 * @param submissionQueueDepthInteractive the number of waiting interactive submissions
+	 */
+	public void setSubmissionQueueDepthInteractive(int submissionQueueDepthInteractive) {
+		this.submissionQueueDepthInteractive = submissionQueueDepthInteractive;
+	}
+	
+	/**
+	 * Get the current number of interactive submissions waiting to be tested.
+	 * 
+	 * @return the number of waiting interactive submissions
+	 */
+	public int getSubmissionQueueDepthInteractive() {
+		return submissionQueueDepthInteractive;
+	}
+	
+	/**
+	 * Set the total number of interactive submissions taken from the submission queue.
+	 * 
+	 * @param submissionsScheduledInteractive the number of interactive submissions taken from the queue
+	 */
+	public void setSubmissionsScheduledInteractive(long submissionsScheduledInteractive) {
+		this.submissionsScheduledInteractive = submissionsScheduledInteractive;
+	}
+	
+	/**
+	 * Get the total number of interactive submissions taken from the submission queue.
+	 * 
+	 * @return the number of interactive submissions taken from the queue
+	 */
+	public long getSubmissionsScheduledInteractive() {
+		return submissionsScheduledInteractive;
+	}
+	
+	/**
+	 * Set the total time, in microseconds, that interactive submissions
+	 * waited in the submission queue.
+	 * 
+	 * @param submissionWaitTotalMicrosInteractive the total interactive queue wait time in microseconds
+	 */
+	public void setSubmissionWaitTotalMicrosInteractive(long submissionWaitTotalMicrosInteractive) {
+		this.submissionWaitTotalMicrosInteractive = submissionWaitTotalMicrosInteractive;
+	}
+	
+	/**
+	 * Get the total time, in microseconds, that interactive submissions
+	 * waited in the submission queue.
+	 * 
+	 * @return the total interactive queue wait time in microseconds
+	 */
+	public long getSubmissionWaitTotalMicrosInteractive() {
+		return submissionWaitTotalMicrosInteractive;
+	}
+	
+	/**
+	 * Set the current number of API submissions waiting to be tested.
+	 * 
+	 * @param submissionQueueDepthApi the number of waiting API submissions
+	 */
+	public void setSubmissionQueueDepthApi(int submissionQueueDepthApi) {
+		this.submissionQueueDepthApi = submissionQueueDepthApi;
+	}
+	
+	/**
+	 * Get the current number of API submissions waiting to be tested.
+	 * 
+	 * @return the number of waiting API submissions
+	 */
+	public int getSubmissionQueueDepthApi() {
+		return submissionQueueDepthApi;
+	}
+	
+	/**
+	 * Set the total number of API submissions taken from the submission queue.
+	 * 
+	 * @param submissionsScheduledApi the number of API submissions taken from the queue
+	 */
+	public void setSubmissionsScheduledApi(long submissionsScheduledApi) {
+		this.submissionsScheduledApi = submissionsScheduledApi;
+	}
+	
+	/**
+	 * Get the total number of API submissions taken from the submission queue.
+	 * 
+	 * @return the number of API submissions taken from the queue
+	 */
+	public long getSubmissionsScheduledApi() {
+		return submissionsScheduledApi;
+	}
+	
+	/**
+	 * Set the total time, in microseconds, that API submissions
+	 * waited in the submission queue.
+	 * 
+	 * @param submissionWaitTotalMicrosApi the total API queue wait time in microseconds
+	 */
+	public void setSubmissionWaitTotalMicrosApi(long submissionWaitTotalMicrosApi) {
+		this.submissionWaitTotalMicrosApi = submissionWaitTotalMicrosApi;
+	}
+	
+	/**
+	 * Get the total time, in microseconds, that API submissions
+	 * waited in the submission queue.
+	 * 
+	 * @return the total API queue wait time in microseconds
+	 */
+	public long getSubmissionWaitTotalMicrosApi() {
+		return submissionWaitTotalMicrosApi;
+	}
+	
+	/**
+	 * Set the current number of batch submissions waiting to be tested.
+	 * 
+	 * @param submissionQueueDepthBatch the number of waiting batch submissions
+	 */
+	public void setSubmissionQueueDepthBatch(int submissionQueueDepthBatch) {
+		this.submissionQueueDepthBatch = submissionQueueDepthBatch;
+	}
+	
+	/**
+	 * Get the current number of batch submissions waiting to be tested.
+	 * 
+	 * @return the number of waiting batch submissions
+	 */
+	public int getSubmissionQueueDepthBatch() {
+		return submissionQueueDepthBatch;
+	}
+	
+	/**
+	 * Set the total number of batch submissions taken from the submission queue.
+	 * 
+	 * @param submissionsScheduledBatch the number of batch submissions taken from the queue
+	 */
+	public void setSubmissionsScheduledBatch(long submissionsScheduledBatch) {
+		this.submissionsScheduledBatch = submissionsScheduledBatch;
+	}
+	
+	/**
+	 * Get the total number of batch submissions taken from the submission queue.
+	 * 
+	 * @return the number of batch submissions taken from the queue
+	 */
+	public long getSubmissionsScheduledBatch() {
+		return submissionsScheduledBatch;
+	}
+	
+	/**
+	 * Set the total time, in microseconds, that batch submissions
+	 * waited in the submission queue.
+	 * 
+	 * @param submissionWaitTotalMicrosBatch the total batch queue wait time in microseconds
+	 */
+	public void setSubmissionWaitTotalMicrosBatch(long submissionWaitTotalMicrosBatch) {
+		this.submissionWaitTotalMicrosBatch = submissionWaitTotalMicrosBatch;
+	}
+	
+	/**
+	 * Get the total time, in microseconds, that batch submissions
+	 * waited in the submission queue.
+	 * 
+	 * @return the total batch queue wait time in microseconds
+	 */
+	public long getSubmissionWaitTotalMicrosBatch() {
+		return submissionWaitTotalMicrosBatch;
+	}
+	
+	/**
+	 * Set the total number of submissions which shared the result of an identical submission.
+	 * 
+	 * @param submissionsShared the number of shared submissions
+	 */
+	public void setSubmissionsShared(long submissionsShared) {
+		this.submissionsShared = submissionsShared;
+	}
+	
+	/**
+	 * Get the total number of submissions which shared the result of an identical submission.
+	 * 
+	 * @return the number of shared submissions
+	 */
+	public long getSubmissionsShared() {
+		return submissionsShared;
+	}
+	
+	/**
+	 * Set the total number of queued submissions superseded by a newer submission
+	 * from the same user for the same problem.
+	 * 
+	 * @param submissionsSuperseded the number of superseded submissions
+	 */
+	public void setSubmissionsSuperseded(long submissionsSuperseded) {
+		this.submissionsSuperseded = submissionsSuperseded;
+	}
+	
+	/**
+	 * Get the total number of queued submissions superseded by a newer submission
+	 * from the same user for the same problem.
+	 * 
+	 * @return the number of superseded submissions
+	 */
+	public long getSubmissionsSuperseded() {
+		return submissionsSuperseded;
+	}
+	
+	/**
+	 * Set the total number of queued submissions dropped because their
+	 * result was no longer needed.
+	 * 
+	 * @param submissionsDropped the number of dropped submissions
+	 */
+	public void setSubmissionsDropped(long submissionsDropped) {
+		this.submissionsDropped = submissionsDropped;
+	}
+	
+	/**
+	 * Get the total number of queued submissions dropped because their
+	 * result was no longer needed.
+	 * 
+	 * @return the number of dropped submissions
+	 */
+	public long getSubmissionsDropped() {
+		return submissionsDropped;
+	}
+	
+	/**
+	 * Set the number of submissions whose result was found in the submission result cache.
+	 * 
+	 * @param submissionResultCacheHits the number of result cache hits
+	 */
+	public void setSubmissionResultCacheHits(long submissionResultCacheHits) {
+		this.submissionResultCacheHits = submissionResultCacheHits;
+	}
+	
+	/**
+	 * Get the number of submissions whose result was found in the submission result cache.
+	 * 
+	 * @return the number of result cache hits
+	 */
+	public long getSubmissionResultCacheHits() {
+		return submissionResultCacheHits;
+	}
+	
+	/**
+	 * Set the number of submissions whose result was not found in the submission result cache.
+	 * 
+	 * @param submissionResultCacheMisses the number of result cache misses
+	 */
+	public void setSubmissionResultCacheMisses(long submissionResultCacheMisses) {
+		this.submissionResultCacheMisses = submissionResultCacheMisses;
+	}
+	
+	/**
+	 * Get the number of submissions whose result was not found in the submission result cache.
+	 * 
+	 * @return the number of result cache misses
+	 */
+	public long getSubmissionResultCacheMisses() {
+		return submissionResultCacheMisses;
+	}
+	
+	/**
+	 * Set the number of results in the submission result cache.
+	 * 
+	 * @param submissionResultCacheEntries the number of cached results
+	 */
+	public void setSubmissionResultCacheEntries(int submissionResultCacheEntries) {
+		this.submissionResultCacheEntries = submissionResultCacheEntries;
+	}
+	
+	/**
+	 * Get the number of results in the submission result cache.
+	 * 
+	 * @return the number of cached results
+	 */
+	public int getSubmissionResultCacheEntries() {
+		return submissionResultCacheEntries;
+	}
+	
+	/**
+	 * Set the estimated memory used by the submission result cache, in bytes.
+	 * 
+	 * @param submissionResultCacheBytes the estimated cache size in bytes
+	 */
+	public void setSubmissionResultCacheBytes(long submissionResultCacheBytes) {
+		this.submissionResultCacheBytes = submissionResultCacheBytes;
+	}
+	
+	/**
+	 * Get the estimated memory used by the submission result cache, in bytes.
+	 * 
+	 * @return the estimated cache size in bytes
+	 */
+	public long getSubmissionResultCacheBytes() {
+		return submissionResultCacheBytes;
+	}
 }
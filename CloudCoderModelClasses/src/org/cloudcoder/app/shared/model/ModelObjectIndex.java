@@ -24,6 +24,11 @@ import java.util.List;
 /**
  * An index on one or more fields of a model object.
  * Used as a hint to the persistence layer.
+ * For a composite index, the order in which fields are added
+ * is the order of the index columns: an index on
+ * (user_id, problem_id, id) can be used by a query that filters on
+ * user_id and problem_id and orders by id, without reading or sorting
+ * any rows that do not match.
  * 
  * @author David Hovemeyer
  *
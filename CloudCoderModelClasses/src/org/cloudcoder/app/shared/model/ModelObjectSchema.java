@@ -575,6 +575,8 @@ public class ModelObjectSchema<ModelObjectType> {
 	/**
 	 * Add an index to the table as a delta.
 	 * This method should only be called when creating a derived schema.
+	 * The index may be a composite index on several fields
+	 * (see {@link ModelObjectIndex#addField(ModelObjectField)}).
 	 * 
 	 * @param index the index to add
 	 * @return this object, for method chaining
@@ -609,6 +611,10 @@ public class ModelObjectSchema<ModelObjectType> {
 			add(previousField);
 		}
 		
+		// Add all indices from previous schema: they keep their index numbers,
+		// so indices added by deltas are numbered after them
+		indexList.addAll(previous.getIndexList());
+		
 		// Apply all deltas
 		for (Delta<? super ModelObjectType> delta_ : deltaList) {
 			switch (delta_.getType()) {
@@ -638,7 +644,6 @@ public class ModelObjectSchema<ModelObjectType> {
 				// Add the index to the index list.
 				{
 					AddIndexToFieldDelta<? super ModelObjectType> delta = (AddIndexToFieldDelta<? super ModelObjectType>)delta_;
-//					indexList.add(delta.getIndex());
 					addIndex(delta.getIndex());
 				}
 				break;
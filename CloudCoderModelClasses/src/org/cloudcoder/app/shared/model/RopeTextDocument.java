@@ -0,0 +1,237 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.shared.model;
+
+/**
+ * Text document represented as a rope of lines: a balanced (AVL) binary
+ * tree whose nodes are the lines of the document in order, with each node
+ * recording the number of lines in its subtree.  Getting, setting,
+ * inserting, and removing a line take O(log n) time in the number of lines,
+ * unlike {@link TextDocument}, where inserting or removing a line moves
+ * all of the lines which follow it.  Since the document is still a sequence
+ * of lines, {@link Change}s applied using {@link ApplyChangeToTextDocument}
+ * have exactly the same effect as on a {@link TextDocument}.
+ * However, getting and setting a line take constant time in a TextDocument,
+ * so it is faster unless the document has a very large number of lines
+ * (tens of thousands).
+ */
+public class RopeTextDocument implements ITextDocument {
+	private static class Node {
+		String line;
+		Node left, right;
+		int height;
+		int size;
+
+		Node(String line) {
+			this.line = line;
+			this.height = 1;
+			this.size = 1;
+		}
+	}
+	
+	private Node root;
+
+	/**
+	 * Constructor: initialize empty text document.
+	 */
+	public RopeTextDocument() {
+	}
+
+	@Override
+	public void append(String line) {
+		root = insert(root, size(root), line);
+	}
+
+	@Override
+	public int getNumLines() {
+		return size(root);
+	}
+
+	@Override
+	public String getLine(int index) {
+		return find(index).line;
+	}
+
+	@Override
+	public void setLine(int index, String line) {
+		find(index).line = line;
+	}
+
+	@Override
+	public void insertLine(int index, String line) {
+		if (index < 0 || index > size(root)) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size(root));
+		}
+		root = insert(root, index, line);
+	}
+
+	@Override
+	public void removeLine(int index) {
+		checkIndex(index);
+		root = remove(root, index);
+	}
+
+	@Override
+	public String getText() {
+		StringBuilder buf = new StringBuilder();
+		appendText(root, buf);
+		return buf.toString();
+	}
+
+	@Override
+	public void setText(String text) {
+		// Same treatment of newlines as TextDocument.setText()
+		String[] lines = text.split("\n");
+		for (int i = 0; i < lines.length; i++) {
+			lines[i] = lines[i] + "\n";
+		}
+		root = build(lines, 0, lines.length);
+	}
+
+	@Override
+	public String toString() {
+		return this.getText();
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size(root)) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size(root));
+		}
+	}
+
+	private Node find(int index) {
+		checkIndex(index);
+		Node n = root;
+		for (;;) {
+			int leftSize = size(n.left);
+			if (index < leftSize) {
+				n = n.left;
+			} else if (index == leftSize) {
+				return n;
+			} else {
+				index -= leftSize + 1;
+				n = n.right;
+			}
+		}
+	}
+
+	private static Node insert(Node n, int index, String line) {
+		if (n == null) {
+			return new Node(line);
+		}
+		int leftSize = size(n.left);
+		if (index <= leftSize) {
+			n.left = insert(n.left, index, line);
+		} else {
+			n.right = insert(n.right, index - leftSize - 1, line);
+		}
+		return rebalance(n);
+	}
+
+	private static Node remove(Node n, int index) {
+		int leftSize = size(n.left);
+		if (index < leftSize) {
+			n.left = remove(n.left, index);
+		} else if (index > leftSize) {
+			n.right = remove(n.right, index - leftSize - 1);
+		} else {
+			if (n.left == null) {
+				return n.right;
+			}
+			if (n.right == null) {
+				return n.left;
+			}
+			// Replace with the first line of the right subtree
+			Node first = n.right;
+			while (first.left != null) {
+				first = first.left;
+			}
+			n.line = first.line;
+			n.right = remove(n.right, 0);
+		}
+		return rebalance(n);
+	}
+
+	private static Node build(String[] lines, int begin, int end) {
+		if (begin >= end) {
+			return null;
+		}
+		int mid = (begin + end) >>> 1;
+		Node n = new Node(lines[mid]);
+		n.left = build(lines, begin, mid);
+		n.right = build(lines, mid + 1, end);
+		update(n);
+		return n;
+	}
+
+	private static void appendText(Node n, StringBuilder buf) {
+		while (n != null) {
+			appendText(n.left, buf);
+			buf.append(n.line);
+			n = n.right;
+		}
+	}
+
+	private static int size(Node n) {
+		return n != null ? n.size : 0;
+	}
+
+	private static int height(Node n) {
+		return n != null ? n.height : 0;
+	}
+
+	private static void update(Node n) {
+		n.height = Math.max(height(n.left), height(n.right)) + 1;
+		n.size = size(n.left) + size(n.right) + 1;
+	}
+
+	private static Node rotateRight(Node n) {
+		Node l = n.left;
+		n.left = l.right;
+		l.right = n;
+		update(n);
+		update(l);
+		return l;
+	}
+
+	private static Node rotateLeft(Node n) {
+		Node r = n.right;
+		n.right = r.left;
+		r.left = n;
+		update(n);
+		update(r);
+		return r;
+	}
+
+	private static Node rebalance(Node n) {
+		update(n);
+		int balance = height(n.left) - height(n.right);
+		if (balance > 1) {
+			if (height(n.left.left) < height(n.left.right)) {
+				n.left = rotateLeft(n.left);
+			}
+			return rotateRight(n);
+		} else if (balance < -1) {
+			if (height(n.right.right) < height(n.right.left)) {
+				n.right = rotateRight(n.right);
+			}
+			return rotateLeft(n);
+		}
+		return n;
+	}
+}
@@ -22,8 +22,10 @@ import java.util.List;
 
 /**
  * Simple text document class; treats document as sequence of lines.
+ * 
+ * @see RopeTextDocument
  */
-public class TextDocument {
+public class TextDocument implements ITextDocument {
 	private List<String> lineList;
 
 	/**
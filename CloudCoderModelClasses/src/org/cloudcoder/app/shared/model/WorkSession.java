@@ -17,12 +17,90 @@
 
 package org.cloudcoder.app.shared.model;
 
+import java.io.Serializable;
+
 /**
- * Model class representing a student work session.
+ * Model class representing a student work session: a sequence of
+ * {@link Event}s by the same user on the same problem, none of which
+ * is more than a given number of seconds (the separation) after
+ * the first event in the session.
+ * Work sessions are materialized in the database (for a particular
+ * separation) so that they can be analyzed without scanning
+ * the entire events table.
  * 
  * @author David Hovemeyer
  */
-public class WorkSession {
+public class WorkSession implements Serializable, IModelObject<WorkSession> {
+	private static final long serialVersionUID = 1L;
+	
+	public static final ModelObjectField<WorkSession, Integer> ID = new ModelObjectField<WorkSession, Integer>("id", Integer.class, 0, ModelObjectIndexType.IDENTITY) {
+		public void set(WorkSession obj, Integer value) { obj.setId(value); }
+		public Integer get(WorkSession obj) { return obj.getId(); }
+	};
+	
+	public static final ModelObjectField<WorkSession, Integer> SEPARATION_SECONDS = new ModelObjectField<WorkSession, Integer>("separation_seconds", Integer.class, 0) {
+		public void set(WorkSession obj, Integer value) { obj.setSeparationSeconds(value); }
+		public Integer get(WorkSession obj) { return obj.getSeparationSeconds(); }
+	};
+	
+	public static final ModelObjectField<WorkSession, Integer> COURSE_ID = new ModelObjectField<WorkSession, Integer>("course_id", Integer.class, 0, ModelObjectIndexType.NON_UNIQUE) {
+		public void set(WorkSession obj, Integer value) { obj.setCourseId(value); }
+		public Integer get(WorkSession obj) { return obj.getCourseId(); }
+	};
+	
+	public static final ModelObjectField<WorkSession, Integer> PROBLEM_ID = new ModelObjectField<WorkSession, Integer>("problem_id", Integer.class, 0, ModelObjectIndexType.NON_UNIQUE) {
+		public void set(WorkSession obj, Integer value) { obj.setProblemId(value); }
+		public Integer get(WorkSession obj) { return obj.getProblemId(); }
+	};
+	
+	public static final ModelObjectField<WorkSession, Integer> USER_ID = new ModelObjectField<WorkSession, Integer>("user_id", Integer.class, 0, ModelObjectIndexType.NON_UNIQUE) {
+		public void set(WorkSession obj, Integer value) { obj.setUserId(value); }
+		public Integer get(WorkSession obj) { return obj.getUserId(); }
+	};
+	
+	public static final ModelObjectField<WorkSession, Integer> START_EVENT_ID = new ModelObjectField<WorkSession, Integer>("start_event_id", Integer.class, 0) {
+		public void set(WorkSession obj, Integer value) { obj.setStartEventId(value); }
+		public Integer get(WorkSession obj) { return obj.getStartEventId(); }
+	};
+	
+	public static final ModelObjectField<WorkSession, Integer> END_EVENT_ID = new ModelObjectField<WorkSession, Integer>("end_event_id", Integer.class, 0, ModelObjectIndexType.NON_UNIQUE) {
+		public void set(WorkSession obj, Integer value) { obj.setEndEventId(value); }
+		public Integer get(WorkSession obj) { return obj.getEndEventId(); }
+	};
+	
+	public static final ModelObjectField<WorkSession, Long> START_TIME = new ModelObjectField<WorkSession, Long>("start_time", Long.class, 0) {
+		public void set(WorkSession obj, Long value) { obj.setStartTime(value); }
+		public Long get(WorkSession obj) { return obj.getStartTime(); }
+	};
+	
+	public static final ModelObjectField<WorkSession, Long> END_TIME = new ModelObjectField<WorkSession, Long>("end_time", Long.class, 0) {
+		public void set(WorkSession obj, Long value) { obj.setEndTime(value); }
+		public Long get(WorkSession obj) { return obj.getEndTime(); }
+	};
+	
+	public static final ModelObjectSchema<WorkSession> SCHEMA_V0 = new ModelObjectSchema<WorkSession>("work_session", WorkSession.class)
+			.add(ID)
+			.add(SEPARATION_SECONDS)
+			.add(COURSE_ID)
+			.add(PROBLEM_ID)
+			.add(USER_ID)
+			.add(START_EVENT_ID)
+			.add(END_EVENT_ID)
+			.add(START_TIME)
+			.add(END_TIME);
+	
+	public static final ModelObjectSchema<WorkSession> SCHEMA_V1 = ModelObjectSchema.basedOn(SCHEMA_V0, WorkSession.class)
+			// Add a composite index on (user id, separation, end event id):
+			// updating the work sessions finds each user's most recent work
+			// session for a separation.
+			.addIndexDelta(new ModelObjectIndex<WorkSession>(ModelObjectIndexType.NON_UNIQUE)
+					.addField(USER_ID).addField(SEPARATION_SECONDS).addField(END_EVENT_ID))
+			.finishDelta();
+	
+	public static final ModelObjectSchema<WorkSession> SCHEMA = SCHEMA_V1;
+	
+	private int id;
+	private int separationSeconds;
 	private int courseId;
 	private int problemId;
 	private int userId;
@@ -35,6 +113,27 @@ public class WorkSession {
 		
 	}
 	
+	@Override
+	public ModelObjectSchema<? super WorkSession> getSchema() {
+		return SCHEMA;
+	}
+	
+	public void setId(int id) {
+		this.id = id;
+	}
+	
+	public int getId() {
+		return id;
+	}
+	
+	public void setSeparationSeconds(int separationSeconds) {
+		this.separationSeconds = separationSeconds;
+	}
+	
+	public int getSeparationSeconds() {
+		return separationSeconds;
+	}
+	
 	public void setCourseId(int courseId) {
 		this.courseId = courseId;
 	}
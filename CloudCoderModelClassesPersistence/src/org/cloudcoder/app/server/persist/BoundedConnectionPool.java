@@ -0,0 +1,345 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2013, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2013, David H. Hovemeyer <david.hovemeyer@gmail.com>
+// Copyright (C) 2013, York College of Pennsylvania
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.cloudcoder.app.server.persist.JDBCDatabaseConfig.ConfigProperties;
+import org.cloudcoder.app.server.persist.util.DBUtil;
+import org.cloudcoder.app.server.persist.util.StatementCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implementation of {@link IConnectionPool} which keeps a bounded number
+ * of physical JDBC connections open and reuses them across transactions.
+ * Idle connections are validated before being handed out (if they have
+ * been idle for a while) and are closed once they have been idle longer
+ * than the configured idle timeout.  When all connections are in use,
+ * threads requesting a connection wait (up to a configured maximum time)
+ * for one to be released.
+ *
+ * <p>The pool is configured using the following properties
+ * (relative to the database property prefix, e.g. "cloudcoder.db"):
+ * <ul>
+ * <li><b>pool.maxSize</b>: maximum number of open connections (default 32)</li>
+ * <li><b>pool.maxWaitMillis</b>: maximum time to wait for a connection
+ *     before failing (default 10000)</li>
+ * <li><b>pool.idleTimeoutSeconds</b>: idle connections are closed after this
+ *     many seconds (default 300)</li>
+ * <li><b>pool.validateAfterIdleMillis</b>: idle connections are validated
+ *     before reuse if they have been idle at least this long (default 1000)</li>
+ * <li><b>pool.statementCacheSize</b>: number of prepared statements to cache
+ *     per connection, 0 to disable statement caching (default 64)</li>
+ * </ul>
+ *
+ * @author David Hovemeyer
+ */
+public class BoundedConnectionPool extends AbstractConnectionPool {
+	private static final Logger logger = LoggerFactory.getLogger(BoundedConnectionPool.class);
+
+	/** Number of seconds to wait for a connection to be validated. */
+	private static final int VALIDATION_TIMEOUT_SEC = 2;
+
+	private static class IdleConnection {
+		final Connection conn;
+		final long idleSince;
+
+		IdleConnection(Connection conn, long idleSince) {
+			this.conn = conn;
+			this.idleSince = idleSince;
+		}
+	}
+
+	private final String jdbcUrl;
+	private final int maxSize;
+	private final long maxWaitMillis;
+	private final long idleTimeoutMillis;
+	private final long validateAfterIdleMillis;
+	private final int statementCacheSize;
+
+	private final Object lock;
+
+	// Idle connections: most recently used connection is first, so that
+	// a small working set of connections is reused, and excess connections
+	// age out from the end of the list.
+	private final LinkedList<IdleConnection> idleList;
+
+	// Number of connections checked out, or being created, on behalf of callers
+	private int numActive;
+	private int numWaiting;
+	private boolean destroyed;
+
+	private int totalCreated;
+	private int totalWaitTimeouts;
+	private int totalValidationFailures;
+	private int totalEvicted;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param config the database configuration properties
+	 */
+	public BoundedConnectionPool(ConfigProperties config) {
+		this(
+			MysqlConnectionPool.createJdbcUrl(config),
+			"com.mysql.jdbc.Driver",
+			Integer.parseInt(config.getProperty("pool.maxSize", "32")),
+			Long.parseLong(config.getProperty("pool.maxWaitMillis", "10000")),
+			Long.parseLong(config.getProperty("pool.idleTimeoutSeconds", "300")) * 1000L,
+			Long.parseLong(config.getProperty("pool.validateAfterIdleMillis", "1000")),
+			Integer.parseInt(config.getProperty("pool.statementCacheSize", "64")));
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param jdbcUrl                 JDBC URL used to create connections
+	 * @param driverClassName         JDBC driver class to load (null if none needs to be loaded)
+	 * @param maxSize                 maximum number of open connections
+	 * @param maxWaitMillis           maximum number of milliseconds to wait for a connection
+	 * @param idleTimeoutMillis       idle connections are closed after this many milliseconds
+	 * @param validateAfterIdleMillis idle connections are validated before reuse if they
+	 *                                have been idle at least this many milliseconds
+	 * @param statementCacheSize      number of prepared statements to cache per connection
+	 *                                (0 to disable statement caching)
+	 */
+	public BoundedConnectionPool(String jdbcUrl, String driverClassName, int maxSize,
+			long maxWaitMillis, long idleTimeoutMillis, long validateAfterIdleMillis,
+			int statementCacheSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Connection pool maxSize must be at least 1");
+		}
+		if (driverClassName != null) {
+			try {
+				Class.forName(driverClassName);
+			} catch (Exception e) {
+				throw new IllegalStateException("Could not load jdbc driver " + driverClassName, e);
+			}
+		}
+		this.jdbcUrl = jdbcUrl;
+		this.maxSize = maxSize;
+		this.maxWaitMillis = maxWaitMillis;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.validateAfterIdleMillis = validateAfterIdleMillis;
+		this.statementCacheSize = statementCacheSize;
+		this.lock = new Object();
+		this.idleList = new LinkedList<IdleConnection>();
+		logger.info("Bounded connection pool: maxSize={}, maxWaitMillis={}", maxSize, maxWaitMillis);
+	}
+
+	@Override
+	protected Connection createConnection() throws SQLException {
+		while (true) {
+			IdleConnection idle = null;
+			List<Connection> evicted;
+
+			synchronized (lock) {
+				long deadline = System.currentTimeMillis() + maxWaitMillis;
+				while (!destroyed && idleList.isEmpty() && numActive >= maxSize) {
+					long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0) {
+						totalWaitTimeouts++;
+						throw new SQLException("Timed out waiting for a database connection (" +
+								numActive + " connections in use)");
+					}
+					numWaiting++;
+					try {
+						lock.wait(remaining);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new SQLException("Interrupted while waiting for a database connection", e);
+					} finally {
+						numWaiting--;
+					}
+				}
+				if (destroyed) {
+					throw new SQLException("Connection pool has been destroyed");
+				}
+
+				evicted = evictIdleConnections(System.currentTimeMillis());
+
+				// Reserve a slot: either reuse an idle connection or
+				// create a new one
+				if (!idleList.isEmpty()) {
+					idle = idleList.removeFirst();
+				}
+				numActive++;
+			}
+
+			closeAll(evicted);
+
+			if (idle == null) {
+				return openConnection();
+			}
+
+			if (isUsable(idle)) {
+				return idle.conn;
+			}
+
+			// The idle connection is no longer usable: discard it and try again
+			discard(idle.conn);
+			synchronized (lock) {
+				totalValidationFailures++;
+				numActive--;
+				lock.notify();
+			}
+		}
+	}
+
+	@Override
+	protected void closeConnection(Connection conn) throws SQLException {
+		boolean reuse = !conn.isClosed();
+		List<Connection> evicted;
+
+		synchronized (lock) {
+			numActive--;
+			long now = System.currentTimeMillis();
+			if (reuse && !destroyed) {
+				idleList.addFirst(new IdleConnection(conn, now));
+			} else {
+				reuse = false;
+			}
+			evicted = evictIdleConnections(now);
+			lock.notify();
+		}
+
+		if (!reuse) {
+			discard(conn);
+		}
+		closeAll(evicted);
+	}
+
+	@Override
+	public void destroy() throws SQLException {
+		List<Connection> toClose = new ArrayList<Connection>();
+		synchronized (lock) {
+			destroyed = true;
+			for (IdleConnection idle : idleList) {
+				toClose.add(idle.conn);
+			}
+			idleList.clear();
+			lock.notifyAll();
+		}
+		closeAll(toClose);
+	}
+
+	@Override
+	public ConnectionPoolStats getStats() {
+		ConnectionPoolStats stats = new ConnectionPoolStats();
+		synchronized (lock) {
+			stats.setNumActive(numActive);
+			stats.setNumIdle(idleList.size());
+			stats.setMaxSize(maxSize);
+			stats.setNumWaiting(numWaiting);
+			stats.setTotalCreated(totalCreated);
+			stats.setTotalWaitTimeouts(totalWaitTimeouts);
+			stats.setTotalValidationFailures(totalValidationFailures);
+			stats.setTotalEvicted(totalEvicted);
+		}
+		stats.setStatementCacheHits(StatementCache.getTotalHits());
+		stats.setStatementCacheMisses(StatementCache.getTotalMisses());
+		return stats;
+	}
+
+	/**
+	 * Open a new physical connection.  The caller must have already
+	 * reserved a slot by incrementing numActive.
+	 */
+	private Connection openConnection() throws SQLException {
+		boolean success = false;
+		try {
+			Connection conn = DriverManager.getConnection(jdbcUrl);
+			if (statementCacheSize > 0) {
+				conn = StatementCache.attach(conn, statementCacheSize);
+			}
+			success = true;
+			return conn;
+		} finally {
+			synchronized (lock) {
+				if (success) {
+					totalCreated++;
+				} else {
+					numActive--;
+					lock.notify();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Check whether an idle connection can be handed out.
+	 */
+	private boolean isUsable(IdleConnection idle) {
+		if (System.currentTimeMillis() - idle.idleSince < validateAfterIdleMillis) {
+			return true;
+		}
+		try {
+			return idle.conn.isValid(VALIDATION_TIMEOUT_SEC);
+		} catch (SQLException e) {
+			logger.info("Error validating pooled connection", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Remove idle connections which have exceeded the idle timeout.
+	 * Must be called with the lock held.  The returned connections
+	 * should be closed after the lock is released.
+	 */
+	private List<Connection> evictIdleConnections(long now) {
+		List<Connection> evicted = null;
+		// Least recently used connections are at the end of the list
+		for (Iterator<IdleConnection> i = idleList.descendingIterator(); i.hasNext(); ) {
+			IdleConnection idle = i.next();
+			if (now - idle.idleSince < idleTimeoutMillis) {
+				break;
+			}
+			i.remove();
+			if (evicted == null) {
+				evicted = new ArrayList<Connection>();
+			}
+			evicted.add(idle.conn);
+			totalEvicted++;
+		}
+		return evicted;
+	}
+
+	/**
+	 * Close a physical connection, along with its cached statements.
+	 */
+	private static void discard(Connection conn) {
+		StatementCache.detach(conn);
+		DBUtil.closeQuietly(conn);
+	}
+
+	private static void closeAll(List<Connection> connList) {
+		if (connList != null) {
+			for (Connection conn : connList) {
+				discard(conn);
+			}
+		}
+	}
+}
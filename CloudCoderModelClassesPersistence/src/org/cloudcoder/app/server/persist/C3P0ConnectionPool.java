@@ -21,6 +21,9 @@ package org.cloudcoder.app.server.persist;
 import java.sql.Connection;
 import java.sql.SQLException;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.mchange.v2.c3p0.ComboPooledDataSource;
 
 /**
@@ -30,6 +33,8 @@ import com.mchange.v2.c3p0.ComboPooledDataSource;
  * @see http://www.mchange.com/projects/c3p0/index.html
  */
 public class C3P0ConnectionPool extends AbstractConnectionPool {
+	private static final Logger logger = LoggerFactory.getLogger(C3P0ConnectionPool.class);
+	
 	private ComboPooledDataSource cpds;
 	
 	/**
@@ -48,14 +53,17 @@ public class C3P0ConnectionPool extends AbstractConnectionPool {
 		cpds.setJdbcUrl("jdbc:mysql://" +
 				config.getHost() + config.getPortStr() +
 				"/" +
-				config.getDatabaseName());
+				config.getDatabaseName() +
+				"?rewriteBatchedStatements=true");
 		cpds.setUser(config.getUser());
 		cpds.setPassword(config.getPasswd());
 		
 		// Turn on connection pooling
-		// TODO: these should be tunable based on CloudCoder config properties
-		cpds.setMinPoolSize(10);
-		cpds.setMaxPoolSize(150);
+		cpds.setMinPoolSize(Integer.parseInt(config.getProperty("pool.minSize", "10")));
+		cpds.setMaxPoolSize(Integer.parseInt(config.getProperty("pool.maxSize", "150")));
+		cpds.setCheckoutTimeout(Integer.parseInt(config.getProperty("pool.maxWaitMillis", "0")));
+		cpds.setMaxIdleTime(Integer.parseInt(config.getProperty("pool.idleTimeoutSeconds", "0")));
+		cpds.setTestConnectionOnCheckout(true);
 		
 		// Turn on prepared statement pooling
 		cpds.setMaxStatements(180);
@@ -77,4 +85,18 @@ public class C3P0ConnectionPool extends AbstractConnectionPool {
 		// to the connection pool
 		conn.close();
 	}
+	
+	@Override
+	public ConnectionPoolStats getStats() {
+		ConnectionPoolStats stats = new ConnectionPoolStats();
+		stats.setMaxSize(cpds.getMaxPoolSize());
+		try {
+			stats.setNumActive(cpds.getNumBusyConnectionsDefaultUser());
+			stats.setNumIdle(cpds.getNumIdleConnectionsDefaultUser());
+			stats.setNumWaiting(cpds.getNumThreadsAwaitingCheckoutDefaultUser());
+		} catch (SQLException e) {
+			logger.warn("Could not get C3P0 connection pool statistics", e);
+		}
+		return stats;
+	}
 }
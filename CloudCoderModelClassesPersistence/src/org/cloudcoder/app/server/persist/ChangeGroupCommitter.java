@@ -0,0 +1,344 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.cloudcoder.app.shared.model.Change;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Group commit for {@link Change}s: batches of changes sent by many clients
+ * are gathered by a single writer thread and stored together in one
+ * transaction, rather than each batch of changes being stored in its own
+ * transaction.  When a request arrives at an idle writer, the writer waits
+ * up to a bounded delay for more requests before committing, and requests
+ * arriving while a commit is in progress are included in the next one.
+ * {@link #storeChanges(Change[])} does not return until the transaction
+ * containing the changes has committed, so callers still know that their
+ * changes are durable.  Requests are committed in the order they arrive,
+ * so a user's changes are assigned event ids in the order they were sent.
+ *
+ * <p>If a group transaction fails, each request in the group is retried
+ * in its own transaction, so that a request which can't be stored
+ * doesn't cause other users' changes to be lost.  If the writer thread
+ * exits (because of shutdown or an unexpected error), requests that are
+ * queued or arrive later fail rather than waiting forever, and a caller
+ * waits at most a bounded time for its changes to be committed.
+ *
+ * <p>The group commit is configured using the following properties
+ * (relative to the database property prefix, e.g. "cloudcoder.db"):
+ * <ul>
+ * <li><b>groupCommit.enabled</b>: whether changes are stored using group
+ *     commit (default false)</li>
+ * <li><b>groupCommit.maxDelayMillis</b>: maximum time to wait for more
+ *     requests before committing (default 5)</li>
+ * <li><b>groupCommit.maxBatchChanges</b>: maximum number of changes stored
+ *     in one transaction, although a single request is never split
+ *     (default 2000)</li>
+ * <li><b>groupCommit.maxWaitMillis</b>: maximum time a caller waits for
+ *     its changes to be committed (default 60000)</li>
+ * </ul>
+ *
+ * @author David Hovemeyer
+ */
+public class ChangeGroupCommitter {
+	private static final Logger logger = LoggerFactory.getLogger(ChangeGroupCommitter.class);
+	
+	/**
+	 * Interface for storing a sequence of changes in a single transaction.
+	 */
+	public interface Store {
+		/**
+		 * Store changes in a single transaction.
+		 * 
+		 * @param changeList the changes to store
+		 * @throws PersistenceException if the changes could not be stored
+		 */
+		public void storeChanges(Change[] changeList);
+	}
+	
+	private static class Request {
+		final Change[] changeList;
+		final CountDownLatch done;
+		Throwable failure;
+
+		Request(Change[] changeList) {
+			this.changeList = changeList;
+			this.done = new CountDownLatch(1);
+		}
+	}
+	
+	private final Store store;
+	private final long maxDelayMillis;
+	private final int maxBatchChanges;
+	private final long maxWaitMillis;
+	private final LinkedList<Request> queue;
+	private int numQueuedChanges;
+	private boolean shutdown;
+	private boolean writerExited;
+	private long numRequests;
+	private long numCommits;
+	private final Thread writerThread;
+
+	/**
+	 * Constructor.  Starts the writer thread.
+	 * 
+	 * @param store           the {@link Store} used to store changes
+	 * @param maxDelayMillis  maximum time to wait for more requests before committing
+	 * @param maxBatchChanges maximum number of changes to store in one transaction
+	 * @param maxWaitMillis   maximum time a caller waits for its changes to be committed
+	 */
+	public ChangeGroupCommitter(Store store, long maxDelayMillis, int maxBatchChanges, long maxWaitMillis) {
+		this.store = store;
+		this.maxDelayMillis = maxDelayMillis;
+		this.maxBatchChanges = maxBatchChanges;
+		this.maxWaitMillis = maxWaitMillis;
+		this.queue = new LinkedList<Request>();
+		this.writerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writerLoop();
+			}
+		}, "ChangeGroupCommitter");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * Store changes, waiting until the transaction containing them
+	 * has committed.  If the wait times out while the changes are
+	 * still queued, they are not stored; if it times out while they
+	 * are being committed, they may or may not be stored.
+	 * 
+	 * @param changeList the changes to store
+	 * @throws PersistenceException if the changes could not be stored,
+	 *         or were not committed within the maximum wait time
+	 */
+	public void storeChanges(Change[] changeList) {
+		Request req = new Request(changeList);
+		synchronized (this) {
+			if (shutdown || writerExited) {
+				throw new PersistenceException("Change group commit has been shut down");
+			}
+			queue.add(req);
+			numQueuedChanges += changeList.length;
+			numRequests++;
+			notifyAll();
+		}
+		
+		// Wait for the changes to be committed, even if interrupted:
+		// the caller must not proceed until they are durable
+		boolean interrupted = false;
+		long deadline = System.currentTimeMillis() + maxWaitMillis;
+		while (req.done.getCount() > 0) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				break;
+			}
+			try {
+				req.done.await(remaining, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		
+		if (req.done.getCount() > 0) {
+			boolean dequeued;
+			synchronized (this) {
+				dequeued = queue.remove(req);
+				if (dequeued) {
+					numQueuedChanges -= changeList.length;
+				}
+			}
+			throw new PersistenceException(dequeued
+					? "Timed out waiting to store changes"
+					: "Timed out waiting for changes to be committed");
+		}
+		if (req.failure != null) {
+			throw new PersistenceException("Could not store changes", req.failure);
+		}
+	}
+
+	/**
+	 * Shut down the writer thread, once all queued requests have
+	 * been committed.
+	 * 
+	 * @throws InterruptedException
+	 */
+	public void shutdown() throws InterruptedException {
+		synchronized (this) {
+			shutdown = true;
+			notifyAll();
+		}
+		writerThread.join();
+	}
+
+	/**
+	 * @return the number of requests waiting to be committed
+	 */
+	synchronized int getNumQueuedRequests() {
+		return queue.size();
+	}
+
+	/**
+	 * @return a one-line summary of the group commit statistics
+	 */
+	public synchronized String getStatusSummary() {
+		double requestsPerCommit = numCommits > 0 ? (double) numRequests / numCommits : 0.0;
+		return String.format("requests=%d, commits=%d, requestsPerCommit=%.1f, queued=%d",
+				numRequests, numCommits, requestsPerCommit, queue.size());
+	}
+
+	private void writerLoop() {
+		List<Request> group = null;
+		try {
+			for (;;) {
+				group = takeGroup();
+				if (group == null) {
+					return;
+				}
+				commit(group);
+				group = null;
+			}
+		} catch (InterruptedException e) {
+			logger.error("Change group commit writer interrupted");
+		} catch (Throwable e) {
+			logger.error("Change group commit writer failed", e);
+		} finally {
+			writerExited(group);
+		}
+	}
+
+	/**
+	 * Called when the writer thread exits: fail the requests in the
+	 * group being committed (if any) and the queued requests, and
+	 * make future requests fail immediately.
+	 * 
+	 * @param group the group being committed, or null
+	 */
+	private void writerExited(List<Request> group) {
+		List<Request> failed = new ArrayList<Request>();
+		synchronized (this) {
+			writerExited = true;
+			if (group != null) {
+				failed.addAll(group);
+			}
+			failed.addAll(queue);
+			queue.clear();
+			numQueuedChanges = 0;
+		}
+		for (Request req : failed) {
+			if (req.done.getCount() > 0) {
+				req.failure = new PersistenceException("Change group commit writer has exited");
+				req.done.countDown();
+			}
+		}
+	}
+
+	/**
+	 * Wait for requests, and remove the next group of requests
+	 * to be committed from the queue.
+	 * 
+	 * @return the group of requests, or null if shut down and there
+	 *         are no more requests
+	 * @throws InterruptedException
+	 */
+	private synchronized List<Request> takeGroup() throws InterruptedException {
+		while (queue.isEmpty()) {
+			if (shutdown) {
+				return null;
+			}
+			wait();
+		}
+		
+		// Give other requests a chance to join the group
+		long deadline = System.currentTimeMillis() + maxDelayMillis;
+		while (!shutdown && numQueuedChanges < maxBatchChanges) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				break;
+			}
+			wait(remaining);
+		}
+		
+		List<Request> group = new ArrayList<Request>();
+		int numChanges = 0;
+		while (!queue.isEmpty()) {
+			Request req = queue.getFirst();
+			if (!group.isEmpty() && numChanges + req.changeList.length > maxBatchChanges) {
+				break;
+			}
+			queue.removeFirst();
+			group.add(req);
+			numChanges += req.changeList.length;
+		}
+		numQueuedChanges -= numChanges;
+		numCommits++;
+		return group;
+	}
+
+	private void commit(List<Request> group) {
+		if (group.size() == 1) {
+			commitOne(group.get(0));
+			return;
+		}
+		
+		int numChanges = 0;
+		for (Request req : group) {
+			numChanges += req.changeList.length;
+		}
+		Change[] changeList = new Change[numChanges];
+		int index = 0;
+		for (Request req : group) {
+			System.arraycopy(req.changeList, 0, changeList, index, req.changeList.length);
+			index += req.changeList.length;
+		}
+		
+		try {
+			store.storeChanges(changeList);
+		} catch (Throwable e) {
+			// Retry each request in its own transaction
+			logger.warn("Could not store group of " + group.size() + " requests, retrying individually", e);
+			for (Request req : group) {
+				commitOne(req);
+			}
+			return;
+		}
+		for (Request req : group) {
+			req.done.countDown();
+		}
+	}
+
+	private void commitOne(Request req) {
+		try {
+			store.storeChanges(req.changeList);
+		} catch (Throwable e) {
+			req.failure = e;
+		}
+		req.done.countDown();
+	}
+}
@@ -0,0 +1,186 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2013, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2013, David H. Hovemeyer <david.hovemeyer@gmail.com>
+// Copyright (C) 2013, York College of Pennsylvania
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist;
+
+/**
+ * Snapshot of the state of an {@link IConnectionPool}.
+ * Counts which a particular pool implementation does not
+ * track are reported as 0.
+ *
+ * @author David Hovemeyer
+ */
+public class ConnectionPoolStats {
+	private int numActive;
+	private int numIdle;
+	private int maxSize;
+	private int numWaiting;
+	private int totalCreated;
+	private int totalWaitTimeouts;
+	private int totalValidationFailures;
+	private int totalEvicted;
+	private long statementCacheHits;
+	private long statementCacheMisses;
+
+	/**
+	 * Constructor.
+	 */
+	public ConnectionPoolStats() {
+
+	}
+
+	/**
+	 * @return number of connections currently in use
+	 */
+	public int getNumActive() {
+		return numActive;
+	}
+
+	/**
+	 * @param numActive number of connections currently in use
+	 */
+	public void setNumActive(int numActive) {
+		this.numActive = numActive;
+	}
+
+	/**
+	 * @return number of open connections not currently in use
+	 */
+	public int getNumIdle() {
+		return numIdle;
+	}
+
+	/**
+	 * @param numIdle number of open connections not currently in use
+	 */
+	public void setNumIdle(int numIdle) {
+		this.numIdle = numIdle;
+	}
+
+	/**
+	 * @return maximum number of connections (0 if unbounded)
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @param maxSize maximum number of connections (0 if unbounded)
+	 */
+	public void setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @return number of threads currently waiting for a connection
+	 */
+	public int getNumWaiting() {
+		return numWaiting;
+	}
+
+	/**
+	 * @param numWaiting number of threads currently waiting for a connection
+	 */
+	public void setNumWaiting(int numWaiting) {
+		this.numWaiting = numWaiting;
+	}
+
+	/**
+	 * @return total number of physical connections created
+	 */
+	public int getTotalCreated() {
+		return totalCreated;
+	}
+
+	/**
+	 * @param totalCreated total number of physical connections created
+	 */
+	public void setTotalCreated(int totalCreated) {
+		this.totalCreated = totalCreated;
+	}
+
+	/**
+	 * @return total number of requests that timed out waiting for a connection
+	 */
+	public int getTotalWaitTimeouts() {
+		return totalWaitTimeouts;
+	}
+
+	/**
+	 * @param totalWaitTimeouts total number of requests that timed out waiting for a connection
+	 */
+	public void setTotalWaitTimeouts(int totalWaitTimeouts) {
+		this.totalWaitTimeouts = totalWaitTimeouts;
+	}
+
+	/**
+	 * @return total number of idle connections discarded because they failed validation
+	 */
+	public int getTotalValidationFailures() {
+		return totalValidationFailures;
+	}
+
+	/**
+	 * @param totalValidationFailures total number of idle connections discarded because they failed validation
+	 */
+	public void setTotalValidationFailures(int totalValidationFailures) {
+		this.totalValidationFailures = totalValidationFailures;
+	}
+
+	/**
+	 * @return total number of idle connections closed because they were idle too long
+	 */
+	public int getTotalEvicted() {
+		return totalEvicted;
+	}
+
+	/**
+	 * @param totalEvicted total number of idle connections closed because they were idle too long
+	 */
+	public void setTotalEvicted(int totalEvicted) {
+		this.totalEvicted = totalEvicted;
+	}
+
+	/**
+	 * @return total number of prepared statements reused from a statement cache
+	 */
+	public long getStatementCacheHits() {
+		return statementCacheHits;
+	}
+
+	/**
+	 * @param statementCacheHits total number of prepared statements reused from a statement cache
+	 */
+	public void setStatementCacheHits(long statementCacheHits) {
+		this.statementCacheHits = statementCacheHits;
+	}
+
+	/**
+	 * @return total number of prepared statements that could not be reused from a statement cache
+	 */
+	public long getStatementCacheMisses() {
+		return statementCacheMisses;
+	}
+
+	/**
+	 * @param statementCacheMisses total number of prepared statements that could not be reused from a statement cache
+	 */
+	public void setStatementCacheMisses(long statementCacheMisses) {
+		this.statementCacheMisses = statementCacheMisses;
+	}
+}
@@ -31,6 +31,7 @@ import org.cloudcoder.app.server.persist.util.ConfigurationUtil;
 import org.cloudcoder.app.server.persist.util.DBUtil;
 import org.cloudcoder.app.server.persist.util.SchemaUtil;
 import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeCheckpoint;
 import org.cloudcoder.app.shared.model.ConfigurationSetting;
 import org.cloudcoder.app.shared.model.ConfigurationSettingName;
 import org.cloudcoder.app.shared.model.Course;
@@ -47,6 +48,7 @@ import org.cloudcoder.app.shared.model.Term;
 import org.cloudcoder.app.shared.model.TestCase;
 import org.cloudcoder.app.shared.model.TestResult;
 import org.cloudcoder.app.shared.model.User;
+import org.cloudcoder.app.shared.model.WorkSession;
 
 /**
  * Create the webapp database, using the metadata information
@@ -75,6 +77,8 @@ public class CreateWebappDatabase {
 		Quiz.SCHEMA,
 		Module.SCHEMA,
 		StartedQuiz.SCHEMA,
+		WorkSession.SCHEMA,
+		ChangeCheckpoint.SCHEMA,
 	};
 	
 	private static class Props {
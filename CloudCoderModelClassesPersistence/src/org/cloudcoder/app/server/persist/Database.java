@@ -42,4 +42,14 @@ public class Database {
 	public static IDatabase getInstance() {
 		return instance;
 	}
+	
+	/**
+	 * Shut down the default implementation of IDatabase,
+	 * stopping any background activity.
+	 */
+	public static void shutdown() {
+		if (instance instanceof JDBCDatabase) {
+			((JDBCDatabase) instance).shutdown();
+		}
+	}
 }
@@ -52,4 +52,11 @@ public interface IConnectionPool {
 	 * @throws SQLException 
 	 */
 	public void destroy() throws SQLException;
+	
+	/**
+	 * Get a snapshot of the current state of the connection pool.
+	 * 
+	 * @return the {@link ConnectionPoolStats}
+	 */
+	public ConnectionPoolStats getStats();
 }
@@ -24,6 +24,7 @@ import java.util.Map;
 
 import org.cloudcoder.app.shared.model.Anonymization;
 import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeCheckpoint;
 import org.cloudcoder.app.shared.model.CloudCoderAuthenticationException;
 import org.cloudcoder.app.shared.model.ConfigurationSetting;
 import org.cloudcoder.app.shared.model.ConfigurationSettingName;
@@ -123,6 +124,18 @@ public interface IDatabase {
 	public Change getMostRecentFullTextChange(User user, int problemId);
 	public List<Change> getAllChangesNewerThan(User user, int problemId, int baseRev);
 	
+	/**
+	 * Get the {@link ChangeCheckpoint} for given user and problem.
+	 * The checkpoint's text (if not null) is the full text as of
+	 * the checkpoint's event id, and may be used as the base revision
+	 * when reconstructing the current text.
+	 * 
+	 * @param user      the {@link User}
+	 * @param problemId the problem id
+	 * @return the {@link ChangeCheckpoint}, or null if there is none
+	 */
+	public ChangeCheckpoint getChangeCheckpoint(User user, int problemId);
+	
 	/**
 	 * Get all of the courses in which given user is registered.
 	 * Each returned item is a triple consisting of {@link Course},
@@ -183,6 +196,18 @@ public interface IDatabase {
 	 * @return list of {@link Change}s for all uses on the problem
 	 */
 	public List<Change> loadChangesForAllUsersOnProblem(int problemId);
+
+	/**
+	 * Load sequence of {@link Change}s for all users on given problem,
+	 * streaming them to a callback rather than collecting them in a list,
+	 * so that they can be processed in constant memory.
+	 * Changes are ordered by user id, and then by event id.
+	 * The callback must not access the database.
+	 * 
+	 * @param problemId the problem id
+	 * @param callback  the {@link ChangeCallback} which will receive the changes
+	 */
+	public void loadChangesForAllUsersOnProblem(int problemId, ChangeCallback callback);
 	
 	/**
 	 * Get List of {@link TestCase}s for {@link Problem} with given id.
@@ -697,16 +722,94 @@ public interface IDatabase {
 	 * @return list of {@link WorkSession}s
 	 */
 	public List<WorkSession> findWorkSessions(SnapshotSelectionCriteria criteria, int separationSeconds);
+
+	/**
+	 * Find all {@link WorkSession}s matching given {@link SnapshotSelectionCriteria},
+	 * streaming them to a callback rather than collecting them in a list,
+	 * so that they can be processed in constant memory.
+	 * The callback must not access the database.
+	 * 
+	 * @param criteria             the {@link SnapshotSelectionCriteria}
+	 * @param separationSeconds    events separated by this much time are considered to be
+	 *                             in separate sessions
+	 * @param callback             the {@link WorkSessionCallback} which will receive the
+	 *                             work sessions
+	 */
+	public void findWorkSessions(SnapshotSelectionCriteria criteria, int separationSeconds, WorkSessionCallback callback);
+	
+	/**
+	 * Incrementally update the materialized {@link WorkSession}s for
+	 * given separation, processing all events added since the last update.
+	 * Unlike {@link #findWorkSessions(SnapshotSelectionCriteria, int)}, work
+	 * sessions are computed from all of a user's events, so switching to
+	 * another problem always ends a work session.
+	 * Updates for the same separation must not run concurrently.
+	 * 
+	 * @param separationSeconds    events separated by this much time are considered to be
+	 *                             in separate sessions
+	 * @return the number of events processed
+	 */
+	public int updateWorkSessions(int separationSeconds);
+	
+	/**
+	 * Get the materialized {@link WorkSession}s for given separation
+	 * matching given {@link SnapshotSelectionCriteria}, ordered by user id
+	 * and then by start event id.  {@link #updateWorkSessions(int)} should
+	 * be called first to ensure that the work sessions are up to date.
+	 * The callback must not access the database.
+	 * 
+	 * @param criteria             the {@link SnapshotSelectionCriteria}
+	 * @param separationSeconds    the separation
+	 * @param callback             the {@link WorkSessionCallback} which will receive the
+	 *                             work sessions
+	 */
+	public void getWorkSessions(SnapshotSelectionCriteria criteria, int separationSeconds, WorkSessionCallback callback);
+	
+	/**
+	 * Get all {@link Event}s (and {@link Change}s, for change events) in the
+	 * materialized {@link WorkSession}s for given separation matching given
+	 * {@link SnapshotSelectionCriteria}.  Events are ordered by user id,
+	 * work session start event id, and event id.
+	 * {@link #updateWorkSessions(int)} should be called first to ensure that
+	 * the work sessions are up to date.  The callback must not access the database.
+	 * 
+	 * @param criteria             the {@link SnapshotSelectionCriteria}
+	 * @param separationSeconds    the separation
+	 * @param callback             the {@link WorkSessionEventCallback} which will receive the
+	 *                             events
+	 */
+	public void getEventsInWorkSessions(SnapshotSelectionCriteria criteria, int separationSeconds, WorkSessionEventCallback callback);
 	
 	/**
 	 * Retrieve submissions/snapshots matching given {@link SnapshotSelectionCriteria}.
 	 * 
 	 * @param criteria the {@link SnapshotSelectionCriteria}
 	 * @param callback the {@link SnapshotCallback} which will receive the retrieved
-	 *        snapshots
+	 *        snapshots: they are streamed from the database, so the callback
+	 *        must not access the database
 	 */
 	public void retrieveSnapshots(SnapshotSelectionCriteria criteria, SnapshotCallback callback);
 
+	/**
+	 * Retrieve a page of submissions/snapshots matching given {@link SnapshotSelectionCriteria},
+	 * in increasing order of submit event id.  Retrieving all of the snapshots in
+	 * a series of pages, each starting after the last submit event id of the
+	 * previous page, allows them to be processed incrementally without keeping
+	 * a query open for the duration of the processing.
+	 * 
+	 * @param criteria           the {@link SnapshotSelectionCriteria}
+	 * @param afterSubmitEventId only snapshots with a submit event id greater than
+	 *                           this are retrieved (-1 for no restriction)
+	 * @param maxSnapshots       maximum number of snapshots to retrieve
+	 * @param callback           the {@link SnapshotCallback} which will receive the retrieved
+	 *                           snapshots: they are streamed from the database, so the callback
+	 *                           must not access the database
+	 * @return the submit event id of the last row in the page, or -1 if the page is empty:
+	 *         rows without a valid full-text snapshot count toward maxSnapshots but aren't
+	 *         passed to the callback, so the next page should start after this id
+	 */
+	public int retrieveSnapshots(SnapshotSelectionCriteria criteria, int afterSubmitEventId, int maxSnapshots, SnapshotCallback callback);
+
 	/**
 	 * Get all {@link Event}s for given user/problem within specified range of event ids.
 	 * For each event that is a {@link Change}, get the Change objects as well.
@@ -772,4 +875,11 @@ public interface IDatabase {
 	 * @return an {@link OperationResult} describing the success or failure of the operation
 	 */
 	public OperationResult registerExistingUser(CourseRegistrationSpec spec);
+
+	/**
+	 * Get a snapshot of the state of the database connection pool.
+	 * 
+	 * @return the {@link ConnectionPoolStats}
+	 */
+	public ConnectionPoolStats getConnectionPoolStats();
 }
@@ -21,6 +21,7 @@ package org.cloudcoder.app.server.persist;
 import java.io.InputStream;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -44,10 +45,12 @@ import org.cloudcoder.app.server.persist.txn.FindCurrentQuiz;
 import org.cloudcoder.app.server.persist.txn.FindUnfinishedQuizForStudent;
 import org.cloudcoder.app.server.persist.txn.FindUserRegistrationRequestGivenSecret;
 import org.cloudcoder.app.server.persist.txn.FindWorkSessions;
+import org.cloudcoder.app.server.persist.txn.GetEventsInWorkSessions;
 import org.cloudcoder.app.server.persist.txn.GetAllChangesNewerThan;
 import org.cloudcoder.app.server.persist.txn.GetAllSubmissionReceiptsForUserAndProblem;
 import org.cloudcoder.app.server.persist.txn.GetBestSubmissionReceiptsForProblem;
 import org.cloudcoder.app.server.persist.txn.GetBestSubmissionReceiptsForProblemForAuthenticatedUser;
+import org.cloudcoder.app.server.persist.txn.GetChangeCheckpoint;
 import org.cloudcoder.app.server.persist.txn.GetChangeGivenChangeEventId;
 import org.cloudcoder.app.server.persist.txn.GetConfigurationSetting;
 import org.cloudcoder.app.server.persist.txn.GetCoursesForUser;
@@ -74,6 +77,7 @@ import org.cloudcoder.app.server.persist.txn.GetTestResultsForSubmission;
 import org.cloudcoder.app.server.persist.txn.GetUserGivenId;
 import org.cloudcoder.app.server.persist.txn.GetUserWithoutAuthentication;
 import org.cloudcoder.app.server.persist.txn.GetUsersInCourse;
+import org.cloudcoder.app.server.persist.txn.GetWorkSessions;
 import org.cloudcoder.app.server.persist.txn.ImportAllProblemsFromCourse;
 import org.cloudcoder.app.server.persist.txn.InsertProblem;
 import org.cloudcoder.app.server.persist.txn.InsertUsersFromInputStream;
@@ -96,11 +100,14 @@ import org.cloudcoder.app.server.persist.txn.StoreSubmissionReceipt;
 import org.cloudcoder.app.server.persist.txn.StudentStartOrContinueQuiz;
 import org.cloudcoder.app.server.persist.txn.SuggestTagNames;
 import org.cloudcoder.app.server.persist.txn.SuggestUsernames;
+import org.cloudcoder.app.server.persist.txn.UpdateWorkSessions;
 import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnable;
 import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnableNoAuthException;
 import org.cloudcoder.app.server.persist.util.DatabaseRunnable;
+import org.cloudcoder.app.server.persist.util.DBUtil;
 import org.cloudcoder.app.shared.model.Anonymization;
 import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeCheckpoint;
 import org.cloudcoder.app.shared.model.CloudCoderAuthenticationException;
 import org.cloudcoder.app.shared.model.ConfigurationSetting;
 import org.cloudcoder.app.shared.model.ConfigurationSettingName;
@@ -149,13 +156,87 @@ import org.slf4j.LoggerFactory;
  */
 public class JDBCDatabase implements IDatabase {
 	static final Logger logger=LoggerFactory.getLogger(JDBCDatabase.class);
+	
+	// Maximum number of events processed by each UpdateWorkSessions transaction
+	private static final int UPDATE_WORK_SESSIONS_BATCH_SIZE = 10000;
 
 	private IConnectionPool connectionPool;
+	private ChangeGroupCommitter changeGroupCommitter;
 	
 	public JDBCDatabase() throws SQLException {
-		JDBCDatabaseConfig.ConfigProperties config = JDBCDatabaseConfig.getInstance().getConfigProperties();
-		this.connectionPool = new MysqlConnectionPool(config);
-//		this.connectionPool = new C3P0ConnectionPool(config);
+		this(JDBCDatabaseConfig.getInstance().getConfigProperties());
+	}
+	
+	private JDBCDatabase(JDBCDatabaseConfig.ConfigProperties config) throws SQLException {
+		this(createConnectionPool(config), config);
+	}
+	
+	/**
+	 * Constructor using a given {@link IConnectionPool}
+	 * (for example, one providing connections to an embedded database).
+	 * 
+	 * @param connectionPool the {@link IConnectionPool}
+	 * @param config         the database configuration properties
+	 */
+	public JDBCDatabase(IConnectionPool connectionPool, JDBCDatabaseConfig.ConfigProperties config) {
+		this.connectionPool = connectionPool;
+		if (Boolean.parseBoolean(config.getProperty("groupCommit.enabled", "false"))) {
+			this.changeGroupCommitter = new ChangeGroupCommitter(
+					new ChangeGroupCommitter.Store() {
+						@Override
+						public void storeChanges(Change[] changeList) {
+							databaseRun(new StoreChanges(changeList));
+						}
+					},
+					Long.parseLong(config.getProperty("groupCommit.maxDelayMillis", "5")),
+					Integer.parseInt(config.getProperty("groupCommit.maxBatchChanges", "2000")),
+					Long.parseLong(config.getProperty("groupCommit.maxWaitMillis", "60000")));
+		}
+	}
+	
+	/**
+	 * Shut down background activity (currently, the change group commit
+	 * writer thread, once the changes already queued have been stored).
+	 * Should be called when the webapp is stopped.
+	 */
+	public void shutdown() {
+		if (changeGroupCommitter != null) {
+			try {
+				changeGroupCommitter.shutdown();
+			} catch (InterruptedException e) {
+				logger.warn("Interrupted waiting for change group commit to shut down");
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	/**
+	 * Create the {@link IConnectionPool} selected by the "pool" database
+	 * configuration property (e.g., "cloudcoder.db.pool").  Choices are
+	 * "bounded" (the default), "c3p0", and "none" (open a new connection
+	 * for each transaction).
+	 * 
+	 * @param config the database configuration properties
+	 * @return the {@link IConnectionPool}
+	 * @throws SQLException
+	 */
+	private static IConnectionPool createConnectionPool(JDBCDatabaseConfig.ConfigProperties config) throws SQLException {
+		String poolType = config.getProperty("pool", "bounded");
+		logger.info("Using {} database connection pool", poolType);
+		if (poolType.equals("bounded")) {
+			return new BoundedConnectionPool(config);
+		} else if (poolType.equals("c3p0")) {
+			return new C3P0ConnectionPool(config);
+		} else if (poolType.equals("none")) {
+			return new MysqlConnectionPool(config);
+		} else {
+			throw new IllegalArgumentException("Unknown database connection pool type: " + poolType);
+		}
+	}
+	
+	@Override
+	public ConnectionPoolStats getConnectionPoolStats() {
+		return connectionPool.getStats();
 	}
 	
 	@Override
@@ -212,6 +293,11 @@ public class JDBCDatabase implements IDatabase {
 		return databaseRun(new GetAllChangesNewerThan(problemId, user, baseRev));
 	}
 	
+	@Override
+	public ChangeCheckpoint getChangeCheckpoint(final User user, final int problemId) {
+		return databaseRun(new GetChangeCheckpoint(problemId, user));
+	}
+	
 	@Override
 	public List<? extends Object[]> getCoursesForUser(final User user) {
 		return databaseRun(new GetCoursesForUser(user));
@@ -231,7 +317,11 @@ public class JDBCDatabase implements IDatabase {
 	
 	@Override
 	public void storeChanges(final Change[] changeList) {
-		databaseRun(new StoreChanges(changeList));
+		if (changeGroupCommitter != null) {
+			changeGroupCommitter.storeChanges(changeList);
+		} else {
+			databaseRun(new StoreChanges(changeList));
+		}
 	}
 	
 	@Override
@@ -241,7 +331,19 @@ public class JDBCDatabase implements IDatabase {
 
 	@Override
 	public List<Change> loadChangesForAllUsersOnProblem(int problemId) {
-		return databaseRun(new LoadChangesForAllUsersOnProblem(problemId));
+		final List<Change> result = new ArrayList<Change>();
+		loadChangesForAllUsersOnProblem(problemId, new ChangeCallback() {
+			@Override
+			public void onChangeFound(Change change) {
+				result.add(change);
+			}
+		});
+		return result;
+	}
+	
+	@Override
+	public void loadChangesForAllUsersOnProblem(int problemId, ChangeCallback callback) {
+		databaseRun(new LoadChangesForAllUsersOnProblem(problemId, callback));
 	}
 	
 	@Override
@@ -504,7 +606,42 @@ public class JDBCDatabase implements IDatabase {
 	
 	@Override
 	public List<WorkSession> findWorkSessions(SnapshotSelectionCriteria criteria, int separationSeconds) {
-		return databaseRun(new FindWorkSessions(criteria, separationSeconds));
+		final List<WorkSession> result = new ArrayList<WorkSession>();
+		findWorkSessions(criteria, separationSeconds, new WorkSessionCallback() {
+			@Override
+			public void onWorkSessionFound(WorkSession workSession) {
+				result.add(workSession);
+			}
+		});
+		return result;
+	}
+	
+	@Override
+	public void findWorkSessions(SnapshotSelectionCriteria criteria, int separationSeconds, WorkSessionCallback callback) {
+		databaseRun(new FindWorkSessions(criteria, separationSeconds, callback));
+	}
+	
+	@Override
+	public int updateWorkSessions(int separationSeconds) {
+		// Process events in batches, so each transaction is of a bounded size
+		int total = 0;
+		for (;;) {
+			int count = databaseRun(new UpdateWorkSessions(separationSeconds, UPDATE_WORK_SESSIONS_BATCH_SIZE));
+			if (count == 0) {
+				return total;
+			}
+			total += count;
+		}
+	}
+	
+	@Override
+	public void getWorkSessions(SnapshotSelectionCriteria criteria, int separationSeconds, WorkSessionCallback callback) {
+		databaseRun(new GetWorkSessions(criteria, separationSeconds, callback));
+	}
+	
+	@Override
+	public void getEventsInWorkSessions(SnapshotSelectionCriteria criteria, int separationSeconds, WorkSessionEventCallback callback) {
+		databaseRun(new GetEventsInWorkSessions(criteria, separationSeconds, callback));
 	}
 	
 	@Override
@@ -512,6 +649,11 @@ public class JDBCDatabase implements IDatabase {
 		databaseRun(new RetrieveSnapshots(criteria, callback));
 	}
 	
+	@Override
+	public int retrieveSnapshots(SnapshotSelectionCriteria criteria, int afterSubmitEventId, int maxSnapshots, SnapshotCallback callback) {
+		return databaseRun(new RetrieveSnapshots(criteria, afterSubmitEventId, maxSnapshots, callback));
+	}
+	
 	@Override
 	public List<Pair<Event, Change>> getEventsWithChanges(int userId, int problemId, int startEventId, int endEventId) {
 		return databaseRun(new GetEventsWithChanges(userId, problemId, startEventId, endEventId));
@@ -628,21 +770,19 @@ public class JDBCDatabase implements IDatabase {
 					throw new PersistenceException("SQLException", e);
 				}
 			} finally {
-				// If the transaction didn't succeed, roll back
-				if (!successfulCommit) {
-					try {
-						conn.rollback();
-					} catch (SQLException ex) {
-						throw new PersistenceException("SQLException (on rollback)", ex);
-					}
-				}
+				// Close statements and result sets now: connections are
+				// reused, so they won't be closed along with the connection
+				databaseRunnable.cleanup();
 				
-				// Restore the original autocommit value and release the connection.
 				try {
-					conn.setAutoCommit(origAutocommit);
-					connectionPool.releaseConnection();
-				} catch (SQLException e) {
-					throw new PersistenceException("SQLException (releasing connection)", e);
+					resetConnection(conn, successfulCommit, origAutocommit);
+				} finally {
+					// Always release the connection, even if it couldn't be reset
+					try {
+						connectionPool.releaseConnection();
+					} catch (SQLException e) {
+						throw new PersistenceException("SQLException (releasing connection)", e);
+					}
 				}
 			}
 		}
@@ -655,5 +795,29 @@ public class JDBCDatabase implements IDatabase {
 		// Success!
 		return result;
 	}
+
+	/**
+	 * Roll back the transaction (if it didn't succeed) and restore
+	 * the connection's original autocommit value.  If either fails,
+	 * the connection is in an unknown state, so it is closed:
+	 * connection pools discard closed connections rather than
+	 * reusing them.
+	 */
+	private void resetConnection(Connection conn, boolean successfulCommit, boolean origAutocommit) {
+		boolean reset = false;
+		try {
+			if (!successfulCommit) {
+				conn.rollback();
+			}
+			conn.setAutoCommit(origAutocommit);
+			reset = true;
+		} catch (SQLException e) {
+			throw new PersistenceException("SQLException (resetting connection)", e);
+		} finally {
+			if (!reset) {
+				DBUtil.closeQuietly(conn);
+			}
+		}
+	}
 	
 }
@@ -55,6 +55,18 @@ public class JDBCDatabaseConfig {
 		 * @return the database port string (e.g., ":8889" if using MAMP, empty string if MySQL is listening on its default port)
 		 */
 		public String getPortStr();
+		
+		/**
+		 * Get an additional database configuration property, such as
+		 * the connection pool settings.  The property name is relative
+		 * to the database property prefix: e.g., "pool.maxSize" refers to
+		 * the "cloudcoder.db.pool.maxSize" property for the webapp.
+		 * 
+		 * @param name         the property name (relative to the database property prefix)
+		 * @param defaultValue the value to return if the property is not set
+		 * @return the property value, or the default value if the property is not set
+		 */
+		public String getProperty(String name, String defaultValue);
 	}
 	
 	private static JDBCDatabaseConfig instance;
@@ -122,6 +134,11 @@ public class JDBCDatabaseConfig {
 			public String getDatabaseName() {
 				return config.getProperty("cloudcoder.db.databaseName", "cloudcoderdb");
 			}
+			
+			@Override
+			public String getProperty(String name, String defaultValue) {
+				return config.getProperty("cloudcoder.db." + name, defaultValue);
+			}
 		});
 	}
 	
@@ -21,6 +21,7 @@ package org.cloudcoder.app.server.persist;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.cloudcoder.app.server.persist.JDBCDatabaseConfig.ConfigProperties;
 import org.slf4j.Logger;
@@ -47,6 +48,8 @@ public class MysqlConnectionPool extends AbstractConnectionPool {
 	}
 	
 	private String jdbcUrl;
+	private AtomicInteger numActive;
+	private AtomicInteger totalCreated;
 	
 	/**
 	 * Constructor.
@@ -54,24 +57,47 @@ public class MysqlConnectionPool extends AbstractConnectionPool {
 	 * @param config the database configuration properties
 	 */
 	public MysqlConnectionPool(ConfigProperties config) {
-		this.jdbcUrl =
-				"jdbc:mysql://" +
+		this.jdbcUrl = createJdbcUrl(config);
+		this.numActive = new AtomicInteger();
+		this.totalCreated = new AtomicInteger();
+		logger.debug("Database URL: "+jdbcUrl);
+	}
+
+	/**
+	 * Create a MySQL JDBC URL (including the username and password)
+	 * from given database configuration properties.
+	 * Batched inserts are sent as multi-row inserts, and statements
+	 * are prepared on the server, so that a statement reused from a
+	 * {@link org.cloudcoder.app.server.persist.util.StatementCache}
+	 * is not parsed again by the server.  (The driver's own statement
+	 * cache is left disabled: statements are cached by the pool.)
+	 * 
+	 * @param config the database configuration properties
+	 * @return the JDBC URL
+	 */
+	static String createJdbcUrl(ConfigProperties config) {
+		return "jdbc:mysql://" +
 				config.getHost() + config.getPortStr() +
 				"/" +
 				config.getDatabaseName() +
-				"?user=" +
+				"?rewriteBatchedStatements=true" +
+				"&useServerPrepStmts=true" +
+				"&user=" +
 				config.getUser() +
 				"&password=" + config.getPasswd();
-		logger.debug("Database URL: "+jdbcUrl);
 	}
 	
 	@Override
 	protected Connection createConnection() throws SQLException {
-		return DriverManager.getConnection(jdbcUrl);
+		Connection conn = DriverManager.getConnection(jdbcUrl);
+		totalCreated.incrementAndGet();
+		numActive.incrementAndGet();
+		return conn;
 	}
 	
 	@Override
 	protected void closeConnection(Connection conn) throws SQLException {
+		numActive.decrementAndGet();
 		conn.close();
 	}
 	
@@ -79,4 +105,12 @@ public class MysqlConnectionPool extends AbstractConnectionPool {
 	public void destroy() {
 		// We don't actually do anything here
 	}
+	
+	@Override
+	public ConnectionPoolStats getStats() {
+		ConnectionPoolStats stats = new ConnectionPoolStats();
+		stats.setNumActive(numActive.get());
+		stats.setTotalCreated(totalCreated.get());
+		return stats;
+	}
 }
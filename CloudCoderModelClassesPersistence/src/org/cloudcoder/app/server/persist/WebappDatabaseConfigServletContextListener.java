@@ -17,6 +17,8 @@
 
 package org.cloudcoder.app.server.persist;
 
+import javax.servlet.ServletContextEvent;
+
 /**
  * Servlet context listener to configure {@link JDBCDatabase} for
  * the main webapp.  
@@ -27,4 +29,11 @@ public class WebappDatabaseConfigServletContextListener extends JDBCDatabaseConf
 	public WebappDatabaseConfigServletContextListener() {
 		super("cloudcoder.db");
 	}
+	
+	@Override
+	public void contextDestroyed(ServletContextEvent e) {
+		// Make sure queued changes are stored before the webapp stops
+		Database.shutdown();
+		super.contextDestroyed(e);
+	}
 }
@@ -0,0 +1,110 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist.txn;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.cloudcoder.app.server.persist.WorkSessionEventCallback;
+import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnableNoAuthException;
+import org.cloudcoder.app.server.persist.util.DBUtil;
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.Event;
+import org.cloudcoder.app.shared.model.SnapshotSelectionCriteria;
+import org.cloudcoder.app.shared.model.WorkSession;
+
+/**
+ * Get all of the {@link Event}s (and {@link Change}s, for change events)
+ * in the materialized {@link WorkSession}s for a given separation matching
+ * given {@link SnapshotSelectionCriteria}, using a single query.
+ * Events are ordered by user id, work session start event id, and event id.
+ * The events are streamed, so the {@link WorkSessionEventCallback}
+ * must not access the database.
+ * 
+ * @author David Hovemeyer
+ */
+public class GetEventsInWorkSessions extends AbstractDatabaseRunnableNoAuthException<Boolean> {
+	private SnapshotSelectionCriteria criteria;
+	private int separationSeconds;
+	private WorkSessionEventCallback callback;
+
+	public GetEventsInWorkSessions(SnapshotSelectionCriteria criteria, int separationSeconds, WorkSessionEventCallback callback) {
+		this.criteria = criteria;
+		this.separationSeconds = separationSeconds;
+		this.callback = callback;
+	}
+
+	@Override
+	public Boolean run(Connection conn) throws SQLException {
+		PreparedStatement stmt = prepareStreamingStatement(
+				conn,
+				"select ws.*, e.*, c.* " +
+				"  from " + WorkSession.SCHEMA.getDbTableName() + " as ws " +
+				"  join cc_events as e " +
+				"    on e.user_id = ws.user_id " +
+				"   and e.problem_id = ws.problem_id " +
+				"   and e.id >= ws.start_event_id " +
+				"   and e.id <= ws.end_event_id " +
+				"  left outer join cc_changes as c " +
+				"    on e.id = c.event_id " +
+				" where ws.separation_seconds = ? " +
+				"   and (? < 0 or ws.course_id = ?) " +
+				"   and (? < 0 or ws.user_id = ?) " +
+				"   and (? < 0 or ws.problem_id = ?) " +
+				" order by ws.user_id, ws.start_event_id, e.id"
+		);
+		stmt.setInt(1, separationSeconds);
+		stmt.setInt(2, criteria.getCourseId());
+		stmt.setInt(3, criteria.getCourseId());
+		stmt.setInt(4, criteria.getUserId());
+		stmt.setInt(5, criteria.getUserId());
+		stmt.setInt(6, criteria.getProblemId());
+		stmt.setInt(7, criteria.getProblemId());
+		
+		WorkSession session = null;
+		ResultSet resultSet = executeQuery(stmt);
+		while (resultSet.next()) {
+			// Consecutive rows for the same work session share a WorkSession object
+			WorkSession rowSession = new WorkSession();
+			int index = DBUtil.loadModelObjectFields(rowSession, WorkSession.SCHEMA, resultSet);
+			if (session == null || session.getId() != rowSession.getId()) {
+				session = rowSession;
+			}
+			
+			Event e = new Event();
+			index = Queries.loadGeneric(e, resultSet, index, Event.SCHEMA);
+			Change c = null;
+			if (resultSet.getObject(index) != null) {
+				c = new Change();
+				Queries.load(c, resultSet, index);
+				c.setEvent(e);
+			}
+			
+			callback.onEvent(session, e, c);
+		}
+		
+		return true;
+	}
+
+	@Override
+	public String getDescription() {
+		return " getting events in work sessions";
+	}
+}
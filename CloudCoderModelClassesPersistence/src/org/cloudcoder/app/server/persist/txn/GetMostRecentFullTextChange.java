@@ -18,14 +18,10 @@
 package org.cloudcoder.app.server.persist.txn;
 
 import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 
 import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnableNoAuthException;
 import org.cloudcoder.app.shared.model.Change;
-import org.cloudcoder.app.shared.model.ChangeType;
-import org.cloudcoder.app.shared.model.Event;
 import org.cloudcoder.app.shared.model.User;
 
 /**
@@ -49,27 +45,7 @@ public class GetMostRecentFullTextChange extends AbstractDatabaseRunnableNoAuthE
 
 	@Override
 	public Change run(Connection conn) throws SQLException {
-		PreparedStatement stmt = prepareStatement(
-				conn,
-				"select c.* from " + Change.SCHEMA.getDbTableName() + " as c, " + Event.SCHEMA.getDbTableName() + " as e " +
-				" where c.event_id = e.id " +
-				"   and e.id = (select max(ee.id) from " + Change.SCHEMA.getDbTableName() + " as cc, " + Event.SCHEMA.getDbTableName() + " as ee " +
-				"                where cc.event_id = ee.id " +
-				"                  and ee.problem_id = ? " +
-				"                  and ee.user_id = ? " +
-				"                  and cc.type = ?)"
-		);
-		stmt.setInt(1, problemId);
-		stmt.setInt(2, user.getId());
-		stmt.setInt(3, ChangeType.FULL_TEXT.ordinal());
-
-		ResultSet resultSet = executeQuery(stmt);
-		if (!resultSet.next()) {
-			return null;
-		}
-		Change change = new Change();
-		Queries.load(change, resultSet, 1);
-		return change;
+		return Queries.doGetMostRecentFullTextChange(conn, user.getId(), problemId, this);
 	}
 
 	@Override
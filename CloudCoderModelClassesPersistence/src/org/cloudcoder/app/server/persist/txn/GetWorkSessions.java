@@ -0,0 +1,83 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist.txn;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.cloudcoder.app.server.persist.WorkSessionCallback;
+import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnableNoAuthException;
+import org.cloudcoder.app.server.persist.util.DBUtil;
+import org.cloudcoder.app.shared.model.SnapshotSelectionCriteria;
+import org.cloudcoder.app.shared.model.WorkSession;
+
+/**
+ * Get the materialized {@link WorkSession}s for a given separation
+ * matching given {@link SnapshotSelectionCriteria}, ordered by user id
+ * and then by start event id.  The work sessions are streamed,
+ * so the {@link WorkSessionCallback} must not access the database.
+ * 
+ * @author David Hovemeyer
+ */
+public class GetWorkSessions extends AbstractDatabaseRunnableNoAuthException<Boolean> {
+	private SnapshotSelectionCriteria criteria;
+	private int separationSeconds;
+	private WorkSessionCallback callback;
+
+	public GetWorkSessions(SnapshotSelectionCriteria criteria, int separationSeconds, WorkSessionCallback callback) {
+		this.criteria = criteria;
+		this.separationSeconds = separationSeconds;
+		this.callback = callback;
+	}
+
+	@Override
+	public Boolean run(Connection conn) throws SQLException {
+		PreparedStatement stmt = prepareStreamingStatement(
+				conn,
+				"select ws.* from " + WorkSession.SCHEMA.getDbTableName() + " as ws " +
+				" where ws.separation_seconds = ? " +
+				"   and (? < 0 or ws.course_id = ?) " +
+				"   and (? < 0 or ws.user_id = ?) " +
+				"   and (? < 0 or ws.problem_id = ?) " +
+				" order by ws.user_id, ws.start_event_id"
+		);
+		stmt.setInt(1, separationSeconds);
+		stmt.setInt(2, criteria.getCourseId());
+		stmt.setInt(3, criteria.getCourseId());
+		stmt.setInt(4, criteria.getUserId());
+		stmt.setInt(5, criteria.getUserId());
+		stmt.setInt(6, criteria.getProblemId());
+		stmt.setInt(7, criteria.getProblemId());
+		
+		ResultSet resultSet = executeQuery(stmt);
+		while (resultSet.next()) {
+			WorkSession session = new WorkSession();
+			DBUtil.loadModelObjectFields(session, WorkSession.SCHEMA, resultSet);
+			callback.onWorkSessionFound(session);
+		}
+		
+		return true;
+	}
+
+	@Override
+	public String getDescription() {
+		return " getting work sessions";
+	}
+}
@@ -22,9 +22,8 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.List;
 
+import org.cloudcoder.app.server.persist.ChangeCallback;
 import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnableNoAuthException;
 import org.cloudcoder.app.server.persist.util.DBUtil;
 import org.cloudcoder.app.shared.model.Change;
@@ -32,20 +31,24 @@ import org.cloudcoder.app.shared.model.Event;
 
 /**
  * Query to get all {@link Change}s (edits) for all users on a
- * specified problem.
+ * specified problem.  The changes are streamed, so the
+ * {@link ChangeCallback} must not access the database.
  * 
  * @author David Hovemeyer
  */
-public class LoadChangesForAllUsersOnProblem extends AbstractDatabaseRunnableNoAuthException<List<Change>> {
+public class LoadChangesForAllUsersOnProblem extends AbstractDatabaseRunnableNoAuthException<Boolean> {
 	private int problemId;
+	private ChangeCallback callback;
 
 	/**
 	 * Constructor.
 	 * 
 	 * @param problemId the problem id
+	 * @param callback  the {@link ChangeCallback} which will receive the changes
 	 */
-	public LoadChangesForAllUsersOnProblem(int problemId) {
+	public LoadChangesForAllUsersOnProblem(int problemId, ChangeCallback callback) {
 		this.problemId = problemId;
+		this.callback = callback;
 	}
 
 	@Override
@@ -54,8 +57,8 @@ public class LoadChangesForAllUsersOnProblem extends AbstractDatabaseRunnableNoA
 	}
 
 	@Override
-	public List<Change> run(Connection conn) throws SQLException {
-		PreparedStatement stmt = prepareStatement(
+	public Boolean run(Connection conn) throws SQLException {
+		PreparedStatement stmt = prepareStreamingStatement(
 				conn,
 				"select e.*, c.* " +
 				"  from cc_events as e, cc_changes as c " +
@@ -65,8 +68,6 @@ public class LoadChangesForAllUsersOnProblem extends AbstractDatabaseRunnableNoA
 		);
 		stmt.setInt(1, problemId);
 		
-		List<Change> result = new ArrayList<Change>();
-		
 		ResultSet resultSet = executeQuery(stmt);
 		while (resultSet.next()) {
 			Event event = new Event();
@@ -74,9 +75,9 @@ public class LoadChangesForAllUsersOnProblem extends AbstractDatabaseRunnableNoA
 			Change change = new Change();
 			change.setEvent(event);
 			Queries.load(change, resultSet, index);
-			result.add(change);
+			callback.onChangeFound(change);
 		}
 		
-		return result;
+		return true;
 	}
 }
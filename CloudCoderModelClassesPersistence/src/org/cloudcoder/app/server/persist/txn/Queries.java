@@ -31,6 +31,8 @@ import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnable;
 import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnableNoAuthException;
 import org.cloudcoder.app.server.persist.util.DBUtil;
 import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeCheckpoint;
+import org.cloudcoder.app.shared.model.ChangeType;
 import org.cloudcoder.app.shared.model.ConfigurationSetting;
 import org.cloudcoder.app.shared.model.Course;
 import org.cloudcoder.app.shared.model.CourseRegistration;
@@ -179,6 +181,73 @@ public class Queries {
 		change.setText(text);
 	}
 
+	/**
+	 * Get the most recent full text {@link Change} for given user and problem.
+	 * 
+	 * @param conn       the database connection
+	 * @param userId     the user id
+	 * @param problemId  the problem id
+	 * @param dbRunnable the {@link AbstractDatabaseRunnable}
+	 * @return the most recent full text {@link Change}, or null if there is none
+	 * @throws SQLException
+	 */
+	public static Change doGetMostRecentFullTextChange(Connection conn, int userId, int problemId,
+			AbstractDatabaseRunnable<?> dbRunnable) throws SQLException {
+		PreparedStatement stmt = dbRunnable.prepareStatement(
+				conn,
+				"select c.* from " + Change.SCHEMA.getDbTableName() + " as c, " + Event.SCHEMA.getDbTableName() + " as e " +
+				" where c.event_id = e.id " +
+				"   and e.id = (select max(ee.id) from " + Change.SCHEMA.getDbTableName() + " as cc, " + Event.SCHEMA.getDbTableName() + " as ee " +
+				"                where cc.event_id = ee.id " +
+				"                  and ee.problem_id = ? " +
+				"                  and ee.user_id = ? " +
+				"                  and cc.type = ?)"
+		);
+		stmt.setInt(1, problemId);
+		stmt.setInt(2, userId);
+		stmt.setInt(3, ChangeType.FULL_TEXT.ordinal());
+
+		ResultSet resultSet = dbRunnable.executeQuery(stmt);
+		if (!resultSet.next()) {
+			return null;
+		}
+		Change change = new Change();
+		load(change, resultSet, 1);
+		return change;
+	}
+
+	/**
+	 * Get the {@link ChangeCheckpoint} for given user and problem.
+	 * 
+	 * @param conn       the database connection
+	 * @param userId     the user id
+	 * @param problemId  the problem id
+	 * @param forUpdate  true if the checkpoint should be locked until the end
+	 *                   of the transaction (because it will be updated)
+	 * @param dbRunnable the {@link AbstractDatabaseRunnable}
+	 * @return the {@link ChangeCheckpoint}, or null if there is none
+	 * @throws SQLException
+	 */
+	public static ChangeCheckpoint doGetChangeCheckpoint(Connection conn, int userId, int problemId, boolean forUpdate,
+			AbstractDatabaseRunnable<?> dbRunnable) throws SQLException {
+		PreparedStatement stmt = dbRunnable.prepareStatement(
+				conn,
+				"select * from " + ChangeCheckpoint.SCHEMA.getDbTableName() +
+				" where user_id = ? and problem_id = ?" +
+				(forUpdate ? " for update" : "")
+		);
+		stmt.setInt(1, userId);
+		stmt.setInt(2, problemId);
+
+		ResultSet resultSet = dbRunnable.executeQuery(stmt);
+		if (!resultSet.next()) {
+			return null;
+		}
+		ChangeCheckpoint checkpoint = new ChangeCheckpoint();
+		loadGeneric(checkpoint, resultSet, 1, ChangeCheckpoint.SCHEMA);
+		return checkpoint;
+	}
+
 	public static Change getChangeAndEvent(ResultSet resultSet) throws SQLException {
 		Change change = new Change();
 		load(change, resultSet, 1);
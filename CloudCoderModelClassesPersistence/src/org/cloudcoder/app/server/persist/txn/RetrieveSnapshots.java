@@ -35,23 +35,51 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Transaction to retrieve snapshots/submissions matching given
- * {@link SnapshotSelectionCriteria}.
+ * {@link SnapshotSelectionCriteria}.  The results are streamed,
+ * so the {@link SnapshotCallback} must not access the database.
+ * The result of the transaction is the submit event id of the last
+ * row retrieved (whether or not it had a valid snapshot), or -1 if
+ * no rows were retrieved.
  * 
  * @author David Hovemeyer
  */
-public class RetrieveSnapshots extends AbstractDatabaseRunnableNoAuthException<Boolean> {
+public class RetrieveSnapshots extends AbstractDatabaseRunnableNoAuthException<Integer> {
 	private static final Logger logger = LoggerFactory.getLogger(RetrieveSnapshots.class);
 
 	private SnapshotSelectionCriteria criteria;
+	private int afterSubmitEventId;
+	private int maxSnapshots;
 	private SnapshotCallback callback;
 
+	/**
+	 * Constructor to retrieve all matching snapshots.
+	 * 
+	 * @param criteria the {@link SnapshotSelectionCriteria}
+	 * @param callback the {@link SnapshotCallback}
+	 */
 	public RetrieveSnapshots(SnapshotSelectionCriteria criteria, SnapshotCallback callback) {
+		this(criteria, -1, 0, callback);
+	}
+
+	/**
+	 * Constructor to retrieve a page of matching snapshots, in order
+	 * of submit event id.
+	 * 
+	 * @param criteria           the {@link SnapshotSelectionCriteria}
+	 * @param afterSubmitEventId only snapshots with a submit event id greater than
+	 *                           this are retrieved (-1 for no restriction)
+	 * @param maxSnapshots       maximum number of snapshots to retrieve (0 for no limit)
+	 * @param callback           the {@link SnapshotCallback}
+	 */
+	public RetrieveSnapshots(SnapshotSelectionCriteria criteria, int afterSubmitEventId, int maxSnapshots, SnapshotCallback callback) {
 		this.criteria = criteria;
+		this.afterSubmitEventId = afterSubmitEventId;
+		this.maxSnapshots = maxSnapshots;
 		this.callback = callback;
 	}
 
 	@Override
-	public Boolean run(Connection conn) throws SQLException {
+	public Integer run(Connection conn) throws SQLException {
 		// FIXME: only supports retrieving explicit submissions, not intermediate snapshots
 		StringBuilder sql = new StringBuilder();
 		sql.append(
@@ -70,11 +98,20 @@ public class RetrieveSnapshots extends AbstractDatabaseRunnableNoAuthException<B
 		if (criteria.getUserId() != SnapshotSelectionCriteria.ANY) {
 			sql.append(" and e.user_id = ?");
 		}
+		if (afterSubmitEventId >= 0) {
+			sql.append(" and sr.event_id > ?");
+		}
+		if (afterSubmitEventId >= 0 || maxSnapshots > 0) {
+			sql.append(" order by sr.event_id");
+		}
+		if (maxSnapshots > 0) {
+			sql.append(" limit ?");
+		}
 		
 		String query = sql.toString();
 		logger.info("Retrieving snapshots: {}", query);
 		
-		PreparedStatement stmt = prepareStatement(conn, query);
+		PreparedStatement stmt = prepareStreamingStatement(conn, query);
 		int place = 1;
 		if (criteria.getCourseId() != SnapshotSelectionCriteria.ANY) {
 			stmt.setInt(place++, criteria.getCourseId());
@@ -85,8 +122,15 @@ public class RetrieveSnapshots extends AbstractDatabaseRunnableNoAuthException<B
 		if (criteria.getUserId() != SnapshotSelectionCriteria.ANY) {
 			stmt.setInt(place++, criteria.getUserId());
 		}
+		if (afterSubmitEventId >= 0) {
+			stmt.setInt(place++, afterSubmitEventId);
+		}
+		if (maxSnapshots > 0) {
+			stmt.setInt(place++, maxSnapshots);
+		}
 		
 		ResultSet resultSet = executeQuery(stmt);
+		int lastSubmitEventId = -1;
 		while (resultSet.next()) {
 			Event e = new Event(); // the Event of the full-text Change event
 			Change change = new Change(); // the full-text Change
@@ -102,6 +146,7 @@ public class RetrieveSnapshots extends AbstractDatabaseRunnableNoAuthException<B
 			// Retrieve the submit event id and the course id.
 			int submitEventId = resultSet.getInt(index++);
 			int courseId = resultSet.getInt(index++);
+			lastSubmitEventId = submitEventId;
 			
 			// Retrieve the full SubmissionReceipt
 			SubmissionReceipt receipt = new SubmissionReceipt();
@@ -115,7 +160,7 @@ public class RetrieveSnapshots extends AbstractDatabaseRunnableNoAuthException<B
 			}
 		}
 		
-		return true;
+		return lastSubmitEventId;
 	}
 
 	@Override
@@ -1,6 +1,6 @@
 // CloudCoder - a web-based pedagogical programming environment
-// Copyright (C) 2011-2013, Jaime Spacco <jspacco@knox.edu>
-// Copyright (C) 2011-2013, David H. Hovemeyer <david.hovemeyer@gmail.com>
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
 //
 // This program is free software: you can redistribute it and/or modify
 // it under the terms of the GNU Affero General Public License as published by
@@ -19,16 +19,46 @@ package org.cloudcoder.app.server.persist.txn;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnableNoAuthException;
+import org.cloudcoder.app.server.persist.util.DBUtil;
+import org.cloudcoder.app.shared.model.ApplyChangeToTextDocument;
 import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeCheckpoint;
+import org.cloudcoder.app.shared.model.ChangeType;
+import org.cloudcoder.app.shared.model.Event;
+import org.cloudcoder.app.shared.model.TextDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Store a sequence of {@link Change}s representing a user's edits
- * on a problem.
+ * on a problem.  Also updates the user's {@link ChangeCheckpoint}
+ * for the problem, writing a new full-text checkpoint once
+ * {@link #CHECKPOINT_NUM_DELTAS} deltas or {@link #CHECKPOINT_DELTA_BYTES}
+ * bytes of delta text have been stored since the last checkpoint
+ * (or full-text change), so that the current text can be
+ * reconstructed by applying a bounded number of deltas.
  */
 public class StoreChanges extends AbstractDatabaseRunnableNoAuthException<Boolean> {
+	private static final Logger logger = LoggerFactory.getLogger(StoreChanges.class);
+	
+	/**
+	 * Number of deltas after which a new checkpoint is written.
+	 */
+	public static final int CHECKPOINT_NUM_DELTAS = 100;
+	
+	/**
+	 * Total length of delta text after which a new checkpoint is written.
+	 */
+	public static final int CHECKPOINT_DELTA_BYTES = 4096;
+	
 	private final Change[] changeList;
 
 	/**
@@ -42,6 +72,30 @@ public class StoreChanges extends AbstractDatabaseRunnableNoAuthException<Boolea
 
 	@Override
 	public Boolean run(Connection conn) throws SQLException {
+		// Group the changes by user and problem.  Normally, all of the
+		// changes are for the same user and problem.  The groups are sorted,
+		// so that transactions lock the checkpoints in a consistent order.
+		Map<String, List<Change>> changesByUserAndProblem = new TreeMap<String, List<Change>>();
+		for (Change change : changeList) {
+			String key = change.getEvent().getUserId() + ":" + change.getEvent().getProblemId();
+			List<Change> changes = changesByUserAndProblem.get(key);
+			if (changes == null) {
+				changes = new ArrayList<Change>();
+				changesByUserAndProblem.put(key, changes);
+			}
+			changes.add(change);
+		}
+		
+		// Lock the checkpoints before storing the changes.  This serializes
+		// transactions storing changes for the same user and problem, so
+		// their events are assigned ids in the order the transactions commit,
+		// and a new checkpoint can't miss deltas that haven't been committed yet.
+		List<ChangeCheckpoint> checkpointList = new ArrayList<ChangeCheckpoint>();
+		for (List<Change> changes : changesByUserAndProblem.values()) {
+			Event event = changes.get(0).getEvent();
+			checkpointList.add(lockCheckpoint(conn, event.getUserId(), event.getProblemId()));
+		}
+		
 		// Store Events
 		Queries.storeEvents(changeList, conn, this);
 		
@@ -56,11 +110,132 @@ public class StoreChanges extends AbstractDatabaseRunnableNoAuthException<Boolea
 		}
 		insertChange.executeBatch();
 		
+		// Update checkpoints
+		int i = 0;
+		for (List<Change> changes : changesByUserAndProblem.values()) {
+			updateCheckpoint(conn, checkpointList.get(i++), changes);
+		}
+		
 		return true;
 	}
 
+	private void updateCheckpoint(Connection conn, ChangeCheckpoint checkpoint, List<Change> changes) throws SQLException {
+		Event lastEvent = changes.get(changes.size() - 1).getEvent();
+		
+		// Keep track of the amount of change since the last checkpoint
+		// or full-text change
+		for (Change change : changes) {
+			if (change.getType() == ChangeType.FULL_TEXT) {
+				checkpoint.setNumDeltas(0);
+				checkpoint.setDeltaBytes(0);
+			} else {
+				checkpoint.setNumDeltas(checkpoint.getNumDeltas() + 1);
+				checkpoint.setDeltaBytes(checkpoint.getDeltaBytes() + (change.getText() != null ? change.getText().length() : 0));
+			}
+		}
+		
+		if (checkpoint.getNumDeltas() >= CHECKPOINT_NUM_DELTAS || checkpoint.getDeltaBytes() >= CHECKPOINT_DELTA_BYTES) {
+			String text = reconstructText(conn, checkpoint, lastEvent.getId());
+			if (text != null && text.length() <= ChangeCheckpoint.TEXT.getSize()) {
+				checkpoint.setEventId(lastEvent.getId());
+				checkpoint.setText(text);
+			}
+			// Even if a checkpoint couldn't be written, reset the counts
+			// so that we don't try again for every batch of changes
+			checkpoint.setNumDeltas(0);
+			checkpoint.setDeltaBytes(0);
+		}
+		
+		PreparedStatement update = prepareStatement(conn, DBUtil.createUpdateStatement(ChangeCheckpoint.SCHEMA));
+		int index = DBUtil.bindModelObjectValuesForUpdate(checkpoint, ChangeCheckpoint.SCHEMA, update);
+		update.setInt(index, checkpoint.getId());
+		update.executeUpdate();
+	}
+
+	/**
+	 * Get the checkpoint for given user and problem, creating an empty
+	 * one if there is none, and lock it until the end of the transaction.
+	 * This serializes concurrent transactions storing changes for the same
+	 * user and problem, so that neither overwrites the other's counts.
+	 */
+	private ChangeCheckpoint lockCheckpoint(Connection conn, int userId, int problemId) throws SQLException {
+		ChangeCheckpoint checkpoint = Queries.doGetChangeCheckpoint(conn, userId, problemId, true, this);
+		if (checkpoint != null) {
+			return checkpoint;
+		}
+		
+		// If another transaction is creating the checkpoint too, the unique
+		// index on (user_id, problem_id) makes this insert wait for it to
+		// finish, and then the insert is ignored
+		PreparedStatement insert = prepareStatement(
+				conn,
+				"insert ignore into " + ChangeCheckpoint.SCHEMA.getDbTableName() +
+				" (user_id, problem_id, event_id, num_deltas, delta_bytes, text) values (?, ?, 0, 0, 0, NULL)"
+		);
+		insert.setInt(1, userId);
+		insert.setInt(2, problemId);
+		insert.executeUpdate();
+		
+		checkpoint = Queries.doGetChangeCheckpoint(conn, userId, problemId, true, this);
+		if (checkpoint == null) {
+			throw new SQLException("Could not create checkpoint for user " + userId + ", problem " + problemId);
+		}
+		return checkpoint;
+	}
+
+	/**
+	 * Reconstruct the text as of given event by applying the deltas
+	 * since the current checkpoint or the most recent full-text
+	 * change, whichever is newer.
+	 * 
+	 * @return the text, or null if the deltas could not be applied
+	 */
+	private String reconstructText(Connection conn, ChangeCheckpoint checkpoint, int eventId) throws SQLException {
+		TextDocument textDocument = new TextDocument();
+		int baseRev = -1;
+		if (checkpoint.getText() != null) {
+			textDocument.setText(checkpoint.getText());
+			baseRev = checkpoint.getEventId();
+		}
+		Change fullText = Queries.doGetMostRecentFullTextChange(conn, checkpoint.getUserId(), checkpoint.getProblemId(), this);
+		if (fullText != null && fullText.getEventId() > baseRev) {
+			textDocument.setText(fullText.getText());
+			baseRev = fullText.getEventId();
+		}
+		
+		PreparedStatement stmt = prepareStatement(
+				conn,
+				"select c.* from " + Change.SCHEMA.getDbTableName() + " as c, " + Event.SCHEMA.getDbTableName() + " as e " +
+				" where c.event_id = e.id " +
+				"   and e.id > ? " +
+				"   and e.id <= ? " +
+				"   and e.user_id = ? " +
+				"   and e.problem_id = ? " +
+				" order by e.id asc"
+		);
+		stmt.setInt(1, baseRev);
+		stmt.setInt(2, eventId);
+		stmt.setInt(3, checkpoint.getUserId());
+		stmt.setInt(4, checkpoint.getProblemId());
+		
+		ApplyChangeToTextDocument applicator = new ApplyChangeToTextDocument();
+		ResultSet resultSet = executeQuery(stmt);
+		try {
+			while (resultSet.next()) {
+				Change delta = new Change();
+				Queries.load(delta, resultSet, 1);
+				applicator.apply(delta, textDocument);
+			}
+		} catch (RuntimeException e) {
+			logger.warn("Could not apply deltas to write checkpoint for user " + checkpoint.getUserId() +
+					", problem " + checkpoint.getProblemId(), e);
+			return null;
+		}
+		return textDocument.getText();
+	}
+
 	@Override
 	public String getDescription() {
 		return "storing text changes";
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,225 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist.txn;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnableNoAuthException;
+import org.cloudcoder.app.server.persist.util.DBUtil;
+import org.cloudcoder.app.shared.model.Event;
+import org.cloudcoder.app.shared.model.WorkSession;
+
+/**
+ * Incrementally update the materialized {@link WorkSession}s for a given
+ * separation, processing the next batch of events added since the last update.
+ * Events are processed in order of event id, and each event either extends
+ * the user's most recent work session (if it is on the same problem and within
+ * the separation of the start of the session) or starts a new one.
+ * So, the last event processed for each user is always the end event of
+ * the user's most recent work session, and the high-water mark (the last
+ * event id processed) is the maximum end event id of the work sessions with
+ * the separation.
+ * 
+ * <p>Event ids are assigned when events are inserted, but transactions
+ * storing events can commit out of order, so an event with an id below the
+ * high-water mark can become visible after the high-water mark has passed it.
+ * So, each update re-scans the {@link #RESCAN_EVENTS} event ids before the
+ * high-water mark, and an event is skipped only if it is not after the end
+ * event of its user's most recent work session.  (A user's own events are
+ * assumed to be committed in order.)
+ * 
+ * <p>Updates for the same separation must not run concurrently.
+ * 
+ * @author David Hovemeyer
+ */
+public class UpdateWorkSessions extends AbstractDatabaseRunnableNoAuthException<Integer> {
+	/**
+	 * Number of event ids before the high-water mark that are re-scanned for
+	 * events whose transactions committed after later events' transactions.
+	 */
+	static final int RESCAN_EVENTS = 1000;
+	
+	private int separationSeconds;
+	private int maxEvents;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param separationSeconds events separated by this much time are considered
+	 *                          to be in separate sessions
+	 * @param maxEvents         maximum number of events to process
+	 */
+	public UpdateWorkSessions(int separationSeconds, int maxEvents) {
+		this.separationSeconds = separationSeconds;
+		this.maxEvents = maxEvents;
+	}
+
+	@Override
+	public Integer run(Connection conn) throws SQLException {
+		// Find the high-water mark
+		PreparedStatement findLastEventId = prepareStatement(
+				conn,
+				"select max(end_event_id) from " + WorkSession.SCHEMA.getDbTableName() +
+				" where separation_seconds = ?"
+		);
+		findLastEventId.setInt(1, separationSeconds);
+		ResultSet lastEventIdResultSet = executeQuery(findLastEventId);
+		int lastEventId = lastEventIdResultSet.next() ? lastEventIdResultSet.getInt(1) : 0;
+		
+		// Get the next batch of events, starting far enough before the
+		// high-water mark to find events that were committed late.
+		// Every event after the high-water mark is new, so as long as
+		// there are new events, at least one is in the batch.
+		PreparedStatement findEvents = prepareStatement(
+				conn,
+				"select e.*, p.course_id from cc_events as e, cc_problems as p " +
+				" where e.problem_id = p.problem_id " +
+				"   and e.id > ? " +
+				" order by e.id " +
+				" limit ?"
+		);
+		findEvents.setInt(1, Math.max(lastEventId - RESCAN_EVENTS, 0));
+		findEvents.setInt(2, RESCAN_EVENTS + maxEvents);
+		
+		List<Event> eventList = new ArrayList<Event>();
+		List<Integer> courseIdList = new ArrayList<Integer>();
+		ResultSet resultSet = executeQuery(findEvents);
+		while (resultSet.next()) {
+			Event e = new Event();
+			int index = DBUtil.loadModelObjectFields(e, Event.SCHEMA, resultSet);
+			eventList.add(e);
+			courseIdList.add(resultSet.getInt(index));
+		}
+		if (eventList.isEmpty()) {
+			return 0;
+		}
+		
+		// Most recent work session for each user (null if the user has none)
+		Map<Integer, WorkSession> latestSessionMap = new HashMap<Integer, WorkSession>();
+		PreparedStatement findLatestSession = prepareStatement(
+				conn,
+				"select * from " + WorkSession.SCHEMA.getDbTableName() +
+				" where user_id = ? " +
+				"   and separation_seconds = ? " +
+				" order by end_event_id desc " +
+				" limit 1"
+		);
+		
+		// Existing work sessions that were extended
+		Set<WorkSession> modified = new LinkedHashSet<WorkSession>();
+		
+		// New work sessions
+		List<WorkSession> created = new ArrayList<WorkSession>();
+		
+		int numProcessed = 0;
+		for (int i = 0; i < eventList.size(); i++) {
+			Event e = eventList.get(i);
+			int courseId = courseIdList.get(i);
+			
+			if (!latestSessionMap.containsKey(e.getUserId())) {
+				latestSessionMap.put(e.getUserId(), findLatestSession(findLatestSession, e.getUserId()));
+			}
+			WorkSession session = latestSessionMap.get(e.getUserId());
+			
+			if (session != null && e.getId() <= session.getEndEventId()) {
+				// Already processed
+				continue;
+			}
+			numProcessed++;
+			
+			if (session != null
+					&& session.getProblemId() == e.getProblemId()
+					&& session.getCourseId() == courseId
+					&& e.getTimestamp() - session.getStartTime() <= separationSeconds * 1000L) {
+				// Extend the session
+				session.setEndEventId(e.getId());
+				session.setEndTime(e.getTimestamp());
+				if (session.getId() != 0) {
+					modified.add(session);
+				}
+			} else {
+				// Start a new session
+				session = new WorkSession();
+				session.setSeparationSeconds(separationSeconds);
+				session.setCourseId(courseId);
+				session.setProblemId(e.getProblemId());
+				session.setUserId(e.getUserId());
+				session.setStartEventId(e.getId());
+				session.setEndEventId(e.getId());
+				session.setStartTime(e.getTimestamp());
+				session.setEndTime(e.getTimestamp());
+				created.add(session);
+				latestSessionMap.put(e.getUserId(), session);
+			}
+		}
+		
+		// Store the extended and new sessions
+		if (!modified.isEmpty()) {
+			PreparedStatement update = prepareStatement(conn, DBUtil.createUpdateStatement(WorkSession.SCHEMA));
+			for (WorkSession session : modified) {
+				int index = DBUtil.bindModelObjectValuesForUpdate(session, WorkSession.SCHEMA, update);
+				update.setInt(index, session.getId());
+				update.addBatch();
+			}
+			update.executeBatch();
+		}
+		if (!created.isEmpty()) {
+			PreparedStatement insert = prepareStatement(conn, DBUtil.createInsertStatement(WorkSession.SCHEMA));
+			for (WorkSession session : created) {
+				DBUtil.bindModelObjectValuesForInsert(session, WorkSession.SCHEMA, insert);
+				insert.addBatch();
+			}
+			insert.executeBatch();
+		}
+		
+		return numProcessed;
+	}
+
+	private WorkSession findLatestSession(PreparedStatement stmt, int userId) throws SQLException {
+		stmt.setInt(1, userId);
+		stmt.setInt(2, separationSeconds);
+		
+		// The statement is executed once per user, so close each
+		// result set here rather than adding it to the cleanup stack
+		ResultSet resultSet = stmt.executeQuery();
+		try {
+			if (!resultSet.next()) {
+				return null;
+			}
+			WorkSession session = new WorkSession();
+			DBUtil.loadModelObjectFields(session, WorkSession.SCHEMA, resultSet);
+			return session;
+		} finally {
+			DBUtil.closeQuietly(resultSet);
+		}
+	}
+
+	@Override
+	public String getDescription() {
+		return " updating work sessions";
+	}
+}
@@ -4,6 +4,8 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Stack;
 
 import org.slf4j.Logger;
@@ -20,7 +22,18 @@ import org.slf4j.Logger;
  */
 public abstract class AbstractDatabaseRunnable<E> implements DatabaseRunnable<E> {
 
+	private static class CachedStatement {
+		final StatementCache cache;
+		final PreparedStatement stmt;
+
+		CachedStatement(StatementCache cache, PreparedStatement stmt) {
+			this.cache = cache;
+			this.stmt = stmt;
+		}
+	}
+
 	private Stack<Object> cleanupStack = new Stack<Object>();
+	private List<CachedStatement> cachedStatementList = new ArrayList<CachedStatement>();
 	private Logger logger;
 
 	/**
@@ -38,9 +51,7 @@ public abstract class AbstractDatabaseRunnable<E> implements DatabaseRunnable<E>
 	 * @throws SQLException
 	 */
 	public PreparedStatement prepareStatement(Connection conn, String sql) throws SQLException {
-		PreparedStatement stmt = conn.prepareStatement(sql);
-		cleanupStack.push(stmt);
-		return stmt;
+		return doPrepareStatement(conn, sql, StatementCache.NO_OPTIONS);
 	}
 
 	/**
@@ -53,11 +64,51 @@ public abstract class AbstractDatabaseRunnable<E> implements DatabaseRunnable<E>
 	 * @throws SQLException
 	 */
 	public PreparedStatement prepareStatement(Connection conn, String sql, int options) throws SQLException {
-		PreparedStatement stmt = conn.prepareStatement(sql, options);
+		return doPrepareStatement(conn, sql, options);
+	}
+
+	private PreparedStatement doPrepareStatement(Connection conn, String sql, int options) throws SQLException {
+		// If the connection has a statement cache, try to reuse a cached statement
+		StatementCache cache = StatementCache.forConnection(conn);
+		if (cache != null) {
+			PreparedStatement stmt = cache.prepareStatement(conn, sql, options);
+			if (stmt != null) {
+				cachedStatementList.add(new CachedStatement(cache, stmt));
+				return stmt;
+			}
+		}
+
+		PreparedStatement stmt = (options == StatementCache.NO_OPTIONS) ? conn.prepareStatement(sql) : conn.prepareStatement(sql, options);
 		cleanupStack.push(stmt);
 		return stmt;
 	}
 
+	/**
+	 * Create a PreparedStatement for a query whose results will be
+	 * streamed, adding it to the cleanup stack.  The statement is
+	 * forward-only and read-only, and its fetch size is set so that
+	 * the MySQL driver returns rows one at a time as they are read
+	 * from the server, rather than buffering the entire result set
+	 * in memory before returning the first row.  So, arbitrarily large
+	 * results can be processed in constant memory, as long as the
+	 * caller doesn't retain the rows.
+	 * 
+	 * <p>Note that while a streaming result set is open, no other
+	 * statements may be executed using the same connection.
+	 * Streaming statements are never taken from the statement cache.
+	 * 
+	 * @param conn the database connection
+	 * @param sql  the SQL to execute
+	 * @return the PreparedStatement, which will be cleaned up automatically
+	 * @throws SQLException
+	 */
+	public PreparedStatement prepareStreamingStatement(Connection conn, String sql) throws SQLException {
+		PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		cleanupStack.push(stmt);
+		stmt.setFetchSize(Integer.MIN_VALUE); // MySQL: stream rows one at a time
+		return stmt;
+	}
+
 	/**
 	 * Execute a PreparedStatement to produce a ResultSet.
 	 * The ResultSet will be added to the cleanup stack.
@@ -95,6 +146,12 @@ public abstract class AbstractDatabaseRunnable<E> implements DatabaseRunnable<E>
 				DBUtil.closeQuietly((ResultSet) o);
 			}
 		}
+
+		// Return cached statements to their statement cache
+		for (CachedStatement cachedStmt : cachedStatementList) {
+			cachedStmt.cache.release(cachedStmt.stmt);
+		}
+		cachedStatementList.clear();
 	}
 	
 	@Override
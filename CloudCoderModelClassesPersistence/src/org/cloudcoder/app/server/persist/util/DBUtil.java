@@ -821,6 +821,11 @@ public class DBUtil {
 	 * @return the converted value
 	 */
 	public static Object convertValue(Object value, Class<?> type) {
+		// NULL values (allowed for fields with the ALLOW_NULL flag) are not converted
+		if (value == null) {
+			return null;
+		}
+		
 		// Easy case: value is correct type already
 		if (value.getClass() == type) {
 			return value;
@@ -1044,10 +1049,10 @@ public class DBUtil {
 		
 		sql.append("alter table ");
 		sql.append(schema.getDbTableName());
-		sql.append(" add index ");
-		sql.append(getIndexName(schema, index.getIndexNumber()));
-		sql.append(" ");
+		sql.append(" add ");
 		sql.append(getKeyType(index.getIndexType()));
+		sql.append(" index ");
+		sql.append(getIndexName(schema, index.getIndexNumber()));
 		sql.append(" (");
 		int fieldCount = 0;
 		for (ModelObjectField<? super E, ?> field : index.getFieldList()) {
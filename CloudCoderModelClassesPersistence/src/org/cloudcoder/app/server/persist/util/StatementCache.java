@@ -0,0 +1,274 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2013, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2013, David H. Hovemeyer <david.hovemeyer@gmail.com>
+// Copyright (C) 2013, York College of Pennsylvania
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-connection cache of {@link PreparedStatement}s, keyed by SQL text.
+ * A connection pool that keeps connections open across transactions
+ * can {@link #attach(Connection, int) attach} a cache to each physical
+ * connection, and {@link AbstractDatabaseRunnable#prepareStatement(Connection, String)}
+ * will then reuse statements from the cache rather than preparing
+ * them again.  The least recently used statement is closed when the
+ * cache is full.
+ *
+ * <p>A cache hit avoids preparing the statement in the JDBC driver.
+ * It only avoids parsing the SQL on the database server if the driver
+ * prepares statements on the server: for MySQL, this requires the
+ * useServerPrepStmts connection property (which the MySQL JDBC URL
+ * built by the connection pools sets); otherwise the driver sends the
+ * full SQL text for each execution.
+ *
+ * <p>A cached statement is used by at most one caller at a time:
+ * if the same SQL is prepared again before the statement is released,
+ * the second request is a miss and the caller gets an uncached statement.
+ *
+ * <p>The cache is carried by the connection itself: {@link #attach(Connection, int)}
+ * returns a wrapper for the physical connection, so finding a connection's
+ * cache doesn't require any shared (locked) data structure.
+ *
+ * <p>Methods of a StatementCache object should only be called by the thread
+ * currently using the connection; the static methods are thread-safe.
+ *
+ * @author David Hovemeyer
+ */
+public class StatementCache {
+	/** Value of the options parameter for statements prepared without options. */
+	public static final int NO_OPTIONS = -1;
+
+	private static final AtomicLong totalHits = new AtomicLong();
+	private static final AtomicLong totalMisses = new AtomicLong();
+
+	/**
+	 * Interface implemented by connections returned by {@link StatementCache#attach(Connection, int)}.
+	 */
+	private interface Holder {
+		StatementCache getStatementCache();
+	}
+
+	private static class Entry {
+		final PreparedStatement stmt;
+		boolean inUse;
+		boolean evicted;
+
+		Entry(PreparedStatement stmt) {
+			this.stmt = stmt;
+		}
+	}
+
+	private final int maxSize;
+	private final LinkedHashMap<String, Entry> entryMap;
+	private final IdentityHashMap<PreparedStatement, Entry> inUseMap;
+	private long hits;
+	private long misses;
+
+	private StatementCache(int maxSize) {
+		this.maxSize = maxSize;
+		this.entryMap = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				if (size() <= StatementCache.this.maxSize) {
+					return false;
+				}
+				Entry entry = eldest.getValue();
+				if (entry.inUse) {
+					// Close it when it is released
+					entry.evicted = true;
+				} else {
+					DBUtil.closeQuietly(entry.stmt);
+				}
+				return true;
+			}
+		};
+		this.inUseMap = new IdentityHashMap<PreparedStatement, Entry>();
+	}
+
+	/**
+	 * Attach a statement cache to given connection.
+	 * The returned connection should be used in place of the original
+	 * connection.
+	 *
+	 * @param conn    the physical connection
+	 * @param maxSize maximum number of statements to cache
+	 * @return a connection wrapping the physical connection and carrying the cache
+	 */
+	public static Connection attach(final Connection conn, int maxSize) {
+		final StatementCache cache = new StatementCache(maxSize);
+		return (Connection) Proxy.newProxyInstance(
+				StatementCache.class.getClassLoader(),
+				new Class<?>[]{ Connection.class, Holder.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						String name = method.getName();
+						if (name.equals("getStatementCache") && args == null) {
+							return cache;
+						} else if (name.equals("equals") && args != null && args.length == 1) {
+							return proxy == args[0];
+						} else if (name.equals("hashCode") && args == null) {
+							return System.identityHashCode(proxy);
+						}
+						try {
+							return method.invoke(conn, args);
+						} catch (InvocationTargetException e) {
+							throw e.getCause();
+						}
+					}
+				});
+	}
+
+	/**
+	 * Close all statements cached for given connection (if it has a
+	 * statement cache).  This should be called before the connection
+	 * is closed.
+	 *
+	 * @param conn the connection
+	 */
+	public static void detach(Connection conn) {
+		StatementCache cache = forConnection(conn);
+		if (cache != null) {
+			for (Entry entry : cache.entryMap.values()) {
+				DBUtil.closeQuietly(entry.stmt);
+			}
+			cache.entryMap.clear();
+			cache.inUseMap.clear();
+		}
+	}
+
+	/**
+	 * Get the statement cache attached to given connection.
+	 *
+	 * @param conn the connection
+	 * @return the statement cache, or null if the connection does not have one
+	 */
+	public static StatementCache forConnection(Connection conn) {
+		return (conn instanceof Holder) ? ((Holder) conn).getStatementCache() : null;
+	}
+
+	/**
+	 * @return total number of cache hits in all statement caches
+	 *         (statements reused rather than prepared again by the driver)
+	 */
+	public static long getTotalHits() {
+		return totalHits.get();
+	}
+
+	/**
+	 * @return total number of cache misses in all statement caches
+	 */
+	public static long getTotalMisses() {
+		return totalMisses.get();
+	}
+
+	/**
+	 * Get a {@link PreparedStatement} for given SQL, reusing a cached
+	 * statement if possible.  The returned statement must be passed to
+	 * {@link #release(PreparedStatement)} when it is no longer needed,
+	 * and must not be closed by the caller.
+	 *
+	 * @param conn    the connection this cache is attached to
+	 * @param sql     the SQL
+	 * @param options options for creating the statement (e.g.,
+	 *                <code>Statement.RETURN_GENERATED_KEYS</code>),
+	 *                or {@link #NO_OPTIONS}
+	 * @return the {@link PreparedStatement}, or null if a cached statement
+	 *         can't be used and the caller should prepare its own
+	 * @throws SQLException
+	 */
+	public PreparedStatement prepareStatement(Connection conn, String sql, int options) throws SQLException {
+		String key = (options == NO_OPTIONS) ? sql : options + ":" + sql;
+
+		Entry entry = entryMap.get(key);
+		if (entry != null && !entry.inUse && !entry.stmt.isClosed()) {
+			// Hit: reset the statement's state from its previous use
+			entry.stmt.clearParameters();
+			entry.stmt.clearBatch();
+			entry.inUse = true;
+			inUseMap.put(entry.stmt, entry);
+			hits++;
+			totalHits.incrementAndGet();
+			return entry.stmt;
+		}
+
+		misses++;
+		totalMisses.incrementAndGet();
+
+		if (entry != null && entry.inUse) {
+			// Already being used by the caller: don't cache another copy
+			return null;
+		}
+
+		PreparedStatement stmt = (options == NO_OPTIONS) ? conn.prepareStatement(sql) : conn.prepareStatement(sql, options);
+		entry = new Entry(stmt);
+		entry.inUse = true;
+		entryMap.put(key, entry);
+		inUseMap.put(stmt, entry);
+		return stmt;
+	}
+
+	/**
+	 * Release a statement returned by {@link #prepareStatement(Connection, String, int)}
+	 * so that it can be reused.
+	 *
+	 * @param stmt the statement to release
+	 */
+	public void release(PreparedStatement stmt) {
+		Entry entry = inUseMap.remove(stmt);
+		if (entry != null) {
+			entry.inUse = false;
+			if (entry.evicted) {
+				DBUtil.closeQuietly(entry.stmt);
+			}
+		}
+	}
+
+	/**
+	 * @return number of statements currently cached
+	 */
+	public int size() {
+		return entryMap.size();
+	}
+
+	/**
+	 * @return number of cache hits for this connection
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return number of cache misses for this connection
+	 */
+	public long getMisses() {
+		return misses;
+	}
+}
@@ -0,0 +1,260 @@
+package org.cloudcoder.app.server.persist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeType;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ChangeGroupCommitter}, using a fake
+ * {@link ChangeGroupCommitter.Store} that records the changes
+ * stored in each transaction.
+ */
+public class ChangeGroupCommitterTest {
+	private static final int BAD_USER_ID = 666;
+
+	/**
+	 * Fake store: records each group of changes it is asked to store,
+	 * fails any group containing a change by {@link #BAD_USER_ID},
+	 * and blocks storing changes by the blocked user until released.
+	 */
+	private static class FakeStore implements ChangeGroupCommitter.Store {
+		final List<Change[]> attempted = new ArrayList<Change[]>();
+		final List<Change[]> stored = new ArrayList<Change[]>();
+		final CountDownLatch blocking = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final int blockedUserId;
+
+		FakeStore(int blockedUserId) {
+			this.blockedUserId = blockedUserId;
+		}
+
+		@Override
+		public void storeChanges(Change[] changeList) {
+			synchronized (this) {
+				attempted.add(changeList);
+			}
+			for (Change change : changeList) {
+				if (change.getEvent().getUserId() == BAD_USER_ID) {
+					// Not a RuntimeException: the writer must survive anything
+					throw new Error("bad change");
+				}
+			}
+			if (changeList[0].getEvent().getUserId() == blockedUserId) {
+				blocking.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new PersistenceException("interrupted", e);
+				}
+			}
+			synchronized (this) {
+				stored.add(changeList);
+			}
+		}
+	}
+
+	/**
+	 * Thread calling {@link ChangeGroupCommitter#storeChanges(Change[])}.
+	 */
+	private static class Client extends Thread {
+		final ChangeGroupCommitter committer;
+		final Change[] changeList;
+		volatile Throwable failure;
+
+		Client(ChangeGroupCommitter committer, Change[] changeList) {
+			this.committer = committer;
+			this.changeList = changeList;
+		}
+
+		@Override
+		public void run() {
+			try {
+				committer.storeChanges(changeList);
+			} catch (Throwable e) {
+				failure = e;
+			}
+		}
+	}
+
+	private ChangeGroupCommitter committer;
+	private List<Client> clients = new ArrayList<Client>();
+	private long seq;
+
+	@After
+	public void tearDown() throws Exception {
+		if (committer != null) {
+			committer.shutdown();
+		}
+	}
+
+	private Change[] createChanges(int userId, int numChanges) {
+		Change[] changeList = new Change[numChanges];
+		for (int i = 0; i < numChanges; i++) {
+			changeList[i] = new Change(ChangeType.INSERT_TEXT, 0, 0, 0, 1, seq++, userId, 1, "x");
+		}
+		return changeList;
+	}
+
+	/**
+	 * Start a client, and wait for it to be blocked in the store.
+	 */
+	private Client startBlocked(FakeStore store, Change[] changeList) throws InterruptedException {
+		Client client = new Client(committer, changeList);
+		clients.add(client);
+		client.start();
+		store.blocking.await();
+		return client;
+	}
+
+	/**
+	 * Start a client, and wait for its request to be queued,
+	 * so that requests are queued in a known order.
+	 */
+	private Client startQueued(Change[] changeList) throws InterruptedException {
+		int numQueued = committer.getNumQueuedRequests();
+		Client client = new Client(committer, changeList);
+		clients.add(client);
+		client.start();
+		while (committer.getNumQueuedRequests() == numQueued) {
+			Thread.sleep(1L);
+		}
+		return client;
+	}
+
+	private void joinClients() throws InterruptedException {
+		for (Client client : clients) {
+			client.join();
+		}
+	}
+
+	private static List<Integer> sizes(List<Change[]> groups) {
+		List<Integer> result = new ArrayList<Integer>();
+		for (Change[] group : groups) {
+			result.add(group.length);
+		}
+		return result;
+	}
+
+	@Test
+	public void testPerUserOrdering() throws Exception {
+		FakeStore store = new FakeStore(0);
+		committer = new ChangeGroupCommitter(store, 0L, 1000, 10000L);
+		startBlocked(store, createChanges(0, 1));
+
+		// Interleave requests by two users
+		for (int i = 0; i < 4; i++) {
+			startQueued(createChanges(1, 3));
+			startQueued(createChanges(2, 2));
+		}
+		store.release.countDown();
+		joinClients();
+		for (Client client : clients) {
+			assertNull(client.failure);
+		}
+
+		// The queued requests are stored in one transaction,
+		// with each user's changes in the order they were sent
+		assertEquals(2, store.stored.size());
+		Change[] group = store.stored.get(1);
+		assertEquals(20, group.length);
+		long[] last = new long[3];
+		for (Change change : group) {
+			int userId = change.getEvent().getUserId();
+			long ts = change.getEvent().getTimestamp();
+			assertTrue(ts > last[userId]);
+			last[userId] = ts;
+		}
+	}
+
+	@Test
+	public void testFailureIsolation() throws Exception {
+		FakeStore store = new FakeStore(0);
+		committer = new ChangeGroupCommitter(store, 0L, 1000, 10000L);
+		startBlocked(store, createChanges(0, 1));
+		Client good1 = startQueued(createChanges(1, 2));
+		Client bad = startQueued(createChanges(BAD_USER_ID, 3));
+		Client good2 = startQueued(createChanges(2, 4));
+		store.release.countDown();
+		joinClients();
+
+		// The group fails, then each request is retried on its own
+		assertEquals(5, store.attempted.size());
+		assertEquals(9, store.attempted.get(1).length);
+		assertNull(good1.failure);
+		assertNull(good2.failure);
+		assertTrue(bad.failure instanceof PersistenceException);
+		assertEquals(3, store.stored.size());
+
+		// The writer is still working
+		committer.storeChanges(createChanges(1, 1));
+		assertEquals(4, store.stored.size());
+	}
+
+	@Test
+	public void testMaxBatchChangesSplit() throws Exception {
+		FakeStore store = new FakeStore(0);
+		committer = new ChangeGroupCommitter(store, 0L, 10, 10000L);
+		startBlocked(store, createChanges(0, 1));
+		startQueued(createChanges(1, 4));
+		startQueued(createChanges(1, 4));
+		startQueued(createChanges(1, 4));
+		startQueued(createChanges(1, 12));
+		startQueued(createChanges(1, 4));
+		store.release.countDown();
+		joinClients();
+
+		// A request larger than maxBatchChanges is stored on its own
+		List<Integer> expected = new ArrayList<Integer>();
+		expected.add(1);
+		expected.add(8);
+		expected.add(4);
+		expected.add(12);
+		expected.add(4);
+		assertEquals(expected, sizes(store.stored));
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		FakeStore store = new FakeStore(0);
+		committer = new ChangeGroupCommitter(store, 0L, 1000, 200L);
+		Client blocked = startBlocked(store, createChanges(0, 1));
+		Client queued = startQueued(createChanges(1, 2));
+		queued.join();
+		blocked.join();
+		assertTrue(queued.failure instanceof PersistenceException);
+		assertTrue(blocked.failure instanceof PersistenceException);
+		assertEquals(0, committer.getNumQueuedRequests());
+
+		// The request which timed out while queued is never stored
+		store.release.countDown();
+		committer.storeChanges(createChanges(2, 1));
+		assertEquals(2, store.stored.size());
+		assertEquals(0, store.stored.get(0)[0].getEvent().getUserId());
+		assertEquals(2, store.stored.get(1)[0].getEvent().getUserId());
+	}
+
+	@Test
+	public void testShutdown() throws Exception {
+		FakeStore store = new FakeStore(-1);
+		committer = new ChangeGroupCommitter(store, 0L, 1000, 10000L);
+		committer.storeChanges(createChanges(1, 1));
+		committer.shutdown();
+		try {
+			committer.storeChanges(createChanges(1, 1));
+			fail("storeChanges should fail after shutdown");
+		} catch (PersistenceException e) {
+			// expected
+		}
+		assertEquals(1, store.stored.size());
+	}
+}
@@ -0,0 +1,102 @@
+package org.cloudcoder.app.server.persist.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+import org.cloudcoder.app.server.persist.util.DBUtil;
+import org.cloudcoder.app.shared.model.ModelObjectSchema;
+
+/**
+ * An embedded H2 database (in MySQL compatibility mode) stored in
+ * a temporary directory, for tests, benchmarks, and tools that need
+ * a real database but not a MySQL server.  The H2 jar must be on the classpath.
+ */
+public class EmbeddedDatabase {
+	public static final String DRIVER_CLASS_NAME = "org.h2.Driver";
+
+	private final File dir;
+	private final String jdbcUrl;
+
+	/**
+	 * Check whether the H2 driver is available, so that tests can be
+	 * skipped if it is not on the classpath.
+	 *
+	 * @return true if the H2 driver is available
+	 */
+	public static boolean isAvailable() {
+		try {
+			Class.forName(DRIVER_CLASS_NAME);
+			return true;
+		} catch (ClassNotFoundException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Constructor: creates the temporary directory.
+	 *
+	 * @throws IOException
+	 */
+	public EmbeddedDatabase() throws IOException {
+		dir = File.createTempFile("ccbench", "");
+		dir.delete();
+		dir.mkdir();
+		jdbcUrl = "jdbc:h2:" + new File(dir, "cloudcoderdb").getAbsolutePath() + ";MODE=MySQL";
+	}
+
+	/**
+	 * @return the JDBC URL of the database
+	 */
+	public String getJdbcUrl() {
+		return jdbcUrl;
+	}
+
+	/**
+	 * Get a new (unpooled) connection to the database.
+	 *
+	 * @return the connection
+	 * @throws SQLException
+	 */
+	public Connection getConnection() throws SQLException {
+		return DriverManager.getConnection(jdbcUrl);
+	}
+
+	/**
+	 * Create tables for the given schemas.
+	 *
+	 * @param tables the schemas
+	 * @throws SQLException
+	 */
+	public void createTables(ModelObjectSchema<?>... tables) throws SQLException {
+		Connection conn = getConnection();
+		try {
+			for (ModelObjectSchema<?> schema : tables) {
+				createTable(conn, schema);
+			}
+		} finally {
+			conn.close();
+		}
+	}
+
+	private static void createTable(Connection conn, ModelObjectSchema<?> schema) throws SQLException {
+		// Index names are per-schema in H2, but per-table in MySQL
+		String sql = DBUtil.getCreateTableStatement(schema);
+		sql = sql.replaceAll("KEY `(\\w+)`", "KEY `" + schema.getDbTableName() + "_$1`");
+		// H2 maps text columns to CLOBs, which are not returned as Strings
+		sql = sql.replaceAll(" (medium)?text", " varchar");
+		DBUtil.execSql(conn, sql);
+	}
+
+	/**
+	 * Delete the database files and the temporary directory.
+	 */
+	public void delete() {
+		for (File f : dir.listFiles()) {
+			f.delete();
+		}
+		dir.delete();
+	}
+}
@@ -0,0 +1,472 @@
+package org.cloudcoder.app.server.persist.bench;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.cloudcoder.app.server.persist.BoundedConnectionPool;
+import org.cloudcoder.app.server.persist.ConnectionPoolStats;
+import org.cloudcoder.app.server.persist.CreateWebappDatabase;
+import org.cloudcoder.app.server.persist.IConnectionPool;
+import org.cloudcoder.app.server.persist.JDBCDatabase;
+import org.cloudcoder.app.server.persist.JDBCDatabaseConfig;
+import org.cloudcoder.app.server.persist.SnapshotCallback;
+import org.cloudcoder.app.server.persist.util.DBUtil;
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeType;
+import org.cloudcoder.app.shared.model.Course;
+import org.cloudcoder.app.shared.model.CourseRegistration;
+import org.cloudcoder.app.shared.model.CourseRegistrationType;
+import org.cloudcoder.app.shared.model.Event;
+import org.cloudcoder.app.shared.model.EventType;
+import org.cloudcoder.app.shared.model.ModelObjectField;
+import org.cloudcoder.app.shared.model.ModelObjectSchema;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.SnapshotSelectionCriteria;
+import org.cloudcoder.app.shared.model.SubmissionReceipt;
+import org.cloudcoder.app.shared.model.SubmissionStatus;
+import org.cloudcoder.app.shared.model.TestResult;
+import org.cloudcoder.app.shared.model.User;
+
+/**
+ * Index advisor: creates the webapp tables in an embedded H2 database
+ * (see {@link EmbeddedDatabase}), fills them with changes and submissions
+ * from a simulated course, and then runs the hot read paths of
+ * {@link JDBCDatabase} (loading current text, snapshots, work sessions,
+ * and best submissions).  Every query is also run with
+ * H2's <code>EXPLAIN ANALYZE</code>, and the advisor reports the
+ * statements that do full table scans, and the number of rows each
+ * statement examines per execution.  A statement that examines many
+ * more rows than it needs is a candidate for a new (possibly composite)
+ * index, which should be added to the model object's schema using
+ * {@link ModelObjectSchema#addIndexDelta(org.cloudcoder.app.shared.model.ModelObjectIndex)}
+ * so that existing installations get it when their database is upgraded.
+ * Note that H2's query planner is not MySQL's, so the report indicates
+ * which indexes are missing, not exactly which plans MySQL would choose.
+ * Not run as part of the unit tests: run the main method directly,
+ * passing <code>-v</code> to also print the query plans.
+ */
+public class IndexAdvisor {
+	private static final int NUM_USERS = 30;
+	private static final int NUM_PROBLEMS = 10;
+	private static final int CHANGES_PER_PROBLEM = 40;
+	private static final int CHANGES_PER_SUBMISSION = 20;
+	private static final int NUM_WORKLOAD_USERS = 5;
+	private static final int COURSE_ID = 1;
+
+	private static final Pattern TABLE_SCAN = Pattern.compile("/\\*\\s*PUBLIC\\.(\\w+)\\.tableScan\\s*\\*/");
+	private static final Pattern SCAN_COUNT = Pattern.compile("/\\*\\s*scanCount: (\\d+)\\s*\\*/");
+
+	/**
+	 * Statistics for one SQL statement, collected from its query plans.
+	 */
+	private static class StatementStats {
+		final String sql;
+		int executions;
+		long rowsExamined;
+		final Set<String> scannedTables = new TreeSet<String>();
+		String plan;
+
+		StatementStats(String sql) {
+			this.sql = sql;
+		}
+
+		long getRowsExaminedPerExecution() {
+			return rowsExamined / executions;
+		}
+	}
+
+	/**
+	 * Connection pool returning connections whose prepared statements
+	 * are explained (while recording) before they are executed.
+	 */
+	private class RecordingConnectionPool implements IConnectionPool {
+		private final IConnectionPool delegate;
+
+		RecordingConnectionPool(IConnectionPool delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public Connection getConnection() throws SQLException {
+			return wrap(delegate.getConnection());
+		}
+
+		@Override
+		public void releaseConnection() throws SQLException {
+			delegate.releaseConnection();
+		}
+
+		@Override
+		public void destroy() throws SQLException {
+			delegate.destroy();
+		}
+
+		@Override
+		public ConnectionPoolStats getStats() {
+			return delegate.getStats();
+		}
+	}
+
+	private final Map<String, StatementStats> statsMap = new LinkedHashMap<String, StatementStats>();
+	private final List<String> failures = new ArrayList<String>();
+	private volatile boolean recording;
+
+	private final List<User> users = new ArrayList<User>();
+	private final List<Problem> problems = new ArrayList<Problem>();
+	private JDBCDatabase db;
+
+	public static void main(String[] args) throws Exception {
+		boolean verbose = args.length > 0 && args[0].equals("-v");
+
+		EmbeddedDatabase edb = new EmbeddedDatabase();
+		try {
+			IndexAdvisor advisor = new IndexAdvisor();
+			advisor.run(edb);
+			advisor.report(verbose);
+		} finally {
+			edb.delete();
+		}
+	}
+
+	private void run(EmbeddedDatabase edb) throws Exception {
+		edb.createTables(CreateWebappDatabase.TABLES);
+
+		BoundedConnectionPool pool = new BoundedConnectionPool(edb.getJdbcUrl(), EmbeddedDatabase.DRIVER_CLASS_NAME, 4, 60000L, 300000L, 1000L, 0);
+		db = new JDBCDatabase(new RecordingConnectionPool(pool), new JDBCDatabaseConfig.ConfigProperties() {
+			public String getUser() { return ""; }
+			public String getPasswd() { return ""; }
+			public String getDatabaseName() { return "cloudcoderdb"; }
+			public String getHost() { return ""; }
+			public String getPortStr() { return ""; }
+			public String getProperty(String name, String defaultValue) {
+				return name.equals("groupCommit.enabled") ? "false" : defaultValue;
+			}
+		});
+
+		try {
+			populate(edb);
+
+			recording = true;
+			runWorkload();
+			recording = false;
+		} finally {
+			pool.destroy();
+		}
+	}
+
+	private void populate(EmbeddedDatabase edb) throws SQLException {
+		Connection conn = edb.getConnection();
+		try {
+			for (int u = 0; u < NUM_USERS; u++) {
+				User user = new User();
+				user.setUsername("user" + u);
+				user.setEmail("user" + u + "@example.com");
+				fillDefaults(user, User.SCHEMA);
+				DBUtil.storeModelObject(conn, user);
+				users.add(user);
+
+				CourseRegistration reg = new CourseRegistration();
+				reg.setCourseId(COURSE_ID);
+				reg.setUserId(user.getId());
+				reg.setRegistrationType(CourseRegistrationType.STUDENT);
+				reg.setSection(1);
+				DBUtil.storeModelObject(conn, reg);
+			}
+			for (int p = 0; p < NUM_PROBLEMS; p++) {
+				Problem problem = new Problem();
+				problem.setCourseId(COURSE_ID);
+				problem.setVisible(true);
+				fillDefaults(problem, Problem.SCHEMA);
+				DBUtil.storeModelObject(conn, problem, Problem.SCHEMA);
+				problems.add(problem);
+			}
+		} finally {
+			conn.close();
+		}
+
+		// Interleave users and problems, as in a real course
+		long timestamp = 1000000L;
+		for (int c = 0; c < CHANGES_PER_PROBLEM; c += CHANGES_PER_SUBMISSION) {
+			for (Problem problem : problems) {
+				for (User user : users) {
+					Change[] changeList = new Change[CHANGES_PER_SUBMISSION];
+					for (int i = 0; i < CHANGES_PER_SUBMISSION; i++) {
+						if (c + i == 0 || i == CHANGES_PER_SUBMISSION - 1) {
+							// The client sends a full-text change when starting and before submitting
+							changeList[i] = new Change(ChangeType.FULL_TEXT, 0, 0, 0, 0, timestamp++, user.getId(), problem.getProblemId(), "class Foo {\n");
+						} else {
+							changeList[i] = new Change(ChangeType.INSERT_TEXT, c + i, 0, c + i, 1, timestamp++, user.getId(), problem.getProblemId(), "x");
+						}
+					}
+					db.storeChanges(changeList);
+
+					SubmissionReceipt receipt = new SubmissionReceipt();
+					receipt.setEvent(new Event(user.getId(), problem.getProblemId(), EventType.SUBMIT, timestamp++));
+					receipt.setLastEditEventId(changeList[CHANGES_PER_SUBMISSION - 1].getEventId());
+					receipt.setStatus(SubmissionStatus.TESTS_FAILED);
+					receipt.setNumTestsAttempted(4);
+					receipt.setNumTestsPassed(c / CHANGES_PER_SUBMISSION);
+					db.insertSubmissionReceipt(receipt, new TestResult[0]);
+				}
+			}
+		}
+
+		// Update table statistics so that the query planner knows the table sizes
+		conn = edb.getConnection();
+		try {
+			DBUtil.execSql(conn, "analyze");
+		} finally {
+			conn.close();
+		}
+	}
+
+	private void runWorkload() {
+		final Course course = new Course();
+		course.setId(COURSE_ID);
+		final SnapshotCallback ignoreSnapshot = new SnapshotCallback() {
+			@Override
+			public void onSnapshotFound(int submitEventId, int fullTextChangeId, int courseId, int problemId, int userId, String programText, SubmissionReceipt receipt) {
+			}
+		};
+
+		for (final Problem problem : problems) {
+			final int problemId = problem.getProblemId();
+			for (final User user : users.subList(0, NUM_WORKLOAD_USERS)) {
+				runStep("load current text", new Runnable() {
+					public void run() {
+						db.getChangeCheckpoint(user, problemId);
+						Change fullText = db.getMostRecentFullTextChange(user, problemId);
+						db.getAllChangesNewerThan(user, problemId, fullText.getEventId());
+						db.getMostRecentChange(user, problemId);
+					}
+				});
+				runStep("load changes", new Runnable() {
+					public void run() {
+						db.loadChanges(user.getId(), problemId, 0, Integer.MAX_VALUE);
+					}
+				});
+				runStep("submission history", new Runnable() {
+					public void run() {
+						db.getAllSubmissionReceiptsForUser(problem, user);
+					}
+				});
+				runStep("work sessions", new Runnable() {
+					public void run() {
+						SnapshotSelectionCriteria criteria = new SnapshotSelectionCriteria();
+						criteria.setUserId(user.getId());
+						criteria.setProblemId(problemId);
+						db.findWorkSessions(criteria, 60);
+					}
+				});
+			}
+			runStep("best submissions", new Runnable() {
+				public void run() {
+					db.getBestSubmissionReceipts(course, 0, problem);
+				}
+			});
+			runStep("snapshots", new Runnable() {
+				public void run() {
+					SnapshotSelectionCriteria criteria = new SnapshotSelectionCriteria();
+					criteria.setCourseId(COURSE_ID);
+					criteria.setProblemId(problemId);
+					db.retrieveSnapshots(criteria, ignoreSnapshot);
+				}
+			});
+		}
+	}
+
+	private void runStep(String name, Runnable step) {
+		try {
+			step.run();
+		} catch (RuntimeException e) {
+			failures.add(name + ": " + e.getMessage());
+		}
+	}
+
+	private void report(boolean verbose) {
+		List<StatementStats> statsList = new ArrayList<StatementStats>(statsMap.values());
+		Collections.sort(statsList, new Comparator<StatementStats>() {
+			@Override
+			public int compare(StatementStats o1, StatementStats o2) {
+				long r1 = o1.getRowsExaminedPerExecution(), r2 = o2.getRowsExaminedPerExecution();
+				return r1 > r2 ? -1 : (r1 < r2 ? 1 : 0);
+			}
+		});
+
+		Map<String, Integer> scannedTableCounts = new TreeMap<String, Integer>();
+		for (StatementStats stats : statsList) {
+			for (String table : stats.scannedTables) {
+				Integer count = scannedTableCounts.get(table);
+				scannedTableCounts.put(table, count == null ? 1 : count + 1);
+			}
+		}
+
+		System.out.println(statsList.size() + " statements analyzed");
+		System.out.println();
+		System.out.println("Tables with full scans:");
+		if (scannedTableCounts.isEmpty()) {
+			System.out.println("  (none)");
+		}
+		for (Map.Entry<String, Integer> entry : scannedTableCounts.entrySet()) {
+			System.out.println("  " + entry.getKey() + " (" + entry.getValue() + " statements)");
+		}
+		System.out.println();
+		System.out.println("Statements by rows examined per execution:");
+		for (StatementStats stats : statsList) {
+			System.out.printf("%8d rows, %4d executions%s%n    %s%n",
+					stats.getRowsExaminedPerExecution(), stats.executions,
+					stats.scannedTables.isEmpty() ? "" : ", full scan of " + stats.scannedTables,
+					stats.sql.trim().replaceAll("\\s+", " "));
+			if (verbose) {
+				System.out.println("    " + stats.plan.replace("\n", "\n    "));
+			}
+		}
+		if (!failures.isEmpty()) {
+			System.out.println();
+			System.out.println("Failures (not analyzed):");
+			for (String failure : failures) {
+				System.out.println("  " + failure);
+			}
+		}
+	}
+
+	private Connection wrap(final Connection conn) {
+		return (Connection) Proxy.newProxyInstance(
+				Connection.class.getClassLoader(), new Class<?>[]{ Connection.class }, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				Object result = invokeTarget(conn, method, args);
+				if (method.getName().equals("prepareStatement")) {
+					return wrap(conn, (PreparedStatement) result, (String) args[0]);
+				}
+				return result;
+			}
+		});
+	}
+
+	private PreparedStatement wrap(final Connection conn, final PreparedStatement stmt, final String sql) {
+		final Map<Integer, Object> params = new HashMap<Integer, Object>();
+		return (PreparedStatement) Proxy.newProxyInstance(
+				PreparedStatement.class.getClassLoader(), new Class<?>[]{ PreparedStatement.class }, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String name = method.getName();
+				if (name.equals("setFetchSize") && (Integer) args[0] < 0) {
+					// MySQL hint for streaming results: not supported by H2
+					return null;
+				}
+				if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+					params.put((Integer) args[0], name.equals("setNull") ? null : args[1]);
+				} else if (name.equals("clearParameters")) {
+					params.clear();
+				} else if (recording && args == null
+						&& (name.equals("executeQuery") || name.equals("execute") || name.equals("executeUpdate"))) {
+					explain(conn, sql, params);
+				}
+				return invokeTarget(stmt, method, args);
+			}
+		});
+	}
+
+	private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	private void explain(Connection conn, String sql, Map<Integer, Object> params) {
+		String verb = sql.trim().toLowerCase(Locale.ENGLISH);
+		boolean isQuery = verb.startsWith("select");
+		if (!isQuery && !verb.startsWith("update") && !verb.startsWith("delete")) {
+			return;
+		}
+
+		try {
+			// EXPLAIN ANALYZE executes the statement, so it is only used for queries
+			PreparedStatement stmt = conn.prepareStatement((isQuery ? "explain analyze " : "explain ") + sql);
+			try {
+				for (Map.Entry<Integer, Object> entry : params.entrySet()) {
+					stmt.setObject(entry.getKey(), entry.getValue());
+				}
+				ResultSet resultSet = stmt.executeQuery();
+				StringBuilder plan = new StringBuilder();
+				while (resultSet.next()) {
+					plan.append(resultSet.getString(1));
+				}
+				record(sql, plan.toString());
+			} finally {
+				stmt.close();
+			}
+		} catch (SQLException e) {
+			failures.add("explaining " + sql.trim().replaceAll("\\s+", " ") + ": " + e.getMessage());
+		}
+	}
+
+	private synchronized void record(String sql, String plan) {
+		StatementStats stats = statsMap.get(sql);
+		if (stats == null) {
+			stats = new StatementStats(sql);
+			statsMap.put(sql, stats);
+		}
+		stats.executions++;
+		stats.plan = plan;
+
+		Matcher m = TABLE_SCAN.matcher(plan);
+		while (m.find()) {
+			stats.scannedTables.add(m.group(1).toLowerCase(Locale.ENGLISH));
+		}
+		m = SCAN_COUNT.matcher(plan);
+		while (m.find()) {
+			stats.rowsExamined += Long.parseLong(m.group(1));
+		}
+	}
+
+	/**
+	 * Set fields that are null (and are not allowed to be NULL
+	 * in the database) to default values.
+	 */
+	private static<E> void fillDefaults(E obj, ModelObjectSchema<? super E> schema) {
+		for (ModelObjectField<? super E, ?> field : schema.getFieldList()) {
+			if (field.get(obj) != null || field.isAllowNull()) {
+				continue;
+			}
+			Class<?> type = field.getType();
+			Object value;
+			if (type == String.class) {
+				value = "";
+			} else if (type == Integer.class) {
+				value = Integer.valueOf(0);
+			} else if (type == Long.class) {
+				value = Long.valueOf(0L);
+			} else if (type == Boolean.class) {
+				value = Boolean.FALSE;
+			} else if (type.isEnum()) {
+				value = type.getEnumConstants()[0];
+			} else {
+				continue;
+			}
+			field.setUntyped(obj, value);
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package org.cloudcoder.app.server.persist.bench;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.cloudcoder.app.server.persist.BoundedConnectionPool;
+import org.cloudcoder.app.server.persist.ChangeGroupCommitter;
+import org.cloudcoder.app.server.persist.JDBCDatabase;
+import org.cloudcoder.app.server.persist.JDBCDatabaseConfig;
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeCheckpoint;
+import org.cloudcoder.app.shared.model.ChangeType;
+import org.cloudcoder.app.shared.model.Event;
+
+/**
+ * Benchmark measuring the throughput of storing {@link Change}s,
+ * with and without {@link ChangeGroupCommitter}, using an embedded
+ * H2 database (in MySQL compatibility mode) stored in a temporary
+ * directory.  Each simulated user sends batches of changes as fast
+ * as they are acknowledged, as many clients flushing their changes
+ * at the same time would.  After each run, the stored events are
+ * checked to make sure that each user's changes were stored in order.
+ * Not run as part of the unit tests: run the main method directly,
+ * optionally passing the number of users, the number of batches per
+ * user, and the number of changes per batch as arguments.
+ */
+public class StoreChangesBenchmark {
+	private static final int DEFAULT_USERS = 200;
+	private static final int DEFAULT_BATCHES = 20;
+	private static final int DEFAULT_CHANGES_PER_BATCH = 10;
+	
+	private static final int POOL_SIZE = 32;
+	private static final int PROBLEM_ID = 1;
+
+	public static void main(String[] args) throws Exception {
+		int numUsers = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_USERS;
+		int numBatches = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_BATCHES;
+		int changesPerBatch = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_CHANGES_PER_BATCH;
+		
+		for (int round = 0; round < 2; round++) {
+			run(false, numUsers, numBatches, changesPerBatch);
+			run(true, numUsers, numBatches, changesPerBatch);
+		}
+	}
+
+	private static void run(final boolean groupCommit, int numUsers, final int numBatches, final int changesPerBatch) throws Exception {
+		EmbeddedDatabase edb = new EmbeddedDatabase();
+		try {
+			edb.createTables(Event.SCHEMA, Change.SCHEMA, ChangeCheckpoint.SCHEMA);
+			
+			BoundedConnectionPool pool = new BoundedConnectionPool(edb.getJdbcUrl(), EmbeddedDatabase.DRIVER_CLASS_NAME, POOL_SIZE, 60000L, 300000L, 1000L, 64);
+			final JDBCDatabase db = new JDBCDatabase(pool, new JDBCDatabaseConfig.ConfigProperties() {
+				public String getUser() { return ""; }
+				public String getPasswd() { return ""; }
+				public String getDatabaseName() { return "cloudcoderdb"; }
+				public String getHost() { return ""; }
+				public String getPortStr() { return ""; }
+				public String getProperty(String name, String defaultValue) {
+					return name.equals("groupCommit.enabled") ? String.valueOf(groupCommit) : defaultValue;
+				}
+			});
+			
+			final long[] latencyNanos = new long[numUsers * numBatches];
+			final AtomicLong numFailed = new AtomicLong();
+			final CountDownLatch start = new CountDownLatch(1);
+			Thread[] threads = new Thread[numUsers];
+			for (int u = 0; u < numUsers; u++) {
+				final int userId = u + 1;
+				threads[u] = new Thread() {
+					@Override
+					public void run() {
+						try {
+							start.await();
+						} catch (InterruptedException e) {
+							return;
+						}
+						long seq = 0;
+						for (int b = 0; b < numBatches; b++) {
+							Change[] changeList = new Change[changesPerBatch];
+							for (int i = 0; i < changesPerBatch; i++) {
+								// The timestamp is used as a sequence number to check the order
+								changeList[i] = new Change(ChangeType.INSERT_TEXT, 0, i, 0, i + 1, seq++, userId, PROBLEM_ID, "x");
+							}
+							long begin = System.nanoTime();
+							try {
+								db.storeChanges(changeList);
+							} catch (RuntimeException e) {
+								numFailed.incrementAndGet();
+							}
+							latencyNanos[(userId - 1) * numBatches + b] = System.nanoTime() - begin;
+						}
+					}
+				};
+				threads[u].start();
+			}
+			
+			long begin = System.nanoTime();
+			start.countDown();
+			for (Thread t : threads) {
+				t.join();
+			}
+			long elapsed = System.nanoTime() - begin;
+			
+			checkOrder(edb, numUsers, numBatches * changesPerBatch);
+			pool.destroy();
+			
+			Arrays.sort(latencyNanos);
+			double seconds = elapsed / 1000000000.0;
+			System.out.printf("%-15s: %d requests (%d changes) in %.2f s, %.0f requests/s, %.0f changes/s, " +
+					"latency median %.1f ms, p99 %.1f ms, failed=%d%n",
+					groupCommit ? "group commit" : "no group commit",
+					latencyNanos.length, latencyNanos.length * changesPerBatch, seconds,
+					latencyNanos.length / seconds, latencyNanos.length * changesPerBatch / seconds,
+					latencyNanos[latencyNanos.length / 2] / 1000000.0,
+					latencyNanos[(int) (latencyNanos.length * 0.99)] / 1000000.0,
+					numFailed.get());
+		} finally {
+			edb.delete();
+		}
+	}
+
+	private static void checkOrder(EmbeddedDatabase edb, int numUsers, int changesPerUser) throws SQLException {
+		Connection conn = edb.getConnection();
+		try {
+			PreparedStatement stmt = conn.prepareStatement(
+					"select user_id, timestamp from " + Event.SCHEMA.getDbTableName() + " order by id");
+			ResultSet resultSet = stmt.executeQuery();
+			long[] next = new long[numUsers + 1];
+			int count = 0;
+			while (resultSet.next()) {
+				int userId = resultSet.getInt(1);
+				long timestamp = resultSet.getLong(2);
+				if (timestamp != next[userId]) {
+					throw new IllegalStateException("Changes for user " + userId + " stored out of order");
+				}
+				next[userId]++;
+				count++;
+			}
+			if (count != numUsers * changesPerUser) {
+				throw new IllegalStateException("Expected " + (numUsers * changesPerUser) + " events, found " + count);
+			}
+		} finally {
+			conn.close();
+		}
+	}
+}
@@ -0,0 +1,175 @@
+package org.cloudcoder.app.server.persist.txn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cloudcoder.app.server.persist.BoundedConnectionPool;
+import org.cloudcoder.app.server.persist.JDBCDatabase;
+import org.cloudcoder.app.server.persist.JDBCDatabaseConfig;
+import org.cloudcoder.app.server.persist.bench.EmbeddedDatabase;
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeCheckpoint;
+import org.cloudcoder.app.shared.model.ChangeType;
+import org.cloudcoder.app.shared.model.Event;
+import org.cloudcoder.app.shared.model.User;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link StoreChanges}'s maintenance of {@link ChangeCheckpoint}s
+ * (using an embedded H2 database: skipped if H2 is not on the classpath).
+ */
+public class StoreChangesTest {
+	private static final int USER_ID = 1;
+	private static final int PROBLEM_ID = 1;
+	private static final int CHANGES_PER_BATCH = 10;
+
+	private EmbeddedDatabase edb;
+	private BoundedConnectionPool pool;
+	private JDBCDatabase db;
+	private User user;
+	private long seq;
+
+	@Before
+	public void setUp() throws Exception {
+		Assume.assumeTrue(EmbeddedDatabase.isAvailable());
+		edb = new EmbeddedDatabase();
+		edb.createTables(Event.SCHEMA, Change.SCHEMA, ChangeCheckpoint.SCHEMA);
+		pool = new BoundedConnectionPool(edb.getJdbcUrl(), EmbeddedDatabase.DRIVER_CLASS_NAME, 4, 60000L, 300000L, 1000L, 0);
+		db = new JDBCDatabase(pool, new JDBCDatabaseConfig.ConfigProperties() {
+			public String getUser() { return ""; }
+			public String getPasswd() { return ""; }
+			public String getDatabaseName() { return "cloudcoderdb"; }
+			public String getHost() { return ""; }
+			public String getPortStr() { return ""; }
+			public String getProperty(String name, String defaultValue) {
+				// Each storeChanges call is its own transaction
+				return name.equals("groupCommit.enabled") ? "false" : defaultValue;
+			}
+		});
+		user = new User();
+		user.setId(USER_ID);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (pool != null) {
+			pool.destroy();
+		}
+		if (edb != null) {
+			edb.delete();
+		}
+	}
+
+	/**
+	 * Create a batch of changes, each inserting an "x" at the beginning
+	 * of the first line.
+	 */
+	private synchronized Change[] createBatch(int numChanges) {
+		Change[] changeList = new Change[numChanges];
+		for (int i = 0; i < numChanges; i++) {
+			changeList[i] = new Change(ChangeType.INSERT_TEXT, 0, 0, 0, 1, seq++, USER_ID, PROBLEM_ID, "x");
+		}
+		return changeList;
+	}
+
+	private static String repeat(char c, int n) {
+		StringBuilder buf = new StringBuilder();
+		for (int i = 0; i < n; i++) {
+			buf.append(c);
+		}
+		return buf.toString();
+	}
+
+	@Test
+	public void testCheckpointWithNullText() throws Exception {
+		// Too few deltas to write the text: the checkpoint's text is NULL
+		db.storeChanges(createBatch(3));
+
+		ChangeCheckpoint checkpoint = db.getChangeCheckpoint(user, PROBLEM_ID);
+		assertNotNull(checkpoint);
+		assertNull(checkpoint.getText());
+		assertEquals(3, checkpoint.getNumDeltas());
+		assertEquals(3, checkpoint.getDeltaBytes());
+
+		db.storeChanges(createBatch(2));
+		checkpoint = db.getChangeCheckpoint(user, PROBLEM_ID);
+		assertNull(checkpoint.getText());
+		assertEquals(5, checkpoint.getNumDeltas());
+	}
+
+	@Test
+	public void testCheckpointWritten() throws Exception {
+		int numBatches = StoreChanges.CHECKPOINT_NUM_DELTAS / CHANGES_PER_BATCH;
+		Change[] last = null;
+		for (int i = 0; i < numBatches; i++) {
+			last = createBatch(CHANGES_PER_BATCH);
+			db.storeChanges(last);
+		}
+
+		ChangeCheckpoint checkpoint = db.getChangeCheckpoint(user, PROBLEM_ID);
+		assertEquals(repeat('x', StoreChanges.CHECKPOINT_NUM_DELTAS), checkpoint.getText());
+		assertEquals(last[last.length - 1].getEventId(), checkpoint.getEventId());
+		assertEquals(0, checkpoint.getNumDeltas());
+		assertEquals(0, checkpoint.getDeltaBytes());
+	}
+
+	@Test
+	public void testConcurrentStoreChanges() throws Exception {
+		final int numThreads = 4;
+		final int numBatches = 13;
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicInteger numFailed = new AtomicInteger();
+		Thread[] threads = new Thread[numThreads];
+		for (int t = 0; t < numThreads; t++) {
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for (int b = 0; b < numBatches; b++) {
+							db.storeChanges(createBatch(CHANGES_PER_BATCH));
+						}
+					} catch (Throwable e) {
+						e.printStackTrace();
+						numFailed.incrementAndGet();
+					}
+				}
+			};
+			threads[t].start();
+		}
+		start.countDown();
+		for (Thread t : threads) {
+			t.join();
+		}
+		assertEquals(0, numFailed.get());
+
+		// There is one checkpoint, and no batch's counts were lost:
+		// the counts are reset each time they reach the threshold
+		int totalDeltas = numThreads * numBatches * CHANGES_PER_BATCH;
+		ChangeCheckpoint checkpoint = db.getChangeCheckpoint(user, PROBLEM_ID);
+		assertEquals(totalDeltas % StoreChanges.CHECKPOINT_NUM_DELTAS, checkpoint.getNumDeltas());
+		// (When a checkpoint is rebuilt from the previous checkpoint,
+		// TextDocument terminates the last line)
+		assertEquals(repeat('x', totalDeltas - checkpoint.getNumDeltas()), checkpoint.getText().trim());
+
+		Connection conn = edb.getConnection();
+		try {
+			Statement stmt = conn.createStatement();
+			ResultSet resultSet = stmt.executeQuery("select count(*) from " + ChangeCheckpoint.SCHEMA.getDbTableName());
+			resultSet.next();
+			assertEquals(1, resultSet.getInt(1));
+		} finally {
+			conn.close();
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package org.cloudcoder.app.server.persist.txn;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.cloudcoder.app.server.persist.bench.EmbeddedDatabase;
+import org.cloudcoder.app.server.persist.util.DBUtil;
+import org.cloudcoder.app.shared.model.Event;
+import org.cloudcoder.app.shared.model.WorkSession;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link UpdateWorkSessions} (using an embedded H2 database:
+ * skipped if H2 is not on the classpath).
+ */
+public class UpdateWorkSessionsTest {
+	private static final int SEPARATION = 600;
+	private static final int USER_A = 1;
+	private static final int USER_B = 2;
+	private static final int PROBLEM_ID = 1;
+
+	private EmbeddedDatabase db;
+	private Connection conn;
+
+	@Before
+	public void setUp() throws Exception {
+		Assume.assumeTrue(EmbeddedDatabase.isAvailable());
+		db = new EmbeddedDatabase();
+		db.createTables(Event.SCHEMA, WorkSession.SCHEMA);
+		conn = db.getConnection();
+		// UpdateWorkSessions only needs the problems' course ids
+		DBUtil.execSql(conn, "create table cc_problems (problem_id int primary key, course_id int)");
+		DBUtil.execSql(conn, "insert into cc_problems values (" + PROBLEM_ID + ", 1)");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (conn != null) {
+			conn.close();
+		}
+		if (db != null) {
+			db.delete();
+		}
+	}
+
+	private void insertEvent(int id, int userId, long timestamp) throws SQLException {
+		PreparedStatement stmt = conn.prepareStatement(
+				"insert into " + Event.SCHEMA.getDbTableName() +
+				" (id, user_id, problem_id, type, timestamp) values (?, ?, ?, 0, ?)");
+		try {
+			stmt.setInt(1, id);
+			stmt.setInt(2, userId);
+			stmt.setInt(3, PROBLEM_ID);
+			stmt.setLong(4, timestamp);
+			stmt.executeUpdate();
+		} finally {
+			stmt.close();
+		}
+	}
+
+	private int update() throws SQLException {
+		UpdateWorkSessions txn = new UpdateWorkSessions(SEPARATION, 100);
+		try {
+			return txn.run(conn);
+		} finally {
+			txn.cleanup();
+		}
+	}
+
+	/**
+	 * @return the start and end event ids of the user's work sessions, as "start-end,..."
+	 */
+	private String getSessions(int userId) throws SQLException {
+		PreparedStatement stmt = conn.prepareStatement(
+				"select start_event_id, end_event_id from " + WorkSession.SCHEMA.getDbTableName() +
+				" where user_id = ? order by start_event_id");
+		try {
+			stmt.setInt(1, userId);
+			ResultSet resultSet = stmt.executeQuery();
+			StringBuilder buf = new StringBuilder();
+			while (resultSet.next()) {
+				if (buf.length() > 0) {
+					buf.append(",");
+				}
+				buf.append(resultSet.getInt(1)).append("-").append(resultSet.getInt(2));
+			}
+			return buf.toString();
+		} finally {
+			stmt.close();
+		}
+	}
+
+	@Test
+	public void testIncremental() throws Exception {
+		insertEvent(1, USER_A, 1000L);
+		insertEvent(2, USER_A, 2000L);
+		assertEquals(2, update());
+		assertEquals(0, update());
+
+		insertEvent(3, USER_A, 3000L);
+		assertEquals(1, update());
+		assertEquals("1-3", getSessions(USER_A));
+	}
+
+	@Test
+	public void testLateCommittedEvent() throws Exception {
+		// Event 2 is committed after event 3 has been processed
+		insertEvent(1, USER_A, 1000L);
+		insertEvent(3, USER_B, 1000L);
+		assertEquals(2, update());
+
+		insertEvent(2, USER_A, 2000L);
+		assertEquals(1, update());
+		assertEquals(0, update());
+		assertEquals("1-2", getSessions(USER_A));
+		assertEquals("3-3", getSessions(USER_B));
+	}
+}
@@ -0,0 +1,145 @@
+package org.cloudcoder.app.server.persist.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class StatementCacheTest {
+	/** SQL of statements prepared by the fake connection, in order. */
+	private List<String> preparedList;
+
+	/** Statements which have been closed. */
+	private Set<PreparedStatement> closedSet;
+
+	private Connection physical;
+	private Connection conn;
+	private StatementCache cache;
+
+	@Before
+	public void setUp() {
+		preparedList = new ArrayList<String>();
+		closedSet = new HashSet<PreparedStatement>();
+		physical = (Connection) Proxy.newProxyInstance(
+				getClass().getClassLoader(), new Class<?>[]{ Connection.class }, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("prepareStatement")) {
+					preparedList.add((String) args[0]);
+					return createStatement();
+				}
+				return null;
+			}
+		});
+		conn = StatementCache.attach(physical, 2);
+		cache = StatementCache.forConnection(conn);
+	}
+
+	private PreparedStatement createStatement() {
+		return (PreparedStatement) Proxy.newProxyInstance(
+				getClass().getClassLoader(), new Class<?>[]{ PreparedStatement.class }, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String name = method.getName();
+				if (name.equals("close")) {
+					closedSet.add((PreparedStatement) proxy);
+				} else if (name.equals("isClosed")) {
+					return closedSet.contains(proxy);
+				} else if (name.equals("hashCode")) {
+					return System.identityHashCode(proxy);
+				} else if (name.equals("equals")) {
+					return proxy == args[0];
+				}
+				return null;
+			}
+		});
+	}
+
+	@Test
+	public void testForConnection() throws Exception {
+		assertNotNull(cache);
+		assertNull(StatementCache.forConnection(physical));
+		assertSame(cache, StatementCache.forConnection(conn));
+	}
+
+	@Test
+	public void testHit() throws Exception {
+		PreparedStatement s1 = cache.prepareStatement(conn, "select 1", StatementCache.NO_OPTIONS);
+		cache.release(s1);
+		PreparedStatement s2 = cache.prepareStatement(conn, "select 1", StatementCache.NO_OPTIONS);
+		assertSame(s1, s2);
+		assertEquals(1, preparedList.size());
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void testInUseIsNotShared() throws Exception {
+		PreparedStatement s1 = cache.prepareStatement(conn, "select 1", StatementCache.NO_OPTIONS);
+		assertNotNull(s1);
+		assertNull(cache.prepareStatement(conn, "select 1", StatementCache.NO_OPTIONS));
+	}
+
+	@Test
+	public void testOptionsArePartOfKey() throws Exception {
+		PreparedStatement s1 = cache.prepareStatement(conn, "insert", StatementCache.NO_OPTIONS);
+		cache.release(s1);
+		PreparedStatement s2 = cache.prepareStatement(conn, "insert", PreparedStatement.RETURN_GENERATED_KEYS);
+		assertNotSame(s1, s2);
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		PreparedStatement s1 = cache.prepareStatement(conn, "select 1", StatementCache.NO_OPTIONS);
+		cache.release(s1);
+		PreparedStatement s2 = cache.prepareStatement(conn, "select 2", StatementCache.NO_OPTIONS);
+		cache.release(s2);
+
+		// Use s1 again, so s2 is the least recently used
+		cache.release(cache.prepareStatement(conn, "select 1", StatementCache.NO_OPTIONS));
+
+		PreparedStatement s3 = cache.prepareStatement(conn, "select 3", StatementCache.NO_OPTIONS);
+		cache.release(s3);
+		assertEquals(2, cache.size());
+		assertTrue(closedSet.contains(s2));
+		assertFalse(closedSet.contains(s1));
+		assertFalse(closedSet.contains(s3));
+	}
+
+	@Test
+	public void testEvictedInUseIsClosedOnRelease() throws Exception {
+		PreparedStatement s1 = cache.prepareStatement(conn, "select 1", StatementCache.NO_OPTIONS);
+		cache.release(cache.prepareStatement(conn, "select 2", StatementCache.NO_OPTIONS));
+		cache.release(cache.prepareStatement(conn, "select 3", StatementCache.NO_OPTIONS));
+
+		// s1 was evicted while in use: it is closed when released
+		assertFalse(closedSet.contains(s1));
+		cache.release(s1);
+		assertTrue(closedSet.contains(s1));
+	}
+
+	@Test
+	public void testDetachClosesStatements() throws Exception {
+		PreparedStatement s1 = cache.prepareStatement(conn, "select 1", StatementCache.NO_OPTIONS);
+		cache.release(s1);
+		StatementCache.detach(conn);
+		assertTrue(closedSet.contains(s1));
+		assertEquals(0, cache.size());
+	}
+}
@@ -0,0 +1,161 @@
+package org.cloudcoder.app.shared.model;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+//
+// Differential test: check that RopeTextDocument behaves exactly the
+// same way as TextDocument, both for the line operations and for
+// Changes applied using ApplyChangeToTextDocument, including
+// Changes which fail to apply.
+//
+public class RopeTextDocumentTest {
+	private static final String[] WORDS = { "int", " ", "x", "=", "1", ";", "\t", "{", "}", "\n", "\r\n", "" };
+	
+	private Random rng;
+	private TextDocument expected;
+	private RopeTextDocument actual;
+	
+	@Before
+	public void setUp() {
+		rng = new Random(12345L);
+		expected = new TextDocument();
+		actual = new RopeTextDocument();
+	}
+	
+	@Test
+	public void testEmpty() {
+		assertEquals(0, actual.getNumLines());
+		assertEquals("", actual.getText());
+	}
+	
+	@Test
+	public void testSetText() {
+		String[] texts = { "", "\n", "a", "a\n", "a\nb", "a\nb\n", "\n\n\na\n\n", "a\r\nb\r\n" };
+		for (String text : texts) {
+			expected.setText(text);
+			actual.setText(text);
+			checkSame();
+		}
+	}
+	
+	@Test
+	public void testLineOperations() {
+		for (int i = 0; i < 20000; i++) {
+			int numLines = expected.getNumLines();
+			// Sometimes use an out of range index
+			int index = rng.nextInt(numLines + 3) - 1;
+			String line = randomText(3) + "\n";
+			String text = randomText(100);
+			String op;
+			switch (rng.nextInt(numLines > 200 ? 7 : 6)) {
+			case 0: op = "append"; break;
+			case 1: op = "insertLine"; break;
+			case 2: op = "setLine"; break;
+			case 3: op = "getLine"; break;
+			case 4: op = rng.nextInt(50) == 0 ? "setText" : "insertLine"; break;
+			default: op = "removeLine"; break;
+			}
+			String expectedResult = lineOperation(expected, op, index, line, text);
+			String actualResult = lineOperation(actual, op, index, line, text);
+			assertEquals(op + " " + index, expectedResult, actualResult);
+			checkSame();
+		}
+	}
+	
+	@Test
+	public void testApplyChanges() {
+		ApplyChangeToTextDocument applicator = new ApplyChangeToTextDocument();
+		for (int i = 0; i < 20000; i++) {
+			if (i % 2000 == 0) {
+				String text = randomText(200);
+				expected.setText(text);
+				actual.setText(text);
+			}
+			Change change = randomChange();
+			String expectedResult = apply(applicator, change, expected);
+			String actualResult = apply(applicator, change, actual);
+			assertEquals(change.toString(), expectedResult, actualResult);
+			checkSame();
+		}
+	}
+	
+	private void checkSame() {
+		assertEquals(expected.getNumLines(), actual.getNumLines());
+		for (int i = 0; i < expected.getNumLines(); i++) {
+			assertEquals(expected.getLine(i), actual.getLine(i));
+		}
+		assertEquals(expected.getText(), actual.getText());
+	}
+	
+	private String lineOperation(ITextDocument doc, String op, int index, String line, String text) {
+		try {
+			if (op.equals("append")) {
+				doc.append(line);
+			} else if (op.equals("insertLine")) {
+				doc.insertLine(index, line);
+			} else if (op.equals("setLine")) {
+				doc.setLine(index, line);
+			} else if (op.equals("getLine")) {
+				return doc.getLine(index);
+			} else if (op.equals("setText")) {
+				doc.setText(text);
+			} else {
+				doc.removeLine(index);
+			}
+			return "ok";
+		} catch (IndexOutOfBoundsException e) {
+			return "IndexOutOfBoundsException";
+		}
+	}
+	
+	private String apply(ApplyChangeToTextDocument applicator, Change change, ITextDocument doc) {
+		try {
+			applicator.apply(change, doc);
+			return "ok";
+		} catch (RuntimeException e) {
+			return e.getClass().getName();
+		}
+	}
+	
+	private Change randomChange() {
+		int numLines = expected.getNumLines();
+		int row = numLines > 0 ? rng.nextInt(numLines + 1) : 0;
+		int col = rng.nextInt(8);
+		int endRow = row + (rng.nextInt(4) == 0 ? rng.nextInt(3) : 0);
+		String text;
+		if (row < numLines && rng.nextBoolean()) {
+			// Use text that is actually in the document, so that most
+			// removes succeed
+			String line = expected.getLine(row);
+			col = rng.nextInt(line.length() + 1);
+			text = line.substring(col, col + rng.nextInt(line.length() - col + 1));
+			if (endRow > row) {
+				text = text + randomText(endRow - row + 1);
+			}
+		} else {
+			text = randomText(rng.nextInt(4) + 1);
+		}
+		ChangeType type;
+		switch (rng.nextInt(10)) {
+		case 0: case 1: case 2: case 3: type = ChangeType.INSERT_TEXT; break;
+		case 4: case 5: case 6: type = ChangeType.REMOVE_TEXT; break;
+		case 7: type = ChangeType.INSERT_LINES; break;
+		case 8: type = ChangeType.REMOVE_LINES; break;
+		default: type = rng.nextInt(10) == 0 ? ChangeType.FULL_TEXT : ChangeType.INSERT_TEXT; break;
+		}
+		return new Change(type, row, col, endRow, col, 0L, 1, 1, text);
+	}
+	
+	private String randomText(int numWords) {
+		StringBuilder buf = new StringBuilder();
+		for (int i = 0; i < numWords; i++) {
+			buf.append(WORDS[rng.nextInt(WORDS.length)]);
+		}
+		return buf.toString();
+	}
+}
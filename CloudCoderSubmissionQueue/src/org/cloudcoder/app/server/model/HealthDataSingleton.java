@@ -21,6 +21,8 @@ package org.cloudcoder.app.server.model;
 import java.util.Iterator;
 import java.util.LinkedList;
 
+import org.cloudcoder.app.server.submitsvc.SubmissionPriority;
+import org.cloudcoder.app.server.submitsvc.SubmissionResultCache;
 import org.cloudcoder.app.server.submitsvc.oop.OutOfProcessSubmitService;
 import org.cloudcoder.app.shared.model.HealthData;
 
@@ -55,9 +57,23 @@ public class HealthDataSingleton {
 	private LinkedList<SubmissionQueueSizeSample> submissionQueueSizeSampleList;
 	private volatile int submissionQueueSizeCurrent;
 	private volatile int submissionQueueSizeMaxLastFiveMinutes;
+	private long submissionsDispatched;
+	private long submissionDispatchLatencyTotalMicros;
+	
+	// Per-priority class statistics, indexed by SubmissionPriority ordinal
+	private volatile int[] submissionQueueDepth;
+	private long[] submissionsScheduled;
+	private long[] submissionWaitTotalMicros;
+	private long submissionsShared;
+	private long submissionsSuperseded;
+	private long submissionsDropped;
 	
 	private HealthDataSingleton() {
 		this.submissionQueueSizeSampleList = new LinkedList<SubmissionQueueSizeSample>();
+		int numPriorities = SubmissionPriority.values().length;
+		this.submissionQueueDepth = new int[numPriorities];
+		this.submissionsScheduled = new long[numPriorities];
+		this.submissionWaitTotalMicros = new long[numPriorities];
 	}
 	
 	/**
@@ -108,6 +124,68 @@ public class HealthDataSingleton {
 		return submissionQueueSizeMaxLastFiveMinutes;
 	}
 
+	/**
+	 * Record the latency of handing off a submission to a Builder:
+	 * the time from when the submission was added to the submission
+	 * queue until it was sent to the Builder.
+	 * 
+	 * @param latencyNanos the latency in nanoseconds
+	 */
+	public synchronized void addSubmissionDispatchLatency(long latencyNanos) {
+		submissionsDispatched++;
+		submissionDispatchLatencyTotalMicros += latencyNanos / 1000L;
+	}
+
+	/**
+	 * Update the current number of waiting submissions in given
+	 * priority class.  Like {@link #updateSubmissionQueueSize(int)},
+	 * this should only be called from a single thread.
+	 * 
+	 * @param priority the {@link SubmissionPriority}
+	 * @param depth    the number of waiting submissions in the priority class
+	 */
+	public void updateSubmissionQueueDepth(SubmissionPriority priority, int depth) {
+		int[] updated = submissionQueueDepth.clone();
+		updated[priority.ordinal()] = depth;
+		submissionQueueDepth = updated;
+	}
+
+	/**
+	 * Record the time a submission waited in the submission queue
+	 * before being taken to be tested.
+	 * 
+	 * @param priority  the submission's {@link SubmissionPriority}
+	 * @param waitNanos the wait time in nanoseconds
+	 */
+	public synchronized void addSubmissionWait(SubmissionPriority priority, long waitNanos) {
+		submissionsScheduled[priority.ordinal()]++;
+		submissionWaitTotalMicros[priority.ordinal()] += waitNanos / 1000L;
+	}
+
+	/**
+	 * Record that a submission shared the result of an identical
+	 * submission rather than being tested.
+	 */
+	public synchronized void addSubmissionShared() {
+		submissionsShared++;
+	}
+
+	/**
+	 * Record that a queued submission was superseded by a newer
+	 * submission from the same user for the same problem.
+	 */
+	public synchronized void addSubmissionSuperseded() {
+		submissionsSuperseded++;
+	}
+
+	/**
+	 * Record that a queued submission was dropped because its
+	 * result was no longer needed.
+	 */
+	public synchronized void addSubmissionDropped() {
+		submissionsDropped++;
+	}
+
 	/**
 	 * Get current {@link HealthData}.
 	 * 
@@ -118,6 +196,33 @@ public class HealthDataSingleton {
 		healthData.setSubmissionQueueSizeCurrent(submissionQueueSizeCurrent);
 		healthData.setSubmissionQueueSizeMaxLastFiveMinutes(submissionQueueSizeMaxLastFiveMinutes);
 		healthData.setNumConnectedBuilderThreads(OutOfProcessSubmitService.getInstance().getNumBuilderThreads());
+		synchronized (this) {
+			healthData.setSubmissionsDispatched(submissionsDispatched);
+			healthData.setSubmissionDispatchLatencyTotalMicros(submissionDispatchLatencyTotalMicros);
+			healthData.setSubmissionsScheduledQuiz(submissionsScheduled[SubmissionPriority.QUIZ.ordinal()]);
+			healthData.setSubmissionWaitTotalMicrosQuiz(submissionWaitTotalMicros[SubmissionPriority.QUIZ.ordinal()]);
+			healthData.setSubmissionsScheduledInteractive(submissionsScheduled[SubmissionPriority.INTERACTIVE.ordinal()]);
+			healthData.setSubmissionWaitTotalMicrosInteractive(submissionWaitTotalMicros[SubmissionPriority.INTERACTIVE.ordinal()]);
+			healthData.setSubmissionsScheduledApi(submissionsScheduled[SubmissionPriority.API.ordinal()]);
+			healthData.setSubmissionWaitTotalMicrosApi(submissionWaitTotalMicros[SubmissionPriority.API.ordinal()]);
+			healthData.setSubmissionsScheduledBatch(submissionsScheduled[SubmissionPriority.BATCH.ordinal()]);
+			healthData.setSubmissionWaitTotalMicrosBatch(submissionWaitTotalMicros[SubmissionPriority.BATCH.ordinal()]);
+			healthData.setSubmissionsShared(submissionsShared);
+			healthData.setSubmissionsSuperseded(submissionsSuperseded);
+			healthData.setSubmissionsDropped(submissionsDropped);
+		}
+		SubmissionResultCache resultCache = SubmissionResultCache.getInstance();
+		synchronized (resultCache) {
+			healthData.setSubmissionResultCacheHits(resultCache.getHits());
+			healthData.setSubmissionResultCacheMisses(resultCache.getMisses());
+			healthData.setSubmissionResultCacheEntries(resultCache.getNumEntries());
+			healthData.setSubmissionResultCacheBytes(resultCache.getTotalBytes());
+		}
+		int[] depth = submissionQueueDepth;
+		healthData.setSubmissionQueueDepthQuiz(depth[SubmissionPriority.QUIZ.ordinal()]);
+		healthData.setSubmissionQueueDepthInteractive(depth[SubmissionPriority.INTERACTIVE.ordinal()]);
+		healthData.setSubmissionQueueDepthApi(depth[SubmissionPriority.API.ordinal()]);
+		healthData.setSubmissionQueueDepthBatch(depth[SubmissionPriority.BATCH.ordinal()]);
 		return healthData;
 	}
 }
@@ -46,4 +46,27 @@ public interface IFutureSubmissionResult {
 	 * @throws InterruptedException 
 	 */
 	public SubmissionResult waitFor(long timeoutMs) throws SubmissionException, InterruptedException;
+
+	/**
+	 * Indicate that the result is no longer needed, for example because
+	 * the user has made a newer submission.  If testing hasn't started yet,
+	 * and the result isn't needed by another identical submission,
+	 * the submission won't be tested.  Has no effect if the result
+	 * is already available or has already been cancelled.
+	 */
+	public void cancel();
+
+	/**
+	 * Register a callback to be invoked once, when the result becomes
+	 * available (or testing fails or is cancelled).  If the result is
+	 * already available, the callback is invoked immediately by
+	 * the calling thread.  Otherwise, it is invoked by the thread which
+	 * completes the submission, so it must return promptly and must not
+	 * block: typically, it just wakes up a client waiting for the result,
+	 * which can then call {@link #waitFor(long)} to retrieve it.
+	 * This allows a client to wait for the result without tying up a thread.
+	 * 
+	 * @param listener the callback to invoke when the result is available
+	 */
+	public void addCompletionListener(Runnable listener);
 }
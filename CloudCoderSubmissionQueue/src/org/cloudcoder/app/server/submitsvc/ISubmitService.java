@@ -37,7 +37,8 @@ import org.cloudcoder.app.shared.model.TestCase;
  */
 public interface ISubmitService {
 	/**
-	 * Submit a problem and program text.
+	 * Submit a problem and program text, as an {@link SubmissionPriority#INTERACTIVE}
+	 * submission with no specific user.
 	 * An {@link IFutureSubmissionResult} will be returned, which
 	 * eventually will yield a {@link SubmissionResult}
 	 * (which will contain a list of TestResults,
@@ -50,4 +51,29 @@ public interface ISubmitService {
 	 *         a {@link SubmissionResult}
 	 */
 	public IFutureSubmissionResult submitAsync(Problem problem, List<TestCase> testCaseList, String programText) throws SubmissionException;
+
+	/**
+	 * Submit a problem and program text, specifying the submission's
+	 * {@link SubmissionPriority} and the user making the submission.
+	 * These are used to schedule the testing of submissions:
+	 * higher priority classes are tested first, and within a priority
+	 * class, submissions from different courses and users are
+	 * tested in round-robin order.
+	 * If the user already has a submission for the same problem
+	 * waiting to be tested, it is superseded by the new submission
+	 * (and will not be tested); if an identical submission (same
+	 * problem and program text) is already being tested, the new
+	 * submission will share its result.
+	 * 
+	 * @param problem      a Problem
+	 * @param testCaseList the Problem's TestCases
+	 * @param programText  program text
+	 * @param priority     the {@link SubmissionPriority}
+	 * @param userId       the id of the user making the submission
+	 *                     (-1 if there is no user)
+	 * @return an {@link IFutureSubmissionResult}, which will eventually yield
+	 *         a {@link SubmissionResult}
+	 */
+	public IFutureSubmissionResult submitAsync(Problem problem, List<TestCase> testCaseList, String programText,
+			SubmissionPriority priority, int userId) throws SubmissionException;
 }
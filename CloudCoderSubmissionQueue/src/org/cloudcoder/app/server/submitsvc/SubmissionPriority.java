@@ -0,0 +1,49 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.submitsvc;
+
+/**
+ * Priority classes for submissions.  Submissions in a higher priority
+ * class are tested before submissions in a lower priority class,
+ * except that a lower priority class which has been waiting too long
+ * is served anyway, so that it can't be starved.
+ * The classes are declared from highest to lowest priority.
+ * 
+ * @author David Hovemeyer
+ */
+public enum SubmissionPriority {
+	/** Submissions by students taking a quiz. */
+	QUIZ,
+	/** Submissions and runs by students working interactively. */
+	INTERACTIVE,
+	/** Submissions made through the builder web service API. */
+	API,
+	/** Bulk submissions, e.g., retesting of snapshots for data analysis. */
+	BATCH;
+	
+	/**
+	 * Check whether submissions in this priority class are made by a
+	 * user who is waiting for the result, so that a newer submission by
+	 * the same user for the same problem makes an older one unnecessary.
+	 * 
+	 * @return true if this is an interactive priority class
+	 */
+	public boolean isInteractive() {
+		return this == QUIZ || this == INTERACTIVE;
+	}
+}
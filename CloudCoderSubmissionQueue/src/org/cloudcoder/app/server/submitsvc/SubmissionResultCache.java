@@ -0,0 +1,304 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.submitsvc;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.cloudcoder.app.shared.model.CompilationOutcome;
+import org.cloudcoder.app.shared.model.CompilationResult;
+import org.cloudcoder.app.shared.model.CompilerDiagnostic;
+import org.cloudcoder.app.shared.model.ProblemType;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.SubmissionResultAnnotation;
+import org.cloudcoder.app.shared.model.TestOutcome;
+import org.cloudcoder.app.shared.model.TestResult;
+
+/**
+ * Cache of {@link SubmissionResult}s, keyed by the content of the
+ * submission (a hash of the problem and its test cases, and a hash of
+ * the normalized program text).  Testing a submission identical to
+ * one that was tested recently can then skip the Builder entirely.
+ * Only results which don't depend on timing or on the state of the
+ * Builder are cached: results where a test timed out, or where
+ * an internal error occurred, are not.
+ * 
+ * <p>The cache has a memory budget, based on an estimate of the size
+ * of each cached result, and the least-recently-used results are evicted
+ * when it is exceeded.  Since keys include a hash of the problem and
+ * test cases, editing a problem can't cause an out-of-date result to be
+ * used, but {@link #invalidateProblem(int)} should be called when
+ * a problem is edited, so that its results don't take up space.
+ * 
+ * <p>Configuration properties:
+ * <ul>
+ * <li><b>cloudcoder.submitsvc.resultCache.maxBytes</b>: memory budget in bytes
+ *     (default 16MB); 0 disables the cache</li>
+ * <li><b>cloudcoder.submitsvc.resultCache.excludeProblemTypes</b>: comma-separated
+ *     list of {@link ProblemType}s whose results should not be cached, for
+ *     example because the test programs use random numbers (default none)</li>
+ * </ul>
+ * 
+ * @author David Hovemeyer
+ */
+public class SubmissionResultCache {
+	private static final SubmissionResultCache theInstance = new SubmissionResultCache();
+	
+	/**
+	 * Get the singleton instance.
+	 * 
+	 * @return the singleton instance
+	 */
+	public static SubmissionResultCache getInstance() {
+		return theInstance;
+	}
+	
+	private static final long DEFAULT_MAX_BYTES = 16L*1024*1024;
+	
+	// Rough estimates of JVM memory use
+	private static final int OBJECT_OVERHEAD = 32;
+	private static final int STRING_OVERHEAD = 48;
+	
+	private static class Entry {
+		final int problemId;
+		final SubmissionResult result;
+		final long size;
+		
+		Entry(int problemId, SubmissionResult result, long size) {
+			this.problemId = problemId;
+			this.result = result;
+			this.size = size;
+		}
+	}
+	
+	private long maxBytes;
+	private Set<ProblemType> excludedProblemTypes;
+	private final LinkedHashMap<String, Entry> map;
+	private final Map<Integer, Set<String>> keysByProblem;
+	private long totalBytes;
+	private long hits;
+	private long misses;
+	
+	private SubmissionResultCache() {
+		this.maxBytes = DEFAULT_MAX_BYTES;
+		this.excludedProblemTypes = new HashSet<ProblemType>();
+		this.map = new LinkedHashMap<String, Entry>(16, 0.75f, true); // access order, for LRU eviction
+		this.keysByProblem = new HashMap<Integer, Set<String>>();
+	}
+	
+	/**
+	 * Configure the cache from configuration properties (i.e., as specified in
+	 * cloudcoder.properties).  Any cached results are discarded.
+	 * 
+	 * @param config the configuration properties
+	 */
+	public synchronized void configure(Properties config) {
+		this.maxBytes = Long.parseLong(config.getProperty("cloudcoder.submitsvc.resultCache.maxBytes", String.valueOf(DEFAULT_MAX_BYTES)));
+		this.excludedProblemTypes = new HashSet<ProblemType>();
+		String exclude = config.getProperty("cloudcoder.submitsvc.resultCache.excludeProblemTypes", "").trim();
+		if (!exclude.equals("")) {
+			for (String name : exclude.split("\\s*,\\s*")) {
+				excludedProblemTypes.add(ProblemType.valueOf(name));
+			}
+		}
+		map.clear();
+		keysByProblem.clear();
+		totalBytes = 0L;
+	}
+	
+	/**
+	 * Determine whether results for a given problem type can be cached.
+	 * 
+	 * @param problemType the {@link ProblemType}
+	 * @return true if results can be cached, false if not
+	 */
+	public synchronized boolean isCacheable(ProblemType problemType) {
+		return maxBytes > 0 && !excludedProblemTypes.contains(problemType);
+	}
+	
+	/**
+	 * Find a cached result.
+	 * 
+	 * @param key the content key of the submission
+	 * @return the cached {@link SubmissionResult}, or null if there is no
+	 *         cached result; the returned object must not be modified
+	 */
+	public synchronized SubmissionResult find(String key) {
+		Entry entry = map.get(key);
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.result;
+	}
+	
+	/**
+	 * Add a result to the cache, if it is deterministic (doesn't depend
+	 * on timing or on the state of the Builder).  The result must not be modified
+	 * once it has been added.
+	 * 
+	 * @param key       the content key of the submission
+	 * @param problemId the problem id
+	 * @param result    the {@link SubmissionResult}
+	 */
+	public synchronized void put(String key, int problemId, SubmissionResult result) {
+		if (maxBytes <= 0 || !isDeterministic(result)) {
+			return;
+		}
+		long size = estimateSize(key, result);
+		if (size > maxBytes) {
+			return;
+		}
+		
+		remove(key);
+		map.put(key, new Entry(problemId, result, size));
+		Set<String> keys = keysByProblem.get(problemId);
+		if (keys == null) {
+			keys = new HashSet<String>();
+			keysByProblem.put(problemId, keys);
+		}
+		keys.add(key);
+		totalBytes += size;
+		
+		// Evict least-recently-used entries until the cache is within its budget
+		Iterator<Map.Entry<String, Entry>> i = map.entrySet().iterator();
+		while (totalBytes > maxBytes && i.hasNext()) {
+			Map.Entry<String, Entry> eldest = i.next();
+			i.remove();
+			forget(eldest.getKey(), eldest.getValue());
+		}
+	}
+	
+	/**
+	 * Discard all cached results for given problem.
+	 * This should be called when a problem or its test cases are modified.
+	 * 
+	 * @param problemId the problem id
+	 */
+	public synchronized void invalidateProblem(int problemId) {
+		Set<String> keys = keysByProblem.remove(problemId);
+		if (keys != null) {
+			for (String key : keys) {
+				Entry entry = map.remove(key);
+				if (entry != null) {
+					totalBytes -= entry.size;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return the number of cache hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+	
+	/**
+	 * @return the number of cache misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+	
+	/**
+	 * @return the number of cached results
+	 */
+	public synchronized int getNumEntries() {
+		return map.size();
+	}
+	
+	/**
+	 * @return the estimated memory used by cached results, in bytes
+	 */
+	public synchronized long getTotalBytes() {
+		return totalBytes;
+	}
+	
+	private void remove(String key) {
+		Entry entry = map.remove(key);
+		if (entry != null) {
+			forget(key, entry);
+		}
+	}
+	
+	private void forget(String key, Entry entry) {
+		totalBytes -= entry.size;
+		Set<String> keys = keysByProblem.get(entry.problemId);
+		if (keys != null) {
+			keys.remove(key);
+			if (keys.isEmpty()) {
+				keysByProblem.remove(entry.problemId);
+			}
+		}
+	}
+	
+	private static boolean isDeterministic(SubmissionResult result) {
+		CompilationResult compilationResult = result.getCompilationResult();
+		if (compilationResult == null) {
+			return false;
+		}
+		CompilationOutcome outcome = compilationResult.getOutcome();
+		if (outcome != CompilationOutcome.SUCCESS && outcome != CompilationOutcome.FAILURE) {
+			return false;
+		}
+		if (result.getTestResults() != null) {
+			for (TestResult testResult : result.getTestResults()) {
+				TestOutcome testOutcome = testResult.getOutcome();
+				if (testOutcome == TestOutcome.FAILED_FROM_TIMEOUT || testOutcome == TestOutcome.INTERNAL_ERROR) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+	
+	private static long estimateSize(String key, SubmissionResult result) {
+		long size = OBJECT_OVERHEAD + sizeOf(key);
+		if (result.getCompilationResult().getCompilerDiagnosticList() != null) {
+			for (CompilerDiagnostic diag : result.getCompilationResult().getCompilerDiagnosticList()) {
+				size += OBJECT_OVERHEAD + sizeOf(diag.getMessage());
+			}
+		}
+		if (result.getTestResults() != null) {
+			for (TestResult testResult : result.getTestResults()) {
+				size += OBJECT_OVERHEAD
+						+ sizeOf(testResult.getMessage())
+						+ sizeOf(testResult.getStdout())
+						+ sizeOf(testResult.getStderr())
+						+ sizeOf(testResult.getInput())
+						+ sizeOf(testResult.getExpectedOutput())
+						+ sizeOf(testResult.getActualOutput());
+			}
+		}
+		for (SubmissionResultAnnotation annotation : result.getAnnotationList()) {
+			size += OBJECT_OVERHEAD + sizeOf(annotation.getKey()) + sizeOf(annotation.getValue());
+		}
+		return size;
+	}
+	
+	private static long sizeOf(String s) {
+		return s != null ? STRING_OVERHEAD + 2L*s.length() : 0L;
+	}
+}
@@ -17,10 +17,14 @@
 
 package org.cloudcoder.app.server.submitsvc.oop;
 
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.List;
 
-import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
+import org.cloudcoder.app.server.submitsvc.SubmissionPriority;
+import org.cloudcoder.app.shared.model.ConvertBytesToHex;
 import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.SHA1;
 import org.cloudcoder.app.shared.model.Submission;
 import org.cloudcoder.app.shared.model.SubmissionException;
 import org.cloudcoder.app.shared.model.SubmissionResult;
@@ -29,22 +33,56 @@ import org.cloudcoder.app.shared.model.TestCase;
 /**
  * A Submission (Problem, TestCases, and program text)
  * waiting to be tested by a remote Builder.
+ * Clients wait for the result using a {@link SubmissionHandle}:
+ * see {@link SubmissionCoalescer}.
  *  
  * @author David Hovemeyer
  */
-public class OOPBuildServiceSubmission implements IFutureSubmissionResult {
+public class OOPBuildServiceSubmission {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
 	private Object lock = new Object();
 	private Submission submission;
+	private final String versionHash;
+	private final String contentKey;
+	private final SubmissionPriority priority;
+	private final int userId;
+	private final int courseId;
 	private boolean ready;
 	private SubmissionResult submissionResult;
 	private Exception error;
 	private int numAttempts;
+	private volatile long submitTime;
+	private volatile SubmissionCoalescer coalescer;
+	private List<Runnable> completionListenerList; // protected by lock
 	
-	public OOPBuildServiceSubmission(Submission submission) {
+	/**
+	 * Constructor.
+	 * 
+	 * @param submission the {@link Submission} to test
+	 * @param priority   the {@link SubmissionPriority}
+	 * @param userId     the id of the user who made the submission, or -1 if
+	 *                   it wasn't made on behalf of a specific user
+	 */
+	public OOPBuildServiceSubmission(Submission submission, SubmissionPriority priority, int userId) {
 		this.submission = submission;
+		this.priority = priority;
+		this.userId = userId;
+		Integer courseId = submission.getProblem().getCourseId();
+		this.courseId = courseId != null ? courseId : -1;
+		this.versionHash = ProblemVersion.compute(submission.getProblem(), submission.getTestCaseList());
+		byte[] programTextHash = new SHA1().digest(normalize(submission.getProgramText()).getBytes(UTF8));
+		this.contentKey = versionHash + ":" + new ConvertBytesToHex(programTextHash).convert();
 	}
 	
-	@Override
+	/**
+	 * Synchronous timed wait for testing to complete.
+	 * 
+	 * @param timeoutMs maximum wait time in milliseconds
+	 * @return the {@link SubmissionResult}, or null if testing is still in progress
+	 * @throws SubmissionException if testing could not be completed
+	 * @throws InterruptedException
+	 */
 	public SubmissionResult waitFor(long timeoutMs) throws SubmissionException, InterruptedException {
 		synchronized (lock) {
 			if (error != null) {
@@ -78,6 +116,57 @@ public class OOPBuildServiceSubmission implements IFutureSubmissionResult {
 		}
 	}
 	
+	/**
+	 * @return the version hash of the Problem and TestCases (see {@link ProblemVersion})
+	 */
+	public String getVersionHash() {
+		return versionHash;
+	}
+	
+	/**
+	 * @return a key identifying the content of the submission: submissions
+	 *         with the same key have identical Problems and TestCases, and
+	 *         program text which differs at most in line terminators and
+	 *         trailing whitespace at the end of the text, and so will have
+	 *         identical results
+	 */
+	public String getContentKey() {
+		return contentKey;
+	}
+	
+	/**
+	 * @return the {@link SubmissionPriority}
+	 */
+	public SubmissionPriority getPriority() {
+		return priority;
+	}
+	
+	/**
+	 * @return the id of the user who made the submission, or -1 if
+	 *         it wasn't made on behalf of a specific user
+	 */
+	public int getUserId() {
+		return userId;
+	}
+	
+	/**
+	 * @return the id of the course the submission's problem belongs to,
+	 *         or -1 if not known
+	 */
+	public int getCourseId() {
+		return courseId;
+	}
+	
+	/**
+	 * @return the {@link SubmissionResult}, or null if testing has not
+	 *         completed successfully
+	 */
+	public SubmissionResult getSubmissionResult() {
+		synchronized (lock) {
+			return ready ? submissionResult : null;
+		}
+	}
+	
 	public void setSubmissionResult(SubmissionResult result) {
 		this.submissionResult = result;
 	}
@@ -89,17 +178,84 @@ public class OOPBuildServiceSubmission implements IFutureSubmissionResult {
 	/**
 	 * Mark this submission as being "ready", meaning that
 	 * either testing has completed, or testing could not be
-	 * completed due to repeated failures, and we've given up.
+	 * completed due to repeated failures, and we've given up
+	 * (or testing was cancelled).
 	 * Either setSubmissionResult() or setError()
 	 * must be called before setting ready to true.
 	 */
 	public void setReady() {
+		List<Runnable> listeners;
 		synchronized (lock) {
 			this.ready = true;
 			lock.notifyAll();
+			listeners = completionListenerList;
+			completionListenerList = null;
+		}
+		SubmissionCoalescer theCoalescer = coalescer;
+		if (theCoalescer != null) {
+			theCoalescer.onReady(this);
+		}
+		if (listeners != null) {
+			for (Runnable listener : listeners) {
+				listener.run();
+			}
+		}
+	}
+	
+	/**
+	 * Register a callback to be invoked when the submission is ready.
+	 * If it is already ready, the callback is invoked immediately.
+	 * 
+	 * @param listener the callback
+	 * @see org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult#addCompletionListener(Runnable)
+	 */
+	public void addCompletionListener(Runnable listener) {
+		synchronized (lock) {
+			if (!ready) {
+				if (completionListenerList == null) {
+					completionListenerList = new ArrayList<Runnable>();
+				}
+				completionListenerList.add(listener);
+				return;
+			}
+		}
+		listener.run();
+	}
+	
+	/**
+	 * @return true if testing has completed (or has failed or been cancelled)
+	 */
+	public boolean isReady() {
+		synchronized (lock) {
+			return ready;
 		}
 	}
 	
+	/**
+	 * Set the {@link SubmissionCoalescer} to notify when the submission is ready.
+	 * 
+	 * @param coalescer the {@link SubmissionCoalescer}
+	 */
+	public void setCoalescer(SubmissionCoalescer coalescer) {
+		this.coalescer = coalescer;
+	}
+	
+	/**
+	 * @param submitTime the time (as returned by System.nanoTime())
+	 *                   when the submission was added to the submission queue
+	 */
+	public void setSubmitTime(long submitTime) {
+		this.submitTime = submitTime;
+	}
+
+	/**
+	 * @return the time (as returned by System.nanoTime())
+	 *         when the submission was added to the submission queue
+	 */
+	public long getSubmitTime() {
+		return submitTime;
+	}
+	
 	/**
 	 * @param numAttempts the numAttempts to set
 	 */
@@ -113,4 +269,15 @@ public class OOPBuildServiceSubmission implements IFutureSubmissionResult {
 	public int getNumAttempts() {
 		return numAttempts;
 	}
+	
+	private static String normalize(String programText) {
+		// Line terminators and trailing whitespace at the end of
+		// the program text can't affect the result of testing
+		String text = programText.replace("\r\n", "\n").replace('\r', '\n');
+		int end = text.length();
+		while (end > 0 && Character.isWhitespace(text.charAt(end - 1))) {
+			end--;
+		}
+		return text.substring(0, end);
+	}
 }
@@ -43,6 +43,8 @@ import javax.net.ssl.X509TrustManager;
 
 import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
 import org.cloudcoder.app.server.submitsvc.ISubmitService;
+import org.cloudcoder.app.server.submitsvc.SubmissionPriority;
+import org.cloudcoder.app.server.submitsvc.SubmissionResultCache;
 import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.Submission;
 import org.cloudcoder.app.shared.model.SubmissionException;
@@ -88,10 +90,12 @@ public class OutOfProcessSubmitService implements ISubmitService {
 	private String keystoreFilename;
 	private String keystorePassword;
 	private int port;
+	private long maxWaitMillis;
 
 	/**
-	 * Poll to see how many worker tasks, and thus how many connected builder threads,
-	 * there are.
+	 * Poll to see how many connected builder threads there are:
+	 * i.e., the total number of execution slots advertised by the
+	 * builder connections.
 	 * 
 	 * @return number of connected builder threads
 	 */
@@ -105,7 +109,7 @@ public class OutOfProcessSubmitService implements ISubmitService {
 			logger.warn("getNumBuilderThreads() called, but there is no server task");
 			return 0;
 		}
-		return theServerTask.getNumWorkerTasks();
+		return theServerTask.getNumBuilderSlots();
 	}
 	
 	private String getOptionalProperty(Properties config, String propName, String defVal) {
@@ -140,17 +144,25 @@ public class OutOfProcessSubmitService implements ISubmitService {
 			logger.info("Using keystore {}. password={}", this.keystoreFilename, this.keystorePassword);
 		}
 		this.port = Integer.parseInt(getRequiredProperty(config, "cloudcoder.submitsvc.oop.port"));
+		this.maxWaitMillis = Long.parseLong(getOptionalProperty(config, "cloudcoder.submitsvc.oop.maxWaitMillis", "10000"));
+		SubmissionResultCache.getInstance().configure(config);
 	}
 	
 	@Override
 	public IFutureSubmissionResult submitAsync(Problem problem, List<TestCase> testCaseList, String programText) 
 	throws SubmissionException 
 	{
+		return submitAsync(problem, testCaseList, programText, SubmissionPriority.INTERACTIVE, -1);
+	}
+	
+	@Override
+	public IFutureSubmissionResult submitAsync(Problem problem, List<TestCase> testCaseList, String programText,
+			SubmissionPriority priority, int userId) throws SubmissionException {
 		if (serverTask == null) {
 			throw new IllegalStateException();
 		}
 		
-		if (serverTask.getNumWorkerTasks() == 0) {
+		if (serverTask.getNumBuilderSlots() == 0) {
 			// If no remote Builder threads are connected and running,
 			// then there is no point in adding this submission to the queue,
 			// since it could sit there forever.  Fail early in this case
@@ -159,11 +171,7 @@ public class OutOfProcessSubmitService implements ISubmitService {
 		}
 
 		// Add the submission to the queue.
-		OOPBuildServiceSubmission future = new OOPBuildServiceSubmission(
-				new Submission(problem, testCaseList, programText));
-		serverTask.submit(future);
-		
-		return future;
+		return serverTask.submit(new Submission(problem, testCaseList, programText), priority, userId);
 	}
 	
 	private ServerSocket createSSLServerSocket(int port)
@@ -259,7 +267,7 @@ public class OutOfProcessSubmitService implements ISubmitService {
 	    	serverSocket = new ServerSocket(port);
 	    }
 		
-		serverTask = new ServerTask(serverSocket, useSSL, hostName);
+		serverTask = new ServerTask(serverSocket, useSSL, hostName, maxWaitMillis);
 		serverThread = new Thread(serverTask);
 		serverThread.start();
 		logger.info("Out of process submit service server thread started");
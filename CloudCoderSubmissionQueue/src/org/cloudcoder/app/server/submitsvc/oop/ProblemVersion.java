@@ -0,0 +1,92 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import java.nio.charset.Charset;
+import java.util.List;
+
+import org.cloudcoder.app.shared.model.ConvertBytesToHex;
+import org.cloudcoder.app.shared.model.HashProblemAndTestCaseData;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.SHA1;
+import org.cloudcoder.app.shared.model.TestCase;
+
+/**
+ * Compute a version hash of a {@link Problem} and its {@link TestCase}s,
+ * which is sent to the Builder along with the problem id so that the Builder
+ * can use a cached copy of the Problem and TestCases only if it is
+ * identical to the current version.
+ *
+ * <p>Unlike {@link HashProblemAndTestCaseData}, which identifies the
+ * "content" of an exercise, the hash is computed from the exact
+ * (untrimmed) values of all of the fields which could affect how a
+ * submission is tested, and each value is length-prefixed so that
+ * different sequences of values can't produce the same input to the hash.
+ *
+ * @author David Hovemeyer
+ */
+public class ProblemVersion {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private SHA1 sha1;
+
+	private ProblemVersion() {
+		this.sha1 = new SHA1();
+	}
+
+	/**
+	 * Compute the version hash.
+	 *
+	 * @param problem       the {@link Problem}
+	 * @param testCaseList  the problem's {@link TestCase}s
+	 * @return the version hash, as a 40-character hex string
+	 */
+	public static String compute(Problem problem, List<TestCase> testCaseList) {
+		ProblemVersion v = new ProblemVersion();
+
+		v.update(String.valueOf(problem.getProblemId()));
+		v.update(String.valueOf(problem.getProblemType()));
+		v.update(problem.getTestname());
+		v.update(problem.getBriefDescription());
+		v.update(problem.getDescription());
+		v.update(problem.getSkeleton());
+		v.update(String.valueOf(problem.getSchemaVersion()));
+		v.update(problem.getExternalLibraryUrl());
+		v.update(problem.getExternalLibraryMD5());
+
+		v.update(String.valueOf(testCaseList.size()));
+		for (TestCase testCase : testCaseList) {
+			v.update(testCase.getTestCaseName());
+			v.update(testCase.getInput());
+			v.update(testCase.getOutput());
+			v.update(String.valueOf(testCase.isSecret()));
+		}
+
+		return new ConvertBytesToHex(v.sha1.digest()).convert();
+	}
+
+	private void update(String s) {
+		if (s == null) {
+			sha1.update(new byte[]{ 'N' });
+		} else {
+			byte[] bytes = s.getBytes(UTF8);
+			sha1.update((bytes.length + ":").getBytes(UTF8));
+			sha1.update(bytes);
+		}
+	}
+}
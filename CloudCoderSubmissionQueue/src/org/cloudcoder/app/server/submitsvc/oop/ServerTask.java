@@ -22,10 +22,15 @@ import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.UnknownHostException;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.cloudcoder.app.server.model.HealthDataSingleton;
-import org.cloudcoder.app.shared.model.SubmissionException;
+import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
+import org.cloudcoder.app.server.submitsvc.SubmissionPriority;
+import org.cloudcoder.app.shared.model.Submission;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,25 +49,20 @@ public class ServerTask implements Runnable {
     private class HealthMonitorTask implements Runnable {
     	@Override
     	public void run() {
-    		while (!shutdownRequested) {
-    			try {
-    				int size = submissionQueue.size();
-    				HealthDataSingleton.getInstance().updateSubmissionQueueSize(size);
-    				
-    				Thread.sleep(UPDATE_SUBMISSION_QUEUE_SIZE_INTERVAL);
-    			} catch (InterruptedException e) {
-    				// Shutting down
-    				logger.info("Health monitor thread interrupted...");
-    			}
+    		int size = submissionQueue.size();
+    		HealthDataSingleton.getInstance().updateSubmissionQueueSize(size);
+    		for (SubmissionPriority priority : SubmissionPriority.values()) {
+    			HealthDataSingleton.getInstance().updateSubmissionQueueDepth(priority, submissionQueue.size(priority));
     		}
     	}
     }
 
-	private LinkedBlockingQueue<OOPBuildServiceSubmission> submissionQueue;
+	private SubmissionScheduler submissionQueue;
+	private SubmissionCoalescer coalescer;
 	private ServerSocket serverSocket;
 	private WorkerTaskSet workerTaskSet;
 	private volatile boolean shutdownRequested;
-	private Thread healthMonitorThread;
+	private ScheduledExecutorService timer;
 	private boolean usingSSL;
 	private String hostName;
 	
@@ -74,11 +74,23 @@ public class ServerTask implements Runnable {
 	 *                     if false, we will reject connections originating from the
 	 *                     external network
 	 * @param hostName     the (external) hostname of this host 
+	 * @param maxWaitMillis maximum time (in milliseconds) a lower-priority class of submissions
+	 *                     can wait without being served while higher-priority submissions
+	 *                     are being tested: see {@link SubmissionScheduler}
 	 */
-	public ServerTask(ServerSocket serverSocket, boolean usingSSL, String hostName) {
-		this.submissionQueue = new LinkedBlockingQueue<OOPBuildServiceSubmission>();
+	public ServerTask(ServerSocket serverSocket, boolean usingSSL, String hostName, long maxWaitMillis) {
+		this.submissionQueue = new SubmissionScheduler(maxWaitMillis);
+		this.coalescer = new SubmissionCoalescer(submissionQueue);
 		this.serverSocket = serverSocket;
-		this.workerTaskSet = new WorkerTaskSet();
+		this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "ServerTask timer");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		this.workerTaskSet = new WorkerTaskSet(timer);
 		this.shutdownRequested = false;
 		this.usingSSL = usingSSL;
 		this.hostName = hostName;
@@ -88,16 +100,29 @@ public class ServerTask implements Runnable {
 		return workerTaskSet.getNumWorkerTasks();
 	}
 	
-	public void submit(OOPBuildServiceSubmission submission) throws SubmissionException {
-		// add it to the queue so a worker can grab it	
-	    submissionQueue.add(submission);
+	public int getNumBuilderSlots() {
+		return workerTaskSet.getNumBuilderSlots();
+	}
+	
+	/**
+	 * Submit a submission for testing.
+	 * 
+	 * @param submission the {@link Submission}
+	 * @param priority   the {@link SubmissionPriority}
+	 * @param userId     the id of the user making the submission, or -1 if none
+	 * @return the {@link IFutureSubmissionResult} which will yield the result
+	 */
+	public IFutureSubmissionResult submit(Submission submission, SubmissionPriority priority, int userId) {
+		// add it to the queue (unless an identical submission is already
+		// being tested): if a worker is waiting for a submission,
+		// it will be handed off immediately
+		return coalescer.submit(submission, priority, userId);
 	}
 	
 	@Override
 	public void run() {
-		healthMonitorThread = new Thread(new HealthMonitorTask());
-		healthMonitorThread.start();
-		
+		timer.scheduleAtFixedRate(new HealthMonitorTask(),
+				0L, UPDATE_SUBMISSION_QUEUE_SIZE_INTERVAL, TimeUnit.MILLISECONDS);
 		
 		try {
 			InetAddress localHost = InetAddress.getByName("localhost");
@@ -133,9 +158,6 @@ public class ServerTask implements Runnable {
 	public void shutdown() {
 		shutdownRequested = true;
 		
-		// Shut down the submission queue size monitor thread
-		healthMonitorThread.interrupt();
-		
 		// close server sockets (so no new clients can attach)
 		try {
 			serverSocket.close();  // a bit rude, but effective
@@ -146,5 +168,9 @@ public class ServerTask implements Runnable {
 		// shut down worker tasks and wait for them to exit
 		workerTaskSet.shutdownAll();
 		workerTaskSet.waitForAll();
+		
+		// Stop the submission queue size monitor and the keepalive signals
+		// (workers send keepalives while waiting for in-progress submissions)
+		timer.shutdownNow();
 	}
 }
\ No newline at end of file
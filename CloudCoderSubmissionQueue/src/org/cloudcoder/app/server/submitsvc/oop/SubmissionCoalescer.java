@@ -0,0 +1,237 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cloudcoder.app.server.model.HealthDataSingleton;
+import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
+import org.cloudcoder.app.server.submitsvc.SubmissionPriority;
+import org.cloudcoder.app.server.submitsvc.SubmissionResultCache;
+import org.cloudcoder.app.shared.model.Submission;
+import org.cloudcoder.app.shared.model.SubmissionException;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+
+/**
+ * Avoid testing submissions whose results won't be used,
+ * or which are identical to submissions already being tested:
+ * <ul>
+ * <li>If the result of an identical submission is in the
+ *     {@link SubmissionResultCache}, the cached result is used.</li>
+ * <li>If an identical submission (same Problem, TestCases, and
+ *     program text) is already waiting or being tested, a new submission
+ *     shares its result rather than being tested again.</li>
+ * <li>If a user makes a new submission for a problem while
+ *     their previous submission for the same problem is still
+ *     waiting to be tested, the previous submission is superseded
+ *     (removed from the queue).  This applies only to interactive
+ *     priority classes (see {@link SubmissionPriority#isInteractive()}):
+ *     batch submissions, such as retests of a user's snapshots,
+ *     all need their results.</li>
+ * <li>When all of the clients waiting for a submission's result
+ *     have cancelled (see {@link IFutureSubmissionResult#cancel()}),
+ *     the submission is removed from the queue if it is still
+ *     waiting to be tested.</li>
+ * </ul>
+ * A submission that has already been sent to a Builder is allowed
+ * to finish, since its result could still be shared.
+ * The numbers of shared, superseded, and dropped submissions are
+ * recorded in the {@link HealthDataSingleton}.
+ * 
+ * @author David Hovemeyer
+ */
+public class SubmissionCoalescer {
+	/**
+	 * A submission which is waiting or being tested, and the number of
+	 * {@link SubmissionHandle}s that need its result.
+	 */
+	private static class Entry {
+		final OOPBuildServiceSubmission submission;
+		final List<String> userProblemKeyList;
+		int numHolders;
+		
+		Entry(OOPBuildServiceSubmission submission) {
+			this.submission = submission;
+			this.userProblemKeyList = new ArrayList<String>();
+		}
+	}
+	
+	private final SubmissionScheduler submissionQueue;
+	private final Object lock;
+	private final Map<String, Entry> inProgress; // by content key
+	private final Map<String, SubmissionHandle> latestByUserAndProblem;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param submissionQueue the {@link SubmissionScheduler} containing the
+	 *                        submissions waiting to be tested
+	 */
+	public SubmissionCoalescer(SubmissionScheduler submissionQueue) {
+		this.submissionQueue = submissionQueue;
+		this.lock = new Object();
+		this.inProgress = new HashMap<String, Entry>();
+		this.latestByUserAndProblem = new HashMap<String, SubmissionHandle>();
+	}
+	
+	/**
+	 * Submit a submission for testing.
+	 * 
+	 * @param submission the {@link Submission}
+	 * @param priority   the {@link SubmissionPriority}
+	 * @param userId     the id of the user making the submission, or -1 if none
+	 *                   (an interactive submission supersedes the user's previous
+	 *                   interactive submission for the same problem)
+	 * @return the {@link IFutureSubmissionResult} which will yield the result
+	 */
+	public IFutureSubmissionResult submit(Submission submission, SubmissionPriority priority, int userId) {
+		OOPBuildServiceSubmission newSubmission = new OOPBuildServiceSubmission(submission, priority, userId);
+		String userProblemKey = userId >= 0 && priority.isInteractive()
+				? userId + ":" + submission.getProblem().getProblemId() : null;
+		
+		SubmissionResultCache resultCache = SubmissionResultCache.getInstance();
+		if (resultCache.isCacheable(submission.getProblem().getProblemType())) {
+			SubmissionResult cached = resultCache.find(newSubmission.getContentKey());
+			if (cached != null) {
+				// The result is already known
+				newSubmission.setSubmissionResult(cached);
+				newSubmission.setReady();
+				SubmissionHandle previous = null;
+				if (userProblemKey != null) {
+					synchronized (lock) {
+						previous = latestByUserAndProblem.remove(userProblemKey);
+					}
+				}
+				if (previous != null) {
+					release(previous, true);
+				}
+				return new SubmissionHandle(this, newSubmission, null);
+			}
+		}
+		
+		SubmissionHandle handle;
+		SubmissionHandle previous = null;
+		synchronized (lock) {
+			Entry entry = inProgress.get(newSubmission.getContentKey());
+			if (entry != null) {
+				// An identical submission is waiting or being tested: share its result
+				HealthDataSingleton.getInstance().addSubmissionShared();
+			} else {
+				entry = new Entry(newSubmission);
+				inProgress.put(newSubmission.getContentKey(), entry);
+				newSubmission.setCoalescer(this);
+				newSubmission.setSubmitTime(System.nanoTime());
+				submissionQueue.add(newSubmission);
+			}
+			entry.numHolders++;
+			handle = new SubmissionHandle(this, entry.submission, userProblemKey);
+			
+			if (userProblemKey != null) {
+				entry.userProblemKeyList.add(userProblemKey);
+				previous = latestByUserAndProblem.put(userProblemKey, handle);
+			}
+		}
+		
+		if (previous != null) {
+			// The user's previous submission for this problem
+			// is no longer needed
+			release(previous, true);
+		}
+		
+		return handle;
+	}
+	
+	/**
+	 * Called when a client no longer needs a submission's result.
+	 * 
+	 * @param handle the client's {@link SubmissionHandle}
+	 */
+	void cancel(SubmissionHandle handle) {
+		release(handle, false);
+	}
+	
+	/**
+	 * Called by an {@link OOPBuildServiceSubmission} when its
+	 * result is available (or testing has failed).
+	 * 
+	 * @param submission the {@link OOPBuildServiceSubmission}
+	 */
+	void onReady(OOPBuildServiceSubmission submission) {
+		synchronized (lock) {
+			Entry entry = inProgress.get(submission.getContentKey());
+			if (entry != null && entry.submission == submission) {
+				remove(entry);
+			}
+		}
+		
+		SubmissionResult result = submission.getSubmissionResult();
+		SubmissionResultCache resultCache = SubmissionResultCache.getInstance();
+		if (result != null && resultCache.isCacheable(submission.getProblem().getProblemType())) {
+			Integer problemId = submission.getProblem().getProblemId();
+			resultCache.put(submission.getContentKey(), problemId != null ? problemId : -1, result);
+		}
+	}
+	
+	private void remove(Entry entry) {
+		inProgress.remove(entry.submission.getContentKey());
+		for (String userProblemKey : entry.userProblemKeyList) {
+			SubmissionHandle latest = latestByUserAndProblem.get(userProblemKey);
+			if (latest != null && latest.getSubmission() == entry.submission) {
+				latestByUserAndProblem.remove(userProblemKey);
+			}
+		}
+	}
+	
+	private void release(SubmissionHandle handle, boolean superseded) {
+		OOPBuildServiceSubmission submission = handle.getSubmission();
+		synchronized (lock) {
+			if (!handle.release()) {
+				return;
+			}
+			if (!superseded && handle.getUserProblemKey() != null
+					&& latestByUserAndProblem.get(handle.getUserProblemKey()) == handle) {
+				latestByUserAndProblem.remove(handle.getUserProblemKey());
+			}
+			Entry entry = inProgress.get(submission.getContentKey());
+			if (entry == null || entry.submission != submission) {
+				// Already finished
+				return;
+			}
+			entry.numHolders--;
+			if (entry.numHolders > 0 || !submissionQueue.remove(submission)) {
+				// Result is still needed, or the submission is already being tested
+				return;
+			}
+			remove(entry);
+			if (superseded) {
+				HealthDataSingleton.getInstance().addSubmissionSuperseded();
+			} else {
+				HealthDataSingleton.getInstance().addSubmissionDropped();
+			}
+		}
+		
+		// The submission won't be tested
+		submission.setError(new SubmissionException(superseded
+				? "Submission was superseded by a newer submission"
+				: "Submission was cancelled"));
+		submission.setReady();
+	}
+}
@@ -0,0 +1,118 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
+import org.cloudcoder.app.shared.model.ModelObjectUtil;
+import org.cloudcoder.app.shared.model.SubmissionException;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.SubmissionResultAnnotation;
+import org.cloudcoder.app.shared.model.TestResult;
+
+/**
+ * {@link IFutureSubmissionResult} returned to a client of the
+ * {@link OutOfProcessSubmitService}.  Several handles can share the
+ * same {@link OOPBuildServiceSubmission} if identical submissions
+ * were made while it was being tested: see {@link SubmissionCoalescer}.
+ * Since the result may be shared (and may also be cached), each handle
+ * returns its own copy of the {@link TestResult}s, which the client
+ * is free to modify (for example, when storing them in the database).
+ * 
+ * @author David Hovemeyer
+ */
+class SubmissionHandle implements IFutureSubmissionResult {
+	private final SubmissionCoalescer coalescer;
+	private final OOPBuildServiceSubmission submission;
+	private final String userProblemKey;
+	private boolean released; // protected by the coalescer's lock
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param coalescer      the {@link SubmissionCoalescer}
+	 * @param submission     the {@link OOPBuildServiceSubmission} being tested
+	 * @param userProblemKey key identifying the user and problem, or null
+	 *                       if the submission wasn't made by a specific user
+	 */
+	SubmissionHandle(SubmissionCoalescer coalescer, OOPBuildServiceSubmission submission, String userProblemKey) {
+		this.coalescer = coalescer;
+		this.submission = submission;
+		this.userProblemKey = userProblemKey;
+	}
+	
+	/**
+	 * @return the {@link OOPBuildServiceSubmission} being tested
+	 */
+	OOPBuildServiceSubmission getSubmission() {
+		return submission;
+	}
+	
+	/**
+	 * @return key identifying the user and problem, or null
+	 *         if the submission wasn't made by a specific user
+	 */
+	String getUserProblemKey() {
+		return userProblemKey;
+	}
+	
+	/**
+	 * Mark the handle as released.
+	 * 
+	 * @return true if the handle was released, false if it
+	 *         had already been released
+	 */
+	boolean release() {
+		if (released) {
+			return false;
+		}
+		released = true;
+		return true;
+	}
+	
+	@Override
+	public SubmissionResult waitFor(long timeoutMs) throws SubmissionException, InterruptedException {
+		SubmissionResult result = submission.waitFor(timeoutMs);
+		return result != null ? copy(result) : null;
+	}
+	
+	@Override
+	public void cancel() {
+		coalescer.cancel(this);
+	}
+	
+	@Override
+	public void addCompletionListener(Runnable listener) {
+		submission.addCompletionListener(listener);
+	}
+	
+	private static SubmissionResult copy(SubmissionResult result) {
+		SubmissionResult copy = new SubmissionResult(result.getCompilationResult());
+		if (result.getTestResults() != null) {
+			TestResult[] testResults = new TestResult[result.getTestResults().length];
+			for (int i = 0; i < testResults.length; i++) {
+				testResults[i] = new TestResult();
+				ModelObjectUtil.copy(result.getTestResults()[i], testResults[i]);
+			}
+			copy.setTestResults(testResults);
+		}
+		for (SubmissionResultAnnotation annotation : result.getAnnotationList()) {
+			copy.addAnnotation(annotation);
+		}
+		return copy;
+	}
+}
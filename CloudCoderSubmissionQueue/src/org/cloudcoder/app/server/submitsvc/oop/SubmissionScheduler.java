@@ -0,0 +1,252 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import org.cloudcoder.app.server.model.HealthDataSingleton;
+import org.cloudcoder.app.server.submitsvc.SubmissionPriority;
+
+/**
+ * Queue of submissions waiting to be tested, which decides the
+ * order in which they are handed to {@link WorkerTask}s:
+ * <ul>
+ * <li>Submissions in a higher {@link SubmissionPriority} class are taken
+ *     before submissions in a lower priority class.</li>
+ * <li>Within a priority class, submissions are grouped by course, and within
+ *     each course by user.  Courses are served in round-robin order, as are the
+ *     users within a course, and each user's submissions are taken in the
+ *     order they were added.  So, a user or course with many queued submissions
+ *     doesn't delay the submissions of other users and courses.</li>
+ * <li>If a priority class has had submissions waiting, but has not been served,
+ *     for longer than the maximum wait time, it is served ahead of higher
+ *     priority classes, so lower priority classes can't be starved.</li>
+ * </ul>
+ * The time each submission spent waiting in the queue is recorded
+ * by priority class in the {@link HealthDataSingleton}.
+ * 
+ * @author David Hovemeyer
+ */
+public class SubmissionScheduler {
+	/**
+	 * Queued submissions of one priority class.
+	 */
+	private static class ClassQueue {
+		// Submissions by course id and user id, in round-robin order
+		final LinkedHashMap<Integer, LinkedHashMap<Integer, LinkedList<OOPBuildServiceSubmission>>> courseMap;
+		int size;
+		long waitingSince; // time when the class was last served, or became non-empty
+		
+		ClassQueue() {
+			this.courseMap = new LinkedHashMap<Integer, LinkedHashMap<Integer, LinkedList<OOPBuildServiceSubmission>>>();
+		}
+		
+		void add(OOPBuildServiceSubmission submission) {
+			LinkedHashMap<Integer, LinkedList<OOPBuildServiceSubmission>> userMap = courseMap.get(submission.getCourseId());
+			if (userMap == null) {
+				userMap = new LinkedHashMap<Integer, LinkedList<OOPBuildServiceSubmission>>();
+				courseMap.put(submission.getCourseId(), userMap);
+			}
+			LinkedList<OOPBuildServiceSubmission> userQueue = userMap.get(submission.getUserId());
+			if (userQueue == null) {
+				userQueue = new LinkedList<OOPBuildServiceSubmission>();
+				userMap.put(submission.getUserId(), userQueue);
+			}
+			userQueue.add(submission);
+			size++;
+		}
+		
+		OOPBuildServiceSubmission removeNext() {
+			// Take the first submission of the first user of the first course,
+			// then move the user and course to the end of the round-robin order
+			// (or remove them if they have no more submissions)
+			Iterator<Map.Entry<Integer, LinkedHashMap<Integer, LinkedList<OOPBuildServiceSubmission>>>> i = courseMap.entrySet().iterator();
+			Map.Entry<Integer, LinkedHashMap<Integer, LinkedList<OOPBuildServiceSubmission>>> courseEntry = i.next();
+			i.remove();
+			LinkedHashMap<Integer, LinkedList<OOPBuildServiceSubmission>> userMap = courseEntry.getValue();
+			
+			Iterator<Map.Entry<Integer, LinkedList<OOPBuildServiceSubmission>>> j = userMap.entrySet().iterator();
+			Map.Entry<Integer, LinkedList<OOPBuildServiceSubmission>> userEntry = j.next();
+			j.remove();
+			LinkedList<OOPBuildServiceSubmission> userQueue = userEntry.getValue();
+			
+			OOPBuildServiceSubmission submission = userQueue.removeFirst();
+			if (!userQueue.isEmpty()) {
+				userMap.put(userEntry.getKey(), userQueue);
+			}
+			if (!userMap.isEmpty()) {
+				courseMap.put(courseEntry.getKey(), userMap);
+			}
+			size--;
+			return submission;
+		}
+		
+		boolean remove(OOPBuildServiceSubmission submission) {
+			LinkedHashMap<Integer, LinkedList<OOPBuildServiceSubmission>> userMap = courseMap.get(submission.getCourseId());
+			if (userMap == null) {
+				return false;
+			}
+			LinkedList<OOPBuildServiceSubmission> userQueue = userMap.get(submission.getUserId());
+			if (userQueue == null || !removeIdentical(userQueue, submission)) {
+				return false;
+			}
+			if (userQueue.isEmpty()) {
+				userMap.remove(submission.getUserId());
+				if (userMap.isEmpty()) {
+					courseMap.remove(submission.getCourseId());
+				}
+			}
+			size--;
+			return true;
+		}
+		
+		private static boolean removeIdentical(LinkedList<OOPBuildServiceSubmission> list, OOPBuildServiceSubmission submission) {
+			for (Iterator<OOPBuildServiceSubmission> i = list.iterator(); i.hasNext(); ) {
+				if (i.next() == submission) {
+					i.remove();
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+	
+	private final long maxWaitMillis;
+	private final Object lock;
+	private final ClassQueue[] classQueueList;
+	private int size;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param maxWaitMillis maximum time (in milliseconds) that a priority class
+	 *                      with waiting submissions can go without being served
+	 *                      before it is served ahead of higher priority classes
+	 */
+	public SubmissionScheduler(long maxWaitMillis) {
+		this.maxWaitMillis = maxWaitMillis;
+		this.lock = new Object();
+		this.classQueueList = new ClassQueue[SubmissionPriority.values().length];
+		for (int i = 0; i < classQueueList.length; i++) {
+			classQueueList[i] = new ClassQueue();
+		}
+	}
+	
+	/**
+	 * Add a submission.
+	 * 
+	 * @param submission the submission to add
+	 */
+	public void add(OOPBuildServiceSubmission submission) {
+		synchronized (lock) {
+			ClassQueue q = classQueueList[submission.getPriority().ordinal()];
+			if (q.size == 0) {
+				q.waitingSince = System.currentTimeMillis();
+			}
+			q.add(submission);
+			size++;
+			lock.notifyAll();
+		}
+	}
+	
+	/**
+	 * Remove a submission that is waiting to be tested.
+	 * 
+	 * @param submission the submission to remove
+	 * @return true if the submission was removed, false if it was not
+	 *         in the queue (for example, because it has already been
+	 *         taken to be tested)
+	 */
+	public boolean remove(OOPBuildServiceSubmission submission) {
+		synchronized (lock) {
+			if (!classQueueList[submission.getPriority().ordinal()].remove(submission)) {
+				return false;
+			}
+			size--;
+			return true;
+		}
+	}
+	
+	/**
+	 * Take the next submission to test, waiting until one is available.
+	 * 
+	 * @return the next submission to test
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public OOPBuildServiceSubmission take() throws InterruptedException {
+		OOPBuildServiceSubmission submission;
+		synchronized (lock) {
+			while (size == 0) {
+				lock.wait();
+			}
+			
+			long now = System.currentTimeMillis();
+			
+			// Find the class to serve: a class which has been waiting too long,
+			// if any (the one waiting longest), otherwise the highest priority
+			// class with waiting submissions
+			ClassQueue chosen = null;
+			for (ClassQueue q : classQueueList) {
+				if (q.size > 0 && now - q.waitingSince > maxWaitMillis
+						&& (chosen == null || q.waitingSince < chosen.waitingSince)) {
+					chosen = q;
+				}
+			}
+			if (chosen == null) {
+				for (ClassQueue q : classQueueList) {
+					if (q.size > 0) {
+						chosen = q;
+						break;
+					}
+				}
+			}
+			
+			submission = chosen.removeNext();
+			chosen.waitingSince = now;
+			size--;
+		}
+		
+		HealthDataSingleton.getInstance().addSubmissionWait(
+				submission.getPriority(), System.nanoTime() - submission.getSubmitTime());
+		return submission;
+	}
+	
+	/**
+	 * @return the total number of waiting submissions
+	 */
+	public int size() {
+		synchronized (lock) {
+			return size;
+		}
+	}
+	
+	/**
+	 * Get the number of waiting submissions in given priority class.
+	 * 
+	 * @param priority the {@link SubmissionPriority}
+	 * @return the number of waiting submissions in the priority class
+	 */
+	public int size(SubmissionPriority priority) {
+		synchronized (lock) {
+			return classQueueList[priority.ordinal()].size;
+		}
+	}
+}
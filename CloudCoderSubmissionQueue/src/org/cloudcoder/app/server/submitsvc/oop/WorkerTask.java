@@ -21,33 +21,51 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
 
 import org.apache.commons.io.IOUtils;
+import org.cloudcoder.app.server.model.HealthDataSingleton;
 import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.SubmissionResult;
-import org.cloudcoder.app.shared.model.SubmissionResultAnnotation;
-import org.cloudcoder.app.shared.model.TestCase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Worker task to communicate with a remote Builder process.
+ * When the Builder connects, it advertises a number of execution
+ * slots, and the worker task sends it up to that many submissions
+ * at a time.  Each submission sent on the connection is identified by
+ * a tag, and the Builder sends back the {@link SubmissionResult}s
+ * tagged the same way, in whatever order testing completes.
+ * Messages from the Builder are read by a separate reader thread.
+ * While the Builder has a free slot, the worker thread blocks waiting
+ * for a submission, so a new submission is handed off to an idle
+ * worker task as soon as it is added to the submission queue.
+ * Keepalive signals are requested by the {@link WorkerTaskSet}'s timer,
+ * but sent by the worker thread, so that a Builder whose connection is
+ * slow can't delay the keepalive signals sent to other Builders.
+ * 
+ * <p>The protocol (each item is a serialized object):
+ * <ul>
+ * <li>Builder to webapp, on connecting: Integer number of slots</li>
+ * <li>webapp to Builder: Integer -1 (keepalive signal, ignored by the Builder)</li>
+ * <li>webapp to Builder: Integer tag, Integer problem id, String version hash
+ *     (see {@link ProblemVersion}), String program text</li>
+ * <li>Builder to webapp: Integer tag, Boolean false, if the Builder doesn't
+ *     have this version of the problem; the webapp responds with Integer tag,
+ *     Problem, List of TestCases</li>
+ * <li>Builder to webapp: Integer tag, SubmissionResult</li>
+ * </ul>
  * 
  * @author David Hovemeyer
  */
 public class WorkerTask implements Runnable {
-	/**
-	 * Number of milliseconds between attempts to poll the
-	 * submission queue.
-	 */
-	private static final long POLL_INTERVAL_MILLIS = 1000L;
-
 	/**
 	 * Maximum number of milliseconds that the task is allowed to
-	 * be idle (no submissions available) before a keepalive signal
+	 * be idle (nothing sent to the builder) before a keepalive signal
 	 * is sent to the builder.
 	 */
 	private static final long MAX_IDLE_TIME_MILLIS = 5000L;
@@ -56,13 +74,23 @@ public class WorkerTask implements Runnable {
 	
 	private volatile boolean shutdownRequested;
 	private Socket clientSocket;
-	private LinkedBlockingQueue<OOPBuildServiceSubmission> submissionQueue;
+	private SubmissionScheduler submissionQueue;
 	private WorkerTaskSet workerTaskSet;
 	
 	private ObjectOutputStream out;
 	private ObjectInputStream in;
+	
+	private Object lock;
+	private volatile int numSlots;
+	private Map<Integer, OOPBuildServiceSubmission> inFlight;
+	private int nextTag;
+	private boolean connectionFailed;
+	private boolean closing;
+	private boolean keepaliveRequested;
+	private volatile long lastSendMillis;
+	private Thread workerThread;
 
-	public WorkerTask(Socket clientSocket, LinkedBlockingQueue<OOPBuildServiceSubmission> submissionQueue, WorkerTaskSet workerTaskSet) throws IOException {
+	public WorkerTask(Socket clientSocket, SubmissionScheduler submissionQueue, WorkerTaskSet workerTaskSet) throws IOException {
 		this.shutdownRequested = false;
 		this.clientSocket = clientSocket;
 		this.submissionQueue = submissionQueue;
@@ -70,100 +98,183 @@ public class WorkerTask implements Runnable {
 		
 		this.out = new ObjectOutputStream(clientSocket.getOutputStream());
 		this.in = new ObjectInputStream(clientSocket.getInputStream());
+		
+		this.lock = new Object();
+		this.inFlight = new HashMap<Integer, OOPBuildServiceSubmission>();
 	}
 
 	public void shutdown() {
 		shutdownRequested = true;
 	}
+	
+	/**
+	 * @return the number of execution slots advertised by the Builder
+	 *         (0 if the Builder hasn't advertised them yet)
+	 */
+	public int getNumSlots() {
+		return numSlots;
+	}
+
+	/**
+	 * Request that the worker thread send a keepalive signal to the
+	 * Builder if nothing has been sent to it recently, to avoid the
+	 * TCP connection timing out.  Doesn't block: the worker thread is
+	 * woken up (interrupting it if it is waiting for a submission)
+	 * and sends the keepalive signal itself.
+	 * 
+	 * @param now the current time (as returned by System.currentTimeMillis())
+	 */
+	public void requestKeepaliveIfIdle(long now) {
+		if (numSlots == 0 || now - lastSendMillis < MAX_IDLE_TIME_MILLIS) {
+			return;
+		}
+		synchronized (lock) {
+			if (connectionFailed || closing || keepaliveRequested || workerThread == null) {
+				return;
+			}
+			keepaliveRequested = true;
+			lock.notifyAll();
+			workerThread.interrupt();
+		}
+	}
+	
+	/**
+	 * Send a keepalive signal to the Builder.  Called by the worker thread
+	 * (without the lock held) when a keepalive signal has been requested.
+	 */
+	private void sendKeepalive() {
+		// Send a negative problem id as a keepalive signal.
+		// The Builder will ignore this.
+		try {
+			send(Integer.valueOf(-1));
+		} catch (IOException e) {
+			// The reader thread will notice that the connection is broken
+			logger.error("Error sending keepalive signal to Builder", e);
+		}
+	}
 
 	@Override
 	public void run() {
 		logger.info("oop buildsvc WorkerTask starting");
+		synchronized (lock) {
+			workerThread = Thread.currentThread();
+		}
 		
-		OOPBuildServiceSubmission submission = null;
+		boolean ok = true;
+		try {
+			readNumSlots();
+		} catch (IOException e) {
+			logger.error("Error reading number of slots from Builder", e);
+			ok = false;
+		} catch (ClassNotFoundException e) {
+			logger.error("ClassNotFoundException reading number of slots from Builder", e);
+			ok = false;
+		}
 		
-		// Keep track of how long it has been since we sent
-		// the Builder a Submission.  If it's been too long,
-		// we will send a keepalive signal to avoid the TCP
-		// connection timing out.
-		long idleTimeMillis = 0;
+		Thread readerThread = null;
+		if (ok) {
+			readerThread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					readMessages();
+				}
+			}, "WorkerTask reader");
+			readerThread.start();
+			lastSendMillis = System.currentTimeMillis();
+		}
 		
 		// Testing of submissions by this worker continues until either an
 		// explicit shutdown request is made, or an exception is thrown communicating
 		// with the remote Builder process.
 	submissionTestingLoop:
-		while (!shutdownRequested) {
-
-			// Try to get a submission to test
-			try {
-				submission = submissionQueue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
-			} catch (InterruptedException e) {
-				if (!shutdownRequested) {
-					logger.error("Unexpected interruption", e);
-					break submissionTestingLoop;
-				}
-			}
-			
-			if (submission == null) {
-				idleTimeMillis += POLL_INTERVAL_MILLIS;
-				
-				if (idleTimeMillis >= MAX_IDLE_TIME_MILLIS) {
-					// Send a negative problem id as a keepalive signal.
-					// The Builder will ignore this.
+		while (ok && !shutdownRequested) {
+			// Wait for a free slot (or a keepalive request)
+			boolean keepalive;
+			synchronized (lock) {
+				while (!connectionFailed && !shutdownRequested && !keepaliveRequested && inFlight.size() >= numSlots) {
 					try {
-						//logger.debug("Sending keepalive signal to Builder");
-						out.writeObject(Integer.valueOf(-1));
-						idleTimeMillis = 0L;
-					} catch (IOException e) {
-						logger.error("Error sending keepalive signal to Builder", e);
-						break submissionTestingLoop;
+						lock.wait();
+					} catch (InterruptedException e) {
+						// Check for shutdown, connection failure, or keepalive request
 					}
 				}
-			} else {
-				idleTimeMillis = 0L;
-			}
-
-			if (submission != null) {
-				// Check to make sure there isn't some kind of persistent error
-				// affecting the testing of this submission
-				if (submission.getNumAttempts() >= 10) {
-					// Too many testing failures for this submission!
-					submission.setReady();
-					continue submissionTestingLoop;
-				}
-				
-				submission.setNumAttempts(submission.getNumAttempts() + 1);
-				
-				// Attempt to test the submission
-				try {
-					sendSubmissionForTesting(submission);
-					// Submission successfully tested!
-					submission = null; // We're done with this Submission
-				} catch (IOException e) {
-					submission.setError(e);
-					logger.error("IOException attempting to send submission for testing", e);
+				if (connectionFailed) {
+					ok = false;
 					break submissionTestingLoop;
-				} catch (ClassNotFoundException e) {
-					submission.setError(e);
-					logger.error("ClassNotFoundException testing submission", e);
+				}
+				if (shutdownRequested) {
 					break submissionTestingLoop;
 				}
+				keepalive = keepaliveRequested;
+				keepaliveRequested = false;
 			}
-		}
-		
-		// If the testing of a submission was not completed,
-		// place it back in the queue so it has an opportunity to be re-tested
-		if (submission != null) {
+			if (keepalive) {
+				sendKeepalive();
+				continue submissionTestingLoop;
+			}
+
+			// Wait for a submission to test
+			OOPBuildServiceSubmission submission;
 			try {
-				submissionQueue.put(submission);
+				submission = submissionQueue.take();
 			} catch (InterruptedException e) {
-				logger.error("Failed to put submission back in submission queue", e);
-				submission.setError(e);
+				// Shutdown was requested, the connection failed,
+				// or a keepalive signal was requested
+				continue submissionTestingLoop;
+			}
+
+			// Check to make sure there isn't some kind of persistent error
+			// affecting the testing of this submission
+			if (submission.getNumAttempts() >= 10) {
+				// Too many testing failures for this submission!
 				submission.setReady();
+				continue submissionTestingLoop;
 			}
+			
+			submission.setNumAttempts(submission.getNumAttempts() + 1);
+			
+			// Attempt to send the submission for testing: the result
+			// will be received by the reader thread
+			try {
+				sendSubmissionForTesting(submission);
+				HealthDataSingleton.getInstance().addSubmissionDispatchLatency(
+						System.nanoTime() - submission.getSubmitTime());
+			} catch (IOException e) {
+				submission.setError(e);
+				logger.error("IOException attempting to send submission for testing", e);
+				ok = false;
+				break submissionTestingLoop;
+			}
+		}
+		
+		// If we're shutting down normally, wait for the results of
+		// the submissions the Builder is testing (still sending
+		// keepalive signals when requested)
+		for (;;) {
+			synchronized (lock) {
+				while (ok && !connectionFailed && !inFlight.isEmpty() && !keepaliveRequested) {
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						// Keep waiting
+					}
+				}
+				if (!ok || connectionFailed || inFlight.isEmpty()) {
+					closing = true;
+					break;
+				}
+				keepaliveRequested = false;
+			}
+			sendKeepalive();
 		}
+		
+		// The reader thread won't interrupt this thread once closing is set:
+		// clear the interrupted status, so it doesn't affect waiting for
+		// the reader thread to exit
+		Thread.interrupted();
 
-		// End the connection with the Builder
+		// End the connection with the Builder (which will also cause
+		// the reader thread to exit)
 		IOUtils.closeQuietly(in);
 		IOUtils.closeQuietly(out);
 		try {
@@ -171,43 +282,122 @@ public class WorkerTask implements Runnable {
 		} catch (IOException e) {
 			logger.warn("Exception closing client socket", e);
 		}
+		if (readerThread != null) {
+			try {
+				readerThread.join();
+			} catch (InterruptedException e) {
+				logger.warn("Interrupted waiting for reader thread to exit");
+			}
+		}
+		
+		// If the testing of any submissions was not completed,
+		// place them back in the queue so they have an opportunity to be re-tested
+		List<OOPBuildServiceSubmission> incomplete;
+		synchronized (lock) {
+			incomplete = new ArrayList<OOPBuildServiceSubmission>(inFlight.values());
+			inFlight.clear();
+		}
+		for (OOPBuildServiceSubmission submission : incomplete) {
+			submissionQueue.add(submission);
+		}
 		
 		workerTaskSet.onWorkerExit(this);
 		
 		logger.info("oop buildsvc WorkerTask exiting");
 	}
 
-	private void sendSubmissionForTesting(OOPBuildServiceSubmission submission) throws IOException, ClassNotFoundException {
+	private void readNumSlots() throws IOException, ClassNotFoundException {
+		Integer slots = (Integer) in.readObject();
+		if (slots == null || slots <= 0) {
+			throw new IOException("Builder advertised invalid number of slots: " + slots);
+		}
+		logger.info("Builder has {} slots", slots);
+		numSlots = slots;
+	}
+
+	private void sendSubmissionForTesting(OOPBuildServiceSubmission submission) throws IOException {
 		Problem problem = submission.getProblem();
-		List<TestCase> testCaseList = submission.getTestCaseList();
 		String programText = submission.getProgramText();
 		
-		// Tell client which Problem to test
-		out.writeObject((Integer) problem.getProblemId());
-		out.flush();
+		Integer tag;
+		synchronized (lock) {
+			tag = nextTag++;
+			inFlight.put(tag, submission);
+		}
 		
-		// Client will send back a boolean indicating whether or not it
-		// has this problem already: if not, send it (and its test cases).
-		Boolean response = (Boolean) in.readObject();
-		if (!response) {
-			out.writeObject(problem);
-			out.writeObject(testCaseList);
+		// Tell client which Problem to test (and which version of it),
+		// and send the program text
+		send(tag, (Integer) problem.getProblemId(), submission.getVersionHash(), programText);
+	}
+
+	/**
+	 * Read and handle messages from the Builder until the
+	 * connection is closed.  Runs in the reader thread.
+	 */
+	private void readMessages() {
+		try {
+			for (;;) {
+				Integer tag = (Integer) in.readObject();
+				Object msg = in.readObject();
+				
+				OOPBuildServiceSubmission submission;
+				synchronized (lock) {
+					submission = inFlight.get(tag);
+				}
+				if (submission == null) {
+					throw new IOException("Builder sent message for unknown submission " + tag);
+				}
+				
+				if (msg instanceof SubmissionResult) {
+					// Submission successfully tested!
+					submission.setSubmissionResult((SubmissionResult) msg);
+					synchronized (lock) {
+						inFlight.remove(tag);
+						lock.notifyAll();
+					}
+					submission.setReady();
+				} else {
+					// The Builder doesn't have this version of the problem:
+					// send it (and its test cases).
+					send(tag, submission.getProblem(), submission.getTestCaseList());
+				}
+			}
+		} catch (IOException e) {
+			onConnectionFailed(e);
+		} catch (ClassNotFoundException e) {
+			onConnectionFailed(e);
+		}
+	}
+	
+	private void onConnectionFailed(Exception e) {
+		synchronized (lock) {
+			if (!closing) {
+				logger.error("Error receiving message from Builder", e);
+				
+				// Wake up the worker thread if it is waiting for a submission
+				workerThread.interrupt();
+			}
+			connectionFailed = true;
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Send a message to the Builder.  The output stream is reset after
+	 * each message, so that objects written to the connection
+	 * (which is long-lived) can be garbage collected.
+	 * 
+	 * @param msg the objects making up the message
+	 * @throws IOException
+	 */
+	private void send(Object... msg) throws IOException {
+		synchronized (out) {
+			for (Object obj : msg) {
+				out.writeObject(obj);
+			}
+			out.reset();
 			out.flush();
 		}
-		
-		// Send the program text
-		out.writeObject(programText);
-		out.flush();
-		
-		// Read list of TestResults
-		SubmissionResult result= (SubmissionResult) in.readObject();
-		
-//		logger.info("Received submission results");
-//		for (SubmissionResultAnnotation annotation : result.getAnnotationList()) {
-//			logger.info("key={}, value={}", annotation.getKey(), annotation.getValue());
-//		}
-		
-		submission.setSubmissionResult(result);
-		submission.setReady();
+		lastSendMillis = System.currentTimeMillis();
 	}
-}
\ No newline at end of file
+}
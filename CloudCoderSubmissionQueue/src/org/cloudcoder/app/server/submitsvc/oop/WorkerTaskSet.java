@@ -22,7 +22,8 @@ import java.net.Socket;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,6 +36,12 @@ import org.slf4j.LoggerFactory;
  */
 public class WorkerTaskSet {
 	private static final Logger logger = LoggerFactory.getLogger(WorkerTaskSet.class);
+	
+	/**
+	 * Number of milliseconds between checks to see which worker
+	 * tasks need to send a keepalive signal.
+	 */
+	private static final long KEEPALIVE_CHECK_INTERVAL_MILLIS = 1000L;
     
 	private static class WorkerThreadAndTaskPair {
 		public final Thread thread;
@@ -56,11 +63,20 @@ public class WorkerTaskSet {
 	
 	/**
 	 * Constructor.
+	 * 
+	 * @param timer the timer to use to send keepalive signals: a single timer
+	 *              is used for all of the worker tasks, so that idle worker
+	 *              threads don't need to wake up periodically
 	 */
-	public WorkerTaskSet() {
+	public WorkerTaskSet(ScheduledExecutorService timer) {
 		lock = new Object();
 		this.workerThreadAndTaskPairList = new ArrayList<WorkerThreadAndTaskPair>();
-
+		timer.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				sendKeepalives();
+			}
+		}, KEEPALIVE_CHECK_INTERVAL_MILLIS, KEEPALIVE_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
 	}
 	
 	/**
@@ -74,6 +90,22 @@ public class WorkerTaskSet {
 		}
 	}
 
+	/**
+	 * Get the total number of execution slots advertised by the
+	 * Builders communicating with the active worker tasks.
+	 * 
+	 * @return total number of execution slots
+	 */
+	public int getNumBuilderSlots() {
+		synchronized (lock) {
+			int numSlots = 0;
+			for (WorkerThreadAndTaskPair pair : workerThreadAndTaskPairList) {
+				numSlots += pair.task.getNumSlots();
+			}
+			return numSlots;
+		}
+	}
+
 	/**
 	 * Create a {@link WorkerTask} to communicate with a remote
 	 * Builder thread.
@@ -82,7 +114,7 @@ public class WorkerTaskSet {
 	 * @param submissionQueue  queue of submissions requiring compilation and testing
 	 * @throws IOException
 	 */
-	public void createWorker(Socket clientSocket, LinkedBlockingQueue<OOPBuildServiceSubmission> submissionQueue) throws IOException {
+	public void createWorker(Socket clientSocket, SubmissionScheduler submissionQueue) throws IOException {
 		WorkerTask workerTask = new WorkerTask(clientSocket, submissionQueue, this);
 		Thread workerThread = new Thread(workerTask);
 		WorkerThreadAndTaskPair pair = new WorkerThreadAndTaskPair(workerThread, workerTask);
@@ -122,6 +154,25 @@ public class WorkerTaskSet {
 		}
 	}
 
+	/**
+	 * Request keepalive signals for the Builders which haven't been
+	 * sent anything recently.  Called periodically by the timer:
+	 * the keepalive signals are sent by the worker threads, so the
+	 * timer is never blocked by a slow connection.
+	 */
+	private void sendKeepalives() {
+		List<WorkerTask> workerTaskList = new ArrayList<WorkerTask>();
+		synchronized (lock) {
+			for (WorkerThreadAndTaskPair pair : workerThreadAndTaskPairList) {
+				workerTaskList.add(pair.task);
+			}
+		}
+		long now = System.currentTimeMillis();
+		for (WorkerTask workerTask : workerTaskList) {
+			workerTask.requestKeepaliveIfIdle(now);
+		}
+	}
+
 	/**
 	 * Called by a {@link WorkerTask} when the task exits.
 	 * 